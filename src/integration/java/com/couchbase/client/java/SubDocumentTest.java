@@ -1898,4 +1898,19 @@ public class SubDocumentTest {
         ctx.ignoreIfClusterUnder(new Version(5, 0, 0));
         ctx.bucket().lookupIn(key).getCount("boolean").execute();
     }
+
+    @Test
+    public void shouldReplaceOnlyChangedPaths() {
+        JsonDocument original = ctx.bucket().get(key);
+        JsonObject content = JsonObject.fromJson(original.content().toString());
+        content.put("string", "changed").put("added", true);
+        content.removeKey("boolean");
+
+        JsonDocument replaced = ctx.bucket().replaceChanged(original, JsonDocument.create(key, content));
+
+        assertNotEquals(original.cas(), replaced.cas());
+        assertEquals(content, ctx.bucket().get(key).content());
+        verifyException(ctx.bucket(), CASMismatchException.class)
+            .replaceChanged(original, JsonDocument.create(key, content.put("string", "again")));
+    }
 }
\ No newline at end of file
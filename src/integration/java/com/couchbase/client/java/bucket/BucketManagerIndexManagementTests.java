@@ -26,7 +26,9 @@ import static org.junit.Assert.fail;
 
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 import com.couchbase.client.core.logging.CouchbaseLogger;
@@ -422,4 +424,22 @@ public class BucketManagerIndexManagementTests {
                 .toBlocking().single();
         assertEquals("Not all indexes are online after 10 seconds", 3, readyInSeconds.size());
     }
+
+    @Test
+    public void testDeferredBuildInWavesReportsProgressUntilOnline() {
+        BucketManager mgr = indexedBucket.bucketManager();
+        mgr.createN1qlIndex("toto", false, true, "toto");
+        mgr.createN1qlIndex("tata", false, true, "tata");
+        mgr.createN1qlIndex("titi", false, true, "titi");
+
+        List<IndexInfo> progress = mgr.buildN1qlDeferredIndexes(2, 30, TimeUnit.SECONDS);
+        Set<String> online = new HashSet<String>();
+        for (IndexInfo info : progress) {
+            if (info.state().equals("online")) {
+                online.add(info.name());
+            }
+        }
+        assertEquals(new HashSet<String>(Arrays.asList("toto", "tata", "titi")), online);
+        assertEquals(0, mgr.buildN1qlDeferredIndexes().size());
+    }
 }
\ No newline at end of file
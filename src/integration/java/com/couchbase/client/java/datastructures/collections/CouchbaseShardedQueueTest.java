@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2017 Couchbase, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.couchbase.client.java.datastructures.collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+import com.couchbase.client.java.bucket.BucketType;
+import com.couchbase.client.java.error.DocumentDoesNotExistException;
+import com.couchbase.client.java.util.CouchbaseTestContext;
+import com.couchbase.client.java.util.features.CouchbaseFeature;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class CouchbaseShardedQueueTest {
+
+    private static final int SHARDS = 4;
+
+    private static CouchbaseTestContext ctx;
+
+    @BeforeClass
+    public static void setup() {
+        ctx = CouchbaseTestContext.builder()
+            .bucketQuota(100)
+            .bucketReplicas(1)
+            .bucketType(BucketType.COUCHBASE)
+            .build();
+
+        ctx.ignoreIfMissing(CouchbaseFeature.SUBDOC);
+    }
+
+    @AfterClass
+    public static void teardown() {
+        ctx.destroyBucketAndDisconnect();
+    }
+
+    private String uuid;
+
+    @Before
+    public void generateId() {
+        uuid = UUID.randomUUID().toString();
+    }
+
+    @After
+    public void deleteDocs() {
+        for (int i = 0; i < SHARDS; i++) {
+            try {
+                ctx.bucket().remove(CouchbaseShardedQueue.shardId(uuid, i));
+            } catch (DocumentDoesNotExistException e) {
+                //ignore
+            }
+        }
+    }
+
+    @Test
+    public void shouldPollEveryOfferedElementOnce() {
+        CouchbaseShardedQueue<String> queue = new CouchbaseShardedQueue<String>(uuid, ctx.bucket(), SHARDS);
+        queue.offer("a");
+        queue.addAll(Arrays.asList("b", "c", "d", "e", "f"));
+
+        assertEquals(6, queue.size());
+        Set<String> polled = new HashSet<String>();
+        String element;
+        while ((element = queue.poll()) != null) {
+            assertTrue(polled.add(element));
+        }
+        assertEquals(new HashSet<String>(Arrays.asList("a", "b", "c", "d", "e", "f")), polled);
+        assertEquals(0, queue.size());
+        assertNull(queue.peek());
+    }
+
+    @Test
+    public void shouldKeepBatchOrderWithinAShard() {
+        CouchbaseShardedQueue<Integer> queue = new CouchbaseShardedQueue<Integer>(uuid, ctx.bucket(), 1);
+        queue.addAll(Arrays.asList(1, 2, 3));
+        queue.offer(4);
+
+        assertEquals(1, (int) queue.poll());
+        assertEquals(2, (int) queue.poll());
+        assertEquals(3, (int) queue.poll());
+        assertEquals(4, (int) queue.poll());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void shouldIterateOverAllShards() {
+        CouchbaseShardedQueue<String> queue = new CouchbaseShardedQueue<String>(uuid, ctx.bucket(), SHARDS);
+        queue.addAll(Arrays.asList("a", "b", "c", "d", "e"));
+
+        Set<String> iterated = new HashSet<String>();
+        for (String s : queue) {
+            iterated.add(s);
+        }
+        assertEquals(5, iterated.size());
+
+        queue.clear();
+        assertTrue(queue.isEmpty());
+    }
+}
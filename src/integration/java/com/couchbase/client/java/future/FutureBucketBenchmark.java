@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2017 Couchbase, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.couchbase.client.java.future;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import com.couchbase.client.java.Bucket;
+import com.couchbase.client.java.CouchbaseBucket;
+import com.couchbase.client.java.document.Document;
+import com.couchbase.client.java.document.JsonDocument;
+import com.couchbase.client.java.document.json.JsonObject;
+import com.couchbase.client.java.env.CouchbaseEnvironment;
+import com.couchbase.client.java.env.DefaultCouchbaseEnvironment;
+import com.couchbase.client.java.simulator.SimulatedClusterFacade;
+import com.couchbase.client.java.transcoder.Transcoder;
+
+/**
+ * Command line entry point comparing the per-operation latency and allocations of the blocking {@link Bucket} API
+ * and of the {@link FutureBucket}, for the same operations against an in-process {@link SimulatedClusterFacade}
+ * without latency.
+ *
+ * The simulator answers on the calling thread, so the numbers only reflect the client side of each operation.
+ * Allocations are measured with the per-thread allocation counter of HotSpot and reported as unavailable on other
+ * JVMs.
+ *
+ * Configured through the `benchmark.operations` (100000 by default) and `benchmark.rounds` (5 by default) system
+ * properties, the first round being a warm-up.
+ */
+public class FutureBucketBenchmark {
+
+    private static final String ID = "benchmark";
+    private static final long TIMEOUT = 10000;
+
+    public static void main(String... args) throws Exception {
+        int operations = Integer.getInteger("benchmark.operations", 100000);
+        int rounds = Integer.getInteger("benchmark.rounds", 5);
+
+        CouchbaseEnvironment env = DefaultCouchbaseEnvironment.create();
+        try {
+            Bucket bucket = new CouchbaseBucket(env, SimulatedClusterFacade.create(),
+                SimulatedClusterFacade.DEFAULT_BUCKET, SimulatedClusterFacade.DEFAULT_BUCKET, "",
+                Collections.<Transcoder<? extends Document, ?>>emptyList());
+            final FutureBucket futures = bucket.async().futures();
+            final JsonDocument document = JsonDocument.create(ID, JsonObject.create().put("name", "benchmark")
+                .put("counter", 0L));
+            bucket.upsert(document);
+
+            Operation[] all = new Operation[] {
+                new Operation("get", bucket) {
+                    @Override
+                    void blocking() {
+                        bucket.get(ID);
+                    }
+
+                    @Override
+                    void future() {
+                        futures.get(ID).await(TIMEOUT, TimeUnit.MILLISECONDS);
+                    }
+                },
+                new Operation("upsert", bucket) {
+                    @Override
+                    void blocking() {
+                        bucket.upsert(document);
+                    }
+
+                    @Override
+                    void future() {
+                        futures.upsert(document).await(TIMEOUT, TimeUnit.MILLISECONDS);
+                    }
+                },
+                new Operation("lookupIn get", bucket) {
+                    @Override
+                    void blocking() {
+                        bucket.lookupIn(ID).get("name").execute().content(0);
+                    }
+
+                    @Override
+                    void future() {
+                        futures.getIn(ID, "name", String.class).await(TIMEOUT, TimeUnit.MILLISECONDS);
+                    }
+                },
+                new Operation("mutateIn upsert", bucket) {
+                    @Override
+                    void blocking() {
+                        bucket.mutateIn(ID).upsert("counter", 1L).execute();
+                    }
+
+                    @Override
+                    void future() {
+                        futures.upsertIn(ID, "counter", 1L, false).await(TIMEOUT, TimeUnit.MILLISECONDS);
+                    }
+                }
+            };
+
+            System.out.println(String.format("%-16s %-9s %12s %12s", "operation", "api", "ns/op", "bytes/op"));
+            for (Operation operation : all) {
+                Result blocking = null;
+                Result future = null;
+                for (int round = 0; round < rounds; round++) {
+                    blocking = operation.measure(false, operations);
+                    future = operation.measure(true, operations);
+                }
+                System.out.println(String.format("%-16s %-9s %12.0f %12s", operation.name, "blocking",
+                    blocking.nanos, blocking.bytes()));
+                System.out.println(String.format("%-16s %-9s %12.0f %12s", operation.name, "future",
+                    future.nanos, future.bytes()));
+            }
+            bucket.close();
+        } finally {
+            env.shutdown();
+        }
+    }
+
+    private abstract static class Operation {
+
+        final String name;
+        final Bucket bucket;
+
+        Operation(String name, Bucket bucket) {
+            this.name = name;
+            this.bucket = bucket;
+        }
+
+        abstract void blocking();
+
+        abstract void future();
+
+        Result measure(boolean futures, int operations) {
+            long allocatedBefore = allocatedBytes();
+            long start = System.nanoTime();
+            for (int i = 0; i < operations; i++) {
+                if (futures) {
+                    future();
+                } else {
+                    blocking();
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+            long allocatedAfter = allocatedBytes();
+            return new Result((double) elapsed / operations, allocatedBefore < 0
+                ? -1 : (double) (allocatedAfter - allocatedBefore) / operations);
+        }
+    }
+
+    private static class Result {
+
+        final double nanos;
+        final double bytes;
+
+        Result(double nanos, double bytes) {
+            this.nanos = nanos;
+            this.bytes = bytes;
+        }
+
+        String bytes() {
+            return bytes < 0 ? "n/a" : String.format("%.0f", bytes);
+        }
+    }
+
+    /**
+     * Returns the bytes allocated so far by the current thread, or -1 if the JVM does not expose them.
+     */
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        try {
+            Method method = threads.getClass().getMethod("getThreadAllocatedBytes", long.class);
+            method.setAccessible(true);
+            return (Long) method.invoke(threads, Thread.currentThread().getId());
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+}
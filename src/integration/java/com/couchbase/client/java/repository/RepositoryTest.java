@@ -22,7 +22,9 @@ import com.couchbase.client.java.repository.mapping.RepositoryMappingException;
 import com.couchbase.client.java.util.ClusterDependentTest;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
@@ -121,6 +123,33 @@ public class RepositoryTest extends ClusterDependentTest {
         assertEquals(document.id(), removed.id());
     }
 
+    @Test
+    public void shouldUpsertAndGetAllEntities() {
+        List<EntityDocument<User>> documents = new ArrayList<EntityDocument<User>>();
+        List<User> entities = new ArrayList<User>();
+        List<String> ids = new ArrayList<String>();
+        for (int i = 0; i < 20; i++) {
+            User entity = new User("Bulk" + i, i % 2 == 0, i, i / 2.0);
+            documents.add(EntityDocument.create(entity.id(), entity));
+            entities.add(entity);
+            ids.add(entity.id());
+        }
+
+        List<EntityDocument<User>> stored = repository().upsertAll(documents);
+        assertEquals(documents.size(), stored.size());
+        for (EntityDocument<User> document : stored) {
+            assertNotEquals(0, document.cas());
+        }
+
+        ids.add("user::doesNotExist");
+        List<EntityDocument<User>> found = repository().getAll(ids, User.class);
+        assertEquals(documents.size(), found.size());
+        for (EntityDocument<User> document : found) {
+            assertEquals(document.id(), document.content().id());
+            assertTrue(entities.contains(document.content()));
+        }
+    }
+
     @Test(expected = RepositoryMappingException.class)
     public void shouldFailWithoutIdProperty() {
         repository().upsert(EntityDocument.create(new EntityWithoutId()));
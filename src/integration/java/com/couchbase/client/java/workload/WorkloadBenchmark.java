@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2017 Couchbase, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.couchbase.client.java.workload;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.couchbase.client.java.Bucket;
+import com.couchbase.client.java.Cluster;
+import com.couchbase.client.java.CouchbaseCluster;
+import com.couchbase.client.java.env.CouchbaseEnvironment;
+import com.couchbase.client.java.env.DefaultCouchbaseEnvironment;
+import com.couchbase.client.java.simulator.SimulatedClusterFacade;
+import com.couchbase.mock.BucketConfiguration;
+import com.couchbase.mock.CouchbaseMock;
+
+/**
+ * Command line entry point running a {@link Workload} against CouchbaseMock, a cluster or the in-process
+ * {@link SimulatedClusterFacade}, and printing the {@link WorkloadReport}.
+ *
+ * Everything is configured through system properties:
+ *
+ * - `workload.target`: `mock` (default), `cluster` or `simulator`.
+ * - `workload.connectionString`, `workload.bucket`, `workload.username` and `workload.password`: where to connect
+ *   when targeting a cluster.
+ * - `workload.recordCount`, `workload.operationCount`, `workload.durationSeconds`, `workload.concurrency`,
+ *   `workload.async`, `workload.futures` and `workload.seed`: see {@link Workload.Builder}.
+ * - `workload.mix`: comma separated weights, like `read=0.95,update=0.05`.
+ * - `workload.distribution`: `uniform` (default), `zipfian` or `hotspot` (10% of the records get 90% of the
+ *   operations).
+ * - `workload.valueSize`: a size or a `min-max` range in bytes.
+ * - `workload.query`: the N1QL statement of `query` operations.
+ * - `workload.load`: whether to load the records first (true by default).
+ *
+ * The environment picks up the usual `com.couchbase.*` system properties, so tuning options can be compared
+ * on the same workload.
+ */
+public class WorkloadBenchmark {
+
+    private static final String PREFIX = "workload.";
+
+    public static void main(String... args) throws Exception {
+        Workload workload = workload();
+        String target = property("target", "mock");
+        String bucketName = property("bucket", SimulatedClusterFacade.DEFAULT_BUCKET);
+        System.out.println(workload);
+
+        CouchbaseMock mock = null;
+        Cluster cluster = null;
+        DefaultCouchbaseEnvironment.Builder envBuilder = DefaultCouchbaseEnvironment.builder();
+        try {
+            Bucket bucket;
+            CouchbaseEnvironment env;
+            if ("simulator".equals(target)) {
+                env = envBuilder.build();
+                bucket = SimulatedClusterFacade.builder()
+                    .bucket(bucketName)
+                    .seed(workload.seed())
+                    .mutationTokens(env.mutationTokensEnabled())
+                    .build()
+                    .openBucket(env);
+            } else {
+                String connectionString;
+                if ("mock".equals(target)) {
+                    mock = startMock(bucketName);
+                    envBuilder
+                        .bootstrapHttpDirectPort(mock.getHttpPort())
+                        .bootstrapCarrierDirectPort(mock.getBuckets().get(bucketName).getServers()[0].getPort());
+                    connectionString = "couchbase://localhost";
+                } else {
+                    connectionString = property("connectionString", "couchbase://localhost");
+                }
+                env = envBuilder.build();
+                cluster = CouchbaseCluster.fromConnectionString(env, connectionString);
+                String username = property("username", null);
+                if (username != null) {
+                    cluster.authenticate(username, property("password", ""));
+                    bucket = cluster.openBucket(bucketName);
+                } else {
+                    bucket = cluster.openBucket(bucketName, property("password", ""));
+                }
+            }
+
+            WorkloadRunner runner = new WorkloadRunner(workload);
+            if (Boolean.parseBoolean(property("load", "true"))) {
+                long start = System.nanoTime();
+                long loaded = runner.load(bucket);
+                System.out.println("Loaded " + loaded + " records in "
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+            }
+            System.out.println(runner.run(bucket));
+
+            if (cluster == null) {
+                bucket.close();
+            }
+        } finally {
+            if (cluster != null) {
+                cluster.disconnect();
+            }
+            if (mock != null) {
+                mock.stop();
+            }
+        }
+    }
+
+    private static Workload workload() {
+        long recordCount = Long.parseLong(property("recordCount", "10000"));
+        Workload.Builder builder = Workload.builder()
+            .recordCount(recordCount)
+            .operationCount(Long.parseLong(property("operationCount", "100000")))
+            .duration(Long.parseLong(property("durationSeconds", "0")), TimeUnit.SECONDS)
+            .concurrency(Integer.parseInt(property("concurrency", "16")))
+            .async(Boolean.parseBoolean(property("async", "true")))
+            .futures(Boolean.parseBoolean(property("futures", "false")))
+            .queryStatement(property("query", null));
+
+        String seed = property("seed", null);
+        if (seed != null) {
+            builder.seed(Long.parseLong(seed));
+        }
+
+        String valueSize = property("valueSize", "1024");
+        int dash = valueSize.indexOf('-');
+        if (dash > 0) {
+            builder.valueSize(Integer.parseInt(valueSize.substring(0, dash)),
+                Integer.parseInt(valueSize.substring(dash + 1)));
+        } else {
+            builder.valueSize(Integer.parseInt(valueSize));
+        }
+
+        String distribution = property("distribution", "uniform");
+        if ("zipfian".equals(distribution)) {
+            builder.keyDistribution(KeyDistribution.zipfian(recordCount));
+        } else if ("hotspot".equals(distribution)) {
+            builder.keyDistribution(KeyDistribution.hotspot(recordCount, 0.1, 0.9));
+        } else if (!"uniform".equals(distribution)) {
+            throw new IllegalArgumentException("Unknown key distribution " + distribution);
+        }
+
+        String mix = property("mix", "read=0.5,update=0.5");
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.trim().split("=");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Invalid mix entry " + entry);
+            }
+            builder.mix(WorkloadOperation.valueOf(parts[0].trim().toUpperCase()), Double.parseDouble(parts[1]));
+        }
+        return builder.build();
+    }
+
+    private static CouchbaseMock startMock(String bucketName) throws Exception {
+        BucketConfiguration bucketConfiguration = new BucketConfiguration();
+        bucketConfiguration.numNodes = 1;
+        bucketConfiguration.numReplicas = 0;
+        bucketConfiguration.numVBuckets = 1024;
+        bucketConfiguration.name = bucketName;
+        bucketConfiguration.password = "";
+        List<BucketConfiguration> configurations = new ArrayList<BucketConfiguration>();
+        configurations.add(bucketConfiguration);
+        CouchbaseMock mock = new CouchbaseMock(0, configurations);
+        mock.start();
+        mock.waitForStartup();
+        return mock;
+    }
+
+    private static String property(String name, String defaultValue) {
+        return System.getProperty(PREFIX + name, defaultValue);
+    }
+}
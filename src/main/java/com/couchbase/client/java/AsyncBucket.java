@@ -15,6 +15,8 @@
  */
 package com.couchbase.client.java;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 import com.couchbase.client.core.BackpressureException;
@@ -33,6 +35,9 @@ import com.couchbase.client.java.document.JsonDocument;
 import com.couchbase.client.java.document.JsonLongDocument;
 import com.couchbase.client.java.document.LegacyDocument;
 import com.couchbase.client.java.document.StringDocument;
+import com.couchbase.client.java.document.json.JsonArray;
+import com.couchbase.client.java.document.json.JsonObject;
+import com.couchbase.client.java.document.json.JsonValue;
 import com.couchbase.client.java.env.CouchbaseEnvironment;
 import com.couchbase.client.java.error.CASMismatchException;
 import com.couchbase.client.java.error.CouchbaseOutOfMemoryException;
@@ -45,14 +50,22 @@ import com.couchbase.client.java.error.TemporaryLockFailureException;
 import com.couchbase.client.java.error.subdoc.PathNotFoundException;
 import com.couchbase.client.java.error.ViewDoesNotExistException;
 import com.couchbase.client.java.search.SearchQuery;
+import com.couchbase.client.java.search.SearchQueryTemplate;
 import com.couchbase.client.java.search.result.AsyncSearchQueryResult;
+import com.couchbase.client.java.search.result.SearchQueryRow;
+import com.couchbase.client.java.future.FutureBucket;
+import com.couchbase.client.java.largeobject.AsyncLargeObjectStore;
 import com.couchbase.client.java.query.AsyncN1qlQueryResult;
+import com.couchbase.client.java.query.N1qlBatchOptions;
+import com.couchbase.client.java.query.N1qlBatchResult;
 import com.couchbase.client.java.query.N1qlQuery;
 import com.couchbase.client.java.query.Statement;
 import com.couchbase.client.java.repository.AsyncRepository;
 import com.couchbase.client.java.repository.Repository;
 import com.couchbase.client.java.subdoc.AsyncLookupInBuilder;
 import com.couchbase.client.java.subdoc.AsyncMutateInBuilder;
+import com.couchbase.client.java.subdoc.JsonDiff;
+import com.couchbase.client.java.subdoc.DocumentFragment;
 import com.couchbase.client.java.transcoder.Transcoder;
 import com.couchbase.client.java.transcoder.subdoc.FragmentTranscoder;
 import com.couchbase.client.java.view.AsyncSpatialViewResult;
@@ -1220,6 +1233,45 @@ public interface AsyncBucket {
      */
     Observable<AsyncN1qlQueryResult> query(N1qlQuery query);
 
+    /**
+     * Warms up the N1QL path of this bucket by preparing the given statements upfront.
+     *
+     * The plans are put in the prepared statement cache, so that the first non-adhoc execution of each statement
+     * does not need to go through a PREPARE anymore, and connections to the query service get established on the
+     * way. Key/value connections are established when the bucket is opened and do not need to be warmed up.
+     *
+     * Failing statements are logged and skipped, so that a warm-up never prevents an application from starting.
+     *
+     * @param statements the statements to prepare, as they will be executed later.
+     * @return the number of statements which have been successfully prepared.
+     */
+    @InterfaceStability.Experimental
+    Observable<Integer> warmUp(List<String> statements);
+
+    /**
+     * Executes one N1QL statement once per parameter set, pipelined through its prepared plan.
+     *
+     * The statement is prepared once, unless its plan is already cached, and the executions are kept in flight up
+     * to the {@link N1qlBatchOptions#concurrency(int) configured concurrency}. Executions of an `INSERT` or `UPSERT`
+     * with positional placeholders can {@link N1qlBatchOptions#rowsPerInsert(int) group several rows}, by
+     * repeating its `VALUES` clause. A failing execution does not stop the batch, its errors and rows are reported in
+     * the {@link N1qlBatchResult}.
+     *
+     * The returned {@link Observable} can error under the following conditions:
+     *
+     * - A parameter set is neither a {@link JsonArray} nor a {@link JsonObject}, or does not have the number of
+     *   positional parameters of a grouped insert: {@link IllegalArgumentException}
+     *
+     * @param statement the statement to execute, with positional or named placeholders.
+     * @param parameters the parameter sets, {@link JsonArray}s for positional or {@link JsonObject}s for named
+     *   placeholders.
+     * @param options the options of the batch.
+     * @return the mutation counts and errors aggregated over all the executions, once they completed.
+     */
+    @InterfaceStability.Experimental
+    Observable<N1qlBatchResult> queryBatch(Statement statement, Observable<? extends JsonValue> parameters,
+        N1qlBatchOptions options);
+
     /**
      * Queries a Full-Text Index
      *
@@ -1235,6 +1287,39 @@ public interface AsyncBucket {
     @InterfaceStability.Committed
     Observable<AsyncSearchQueryResult> query(SearchQuery query);
 
+    /**
+     * Queries a Full-Text Index with a pre-serialized {@link SearchQueryTemplate}.
+     *
+     * Only the parameter values are rendered for each execution, the rest of the request body is reused as-is.
+     * The returned {@link Observable} can error under the same conditions as {@link #query(SearchQuery)}, and with
+     * an {@link IllegalArgumentException} if a parameter of the template is not bound.
+     *
+     * @param template the compiled query.
+     * @param params the values of the template parameters, by name.
+     * @return a query result containing the matches and additional information.
+     */
+    @InterfaceStability.Experimental
+    Observable<AsyncSearchQueryResult> query(SearchQueryTemplate template, JsonObject params);
+
+    /**
+     * Streams all the hits of a Full-Text query, however many there are, page by page.
+     *
+     * Rather than increasing offsets, each page continues {@link SearchQuery#searchAfter(Object...) after} the
+     * sort values of the last hit of the previous one, so deep pages cost the search service as much as the first.
+     * The next page is fetched while the current one is consumed, and no further page is requested until the
+     * subscriber asks for its hits.
+     *
+     * The scan sends its own copy of the query, leaving the given one untouched: "_id" is appended to the sort
+     * (which defaults to "-_score") so that the hits are totally ordered, and the limit and skip are replaced.
+     * Facets are ignored. This requires a server version supporting "search_after".
+     *
+     * @param query the query builder.
+     * @param pageSize the number of hits fetched per request.
+     * @return an {@link Observable} of all the hits, in sort order.
+     */
+    @InterfaceStability.Experimental
+    Observable<SearchQueryRow> searchScan(SearchQuery query, int pageSize);
+
     /**
      * Uncommitted: Queries Couchbase Analytics
      *
@@ -2081,6 +2166,96 @@ public interface AsyncBucket {
     @InterfaceAudience.Public
     AsyncMutateInBuilder mutateIn(String docId);
 
+    /**
+     * Prepare the same sub-document lookup over several documents through a {@link AsyncLookupInBuilder builder API}.
+     * The lookups described with the builder act as a template: they are encoded once and shared by the request
+     * sent for each document, and {@link AsyncLookupInBuilder#execute()} emits one {@link DocumentFragment} per
+     * existing document, which makes projections over many documents much cheaper than full gets.
+     *
+     * @param docIds the ids of the JSON documents to lookup in.
+     * @return a builder to describe the lookup(s) to perform on each document.
+     * @see AsyncLookupInBuilder#execute()
+     */
+    @InterfaceStability.Experimental
+    @InterfaceAudience.Public
+    AsyncLookupInBuilder lookupIn(Collection<String> docIds);
+
+    /**
+     * Prepare the same sub-document mutation over several documents through a {@link AsyncMutateInBuilder builder
+     * API}. The mutations described with the builder act as a template: their fragments are encoded once and shared
+     * by the request sent for each document, and {@link AsyncMutateInBuilder#execute()} emits one
+     * {@link DocumentFragment} per mutated document.
+     *
+     * @param docIds the ids of the JSON documents to mutate in.
+     * @return a builder to describe the mutation(s) to perform on each document.
+     * @see AsyncMutateInBuilder#execute()
+     */
+    @InterfaceStability.Experimental
+    @InterfaceAudience.Public
+    AsyncMutateInBuilder mutateIn(Collection<String> docIds);
+
+    /**
+     * Replaces a {@link JsonDocument} by sending only the paths that changed since it was loaded.
+     *
+     * The structural difference between the content of the original and of the modified document is computed and
+     * executed as a single sub-document multi-mutation guarded by the CAS of the original, so a concurrent
+     * modification fails with a {@link CASMismatchException} just like a full replace would. The whole document is
+     * replaced instead when the original has no CAS, when the diff needs more than {@link JsonDiff#MAX_SPECS}
+     * mutations, when it weighs more than half of the modified document, or when the content did not change
+     * at all, so that the CAS of the original is still checked and the expiry of the modified document applied.
+     *
+     * This method throws under the following conditions:
+     *
+     * - The producer outpaces the SDK: {@link BackpressureException}
+     * - The operation had to be cancelled while on the wire or the retry strategy cancelled it instead of
+     *   retrying: {@link RequestCancelledException}
+     * - The original document does not exist: {@link DocumentDoesNotExistException}
+     * - The document has been modified since the original was loaded: {@link CASMismatchException}
+     * - The server is currently not able to process the request, retrying may help: {@link TemporaryFailureException}
+     * - The server is out of memory: {@link CouchbaseOutOfMemoryException}
+     * - Unexpected errors are caught and contained in a generic {@link CouchbaseException}.
+     *
+     * @param original the document as it was loaded, with its CAS.
+     * @param modified the document with the same id and the new content and expiry.
+     * @return a {@link JsonDocument} with the modified content and the new CAS.
+     */
+    @InterfaceStability.Experimental
+    @InterfaceAudience.Public
+    Observable<JsonDocument> replaceChanged(JsonDocument original, JsonDocument modified);
+
+    /**
+     * Replaces a {@link JsonDocument} by sending only the paths that changed since it was loaded.
+     *
+     * The structural difference between the content of the original and of the modified document is computed and
+     * executed as a single sub-document multi-mutation guarded by the CAS of the original, so a concurrent
+     * modification fails with a {@link CASMismatchException} just like a full replace would. The whole document is
+     * replaced instead when the original has no CAS, when the diff needs more than {@link JsonDiff#MAX_SPECS}
+     * mutations, when it weighs more than half of the modified document, or when the content did not change
+     * at all, so that the CAS of the original is still checked and the expiry of the modified document applied.
+     *
+     * This method throws under the following conditions:
+     *
+     * - The producer outpaces the SDK: {@link BackpressureException}
+     * - The operation had to be cancelled while on the wire or the retry strategy cancelled it instead of
+     *   retrying: {@link RequestCancelledException}
+     * - The original document does not exist: {@link DocumentDoesNotExistException}
+     * - The document has been modified since the original was loaded: {@link CASMismatchException}
+     * - The server is currently not able to process the request, retrying may help: {@link TemporaryFailureException}
+     * - The server is out of memory: {@link CouchbaseOutOfMemoryException}
+     * - A durability constraint could not be fulfilled: {@link DurabilityException}
+     * - Unexpected errors are caught and contained in a generic {@link CouchbaseException}.
+     *
+     * @param original the document as it was loaded, with its CAS.
+     * @param modified the document with the same id and the new content and expiry.
+     * @param persistTo the persistence constraint to watch.
+     * @param replicateTo the replication constraint to watch.
+     * @return a {@link JsonDocument} with the modified content and the new CAS.
+     */
+    @InterfaceStability.Experimental
+    @InterfaceAudience.Public
+    Observable<JsonDocument> replaceChanged(JsonDocument original, JsonDocument modified, PersistTo persistTo,
+        ReplicateTo replicateTo);
+
     /**
      * Add a key value pair into CouchbaseMap
      *
@@ -2709,6 +2884,31 @@ public interface AsyncBucket {
     @InterfaceStability.Experimental
     Observable<AsyncRepository> repository();
 
+    /**
+     * The {@link AsyncLargeObjectStore} stores objects too large for a single document as chunk documents described
+     * by a manifest, writing and reading the chunks in parallel.
+     *
+     * The returned store uses the {@link AsyncLargeObjectStore#DEFAULT_CHUNK_SIZE default chunk size} and
+     * {@link AsyncLargeObjectStore#DEFAULT_MAX_CONCURRENCY default concurrency}, create one with
+     * {@link AsyncLargeObjectStore#AsyncLargeObjectStore(AsyncBucket, int, int)} to tune them.
+     *
+     * @return the large object store of this bucket.
+     */
+    @InterfaceAudience.Public
+    @InterfaceStability.Experimental
+    AsyncLargeObjectStore largeObjects();
+
+    /**
+     * The {@link FutureBucket} exposes the single-result key/value and sub-document operations of this bucket as
+     * {@link com.couchbase.client.java.future.ResultFuture}s, completed directly from the response without going
+     * through an {@link Observable}.
+     *
+     * @return the future based view of this bucket.
+     */
+    @InterfaceAudience.Public
+    @InterfaceStability.Experimental
+    FutureBucket futures();
+
     /**
      * Closes the {@link AsyncBucket}.
      *
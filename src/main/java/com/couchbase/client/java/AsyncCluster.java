@@ -128,6 +128,24 @@ public interface AsyncCluster {
      */
     Observable<AsyncBucket> openBucket(String name, String password, List<Transcoder<? extends Document, ?>> transcoders);
 
+    /**
+     * Opens all the buckets with the given names concurrently, using the credentials set through this cluster's
+     * {@link #authenticate(Authenticator) Authenticator} as {@link #openBucket(String)} does.
+     *
+     * The buckets are emitted in the order of the given names, as soon as all the buckets before them are open.
+     *
+     * The {@link Observable} can error under the following conditions:
+     *
+     *  - com.couchbase.client.core.CouchbaseException: If one of the buckets could not be opened (see logs and nested
+     *    stack trace for more details why it failed).
+     *   - com.couchbase.client.core.BackpressureException: If the incoming request rate is too high to be processed.
+     *
+     * @param names the names of the buckets.
+     * @return the opened buckets if successful.
+     */
+    @InterfaceStability.Experimental
+    Observable<AsyncBucket> openBuckets(List<String> names);
+
     /**
      * Asynchronously perform a N1QL query that can span multiple buckets. The query will use any credential set
      * through this cluster's {@link #authenticate(Authenticator) Authenticator}.
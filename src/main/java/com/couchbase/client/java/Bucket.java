@@ -36,6 +36,9 @@ import com.couchbase.client.java.document.JsonDocument;
 import com.couchbase.client.java.document.JsonLongDocument;
 import com.couchbase.client.java.document.LegacyDocument;
 import com.couchbase.client.java.document.StringDocument;
+import com.couchbase.client.java.document.json.JsonArray;
+import com.couchbase.client.java.document.json.JsonObject;
+import com.couchbase.client.java.document.json.JsonValue;
 import com.couchbase.client.java.env.CouchbaseEnvironment;
 import com.couchbase.client.java.error.CASMismatchException;
 import com.couchbase.client.java.error.CouchbaseOutOfMemoryException;
@@ -48,11 +51,15 @@ import com.couchbase.client.java.error.TemporaryLockFailureException;
 import com.couchbase.client.java.error.ViewDoesNotExistException;
 import com.couchbase.client.java.error.subdoc.PathNotFoundException;
 import com.couchbase.client.java.search.SearchQuery;
+import com.couchbase.client.java.search.SearchQueryTemplate;
 import com.couchbase.client.java.search.result.SearchQueryResult;
+import com.couchbase.client.java.query.N1qlBatchOptions;
+import com.couchbase.client.java.query.N1qlBatchResult;
 import com.couchbase.client.java.query.N1qlQuery;
 import com.couchbase.client.java.query.N1qlQueryResult;
 import com.couchbase.client.java.query.Statement;
 import com.couchbase.client.java.repository.Repository;
+import com.couchbase.client.java.subdoc.JsonDiff;
 import com.couchbase.client.java.subdoc.LookupInBuilder;
 import com.couchbase.client.java.subdoc.MutateInBuilder;
 import com.couchbase.client.java.transcoder.Transcoder;
@@ -2712,6 +2719,83 @@ public interface Bucket {
      */
     N1qlQueryResult query(N1qlQuery query, long timeout, TimeUnit timeUnit);
 
+    /**
+     * Warms up the N1QL path of this bucket by preparing the given statements upfront, with the
+     * {@link CouchbaseEnvironment#queryTimeout() default query timeout}.
+     *
+     * The plans are put in the prepared statement cache, so that the first non-adhoc execution of each statement
+     * does not need to go through a PREPARE anymore, and connections to the query service get established on the
+     * way. Key/value connections are established when the bucket is opened and do not need to be warmed up.
+     *
+     * Failing statements are logged and skipped, so that a warm-up never prevents an application from starting.
+     *
+     * @param statements the statements to prepare, as they will be executed later.
+     * @return the number of statements which have been successfully prepared.
+     */
+    @InterfaceStability.Experimental
+    int warmUp(List<String> statements);
+
+    /**
+     * Warms up the N1QL path of this bucket by preparing the given statements upfront, with a custom timeout.
+     *
+     * See {@link #warmUp(List)} for details.
+     *
+     * This method throws under the following conditions:
+     *
+     * - The operation takes longer than the specified timeout: {@link TimeoutException} wrapped in a {@link RuntimeException}
+     *
+     * @param statements the statements to prepare, as they will be executed later.
+     * @param timeout the custom timeout, for all statements.
+     * @param timeUnit the unit for the timeout.
+     * @return the number of statements which have been successfully prepared.
+     */
+    @InterfaceStability.Experimental
+    int warmUp(List<String> statements, long timeout, TimeUnit timeUnit);
+
+    /**
+     * Executes one N1QL statement once per parameter set, pipelined through its prepared plan, with the
+     * {@link CouchbaseEnvironment#queryTimeout() default query timeout} for the whole batch.
+     *
+     * See {@link AsyncBucket#queryBatch(Statement, Observable, N1qlBatchOptions)} for details.
+     *
+     * This method throws under the following conditions:
+     *
+     * - The batch takes longer than the timeout: {@link TimeoutException} wrapped in a {@link RuntimeException}
+     * - A parameter set is neither a {@link JsonArray} nor a {@link JsonObject}, or does not have the number of
+     *   positional parameters of a grouped insert: {@link IllegalArgumentException}
+     *
+     * @param statement the statement to execute, with positional or named placeholders.
+     * @param parameters the parameter sets.
+     * @param options the options of the batch.
+     * @return the mutation counts and errors aggregated over all the executions.
+     */
+    @InterfaceStability.Experimental
+    N1qlBatchResult queryBatch(Statement statement, Iterable<? extends JsonValue> parameters,
+        N1qlBatchOptions options);
+
+    /**
+     * Executes one N1QL statement once per parameter set, pipelined through its prepared plan, with a custom
+     * timeout for the whole batch.
+     *
+     * See {@link AsyncBucket#queryBatch(Statement, Observable, N1qlBatchOptions)} for details.
+     *
+     * This method throws under the following conditions:
+     *
+     * - The batch takes longer than the timeout: {@link TimeoutException} wrapped in a {@link RuntimeException}
+     * - A parameter set is neither a {@link JsonArray} nor a {@link JsonObject}, or does not have the number of
+     *   positional parameters of a grouped insert: {@link IllegalArgumentException}
+     *
+     * @param statement the statement to execute, with positional or named placeholders.
+     * @param parameters the parameter sets.
+     * @param options the options of the batch.
+     * @param timeout the custom timeout, for the whole batch.
+     * @param timeUnit the unit for the timeout.
+     * @return the mutation counts and errors aggregated over all the executions.
+     */
+    @InterfaceStability.Experimental
+    N1qlBatchResult queryBatch(Statement statement, Iterable<? extends JsonValue> parameters,
+        N1qlBatchOptions options, long timeout, TimeUnit timeUnit);
+
     /**
      * Queries a Full-Text Index
      *
@@ -2744,6 +2828,36 @@ public interface Bucket {
     @InterfaceStability.Committed
     SearchQueryResult query(SearchQuery query, long timeout, TimeUnit timeUnit);
 
+    /**
+     * Queries a Full-Text Index with a pre-serialized {@link SearchQueryTemplate}, with the default timeout.
+     *
+     * Only the parameter values are rendered for each execution, the rest of the request body is reused as-is.
+     * This method throws under the same conditions as {@link #query(SearchQuery)}, and with an
+     * {@link IllegalArgumentException} if a parameter of the template is not bound.
+     *
+     * @param template the compiled query.
+     * @param params the values of the template parameters, by name.
+     * @return a query result containing the matches and additional information.
+     */
+    @InterfaceStability.Experimental
+    SearchQueryResult query(SearchQueryTemplate template, JsonObject params);
+
+    /**
+     * Queries a Full-Text Index with a pre-serialized {@link SearchQueryTemplate}, with a custom timeout.
+     *
+     * Only the parameter values are rendered for each execution, the rest of the request body is reused as-is.
+     * This method throws under the same conditions as {@link #query(SearchQuery)}, and with an
+     * {@link IllegalArgumentException} if a parameter of the template is not bound.
+     *
+     * @param template the compiled query.
+     * @param params the values of the template parameters, by name.
+     * @param timeout the custom full timeout, including the time to retrieve all rows, errors, etc...
+     * @param timeUnit the unit for the timeout.
+     * @return a query result containing the matches and additional information.
+     */
+    @InterfaceStability.Experimental
+    SearchQueryResult query(SearchQueryTemplate template, JsonObject params, long timeout, TimeUnit timeUnit);
+
     /**
      * Uncommitted: Queries Couchbase Analytics
      *
@@ -4502,6 +4616,138 @@ public interface Bucket {
     @InterfaceAudience.Public
     MutateInBuilder mutateIn(String docId);
 
+    /**
+     * Replaces a {@link JsonDocument} by sending only the paths that changed since it was loaded.
+     *
+     * The structural difference between the content of the original and of the modified document is computed and
+     * executed as a single sub-document multi-mutation guarded by the CAS of the original, so a concurrent
+     * modification fails with a {@link CASMismatchException} just like a full replace would. The whole document is
+     * replaced instead when the original has no CAS, when the diff needs more than {@link JsonDiff#MAX_SPECS}
+     * mutations, when it weighs more than half of the modified document, or when the content did not change
+     * at all, so that the CAS of the original is still checked and the expiry of the modified document applied.
+     *
+     * This method throws under the following conditions:
+     *
+     * - The operation takes longer than the specified timeout: {@link TimeoutException} wrapped in a {@link RuntimeException}
+     * - The producer outpaces the SDK: {@link BackpressureException}
+     * - The operation had to be cancelled while on the wire or the retry strategy cancelled it instead of
+     *   retrying: {@link RequestCancelledException}
+     * - The original document does not exist: {@link DocumentDoesNotExistException}
+     * - The document has been modified since the original was loaded: {@link CASMismatchException}
+     * - The server is currently not able to process the request, retrying may help: {@link TemporaryFailureException}
+     * - The server is out of memory: {@link CouchbaseOutOfMemoryException}
+     * - Unexpected errors are caught and contained in a generic {@link CouchbaseException}.
+     *
+     * @param original the document as it was loaded, with its CAS.
+     * @param modified the document with the same id and the new content and expiry.
+     * @return a {@link JsonDocument} with the modified content and the new CAS.
+     */
+    @InterfaceStability.Experimental
+    @InterfaceAudience.Public
+    JsonDocument replaceChanged(JsonDocument original, JsonDocument modified);
+
+    /**
+     * Replaces a {@link JsonDocument} by sending only the paths that changed since it was loaded.
+     *
+     * The structural difference between the content of the original and of the modified document is computed and
+     * executed as a single sub-document multi-mutation guarded by the CAS of the original, so a concurrent
+     * modification fails with a {@link CASMismatchException} just like a full replace would. The whole document is
+     * replaced instead when the original has no CAS, when the diff needs more than {@link JsonDiff#MAX_SPECS}
+     * mutations, when it weighs more than half of the modified document, or when the content did not change
+     * at all, so that the CAS of the original is still checked and the expiry of the modified document applied.
+     *
+     * This method throws under the following conditions:
+     *
+     * - The operation takes longer than the specified timeout: {@link TimeoutException} wrapped in a {@link RuntimeException}
+     * - The producer outpaces the SDK: {@link BackpressureException}
+     * - The operation had to be cancelled while on the wire or the retry strategy cancelled it instead of
+     *   retrying: {@link RequestCancelledException}
+     * - The original document does not exist: {@link DocumentDoesNotExistException}
+     * - The document has been modified since the original was loaded: {@link CASMismatchException}
+     * - The server is currently not able to process the request, retrying may help: {@link TemporaryFailureException}
+     * - The server is out of memory: {@link CouchbaseOutOfMemoryException}
+     * - Unexpected errors are caught and contained in a generic {@link CouchbaseException}.
+     *
+     * @param original the document as it was loaded, with its CAS.
+     * @param modified the document with the same id and the new content and expiry.
+     * @param timeout the custom timeout.
+     * @param timeUnit the unit for the timeout.
+     * @return a {@link JsonDocument} with the modified content and the new CAS.
+     */
+    @InterfaceStability.Experimental
+    @InterfaceAudience.Public
+    JsonDocument replaceChanged(JsonDocument original, JsonDocument modified, long timeout, TimeUnit timeUnit);
+
+    /**
+     * Replaces a {@link JsonDocument} by sending only the paths that changed since it was loaded.
+     *
+     * The structural difference between the content of the original and of the modified document is computed and
+     * executed as a single sub-document multi-mutation guarded by the CAS of the original, so a concurrent
+     * modification fails with a {@link CASMismatchException} just like a full replace would. The whole document is
+     * replaced instead when the original has no CAS, when the diff needs more than {@link JsonDiff#MAX_SPECS}
+     * mutations, when it weighs more than half of the modified document, or when the content did not change
+     * at all, so that the CAS of the original is still checked and the expiry of the modified document applied.
+     *
+     * This method throws under the following conditions:
+     *
+     * - The operation takes longer than the specified timeout: {@link TimeoutException} wrapped in a {@link RuntimeException}
+     * - The producer outpaces the SDK: {@link BackpressureException}
+     * - The operation had to be cancelled while on the wire or the retry strategy cancelled it instead of
+     *   retrying: {@link RequestCancelledException}
+     * - The original document does not exist: {@link DocumentDoesNotExistException}
+     * - The document has been modified since the original was loaded: {@link CASMismatchException}
+     * - The server is currently not able to process the request, retrying may help: {@link TemporaryFailureException}
+     * - The server is out of memory: {@link CouchbaseOutOfMemoryException}
+     * - A durability constraint could not be fulfilled: {@link DurabilityException}
+     * - Unexpected errors are caught and contained in a generic {@link CouchbaseException}.
+     *
+     * @param original the document as it was loaded, with its CAS.
+     * @param modified the document with the same id and the new content and expiry.
+     * @param persistTo the persistence constraint to watch.
+     * @param replicateTo the replication constraint to watch.
+     * @return a {@link JsonDocument} with the modified content and the new CAS.
+     */
+    @InterfaceStability.Experimental
+    @InterfaceAudience.Public
+    JsonDocument replaceChanged(JsonDocument original, JsonDocument modified, PersistTo persistTo,
+        ReplicateTo replicateTo);
+
+    /**
+     * Replaces a {@link JsonDocument} by sending only the paths that changed since it was loaded.
+     *
+     * The structural difference between the content of the original and of the modified document is computed and
+     * executed as a single sub-document multi-mutation guarded by the CAS of the original, so a concurrent
+     * modification fails with a {@link CASMismatchException} just like a full replace would. The whole document is
+     * replaced instead when the original has no CAS, when the diff needs more than {@link JsonDiff#MAX_SPECS}
+     * mutations, when it weighs more than half of the modified document, or when the content did not change
+     * at all, so that the CAS of the original is still checked and the expiry of the modified document applied.
+     *
+     * This method throws under the following conditions:
+     *
+     * - The operation takes longer than the specified timeout: {@link TimeoutException} wrapped in a {@link RuntimeException}
+     * - The producer outpaces the SDK: {@link BackpressureException}
+     * - The operation had to be cancelled while on the wire or the retry strategy cancelled it instead of
+     *   retrying: {@link RequestCancelledException}
+     * - The original document does not exist: {@link DocumentDoesNotExistException}
+     * - The document has been modified since the original was loaded: {@link CASMismatchException}
+     * - The server is currently not able to process the request, retrying may help: {@link TemporaryFailureException}
+     * - The server is out of memory: {@link CouchbaseOutOfMemoryException}
+     * - A durability constraint could not be fulfilled: {@link DurabilityException}
+     * - Unexpected errors are caught and contained in a generic {@link CouchbaseException}.
+     *
+     * @param original the document as it was loaded, with its CAS.
+     * @param modified the document with the same id and the new content and expiry.
+     * @param persistTo the persistence constraint to watch.
+     * @param replicateTo the replication constraint to watch.
+     * @param timeout the custom timeout.
+     * @param timeUnit the unit for the timeout.
+     * @return a {@link JsonDocument} with the modified content and the new CAS.
+     */
+    @InterfaceStability.Experimental
+    @InterfaceAudience.Public
+    JsonDocument replaceChanged(JsonDocument original, JsonDocument modified, PersistTo persistTo,
+        ReplicateTo replicateTo, long timeout, TimeUnit timeUnit);
+
     /**
      * Add a key value pair into CouchbaseMap
      *
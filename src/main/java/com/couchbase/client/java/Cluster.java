@@ -218,6 +218,42 @@ public interface Cluster {
     Bucket openBucket(String name, String password, List<Transcoder<? extends Document, ?>> transcoders,
         long timeout, TimeUnit timeUnit);
 
+    /**
+     * Opens all the buckets with the given names concurrently, with the default connect timeout and using the
+     * credentials set through this cluster's {@link #authenticate(Authenticator) Authenticator}.
+     *
+     * This method throws:
+     *
+     *  - java.util.concurrent.TimeoutException: If the timeout is exceeded before all buckets are open.
+     *  - com.couchbase.client.core.CouchbaseException: If one of the buckets could not be opened (see logs and nested
+     *    stack trace for more details why it failed).
+     *  - com.couchbase.client.core.BackpressureException: If the incoming request rate is too high to be processed.
+     *
+     * @param names the names of the buckets.
+     * @return the opened buckets, in the order of the given names.
+     */
+    @InterfaceStability.Experimental
+    List<Bucket> openBuckets(List<String> names);
+
+    /**
+     * Opens all the buckets with the given names concurrently, with a custom timeout and using the credentials
+     * set through this cluster's {@link #authenticate(Authenticator) Authenticator}.
+     *
+     * This method throws:
+     *
+     *  - java.util.concurrent.TimeoutException: If the timeout is exceeded before all buckets are open.
+     *  - com.couchbase.client.core.CouchbaseException: If one of the buckets could not be opened (see logs and nested
+     *    stack trace for more details why it failed).
+     *  - com.couchbase.client.core.BackpressureException: If the incoming request rate is too high to be processed.
+     *
+     * @param names the names of the buckets.
+     * @param timeout the custom timeout, for all buckets.
+     * @param timeUnit the time unit for the custom timeout.
+     * @return the opened buckets, in the order of the given names.
+     */
+    @InterfaceStability.Experimental
+    List<Bucket> openBuckets(List<String> names, long timeout, TimeUnit timeUnit);
+
     /**
      * Synchronously perform a N1QL query that can span multiple buckets, with the default
      * {@link CouchbaseEnvironment#queryTimeout() timeout}.
@@ -21,6 +21,7 @@ import java.util.concurrent.TimeUnit;
 
 import com.couchbase.client.core.ClusterFacade;
 import com.couchbase.client.core.CouchbaseException;
+import com.couchbase.client.core.annotations.InterfaceStability;
 import com.couchbase.client.core.lang.Tuple2;
 import com.couchbase.client.core.logging.CouchbaseLogger;
 import com.couchbase.client.core.logging.CouchbaseLoggerFactory;
@@ -41,6 +42,7 @@ import com.couchbase.client.core.message.kv.ObserveRequest;
 import com.couchbase.client.core.message.kv.ObserveResponse;
 import com.couchbase.client.core.message.kv.PrependRequest;
 import com.couchbase.client.core.message.kv.PrependResponse;
+import com.couchbase.client.core.message.kv.MutationToken;
 import com.couchbase.client.core.message.kv.RemoveRequest;
 import com.couchbase.client.core.message.kv.RemoveResponse;
 import com.couchbase.client.core.message.kv.ReplaceRequest;
@@ -59,20 +61,25 @@ import com.couchbase.client.core.message.search.SearchQueryResponse;
 import com.couchbase.client.core.message.view.ViewQueryRequest;
 import com.couchbase.client.core.message.view.ViewQueryResponse;
 import com.couchbase.client.deps.io.netty.buffer.ByteBuf;
+import com.couchbase.client.deps.io.netty.buffer.Unpooled;
+import com.couchbase.client.java.admission.AdmissionController;
 import com.couchbase.client.java.analytics.AnalyticsQuery;
 import com.couchbase.client.java.analytics.AnalyticsQueryExecutor;
 import com.couchbase.client.java.analytics.AsyncAnalyticsQueryResult;
 import com.couchbase.client.java.bucket.AsyncBucketManager;
 import com.couchbase.client.java.bucket.DefaultAsyncBucketManager;
 import com.couchbase.client.java.bucket.ReplicaReader;
+import com.couchbase.client.java.datastructures.ArraySetIndex;
 import com.couchbase.client.java.datastructures.MutationOptionBuilder;
 import com.couchbase.client.java.datastructures.ResultMappingUtils;
 import com.couchbase.client.java.document.Document;
 import com.couchbase.client.java.document.JsonArrayDocument;
 import com.couchbase.client.java.document.JsonDocument;
 import com.couchbase.client.java.document.JsonLongDocument;
+import com.couchbase.client.java.document.PassThroughDocument;
 import com.couchbase.client.java.document.json.JsonArray;
 import com.couchbase.client.java.document.json.JsonObject;
+import com.couchbase.client.java.document.json.JsonValue;
 import com.couchbase.client.java.env.CouchbaseEnvironment;
 import com.couchbase.client.java.error.CASMismatchException;
 import com.couchbase.client.java.error.CouchbaseOutOfMemoryException;
@@ -82,21 +89,36 @@ import com.couchbase.client.java.error.DurabilityException;
 import com.couchbase.client.java.error.RequestTooBigException;
 import com.couchbase.client.java.error.TemporaryFailureException;
 import com.couchbase.client.java.error.TemporaryLockFailureException;
+import com.couchbase.client.java.error.TranscodingException;
 import com.couchbase.client.java.error.subdoc.MultiMutationException;
 import com.couchbase.client.java.error.subdoc.PathNotFoundException;
+import com.couchbase.client.java.future.FutureBucket;
+import com.couchbase.client.java.largeobject.AsyncLargeObjectStore;
+import com.couchbase.client.java.metrics.OperationMetrics;
+import com.couchbase.client.java.metrics.OperationTimer;
+import com.couchbase.client.java.metrics.OperationType;
+import com.couchbase.client.java.metrics.SlowOperationRecorder;
 import com.couchbase.client.java.query.AsyncN1qlQueryResult;
+import com.couchbase.client.java.query.N1qlBatchOptions;
+import com.couchbase.client.java.query.N1qlBatchResult;
 import com.couchbase.client.java.query.N1qlQuery;
+import com.couchbase.client.java.query.PreparedPayload;
 import com.couchbase.client.java.query.Statement;
 import com.couchbase.client.java.query.core.N1qlQueryExecutor;
+import com.couchbase.client.java.query.core.PreparedPlanStore;
 import com.couchbase.client.java.repository.AsyncRepository;
 import com.couchbase.client.java.repository.CouchbaseAsyncRepository;
 import com.couchbase.client.java.search.SearchQuery;
+import com.couchbase.client.java.search.SearchQueryTemplate;
 import com.couchbase.client.java.search.result.AsyncSearchQueryResult;
+import com.couchbase.client.java.search.result.SearchQueryRow;
 import com.couchbase.client.java.search.result.SearchStatus;
 import com.couchbase.client.java.search.result.impl.DefaultAsyncSearchQueryResult;
+import com.couchbase.client.java.search.result.impl.DefaultSearchQueryRow;
 import com.couchbase.client.java.subdoc.AsyncLookupInBuilder;
 import com.couchbase.client.java.subdoc.AsyncMutateInBuilder;
 import com.couchbase.client.java.subdoc.DocumentFragment;
+import com.couchbase.client.java.subdoc.JsonDiff;
 import com.couchbase.client.java.transcoder.BinaryTranscoder;
 import com.couchbase.client.java.transcoder.ByteArrayTranscoder;
 import com.couchbase.client.java.transcoder.JacksonTransformers;
@@ -107,12 +129,17 @@ import com.couchbase.client.java.transcoder.JsonLongTranscoder;
 import com.couchbase.client.java.transcoder.JsonStringTranscoder;
 import com.couchbase.client.java.transcoder.JsonTranscoder;
 import com.couchbase.client.java.transcoder.LegacyTranscoder;
+import com.couchbase.client.java.transcoder.PassThroughTranscoder;
 import com.couchbase.client.java.transcoder.RawJsonTranscoder;
 import com.couchbase.client.java.transcoder.SerializableTranscoder;
 import com.couchbase.client.java.transcoder.StringTranscoder;
 import com.couchbase.client.java.transcoder.Transcoder;
+import com.couchbase.client.java.transcoder.TranscoderUtils;
 import com.couchbase.client.java.transcoder.subdoc.FragmentTranscoder;
 import com.couchbase.client.java.transcoder.subdoc.JacksonFragmentTranscoder;
+import com.couchbase.client.java.util.LRUCache;
+import com.couchbase.client.java.util.ParallelDecoder;
+import com.couchbase.client.java.util.RequestCoalescer;
 import com.couchbase.client.java.view.AsyncSpatialViewResult;
 import com.couchbase.client.java.view.AsyncViewResult;
 import com.couchbase.client.java.view.SpatialViewQuery;
@@ -121,8 +148,12 @@ import com.couchbase.client.java.view.ViewQueryResponseMapper;
 import com.couchbase.client.java.view.ViewRetryHandler;
 import rx.Observable;
 import rx.Subscriber;
+import rx.functions.Action0;
+import rx.functions.Action1;
 import rx.functions.Func0;
 import rx.functions.Func1;
+import rx.schedulers.Schedulers;
+import rx.subjects.BehaviorSubject;
 
 import static com.couchbase.client.java.util.OnSubscribeDeferAndWatch.deferAndWatch;
 
@@ -133,6 +164,8 @@ public class CouchbaseAsyncBucket implements AsyncBucket {
     private static final int COUNTER_NOT_EXISTS_EXPIRY = 0xffffffff;
 
     private static final int MAX_CAS_RETRIES_DATASTRUCTURES = Integer.parseInt(System.getProperty("com.couchbase.datastructureCASRetryLimit", "10"));
+    private static final int SET_INDEX_CACHE_SIZE = Integer.parseInt(System.getProperty("com.couchbase.datastructureSetIndexCacheSize", "32"));
+    private static final double REPLACE_CHANGED_MAX_RATIO = Double.parseDouble(System.getProperty("com.couchbase.replaceChangedMaxRatio", "0.5"));
 
     public static final String CURRENT_BUCKET_IDENTIFIER = "#CURRENT_BUCKET#";
 
@@ -144,6 +177,7 @@ public class CouchbaseAsyncBucket implements AsyncBucket {
     public static final JsonStringTranscoder JSON_STRING_TRANSCODER = new JsonStringTranscoder();
     public static final RawJsonTranscoder RAW_JSON_TRANSCODER = new RawJsonTranscoder();
     public static final ByteArrayTranscoder BYTE_ARRAY_TRANSCODER = new ByteArrayTranscoder();
+    public static final PassThroughTranscoder PASS_THROUGH_TRANSCODER = new PassThroughTranscoder();
 
     public static final LegacyTranscoder LEGACY_TRANSCODER = new LegacyTranscoder();
     public static final BinaryTranscoder BINARY_TRANSCODER = new BinaryTranscoder();
@@ -162,6 +196,17 @@ public class CouchbaseAsyncBucket implements AsyncBucket {
     /** the bucket's {@link N1qlQueryExecutor}. Prefer using {@link #n1qlQueryExecutor()} since it allows mocking and testing */
     private final N1qlQueryExecutor n1qlQueryExecutor;
     private final AnalyticsQueryExecutor analyticsQueryExecutor;
+    /** persists the prepared statements of the N1QL executor, null if they are not persisted. */
+    private final PreparedPlanStore preparedPlanStore;
+    /** shares in-flight gets between concurrent callers, null if coalescing is disabled. */
+    private final RequestCoalescer<String, CoalescedGetResponse> getCoalescer;
+    private final OperationMetrics operationMetrics;
+    /** admits the requests sent to the core, null if admission control is disabled. */
+    private final AdmissionController admissionController;
+    private final FutureBucket futureBucket;
+    /** hash indexes of recently accessed sets, each valid as long as the set document keeps the same CAS. */
+    private final Map<String, ArraySetIndex> setIndexes =
+        Collections.synchronizedMap(new LRUCache<String, ArraySetIndex>(SET_INDEX_CACHE_SIZE));
 
     private volatile boolean closed;
 
@@ -177,10 +222,18 @@ public class CouchbaseAsyncBucket implements AsyncBucket {
         bucket = name;
         this.username = username;
         this.password = password;
-        this.core = core;
         this.environment = environment;
         this.closed = false;
 
+        if (environment != null && environment.admissionControlEnabled()) {
+            admissionController = new AdmissionController(core, bucket, environment);
+            admissionController.registerMBeans();
+            this.core = admissionController;
+        } else {
+            admissionController = null;
+            this.core = core;
+        }
+
         transcoders = new ConcurrentHashMap<Class<? extends Document>, Transcoder<? extends Document, ?>>();
         transcoders.put(JSON_OBJECT_TRANSCODER.documentType(), JSON_OBJECT_TRANSCODER);
         transcoders.put(JSON_ARRAY_TRANSCODER.documentType(), JSON_ARRAY_TRANSCODER);
@@ -194,16 +247,49 @@ public class CouchbaseAsyncBucket implements AsyncBucket {
         transcoders.put(STRING_TRANSCODER.documentType(), STRING_TRANSCODER);
         transcoders.put(SERIALIZABLE_TRANSCODER.documentType(), SERIALIZABLE_TRANSCODER);
         transcoders.put(BYTE_ARRAY_TRANSCODER.documentType(), BYTE_ARRAY_TRANSCODER);
+        transcoders.put(PASS_THROUGH_TRANSCODER.documentType(), PASS_THROUGH_TRANSCODER);
 
         for (Transcoder<? extends Document, ?> custom : customTranscoders) {
             transcoders.put(custom.documentType(), custom);
         }
 
-        bucketManager = DefaultAsyncBucketManager.create(bucket, username, password, core);
+        bucketManager = DefaultAsyncBucketManager.create(bucket, username, password, this.core);
+
+        SlowOperationRecorder slowOperations = null;
+        if (environment != null && environment.slowOperationThreshold() > 0) {
+            slowOperations = new SlowOperationRecorder(bucket, environment.slowOperationThreshold(),
+                TimeUnit.MILLISECONDS, environment.slowOperationSampleSize());
+            slowOperations.start(environment.slowOperationLogInterval(), TimeUnit.MILLISECONDS,
+                environment.scheduler());
+        }
+        operationMetrics = OperationMetrics.create(bucket,
+            environment != null && environment.operationMetricsEnabled(), slowOperations);
+        operationMetrics.registerMBeans();
 
         boolean n1qlPreparedEncodedPlanEnabled = "true".equalsIgnoreCase(System.getProperty(N1qlQueryExecutor.ENCODED_PLAN_ENABLED_PROPERTY, "true")); //active by default
-        n1qlQueryExecutor = new N1qlQueryExecutor(core, bucket, username, password, n1qlPreparedEncodedPlanEnabled);
-        analyticsQueryExecutor = new AnalyticsQueryExecutor(core, bucket, username, password);
+        ParallelDecoder rowDecoder = ParallelDecoder.create(environment);
+        n1qlQueryExecutor = new N1qlQueryExecutor(this.core, bucket, username, password, n1qlPreparedEncodedPlanEnabled,
+            operationMetrics, rowDecoder);
+        analyticsQueryExecutor = new AnalyticsQueryExecutor(this.core, bucket, username, password, operationMetrics,
+            rowDecoder);
+
+        if (environment != null && environment.queryPlanCacheDirectory() != null) {
+            preparedPlanStore = PreparedPlanStore.create(environment.queryPlanCacheDirectory(), bucket,
+                n1qlQueryExecutor);
+            preparedPlanStore.restore();
+            preparedPlanStore.start(environment.queryPlanCacheCheckpointInterval(), TimeUnit.MILLISECONDS,
+                Schedulers.io());
+        } else {
+            preparedPlanStore = null;
+        }
+
+        futureBucket = new FutureBucket(this.core, bucket, transcoders, subdocumentTranscoder);
+
+        if (environment != null && environment.kvGetCoalescingEnabled()) {
+            getCoalescer = new RequestCoalescer<String, CoalescedGetResponse>();
+        } else {
+            getCoalescer = null;
+        }
     }
 
     @Override
@@ -231,6 +317,28 @@ public class CouchbaseAsyncBucket implements AsyncBucket {
         return this.n1qlQueryExecutor;
     }
 
+    /**
+     * Returns the {@link OperationMetrics} recording the latencies of the operations performed through this bucket.
+     *
+     * Unless enabled through {@link CouchbaseEnvironment#operationMetricsEnabled()}, this returns
+     * {@link OperationMetrics#DISABLED}.
+     */
+    @InterfaceStability.Experimental
+    public OperationMetrics operationMetrics() {
+        return operationMetrics;
+    }
+
+    /**
+     * Returns the {@link AdmissionController} the requests of this bucket go through, with its per-service limits
+     * and counters.
+     *
+     * @return the controller, or null unless enabled through {@link CouchbaseEnvironment#admissionControlEnabled()}.
+     */
+    @InterfaceStability.Experimental
+    public AdmissionController admissionController() {
+        return admissionController;
+    }
+
     @Override
     public CouchbaseEnvironment environment() {
         return environment;
@@ -241,6 +349,16 @@ public class CouchbaseAsyncBucket implements AsyncBucket {
         return Observable.just((AsyncRepository) new CouchbaseAsyncRepository(this));
     }
 
+    @Override
+    public AsyncLargeObjectStore largeObjects() {
+        return new AsyncLargeObjectStore(this);
+    }
+
+    @Override
+    public FutureBucket futures() {
+        return futureBucket;
+    }
+
     @Override
     public Observable<JsonDocument> get(final String id) {
         return get(id, JsonDocument.class);
@@ -255,46 +373,78 @@ public class CouchbaseAsyncBucket implements AsyncBucket {
     @Override
     @SuppressWarnings("unchecked")
     public <D extends Document<?>> Observable<D> get(final String id, final Class<D> target) {
-        return deferAndWatch(new Func1<Subscriber, Observable<GetResponse>>() {
-                @Override
-                public Observable<GetResponse> call(Subscriber s) {
-                    GetRequest request = new GetRequest(id, bucket);
-                    request.subscriber(s);
-                    return core.send(request);
+        return operationMetrics.timed(OperationType.GET, id, new Func1<OperationTimer, Observable<D>>() {
+            @Override
+            public Observable<D> call(final OperationTimer timer) {
+                Observable<GetResponse> source = deferAndWatch(new Func1<Subscriber, Observable<GetResponse>>() {
+                        @Override
+                        public Observable<GetResponse> call(Subscriber s) {
+                            GetRequest request = new GetRequest(id, bucket);
+                            request.subscriber(s);
+                            return core.send(request);
+                        }
+                    })
+                    .filter(new Func1<GetResponse, Boolean>() {
+                        @Override
+                        public Boolean call(GetResponse response) {
+                            timer.received();
+                            if (response.status().isSuccess()) {
+                                timer.payloadSize(response.content().readableBytes());
+                                return true;
+                            }
+                            ByteBuf content = response.content();
+                            if (content != null && content.refCnt() > 0) {
+                                content.release();
+                            }
+
+                            switch(response.status()) {
+                                case NOT_EXISTS:
+                                    return false;
+                                case TEMPORARY_FAILURE:
+                                case SERVER_BUSY:
+                                    throw addDetails(new TemporaryFailureException(), response);
+                                case OUT_OF_MEMORY:
+                                    throw addDetails(new CouchbaseOutOfMemoryException(), response);
+                                default:
+                                    throw addDetails(new CouchbaseException(response.status().toString()), response);
+                            }
+                        }
+                    });
+
+                if (getCoalescer != null) {
+                    return timer.finishOnTerminate(getCoalescer
+                        .coalesce(id, source.map(new Func1<GetResponse, CoalescedGetResponse>() {
+                            @Override
+                            public CoalescedGetResponse call(GetResponse response) {
+                                return CoalescedGetResponse.from(response);
+                            }
+                        }))
+                        .map(new Func1<CoalescedGetResponse, D>() {
+                            @Override
+                            public D call(CoalescedGetResponse response) {
+                                Transcoder<?, Object> transcoder = (Transcoder<?, Object>) transcoders.get(target);
+                                long decodeStart = timer.decodeStart();
+                                D decoded = (D) transcoder.decode(id, Unpooled.wrappedBuffer(response.content), response.cas,
+                                    0, response.flags, response.status);
+                                timer.decoded(decodeStart);
+                                return decoded;
+                            }
+                        }));
                 }
-            })
-            .filter(new Func1<GetResponse, Boolean>() {
-                @Override
-                public Boolean call(GetResponse response) {
-                    if (response.status().isSuccess()) {
-                        return true;
-                    }
-                    ByteBuf content = response.content();
-                    if (content != null && content.refCnt() > 0) {
-                        content.release();
-                    }
 
-                    switch(response.status()) {
-                        case NOT_EXISTS:
-                            return false;
-                        case TEMPORARY_FAILURE:
-                        case SERVER_BUSY:
-                            throw addDetails(new TemporaryFailureException(), response);
-                        case OUT_OF_MEMORY:
-                            throw addDetails(new CouchbaseOutOfMemoryException(), response);
-                        default:
-                            throw addDetails(new CouchbaseException(response.status().toString()), response);
+                return timer.finishOnTerminate(source.map(new Func1<GetResponse, D>() {
+                    @Override
+                    public D call(final GetResponse response) {
+                        Transcoder<?, Object> transcoder = (Transcoder<?, Object>) transcoders.get(target);
+                        long decodeStart = timer.decodeStart();
+                        D decoded = (D) transcoder.decode(id, response.content(), response.cas(), 0, response.flags(),
+                            response.status());
+                        timer.decoded(decodeStart);
+                        return decoded;
                     }
-                }
-            })
-            .map(new Func1<GetResponse, D>() {
-                @Override
-                public D call(final GetResponse response) {
-                    Transcoder<?, Object> transcoder = (Transcoder<?, Object>) transcoders.get(target);
-                    return (D) transcoder.decode(id, response.content(), response.cas(), 0, response.flags(),
-                        response.status());
-                }
-            });
+                }));
+            }
+        });
     }
 
     @Override
@@ -495,7 +645,7 @@ public class CouchbaseAsyncBucket implements AsyncBucket {
                 }
 
                 if (response.status().isSuccess()) {
-                    return (D) transcoder.newDocument(document.id(), document.expiry(),
+                    return (D) mutationResult(transcoder, document, document.expiry(),
                         document.content(), response.cas(), response.mutationToken());
                 }
 
@@ -552,41 +702,49 @@ public class CouchbaseAsyncBucket implements AsyncBucket {
     @SuppressWarnings("unchecked")
     public <D extends Document<?>> Observable<D> upsert(final D document) {
         final  Transcoder<Document<Object>, Object> transcoder = (Transcoder<Document<Object>, Object>) transcoders.get(document.getClass());
-
-        return deferAndWatch(new Func1<Subscriber, Observable<UpsertResponse>>() {
-            @Override
-            public Observable<UpsertResponse> call(Subscriber s) {
-                Tuple2<ByteBuf, Integer> encoded = transcoder.encode((Document<Object>) document);
-                UpsertRequest request = new UpsertRequest(document.id(), encoded.value1(), document.expiry(), encoded.value2(), bucket);
-                request.subscriber(s);
-                return core.send(request);
-            }
-        }).map(new Func1<UpsertResponse, D>() {
+        return operationMetrics.timed(OperationType.UPSERT, document.id(), new Func1<OperationTimer, Observable<D>>() {
             @Override
-            public D call(UpsertResponse response) {
-                if (response.content() != null && response.content().refCnt() > 0) {
-                    response.content().release();
-                }
+            public Observable<D> call(final OperationTimer timer) {
 
-                if (response.status().isSuccess()) {
-                    return (D) transcoder.newDocument(document.id(), document.expiry(),
-                        document.content(), response.cas(), response.mutationToken());
-                }
+                return timer.finishOnTerminate(deferAndWatch(new Func1<Subscriber, Observable<UpsertResponse>>() {
+                    @Override
+                    public Observable<UpsertResponse> call(Subscriber s) {
+                        Tuple2<ByteBuf, Integer> encoded = transcoder.encode((Document<Object>) document);
+                        UpsertRequest request = new UpsertRequest(document.id(), encoded.value1(), document.expiry(), encoded.value2(), bucket);
+                        request.subscriber(s);
+                        timer.encoded();
+                        timer.payloadSize(encoded.value1().readableBytes());
+                        return core.send(request);
+                    }
+                }).map(new Func1<UpsertResponse, D>() {
+                    @Override
+                    public D call(UpsertResponse response) {
+                        timer.received();
+                        if (response.content() != null && response.content().refCnt() > 0) {
+                            response.content().release();
+                        }
 
-                switch (response.status()) {
-                    case TOO_BIG:
-                        throw addDetails(new RequestTooBigException(), response);
-                    case EXISTS:
-                    case LOCKED:
-                        throw addDetails(new CASMismatchException(), response);
-                    case TEMPORARY_FAILURE:
-                    case SERVER_BUSY:
-                        throw addDetails(new TemporaryFailureException(), response);
-                    case OUT_OF_MEMORY:
-                        throw addDetails(new CouchbaseOutOfMemoryException(), response);
-                    default:
-                        throw addDetails(new CouchbaseException(response.status().toString()), response);
-                }
+                        if (response.status().isSuccess()) {
+                            return (D) mutationResult(transcoder, document, document.expiry(),
+                                document.content(), response.cas(), response.mutationToken());
+                        }
+
+                        switch (response.status()) {
+                            case TOO_BIG:
+                                throw addDetails(new RequestTooBigException(), response);
+                            case EXISTS:
+                            case LOCKED:
+                                throw addDetails(new CASMismatchException(), response);
+                            case TEMPORARY_FAILURE:
+                            case SERVER_BUSY:
+                                throw addDetails(new TemporaryFailureException(), response);
+                            case OUT_OF_MEMORY:
+                                throw addDetails(new CouchbaseOutOfMemoryException(), response);
+                            default:
+                                throw addDetails(new CouchbaseException(response.status().toString()), response);
+                        }
+                    }
+                }));
             }
         });
     }
@@ -645,7 +803,7 @@ public class CouchbaseAsyncBucket implements AsyncBucket {
                 }
 
                 if (response.status().isSuccess()) {
-                    return (D) transcoder.newDocument(document.id(), document.expiry(),
+                    return (D) mutationResult(transcoder, document, document.expiry(),
                         document.content(), response.cas(), response.mutationToken());
                 }
 
@@ -720,7 +878,7 @@ public class CouchbaseAsyncBucket implements AsyncBucket {
                 }
 
                 if (response.status().isSuccess()) {
-                    return (D) transcoder.newDocument(document.id(), 0, null, response.cas(), response.mutationToken());
+                    return (D) mutationResult(transcoder, document, 0, null, response.cas(), response.mutationToken());
                 }
 
                 switch (response.status()) {
@@ -770,6 +928,20 @@ public class CouchbaseAsyncBucket implements AsyncBucket {
         return observeRemove(remove(id, target), persistTo, replicateTo);
     }
 
+    /**
+     * Creates the document returned by a successful mutation of the given one. A {@link PassThroughDocument} keeps
+     * its flags, which the transcoder has no way to know.
+     */
+    @SuppressWarnings("unchecked")
+    private static Document<Object> mutationResult(Transcoder<Document<Object>, Object> transcoder,
+        Document<?> document, int expiry, Object content, long cas, MutationToken mutationToken) {
+        if (document instanceof PassThroughDocument) {
+            return (Document<Object>) (Document<?>) PassThroughDocument.create(document.id(), expiry,
+                (ByteBuf) content, cas, ((PassThroughDocument) document).flags(), mutationToken);
+        }
+        return transcoder.newDocument(document.id(), expiry, content, cas, mutationToken);
+    }
+
     /**
      * Helper method to observe the result of a remove operation with the given durability
      * requirements.
@@ -811,63 +983,208 @@ public class CouchbaseAsyncBucket implements AsyncBucket {
 
     @Override
     public Observable<AsyncViewResult> query(final ViewQuery query) {
-        Observable<ViewQueryResponse> source = Observable.defer(new Func0<Observable<ViewQueryResponse>>() {
+        return operationMetrics.timed(OperationType.VIEW, query, new Func1<OperationTimer, Observable<AsyncViewResult>>() {
             @Override
-            public Observable<ViewQueryResponse> call() {
-                final ViewQueryRequest request = new ViewQueryRequest(query.getDesign(), query.getView(),
-                    query.isDevelopment(), query.toQueryString(), query.getKeys(), bucket, username, password);
-                return core.send(request);
+            public Observable<AsyncViewResult> call(final OperationTimer timer) {
+                Observable<ViewQueryResponse> source = Observable.defer(new Func0<Observable<ViewQueryResponse>>() {
+                    @Override
+                    public Observable<ViewQueryResponse> call() {
+                        final ViewQueryRequest request = new ViewQueryRequest(query.getDesign(), query.getView(),
+                            query.isDevelopment(), query.toQueryString(), query.getKeys(), bucket, username, password);
+                        timer.encoded();
+                        return core.send(request);
+                    }
+                });
+
+                return timer.finishOnTerminate(ViewRetryHandler
+                    .retryOnCondition(source)
+                    .flatMap(new Func1<ViewQueryResponse, Observable<AsyncViewResult>>() {
+                        @Override
+                        public Observable<AsyncViewResult> call(final ViewQueryResponse response) {
+                            timer.received();
+                            return ViewQueryResponseMapper.mapToViewResult(CouchbaseAsyncBucket.this, query, response);
+                        }
+                    }));
             }
         });
-
-        return ViewRetryHandler
-            .retryOnCondition(source)
-            .flatMap(new Func1<ViewQueryResponse, Observable<AsyncViewResult>>() {
-                @Override
-                public Observable<AsyncViewResult> call(final ViewQueryResponse response) {
-                    return ViewQueryResponseMapper.mapToViewResult(CouchbaseAsyncBucket.this, query, response);
-                }
-            });
     }
 
     @Override
     public Observable<AsyncSearchQueryResult> query(final SearchQuery query) {
-        final String indexName = query.indexName();
-
         //always set a server side timeout. if not explicit, set it to the client side timeout
         if (query.getServerSideTimeout() == null) {
             query.serverSideTimeout(environment().searchTimeout(), TimeUnit.MILLISECONDS);
         }
 
-        Observable<SearchQueryResponse> source = Observable.defer(new Func0<Observable<SearchQueryResponse>>() {
+        return searchQuery(query.indexName(), new Func0<String>() {
             @Override
-            public Observable<SearchQueryResponse> call() {
-                final SearchQueryRequest request =
-                    new SearchQueryRequest(indexName, query.export().toString(), bucket, username, password);
-                return core.send(request);
+            public String call() {
+                return query.export().toString();
+            }
+        });
+    }
+
+    @Override
+    public Observable<AsyncSearchQueryResult> query(final SearchQueryTemplate template, final JsonObject params) {
+        return searchQuery(template.indexName(), new Func0<String>() {
+            @Override
+            public String call() {
+                return template.export(params, environment().searchTimeout(), TimeUnit.MILLISECONDS);
             }
         });
+    }
 
-        return source.map(new Func1<SearchQueryResponse, AsyncSearchQueryResult>() {
+    private Observable<AsyncSearchQueryResult> searchQuery(final String indexName, final Func0<String> payload) {
+        return operationMetrics.timed(OperationType.SEARCH, indexName, new Func1<OperationTimer, Observable<AsyncSearchQueryResult>>() {
             @Override
-            public AsyncSearchQueryResult call(SearchQueryResponse response) {
-                if (response.status().isSuccess()) {
-                    JsonObject json = JsonObject.fromJson(response.payload());
-                    return DefaultAsyncSearchQueryResult.fromJson(json);
-                } else if (response.payload().contains("index not found")) {
-                    return DefaultAsyncSearchQueryResult.fromIndexNotFound(indexName);
-                } else if (response.status() == ResponseStatus.INVALID_ARGUMENTS) {
-                    return DefaultAsyncSearchQueryResult.fromHttp400(response.payload());
-                } else if (response.status() == ResponseStatus.FAILURE) {
-                    //TODO for now only HTTP 412 can lead to FAILURE in search, will need to keep the HTTP code in the future
-                    return DefaultAsyncSearchQueryResult.fromHttp412();
-                } else {
-                    throw new CouchbaseException("Could not query search index, " + response.status() + ": " + response.payload());
-                }
+            public Observable<AsyncSearchQueryResult> call(final OperationTimer timer) {
+                Observable<SearchQueryResponse> source = Observable.defer(new Func0<Observable<SearchQueryResponse>>() {
+                    @Override
+                    public Observable<SearchQueryResponse> call() {
+                        final SearchQueryRequest request =
+                            new SearchQueryRequest(indexName, payload.call(), bucket, username, password);
+                        timer.encoded();
+                        timer.payloadSize(request.payload().length());
+                        return core.send(request);
+                    }
+                });
+
+                return timer.finishOnTerminate(source.map(new Func1<SearchQueryResponse, AsyncSearchQueryResult>() {
+                    @Override
+                    public AsyncSearchQueryResult call(SearchQueryResponse response) {
+                        timer.received();
+                        if (response.status().isSuccess()) {
+                            long decodeStart = timer.decodeStart();
+                            JsonObject json = JsonObject.fromJson(response.payload());
+                            AsyncSearchQueryResult result = DefaultAsyncSearchQueryResult.fromJson(json);
+                            timer.decoded(decodeStart);
+                            Long took = json.getLong("took");
+                            if (took != null) {
+                                timer.serverDuration(took);
+                            }
+                            return result;
+                        } else if (response.payload().contains("index not found")) {
+                            return DefaultAsyncSearchQueryResult.fromIndexNotFound(indexName);
+                        } else if (response.status() == ResponseStatus.INVALID_ARGUMENTS) {
+                            return DefaultAsyncSearchQueryResult.fromHttp400(response.payload());
+                        } else if (response.status() == ResponseStatus.FAILURE) {
+                            //TODO for now only HTTP 412 can lead to FAILURE in search, will need to keep the HTTP code in the future
+                            return DefaultAsyncSearchQueryResult.fromHttp412();
+                        } else {
+                            throw new CouchbaseException("Could not query search index, " + response.status() + ": " + response.payload());
+                        }
+                    }
+                }));
+            }
+        });
+    }
+
+    @Override
+    public Observable<SearchQueryRow> searchScan(final SearchQuery query, final int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("The page size must be greater than 0");
+        }
+
+        return Observable.defer(new Func0<Observable<SearchQueryRow>>() {
+            @Override
+            public Observable<SearchQueryRow> call() {
+                final JsonObject scan = prepareSearchScan(query, pageSize);
+                //the cursor of the next page is pushed once the subscriber starts consuming the current one
+                final BehaviorSubject<JsonArray> cursors = BehaviorSubject.create(JsonArray.empty());
+                final JsonArray[] lastCursor = { JsonArray.empty() };
+
+                return cursors
+                    .onBackpressureBuffer()
+                    .concatMap(new Func1<JsonArray, Observable<List<SearchQueryRow>>>() {
+                        @Override
+                        public Observable<List<SearchQueryRow>> call(JsonArray cursor) {
+                            if (cursor.isEmpty()) {
+                                scan.removeKey("search_after");
+                            } else {
+                                scan.put("search_after", cursor);
+                            }
+                            final String payload = scan.toString();
+                            return searchQuery(query.indexName(), new Func0<String>() {
+                                @Override
+                                public String call() {
+                                    return payload;
+                                }
+                            }).flatMap(new Func1<AsyncSearchQueryResult, Observable<List<SearchQueryRow>>>() {
+                                @Override
+                                public Observable<List<SearchQueryRow>> call(AsyncSearchQueryResult result) {
+                                    if (!result.status().isSuccess()) {
+                                        return result.hits().toList().concatWith(Observable.<List<SearchQueryRow>>error(
+                                            new CouchbaseException("Search scan page failed on index " + query.indexName()
+                                                + ": " + result.status())));
+                                    }
+                                    return result.hits().toList();
+                                }
+                            });
+                        }
+                    })
+                    .concatMap(new Func1<List<SearchQueryRow>, Observable<SearchQueryRow>>() {
+                        @Override
+                        public Observable<SearchQueryRow> call(final List<SearchQueryRow> page) {
+                            return Observable.from(page).doOnSubscribe(new Action0() {
+                                @Override
+                                public void call() {
+                                    if (page.size() < pageSize) {
+                                        cursors.onCompleted();
+                                        return;
+                                    }
+                                    SearchQueryRow last = page.get(page.size() - 1);
+                                    JsonArray next = last instanceof DefaultSearchQueryRow
+                                        ? ((DefaultSearchQueryRow) last).sort() : JsonArray.empty();
+                                    if (next.isEmpty() || next.equals(lastCursor[0])) {
+                                        cursors.onError(new CouchbaseException("Search scan on index "
+                                            + query.indexName() + " can't make progress, the server doesn't seem to"
+                                            + " support search_after"));
+                                        return;
+                                    }
+                                    lastCursor[0] = next;
+                                    cursors.onNext(next);
+                                }
+                            });
+                        }
+                    });
             }
         });
     }
 
+    /**
+     * Exports the query for a scan, leaving the query itself untouched: the sort is made total, since a page
+     * continues after the last hit of the previous one, and the paging parameters are replaced.
+     */
+    private JsonObject prepareSearchScan(SearchQuery query, int pageSize) {
+        JsonObject scan = query.export();
+        JsonArray sort = scan.getArray("sort") == null
+            ? JsonArray.from("-_score") : JsonArray.from(scan.getArray("sort").toList());
+        boolean sortedById = false;
+        for (Object key : sort) {
+            if ("_id".equals(key) || "-_id".equals(key)) {
+                sortedById = true;
+            }
+        }
+        if (!sortedById) {
+            sort.add("_id");
+        }
+        scan.put("sort", sort);
+        scan.put("size", pageSize);
+        scan.removeKey("from");
+        scan.removeKey("facets");
+
+        //always set a server side timeout. if not explicit, set it to the client side timeout
+        JsonObject control = scan.getObject("ctl");
+        if (control == null) {
+            control = JsonObject.create();
+            scan.put("ctl", control);
+        }
+        if (!control.containsKey("timeout")) {
+            control.put("timeout", environment().searchTimeout());
+        }
+        return scan;
+    }
+
     @Override
     public Observable<AsyncSpatialViewResult> query(final SpatialViewQuery query) {
         Observable<ViewQueryResponse> source = Observable.defer(new Func0<Observable<ViewQueryResponse>>() {
@@ -902,6 +1219,48 @@ public class CouchbaseAsyncBucket implements AsyncBucket {
         return n1qlQueryExecutor.execute(query);
     }
 
+    @Override
+    public Observable<N1qlBatchResult> queryBatch(Statement statement, Observable<? extends JsonValue> parameters,
+        N1qlBatchOptions options) {
+        return n1qlQueryExecutor().executeBatch(statement, parameters, options);
+    }
+
+    @Override
+    public Observable<Integer> warmUp(final List<String> statements) {
+        return Observable.defer(new Func0<Observable<Integer>>() {
+            @Override
+            public Observable<Integer> call() {
+                final long start = System.nanoTime();
+                return Observable
+                    .from(statements)
+                    .flatMap(new Func1<String, Observable<PreparedPayload>>() {
+                        @Override
+                        public Observable<PreparedPayload> call(final String statement) {
+                            return n1qlQueryExecutor
+                                .prime(N1qlQuery.simple(statement).statement())
+                                .onErrorResumeNext(new Func1<Throwable, Observable<PreparedPayload>>() {
+                                    @Override
+                                    public Observable<PreparedPayload> call(Throwable throwable) {
+                                        LOGGER.warn("Could not prepare statement \"{}\" during warm-up of bucket {}.",
+                                            statement, bucket, throwable);
+                                        return Observable.empty();
+                                    }
+                                });
+                        }
+                    })
+                    .count()
+                    .doOnNext(new Action1<Integer>() {
+                        @Override
+                        public void call(Integer prepared) {
+                            LOGGER.info("Warmed up bucket {} in {}ms, {} of {} statement(s) prepared.", bucket,
+                                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), prepared,
+                                statements.size());
+                        }
+                    });
+            }
+        });
+    }
+
     public Observable<AsyncAnalyticsQueryResult> query(final AnalyticsQuery query) {
       /* TODO once exposed on the server
         if (!query.params().hasServerSideTimeout()) {
@@ -1063,7 +1422,7 @@ public class CouchbaseAsyncBucket implements AsyncBucket {
                 }
 
                 if (response.status().isSuccess()) {
-                    return (D) transcoder.newDocument(document.id(), 0, null, response.cas(), response.mutationToken());
+                    return (D) mutationResult(transcoder, document, 0, null, response.cas(), response.mutationToken());
                 }
 
                 switch (response.status()) {
@@ -1106,7 +1465,7 @@ public class CouchbaseAsyncBucket implements AsyncBucket {
                 }
 
                 if (response.status().isSuccess()) {
-                    return (D) transcoder.newDocument(document.id(), 0, null, response.cas(), response.mutationToken());
+                    return (D) mutationResult(transcoder, document, 0, null, response.cas(), response.mutationToken());
                 }
 
                 switch (response.status()) {
@@ -1356,7 +1715,7 @@ public class CouchbaseAsyncBucket implements AsyncBucket {
 
     @Override
     public AsyncLookupInBuilder lookupIn(String docId) {
-        return new AsyncLookupInBuilder(core, bucket, environment, subdocumentTranscoder, docId);
+        return new AsyncLookupInBuilder(core, bucket, environment, subdocumentTranscoder, docId, operationMetrics);
     }
 
     @Override
@@ -1364,6 +1723,67 @@ public class CouchbaseAsyncBucket implements AsyncBucket {
         return new AsyncMutateInBuilder(core, bucket, environment, subdocumentTranscoder, docId);
     }
 
+    @Override
+    public AsyncLookupInBuilder lookupIn(Collection<String> docIds) {
+        return new AsyncLookupInBuilder(core, bucket, environment, subdocumentTranscoder, docIds, operationMetrics);
+    }
+
+    @Override
+    public AsyncMutateInBuilder mutateIn(Collection<String> docIds) {
+        return new AsyncMutateInBuilder(core, bucket, environment, subdocumentTranscoder, docIds);
+    }
+
+    @Override
+    public Observable<JsonDocument> replaceChanged(JsonDocument original, JsonDocument modified) {
+        return replaceChanged(original, modified, PersistTo.NONE, ReplicateTo.NONE);
+    }
+
+    @Override
+    public Observable<JsonDocument> replaceChanged(final JsonDocument original, final JsonDocument modified,
+        final PersistTo persistTo, final ReplicateTo replicateTo) {
+        if (!original.id().equals(modified.id())) {
+            throw new IllegalArgumentException("The original and modified documents must have the same id");
+        }
+        return Observable.defer(new Func0<Observable<JsonDocument>>() {
+            @Override
+            public Observable<JsonDocument> call() {
+                final JsonDocument fullReplace = JsonDocument.create(modified.id(), modified.expiry(),
+                    modified.content(), original.cas());
+                if (original.cas() == 0) {
+                    return replace(fullReplace, persistTo, replicateTo);
+                }
+
+                JsonDiff diff = JsonDiff.compute(original.content(), modified.content());
+                if (diff.isEmpty()) {
+                    //a mutation needs at least one path, the full replace still checks the CAS and sets the expiry
+                    return replace(fullReplace, persistTo, replicateTo);
+                }
+                int documentSize;
+                try {
+                    documentSize = JacksonTransformers.MAPPER.writeValueAsBytes(modified.content()).length;
+                } catch (Exception e) {
+                    return Observable.error(new TranscodingException("Could not encode JSON document", e));
+                }
+                if (!diff.isApplicable(documentSize, REPLACE_CHANGED_MAX_RATIO)) {
+                    return replace(fullReplace, persistTo, replicateTo);
+                }
+
+                return diff.applyTo(mutateIn(modified.id()))
+                    .withCas(original.cas())
+                    .withExpiry(modified.expiry())
+                    .withDurability(persistTo, replicateTo)
+                    .execute()
+                    .map(new Func1<DocumentFragment<Mutation>, JsonDocument>() {
+                        @Override
+                        public JsonDocument call(DocumentFragment<Mutation> fragment) {
+                            return JsonDocument.create(modified.id(), modified.expiry(), modified.content(),
+                                fragment.cas(), fragment.mutationToken());
+                        }
+                    });
+            }
+        });
+    }
+
     /*-------------------------*
      * END OF SUB-DOCUMENT API *
      *-------------------------*/
@@ -1803,26 +2223,56 @@ public class CouchbaseAsyncBucket implements AsyncBucket {
 
     @Override
     public <E> Observable<Boolean> setContains(final String docId, final E element) {
+        return setIndex(docId)
+                .map(new Func1<ArraySetIndex, Boolean>() {
+                    @Override
+                    public Boolean call(ArraySetIndex index) {
+                        return index.contains(element);
+                    }
+                });
+    }
+
+    /**
+     * Emits the index of the set stored in the given document. A cached index is reused as long as the CAS of
+     * the document, probed through a subdoc lookup, didn't change. Otherwise, or if no index is cached, the whole
+     * document is fetched right away.
+     */
+    private Observable<ArraySetIndex> setIndex(final String docId) {
+        return Observable.defer(new Func0<Observable<ArraySetIndex>>() {
+            @Override
+            public Observable<ArraySetIndex> call() {
+                final ArraySetIndex cached = setIndexes.get(docId);
+                if (cached == null) {
+                    return fetchSetIndex(docId);
+                }
+                return lookupIn(docId)
+                    .exists("[0]")
+                    .execute()
+                    .flatMap(new Func1<DocumentFragment<Lookup>, Observable<ArraySetIndex>>() {
+                        @Override
+                        public Observable<ArraySetIndex> call(DocumentFragment<Lookup> probe) {
+                            if (probe.cas() != 0 && cached.cas() == probe.cas()) {
+                                return Observable.just(cached);
+                            }
+                            return fetchSetIndex(docId);
+                        }
+                    });
+            }
+        });
+    }
+
+    private Observable<ArraySetIndex> fetchSetIndex(final String docId) {
         return get(docId, JsonArrayDocument.class)
                 .toList()
-                .map(new Func1<List<JsonArrayDocument>, Boolean>() {
+                .map(new Func1<List<JsonArrayDocument>, ArraySetIndex>() {
                     @Override
-                    public Boolean call(List<JsonArrayDocument> documents) {
+                    public ArraySetIndex call(List<JsonArrayDocument> documents) {
                         if (documents.size() == 0) {
                             throw new DocumentDoesNotExistException();
                         }
-                        JsonArrayDocument document = documents.get(0);
-                        JsonArray jsonArray = document.content();
-                        Iterator<Object> iterator = jsonArray.iterator();
-                        while (iterator.hasNext()) {
-                            Object next = iterator.next();
-                            if (next == null && element == null) {
-                                return true;
-                            } else if (next != null && next.equals(element)) {
-                                return true;
-                            }
-                        }
-                        return false;
+                        ArraySetIndex index = ArraySetIndex.create(documents.get(0));
+                        setIndexes.put(docId, index);
+                        return index;
                     }
                 });
     }
@@ -1843,28 +2293,11 @@ public class CouchbaseAsyncBucket implements AsyncBucket {
                                               final int retryCount) {
         final Mutation mutationOperation = Mutation.DELETE;
         if (retryCount <= 0) return Observable.error(new CASMismatchException());
-        return get(docId, JsonArrayDocument.class)
-                .toList()
-                .flatMap(new Func1<List<JsonArrayDocument>, Observable<E>>() {
+        return setIndex(docId)
+                .flatMap(new Func1<ArraySetIndex, Observable<E>>() {
                     @Override
-                    public Observable<E> call(List<JsonArrayDocument> documents) {
-                        if (documents.size() == 0) {
-                            throw new DocumentDoesNotExistException();
-                        }
-                        JsonArrayDocument jsonArrayDocument = documents.get(0);
-                        Iterator iterator = jsonArrayDocument.content().iterator();
-                        int ii = 0, index = -1;
-                        while (iterator.hasNext()) {
-                            Object next = iterator.next();
-                            if (next == null && element == null) {
-                                index = ii;
-                                break;
-                            } else if (next != null && next.equals(element)) {
-                                index = ii;
-                                break;
-                            }
-                            ii++;
-                        }
+                    public Observable<E> call(final ArraySetIndex setIndex) {
+                        final int index = setIndex.indexOf(element);
                         if (index == -1) {
                             return Observable.just(element);
                         }
@@ -1886,7 +2319,7 @@ public class CouchbaseAsyncBucket implements AsyncBucket {
                                     }
                                 };
                         return mutateIn(docId).remove("[" + index + "]")
-                                .withCas(jsonArrayDocument.cas())
+                                .withCas(setIndex.cas())
                                 .withExpiry(mutationOptionBuilder.expiry())
                                 .withDurability(mutationOptionBuilder.persistTo(), mutationOptionBuilder.replicateTo())
                                 .execute()
@@ -1896,6 +2329,9 @@ public class CouchbaseAsyncBucket implements AsyncBucket {
                                     public E call(DocumentFragment<Mutation> documentFragment) {
                                         ResponseStatus status = documentFragment.status(0);
                                         if (status == ResponseStatus.SUCCESS) {
+                                            if (documentFragment.cas() != 0) {
+                                                setIndexes.put(docId, setIndex.withRemoved(index, documentFragment.cas()));
+                                            }
                                             return element;
                                         } else {
                                             if (status == ResponseStatus.SUBDOC_PATH_NOT_FOUND ||
@@ -2085,6 +2521,16 @@ public class CouchbaseAsyncBucket implements AsyncBucket {
             @Override
             public Boolean call(CloseBucketResponse response) {
                 closed = true;
+                operationMetrics.unregisterMBeans();
+                if (admissionController != null) {
+                    admissionController.unregisterMBeans();
+                }
+                if (preparedPlanStore != null) {
+                    preparedPlanStore.stop();
+                }
+                if (operationMetrics.slowOperations() != null) {
+                    operationMetrics.slowOperations().stop();
+                }
                 return response.status().isSuccess();
             }
         });
@@ -2105,6 +2551,40 @@ public class CouchbaseAsyncBucket implements AsyncBucket {
         return Observable.just(n1qlQueryExecutor.invalidateQueryCache());
     }
 
+    /**
+     * An immutable copy of a successful {@link GetResponse}, safe to share between all the callers of a
+     * coalesced get. Each caller decodes its own document out of the copied content.
+     */
+    private static final class CoalescedGetResponse {
+
+        private final ResponseStatus status;
+        private final long cas;
+        private final int flags;
+        private final byte[] content;
+
+        private CoalescedGetResponse(ResponseStatus status, long cas, int flags, byte[] content) {
+            this.status = status;
+            this.cas = cas;
+            this.flags = flags;
+            this.content = content;
+        }
+
+        /**
+         * Copies the content out of the response and releases its buffer.
+         */
+        static CoalescedGetResponse from(GetResponse response) {
+            ByteBuf content = response.content();
+            byte[] bytes = new byte[0];
+            if (content != null) {
+                bytes = TranscoderUtils.copyByteBufToByteArray(content);
+                if (content.refCnt() > 0) {
+                    content.release();
+                }
+            }
+            return new CoalescedGetResponse(response.status(), response.cas(), response.flags(), bytes);
+        }
+    }
+
     /**
      * Helper method to encapsulate the logic of enriching the exception with detailed status info.
      */
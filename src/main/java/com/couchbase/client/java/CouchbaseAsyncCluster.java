@@ -21,6 +21,7 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 import com.couchbase.client.core.ClusterFacade;
 import com.couchbase.client.core.CouchbaseCore;
@@ -56,6 +57,7 @@ import com.couchbase.client.java.query.N1qlQuery;
 import com.couchbase.client.java.transcoder.Transcoder;
 import com.couchbase.client.java.util.Bootstrap;
 import rx.Observable;
+import rx.functions.Action0;
 import rx.functions.Action1;
 import rx.functions.Func0;
 import rx.functions.Func1;
@@ -265,15 +267,29 @@ public class CouchbaseAsyncCluster implements AsyncCluster {
      */
     CouchbaseAsyncCluster(final CouchbaseEnvironment environment,
         final ConnectionString connectionString, final boolean sharedEnvironment) {
-        this.sharedEnvironment = sharedEnvironment;
-        if(connectionString.username() != null && !connectionString.username().equals("")) {
-            this.authenticator = new PasswordAuthenticator(connectionString.username(), "");
-        }
-        core = new CouchbaseCore(environment);
+        this(new CouchbaseCore(environment), environment, connectionString, sharedEnvironment);
         SeedNodesRequest request = new SeedNodesRequest(
             assembleSeedNodes(connectionString, environment)
         );
         core.send(request).toBlocking().single();
+    }
+
+    /**
+     * Package private constructor to create the {@link CouchbaseAsyncCluster} on top of an already
+     * bootstrapped core, mostly for testing.
+     *
+     * @param core the core through which requests are sent.
+     * @param environment the custom environment to use for this cluster reference.
+     * @param connectionString the connection string to identify the remote cluster.
+     * @param sharedEnvironment if the environment is managed by this class or not.
+     */
+    CouchbaseAsyncCluster(final ClusterFacade core, final CouchbaseEnvironment environment,
+        final ConnectionString connectionString, final boolean sharedEnvironment) {
+        this.sharedEnvironment = sharedEnvironment;
+        if(connectionString.username() != null && !connectionString.username().equals("")) {
+            this.authenticator = new PasswordAuthenticator(connectionString.username(), "");
+        }
+        this.core = core;
         this.environment = environment;
         this.connectionString = connectionString;
         this.bucketCache = new ConcurrentHashMap<String, AsyncBucket>();
@@ -394,6 +410,37 @@ public class CouchbaseAsyncCluster implements AsyncCluster {
         return openBucketInternal(name, name, password, transcoders);
     }
 
+    @Override
+    public Observable<AsyncBucket> openBuckets(final List<String> names) {
+        return Observable.defer(new Func0<Observable<AsyncBucket>>() {
+            @Override
+            public Observable<AsyncBucket> call() {
+                final long start = System.nanoTime();
+                return Observable
+                    .from(names)
+                    .concatMapEager(new Func1<String, Observable<AsyncBucket>>() {
+                        @Override
+                        public Observable<AsyncBucket> call(final String name) {
+                            return openBucket(name).doOnNext(new Action1<AsyncBucket>() {
+                                @Override
+                                public void call(AsyncBucket bucket) {
+                                    LOGGER.debug("Opened bucket \"{}\" after {}ms.", name,
+                                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                                }
+                            });
+                        }
+                    })
+                    .doOnCompleted(new Action0() {
+                        @Override
+                        public void call() {
+                            LOGGER.info("Opened {} bucket(s) in {}ms.", names.size(),
+                                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                        }
+                    });
+            }
+        });
+    }
+
     private Observable<AsyncBucket> openBucketInternal(final String name, final String username, final String password,
                                                        final List<Transcoder<? extends Document, ?>> transcoders) {
         if (name == null || name.isEmpty()) {
@@ -33,7 +33,11 @@ import com.couchbase.client.java.datastructures.MutationOptionBuilder;
 import com.couchbase.client.java.document.Document;
 import com.couchbase.client.java.document.JsonDocument;
 import com.couchbase.client.java.document.JsonLongDocument;
+import com.couchbase.client.java.document.json.JsonObject;
+import com.couchbase.client.java.document.json.JsonValue;
 import com.couchbase.client.java.env.CouchbaseEnvironment;
+import com.couchbase.client.java.query.N1qlBatchOptions;
+import com.couchbase.client.java.query.N1qlBatchResult;
 import com.couchbase.client.java.query.N1qlQuery;
 import com.couchbase.client.java.query.N1qlQueryResult;
 import com.couchbase.client.java.query.Statement;
@@ -41,6 +45,7 @@ import com.couchbase.client.java.query.core.N1qlQueryExecutor;
 import com.couchbase.client.java.repository.CouchbaseRepository;
 import com.couchbase.client.java.repository.Repository;
 import com.couchbase.client.java.search.SearchQuery;
+import com.couchbase.client.java.search.SearchQueryTemplate;
 import com.couchbase.client.java.search.result.SearchQueryResult;
 import com.couchbase.client.java.search.result.impl.DefaultSearchQueryResult;
 import com.couchbase.client.java.subdoc.AsyncLookupInBuilder;
@@ -57,6 +62,7 @@ import com.couchbase.client.java.view.SpatialViewQuery;
 import com.couchbase.client.java.view.SpatialViewResult;
 import com.couchbase.client.java.view.ViewQuery;
 import com.couchbase.client.java.view.ViewResult;
+import rx.Observable;
 import rx.functions.Func1;
 
 public class CouchbaseBucket implements Bucket {
@@ -594,6 +600,19 @@ public class CouchbaseBucket implements Bucket {
             .single(), timeout, timeUnit);
     }
 
+    @Override
+    public SearchQueryResult query(SearchQueryTemplate template, JsonObject params) {
+        return query(template, params, environment.searchTimeout(), TIMEOUT_UNIT);
+    }
+
+    @Override
+    public SearchQueryResult query(SearchQueryTemplate template, JsonObject params, long timeout, TimeUnit timeUnit) {
+        return Blocking.blockForSingle(asyncBucket
+            .query(template, params)
+            .flatMap(DefaultSearchQueryResult.FROM_ASYNC)
+            .single(), timeout, timeUnit);
+    }
+
     @Override
     public AnalyticsQueryResult query(AnalyticsQuery query) {
         return query(query, environment.analyticsTimeout(), TIMEOUT_UNIT);
@@ -662,6 +681,29 @@ public class CouchbaseBucket implements Bucket {
             .single(), timeout, timeUnit);
     }
 
+    @Override
+    public int warmUp(List<String> statements) {
+        return warmUp(statements, environment.queryTimeout(), TIMEOUT_UNIT);
+    }
+
+    @Override
+    public int warmUp(List<String> statements, long timeout, TimeUnit timeUnit) {
+        return Blocking.blockForSingle(asyncBucket.warmUp(statements).single(), timeout, timeUnit);
+    }
+
+    @Override
+    public N1qlBatchResult queryBatch(Statement statement, Iterable<? extends JsonValue> parameters,
+        N1qlBatchOptions options) {
+        return queryBatch(statement, parameters, options, environment.queryTimeout(), TIMEOUT_UNIT);
+    }
+
+    @Override
+    public N1qlBatchResult queryBatch(Statement statement, Iterable<? extends JsonValue> parameters,
+        N1qlBatchOptions options, long timeout, TimeUnit timeUnit) {
+        return Blocking.blockForSingle(asyncBucket.queryBatch(statement, Observable.from(parameters), options)
+            .single(), timeout, timeUnit);
+    }
+
     @Override
     public Boolean unlock(String id, long cas) {
         return unlock(id, cas, kvTimeout, TIMEOUT_UNIT);
@@ -931,6 +973,30 @@ public class CouchbaseBucket implements Bucket {
         return new MutateInBuilder(asyncBuilder, kvTimeout, TIMEOUT_UNIT);
     }
 
+    @Override
+    public JsonDocument replaceChanged(JsonDocument original, JsonDocument modified) {
+        return replaceChanged(original, modified, kvTimeout, TIMEOUT_UNIT);
+    }
+
+    @Override
+    public JsonDocument replaceChanged(JsonDocument original, JsonDocument modified, long timeout, TimeUnit timeUnit) {
+        return Blocking.blockForSingle(asyncBucket.replaceChanged(original, modified).single(), timeout, timeUnit);
+    }
+
+    @Override
+    public JsonDocument replaceChanged(JsonDocument original, JsonDocument modified, PersistTo persistTo,
+        ReplicateTo replicateTo) {
+        return replaceChanged(original, modified, persistTo, replicateTo, kvTimeout, TIMEOUT_UNIT);
+    }
+
+    @Override
+    public JsonDocument replaceChanged(JsonDocument original, JsonDocument modified, PersistTo persistTo,
+        ReplicateTo replicateTo, long timeout, TimeUnit timeUnit) {
+        return Blocking.blockForSingle(
+            asyncBucket.replaceChanged(original, modified, persistTo, replicateTo).single(), timeout, timeUnit
+        );
+    }
+
     /*-------------------------*
      * END OF SUB-DOCUMENT API *
      *-------------------------*/
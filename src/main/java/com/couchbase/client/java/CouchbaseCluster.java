@@ -44,6 +44,7 @@ import com.couchbase.client.java.query.N1qlQuery;
 import com.couchbase.client.java.query.N1qlQueryResult;
 import com.couchbase.client.java.query.core.N1qlQueryExecutor;
 import com.couchbase.client.java.transcoder.Transcoder;
+import rx.Observable;
 import rx.functions.Action1;
 import rx.functions.Func1;
 
@@ -237,11 +238,24 @@ public class CouchbaseCluster implements Cluster {
      */
     CouchbaseCluster(final CouchbaseEnvironment environment,
         final ConnectionString connectionString, final boolean sharedEnvironment) {
-        couchbaseAsyncCluster = new CouchbaseAsyncCluster(
+        this(new CouchbaseAsyncCluster(
             environment,
             connectionString,
             sharedEnvironment
-        );
+        ), environment, connectionString);
+    }
+
+    /**
+     * Package private constructor to create the {@link CouchbaseCluster} on top of an existing
+     * {@link CouchbaseAsyncCluster}, mostly for testing.
+     *
+     * @param couchbaseAsyncCluster the async cluster to block on.
+     * @param environment the custom environment to use for this cluster reference.
+     * @param connectionString the connection string to identify the remote cluster.
+     */
+    CouchbaseCluster(final CouchbaseAsyncCluster couchbaseAsyncCluster, final CouchbaseEnvironment environment,
+        final ConnectionString connectionString) {
+        this.couchbaseAsyncCluster = couchbaseAsyncCluster;
         this.environment = environment;
         this.connectionString = connectionString;
         this.bucketCache = new ConcurrentHashMap<String, Bucket>();
@@ -285,6 +299,51 @@ public class CouchbaseCluster implements Cluster {
             return cachedBucket;
         }
 
+        return Blocking.blockForSingle(openBucketAsync(name, transcoders).single(), timeout, timeUnit);
+    }
+
+    @Override
+    public List<Bucket> openBuckets(List<String> names) {
+        return openBuckets(names, environment.connectTimeout(), TIMEOUT_UNIT);
+    }
+
+    @Override
+    public List<Bucket> openBuckets(final List<String> names, long timeout, TimeUnit timeUnit) {
+        for (String name : names) {
+            if (name == null || name.isEmpty()) {
+                throw new IllegalArgumentException("Bucket name is not allowed to be null or empty.");
+            }
+        }
+
+        final long start = System.nanoTime();
+        List<Bucket> buckets = Blocking.blockForSingle(Observable
+            .from(names)
+            .concatMapEager(new Func1<String, Observable<Bucket>>() {
+                @Override
+                public Observable<Bucket> call(final String name) {
+                    Bucket cachedBucket = getCachedBucket(name);
+                    if (cachedBucket != null) {
+                        return Observable.just(cachedBucket);
+                    }
+                    return openBucketAsync(name, new ArrayList<Transcoder<? extends Document, ?>>());
+                }
+            })
+            .toList()
+            .single(), timeout, timeUnit);
+        LOGGER.info("Opened {} bucket(s) in {}ms.", names.size(),
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return buckets;
+    }
+
+    /**
+     * Opens the bucket through the async cluster and wraps it, using the credentials of the authenticator.
+     *
+     * @param name the name of the bucket.
+     * @param transcoders the custom transcoders.
+     * @return an {@link Observable} emitting the opened and cached {@link Bucket}.
+     */
+    private Observable<Bucket> openBucketAsync(final String name,
+        final List<Transcoder<? extends Document, ?>> transcoders) {
         Credential cred = new Credential(name, null); //the old default
         try {
             cred = couchbaseAsyncCluster.getSingleCredential(CredentialContext.BUCKET_KV, name);
@@ -299,7 +358,7 @@ public class CouchbaseCluster implements Cluster {
         }
         final Credential userCred = cred;
 
-        return Blocking.blockForSingle(couchbaseAsyncCluster
+        return couchbaseAsyncCluster
                 .openBucket(name, transcoders)
                 .map(new Func1<AsyncBucket, Bucket>() {
                     @Override
@@ -309,7 +368,7 @@ public class CouchbaseCluster implements Cluster {
                         bucketCache.put(name, bucket);
                         return bucket;
                     }
-                }).single(), timeout, timeUnit);
+                });
     }
 
     @Override
@@ -0,0 +1,238 @@
+/*
+ * Copyright (c) 2017 Couchbase, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.couchbase.client.java.admission;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.couchbase.client.core.BackpressureException;
+import com.couchbase.client.core.ClusterFacade;
+import com.couchbase.client.core.annotations.InterfaceAudience;
+import com.couchbase.client.core.annotations.InterfaceStability;
+import com.couchbase.client.core.logging.CouchbaseLogger;
+import com.couchbase.client.core.logging.CouchbaseLoggerFactory;
+import com.couchbase.client.core.message.CouchbaseRequest;
+import com.couchbase.client.core.message.CouchbaseResponse;
+import com.couchbase.client.core.message.ResponseStatus;
+import com.couchbase.client.core.message.analytics.AnalyticsRequest;
+import com.couchbase.client.core.message.kv.BinaryRequest;
+import com.couchbase.client.core.message.query.QueryRequest;
+import com.couchbase.client.core.message.search.SearchRequest;
+import com.couchbase.client.core.message.view.ViewRequest;
+import com.couchbase.client.core.service.ServiceType;
+import com.couchbase.client.java.env.CouchbaseEnvironment;
+import com.couchbase.client.java.metrics.OperationMetrics;
+import rx.Observable;
+import rx.functions.Action0;
+import rx.functions.Action1;
+import rx.functions.Func1;
+
+/**
+ * A {@link ClusterFacade} which admits the requests of a bucket through one {@link AdmissionLimiter} per service
+ * before handing them to the core.
+ *
+ * Key-value, query, search, view and analytics requests are limited, everything else (configuration, management)
+ * goes straight through. A request holds its permit until its response is emitted, so for streaming services the
+ * limit covers the time to the first response rather than the whole stream.
+ *
+ * Like the {@link rx.subjects.AsyncSubject} returned by the core, the response of a request is shared by all the
+ * subscribers of the returned {@link Observable}: the request is admitted and sent once, on the first subscription.
+ *
+ * Limiters are registered as {@link AdmissionLimiterMXBean}s under the {@value OperationMetrics#JMX_DOMAIN}
+ * domain, next to the operation metrics. Like for the metrics, their names carry the {@link #instance() instance}
+ * number of the controller so that a bucket opened twice registers distinct MBeans.
+ *
+ * @since 2.5.2
+ */
+@InterfaceStability.Experimental
+@InterfaceAudience.Public
+public class AdmissionController implements ClusterFacade {
+
+    private static final CouchbaseLogger LOGGER = CouchbaseLoggerFactory.getInstance(AdmissionController.class);
+
+    private static final ServiceType[] LIMITED_SERVICES = {
+        ServiceType.BINARY, ServiceType.QUERY, ServiceType.SEARCH, ServiceType.VIEW, ServiceType.ANALYTICS
+    };
+
+    private static final AtomicInteger INSTANCES = new AtomicInteger();
+
+    private final ClusterFacade core;
+    private final String bucket;
+    private final int instance;
+    private final Map<ServiceType, AdmissionLimiter> limiters;
+    private final List<ObjectName> registeredNames;
+
+    /**
+     * Creates a new controller for the given bucket, configured from the environment.
+     *
+     * @param core the core the admitted requests are sent to.
+     * @param bucket the name of the bucket.
+     * @param environment the environment holding the admission settings and the scheduler.
+     */
+    public AdmissionController(ClusterFacade core, String bucket, CouchbaseEnvironment environment) {
+        this.core = core;
+        this.bucket = bucket;
+        this.instance = INSTANCES.incrementAndGet();
+        this.registeredNames = new ArrayList<ObjectName>();
+        this.limiters = new EnumMap<ServiceType, AdmissionLimiter>(ServiceType.class);
+        for (ServiceType service : LIMITED_SERVICES) {
+            limiters.put(service, new AdmissionLimiter(environment.admissionMaxConcurrency(),
+                environment.admissionLatencyTarget(), environment.admissionQueueSize(),
+                environment.admissionWaitTimeout(), TimeUnit.MILLISECONDS, environment.scheduler()));
+        }
+    }
+
+    @Override
+    public <R extends CouchbaseResponse> Observable<R> send(final CouchbaseRequest request) {
+        AdmissionLimiter limiter = limiterFor(request);
+        if (limiter == null) {
+            return core.send(request);
+        }
+
+        return limiter.acquire().flatMap(new Func1<AdmissionLimiter.Permit, Observable<R>>() {
+            @Override
+            public Observable<R> call(final AdmissionLimiter.Permit permit) {
+                return core.<R>send(request)
+                    .doOnNext(new Action1<R>() {
+                        @Override
+                        public void call(R response) {
+                            ResponseStatus status = response.status();
+                            permit.release(status == ResponseStatus.TEMPORARY_FAILURE
+                                || status == ResponseStatus.SERVER_BUSY);
+                        }
+                    })
+                    .doOnError(new Action1<Throwable>() {
+                        @Override
+                        public void call(Throwable throwable) {
+                            permit.release(throwable instanceof BackpressureException);
+                        }
+                    })
+                    .doOnCompleted(new Action0() {
+                        @Override
+                        public void call() {
+                            permit.release(false);
+                        }
+                    })
+                    .doOnUnsubscribe(new Action0() {
+                        @Override
+                        public void call() {
+                            permit.cancel();
+                        }
+                    });
+            }
+        }).cache();
+    }
+
+    /**
+     * Returns the limiter of the given service.
+     *
+     * @param service the service.
+     * @return the limiter, or null if requests to this service are not limited.
+     */
+    public AdmissionLimiter limiter(ServiceType service) {
+        return limiters.get(service);
+    }
+
+    /**
+     * @return the number of this controller, unique within the JVM, which tells apart the MBeans of the same bucket
+     *         opened several times.
+     */
+    public int instance() {
+        return instance;
+    }
+
+    private AdmissionLimiter limiterFor(CouchbaseRequest request) {
+        if (request instanceof BinaryRequest) {
+            return limiters.get(ServiceType.BINARY);
+        } else if (request instanceof QueryRequest) {
+            return limiters.get(ServiceType.QUERY);
+        } else if (request instanceof SearchRequest) {
+            return limiters.get(ServiceType.SEARCH);
+        } else if (request instanceof ViewRequest) {
+            return limiters.get(ServiceType.VIEW);
+        } else if (request instanceof AnalyticsRequest) {
+            return limiters.get(ServiceType.ANALYTICS);
+        }
+        return null;
+    }
+
+    private static String identifier(ServiceType service) {
+        switch (service) {
+            case BINARY:
+                return "kv";
+            case QUERY:
+                return "n1ql";
+            case SEARCH:
+                return "fts";
+            default:
+                return service.name().toLowerCase();
+        }
+    }
+
+    /**
+     * Registers one {@link AdmissionLimiterMXBean} per limited service in the platform MBean server.
+     *
+     * Registration failures are logged and otherwise ignored, since metrics are not essential to operations.
+     */
+    public synchronized void registerMBeans() {
+        if (!registeredNames.isEmpty()) {
+            return;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (Map.Entry<ServiceType, AdmissionLimiter> entry : limiters.entrySet()) {
+            try {
+                ObjectName name = new ObjectName(OperationMetrics.JMX_DOMAIN + ":type=AdmissionControl"
+                    + ",bucket=" + ObjectName.quote(bucket)
+                    + ",service=" + identifier(entry.getKey())
+                    + ",instance=" + instance);
+                server.registerMBean(entry.getValue(), name);
+                registeredNames.add(name);
+            } catch (Exception ex) {
+                LOGGER.warn("Could not register admission control MBean for {}.", entry.getKey(), ex);
+            }
+        }
+    }
+
+    /**
+     * Unregisters all MBeans previously registered through {@link #registerMBeans()}.
+     */
+    public synchronized void unregisterMBeans() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName name : registeredNames) {
+            try {
+                server.unregisterMBean(name);
+            } catch (Exception ex) {
+                LOGGER.debug("Could not unregister admission control MBean {}.", name, ex);
+            }
+        }
+        registeredNames.clear();
+    }
+
+    @Override
+    public String toString() {
+        return "AdmissionController{" +
+            "bucket='" + bucket + '\'' +
+            ", limiters=" + limiters +
+            '}';
+    }
+}
@@ -0,0 +1,330 @@
+/*
+ * Copyright (c) 2017 Couchbase, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.couchbase.client.java.admission;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.couchbase.client.core.BackpressureException;
+import com.couchbase.client.core.annotations.InterfaceAudience;
+import com.couchbase.client.core.annotations.InterfaceStability;
+import rx.Observable;
+import rx.Scheduler;
+import rx.Subscriber;
+import rx.functions.Action0;
+import rx.subscriptions.Subscriptions;
+
+/**
+ * Limits the number of concurrent requests to a service, adapting the limit to how the service copes.
+ *
+ * The limit follows an additive increase, multiplicative decrease scheme: every completion under the latency
+ * target raises it by 1/limit (so by one per limit-wide round of requests) up to the configured maximum, while
+ * backpressure from the core, a busy server or a completion over the latency target multiplies it by
+ * {@value #BACKOFF_RATIO}. Only requests admitted since the last decrease can decrease it again, so that a burst
+ * of slow responses to requests admitted under the old limit backs off once rather than once per response.
+ *
+ * Requests over the limit wait in a bounded FIFO queue and fail with a {@link BackpressureException} if they are
+ * not admitted within the wait timeout, or right away if the queue is full.
+ *
+ * @since 2.5.2
+ */
+@InterfaceStability.Experimental
+@InterfaceAudience.Public
+public class AdmissionLimiter implements AdmissionLimiterMXBean {
+
+    static final double BACKOFF_RATIO = 0.9;
+
+    private final int maxLimit;
+    private final long latencyTargetNanos;
+    private final int queueSize;
+    private final long waitTimeoutMillis;
+    private final Scheduler scheduler;
+
+    /** guarded by this, as are the limit, the generation and the in-flight count. */
+    private final Deque<Waiter> waiters;
+    private double limit;
+    private long generation;
+    private int inFlight;
+
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong queued = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+
+    /**
+     * Creates a new limiter, starting at its maximum limit.
+     *
+     * @param maxLimit the maximum number of concurrent requests.
+     * @param latencyTarget the latency over which a completion decreases the limit, 0 to only react to backpressure.
+     * @param queueSize the maximum number of requests waiting for admission.
+     * @param waitTimeout how long a request waits for admission.
+     * @param timeUnit the unit of the latency target and of the wait timeout.
+     * @param scheduler the scheduler the wait timeouts are scheduled on.
+     */
+    public AdmissionLimiter(int maxLimit, long latencyTarget, int queueSize, long waitTimeout, TimeUnit timeUnit,
+        Scheduler scheduler) {
+        if (maxLimit < 1) {
+            throw new IllegalArgumentException("The maximum limit must be at least 1");
+        }
+        this.maxLimit = maxLimit;
+        this.latencyTargetNanos = timeUnit.toNanos(latencyTarget);
+        this.queueSize = queueSize;
+        this.waitTimeoutMillis = timeUnit.toMillis(waitTimeout);
+        this.scheduler = scheduler;
+        this.waiters = new ArrayDeque<Waiter>();
+        this.limit = maxLimit;
+    }
+
+    /**
+     * Returns an {@link Observable} which, when subscribed, emits a {@link Permit} as soon as the request is admitted.
+     *
+     * The permit must be {@link Permit#release(boolean) released} once the request completes. Unsubscribing
+     * while waiting gives up the place in the queue.
+     *
+     * @return an {@link Observable} emitting the permit, or failing with a {@link BackpressureException}.
+     */
+    public Observable<Permit> acquire() {
+        return Observable.create(new Observable.OnSubscribe<Permit>() {
+            @Override
+            public void call(final Subscriber<? super Permit> subscriber) {
+                Waiter waiter = new Waiter(subscriber);
+                Permit permit = null;
+                boolean enqueued = false;
+                synchronized (AdmissionLimiter.this) {
+                    if (waiters.isEmpty() && inFlight < currentLimit()) {
+                        permit = admit();
+                    } else if (waiters.size() < queueSize) {
+                        waiters.addLast(waiter);
+                        waiter.startTimer();
+                        enqueued = true;
+                    }
+                }
+
+                if (permit != null) {
+                    waiter.grant(permit);
+                } else if (enqueued) {
+                    queued.incrementAndGet();
+                    subscriber.add(Subscriptions.create(waiter));
+                } else {
+                    rejected.incrementAndGet();
+                    subscriber.onError(new BackpressureException());
+                }
+            }
+        });
+    }
+
+    /**
+     * Must be called while holding the lock.
+     */
+    private Permit admit() {
+        inFlight++;
+        admitted.incrementAndGet();
+        return new Permit(generation);
+    }
+
+    private int currentLimit() {
+        return (int) limit;
+    }
+
+    private void release(Permit permit, long latencyNanos, boolean overloaded, boolean adapt) {
+        List<Waiter> granted = null;
+        List<Permit> permits = null;
+        synchronized (this) {
+            inFlight--;
+            if (adapt) {
+                if (overloaded || (latencyTargetNanos > 0 && latencyNanos > latencyTargetNanos)) {
+                    if (permit.generation == generation) {
+                        limit = Math.max(1, limit * BACKOFF_RATIO);
+                        generation++;
+                    }
+                } else {
+                    limit = Math.min(maxLimit, limit + 1 / limit);
+                }
+            }
+            while (!waiters.isEmpty() && inFlight < currentLimit()) {
+                if (granted == null) {
+                    granted = new ArrayList<Waiter>(1);
+                    permits = new ArrayList<Permit>(1);
+                }
+                granted.add(waiters.pollFirst());
+                permits.add(admit());
+            }
+        }
+
+        if (granted != null) {
+            for (int i = 0; i < granted.size(); i++) {
+                granted.get(i).grant(permits.get(i));
+            }
+        }
+    }
+
+    private void timeout(Waiter waiter) {
+        boolean removed;
+        synchronized (this) {
+            removed = waiters.remove(waiter);
+        }
+        if (removed) {
+            timedOut.incrementAndGet();
+            waiter.subscriber.onError(new BackpressureException());
+        }
+    }
+
+    private void abandon(Waiter waiter) {
+        synchronized (this) {
+            waiters.remove(waiter);
+        }
+    }
+
+    @Override
+    public synchronized int getLimit() {
+        return currentLimit();
+    }
+
+    @Override
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+
+    @Override
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    @Override
+    public synchronized int getQueued() {
+        return waiters.size();
+    }
+
+    @Override
+    public long getAdmitted() {
+        return admitted.get();
+    }
+
+    @Override
+    public long getQueuedTotal() {
+        return queued.get();
+    }
+
+    @Override
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    @Override
+    public long getTimedOut() {
+        return timedOut.get();
+    }
+
+    @Override
+    public String toString() {
+        return "AdmissionLimiter{" +
+            "limit=" + getLimit() +
+            ", maxLimit=" + maxLimit +
+            ", inFlight=" + getInFlight() +
+            ", queued=" + getQueued() +
+            ", admitted=" + getAdmitted() +
+            ", rejected=" + getRejected() +
+            ", timedOut=" + getTimedOut() +
+            '}';
+    }
+
+    /**
+     * The right to have one request in flight, to be released exactly once when the request completes.
+     */
+    public class Permit {
+
+        private final long generation;
+        private final long start;
+        private final AtomicBoolean released;
+
+        Permit(long generation) {
+            this.generation = generation;
+            this.start = System.nanoTime();
+            this.released = new AtomicBoolean(false);
+        }
+
+        /**
+         * Releases the permit of a completed request, adapting the limit to its outcome.
+         *
+         * @param overloaded true if the request failed because the client or the server is overloaded.
+         */
+        public void release(boolean overloaded) {
+            if (released.compareAndSet(false, true)) {
+                AdmissionLimiter.this.release(this, System.nanoTime() - start, overloaded, true);
+            }
+        }
+
+        /**
+         * Releases the permit of a request abandoned before completion, leaving the limit untouched.
+         */
+        public void cancel() {
+            if (released.compareAndSet(false, true)) {
+                AdmissionLimiter.this.release(this, 0, false, false);
+            }
+        }
+    }
+
+    private class Waiter implements Action0 {
+
+        private final Subscriber<? super Permit> subscriber;
+        private Scheduler.Worker timer;
+
+        Waiter(Subscriber<? super Permit> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        /**
+         * Must be called while holding the lock, so that the timer is set before the waiter can be granted.
+         */
+        void startTimer() {
+            timer = scheduler.createWorker();
+            timer.schedule(new Action0() {
+                @Override
+                public void call() {
+                    timeout(Waiter.this);
+                }
+            }, waitTimeoutMillis, TimeUnit.MILLISECONDS);
+        }
+
+        void grant(Permit permit) {
+            if (timer != null) {
+                timer.unsubscribe();
+            }
+            if (subscriber.isUnsubscribed()) {
+                permit.cancel();
+                return;
+            }
+            subscriber.onNext(permit);
+            subscriber.onCompleted();
+        }
+
+        /**
+         * Called when the subscriber unsubscribes.
+         */
+        @Override
+        public void call() {
+            abandon(this);
+            if (timer != null) {
+                timer.unsubscribe();
+            }
+        }
+    }
+}
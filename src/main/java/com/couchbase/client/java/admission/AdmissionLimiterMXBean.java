@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2017 Couchbase, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.couchbase.client.java.admission;
+
+import com.couchbase.client.core.annotations.InterfaceAudience;
+import com.couchbase.client.core.annotations.InterfaceStability;
+
+/**
+ * JMX view on an {@link AdmissionLimiter}.
+ *
+ * @since 2.5.2
+ */
+@InterfaceStability.Experimental
+@InterfaceAudience.Public
+public interface AdmissionLimiterMXBean {
+
+    int getLimit();
+
+    int getMaxLimit();
+
+    int getInFlight();
+
+    int getQueued();
+
+    long getAdmitted();
+
+    long getQueuedTotal();
+
+    long getRejected();
+
+    long getTimedOut();
+}
@@ -21,16 +21,25 @@ import com.couchbase.client.core.message.analytics.GenericAnalyticsResponse;
 import com.couchbase.client.deps.io.netty.buffer.ByteBuf;
 import com.couchbase.client.java.document.json.JsonObject;
 import com.couchbase.client.java.error.TranscodingException;
+import com.couchbase.client.java.metrics.OperationMetrics;
+import com.couchbase.client.java.metrics.OperationTimer;
+import com.couchbase.client.java.metrics.OperationType;
+import com.couchbase.client.java.metrics.SlowOperationRecorder;
 import com.couchbase.client.java.transcoder.TranscoderUtils;
+import com.couchbase.client.java.util.ParallelDecoder;
 import rx.Observable;
-import rx.functions.Func0;
+import rx.Subscriber;
+import rx.functions.Action0;
+import rx.functions.Action1;
 import rx.functions.Func1;
 import rx.functions.Func6;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static com.couchbase.client.java.CouchbaseAsyncBucket.JSON_OBJECT_TRANSCODER;
+import static com.couchbase.client.java.util.OnSubscribeDeferAndWatch.deferAndWatch;
 
 public class AnalyticsQueryExecutor {
 
@@ -38,87 +47,142 @@ public class AnalyticsQueryExecutor {
     private final String bucket;
     private final String username;
     private final String password;
+    private final OperationMetrics operationMetrics;
+    private final ParallelDecoder decoder;
+
+    /**
+     * Parses the value of a row ahead of its consumption, leaving parsing errors for the consumer to hit.
+     */
+    private static final Action1<AsyncAnalyticsQueryRow> PARSE_ROW = new Action1<AsyncAnalyticsQueryRow>() {
+        @Override
+        public void call(AsyncAnalyticsQueryRow row) {
+            try {
+                row.value();
+            } catch (TranscodingException e) {
+                //thrown again when the consumer accesses the value
+            }
+        }
+    };
 
     public AnalyticsQueryExecutor(ClusterFacade core, String bucket, String username, String password) {
+        this(core, bucket, username, password, OperationMetrics.DISABLED);
+    }
+
+    public AnalyticsQueryExecutor(ClusterFacade core, String bucket, String username, String password,
+        OperationMetrics operationMetrics) {
+        this(core, bucket, username, password, operationMetrics, ParallelDecoder.INLINE);
+    }
+
+    public AnalyticsQueryExecutor(ClusterFacade core, String bucket, String username, String password,
+        OperationMetrics operationMetrics, ParallelDecoder decoder) {
         this.core = core;
         this.bucket = bucket;
         this.username = username;
         this.password = password;
+        this.operationMetrics = operationMetrics;
+        this.decoder = decoder;
     }
 
     public Observable<AsyncAnalyticsQueryResult> execute(final AnalyticsQuery query) {
-        return Observable.defer(new Func0<Observable<GenericAnalyticsResponse>>() {
-            @Override
-            public Observable<GenericAnalyticsResponse> call() {
-                return core.send(GenericAnalyticsRequest.jsonQuery(query.query().toString(), bucket, username, password));
-            }
-        }).flatMap(new Func1<GenericAnalyticsResponse, Observable<AsyncAnalyticsQueryResult>>() {
+        return operationMetrics.timed(OperationType.ANALYTICS, query.statement(), new Func1<OperationTimer, Observable<AsyncAnalyticsQueryResult>>() {
             @Override
-            public Observable<AsyncAnalyticsQueryResult> call(final GenericAnalyticsResponse response) {
-                final Observable<AsyncAnalyticsQueryRow> rows = response.rows().map(new Func1<ByteBuf, AsyncAnalyticsQueryRow>() {
+            public Observable<AsyncAnalyticsQueryResult> call(final OperationTimer timer) {
+                final AtomicBoolean responded = new AtomicBoolean();
+                return deferAndWatch(new Func1<Subscriber, Observable<GenericAnalyticsResponse>>() {
                     @Override
-                    public AsyncAnalyticsQueryRow call(ByteBuf byteBuf) {
-                        try {
-                            TranscoderUtils.ByteBufToArray rawData = TranscoderUtils.byteBufToByteArray(byteBuf);
-                            byte[] copy = Arrays.copyOfRange(rawData.byteArray, rawData.offset, rawData.offset + rawData.length);
-                            return new DefaultAsyncAnalyticsQueryRow(copy);
-                        } catch (Exception e) {
-                            throw new TranscodingException("Could not decode Analytics Query Row.", e);
-                        } finally {
-                            byteBuf.release();
-                        }
-                    }
-                });
-                final Observable<Object> signature = response.signature().map(new Func1<ByteBuf, Object>() {
-                    @Override
-                    public Object call(ByteBuf byteBuf) {
-                        try {
-                            return JSON_OBJECT_TRANSCODER.byteBufJsonValueToObject(byteBuf);
-                        } catch (Exception e) {
-                            throw new TranscodingException("Could not decode Analytics Query Signature", e);
-                        } finally {
-                            byteBuf.release();
-                        }
+                    public Observable<GenericAnalyticsResponse> call(Subscriber s) {
+                        GenericAnalyticsRequest request = GenericAnalyticsRequest.jsonQuery(query.query().toString(), bucket,
+                            username, password);
+                        //a request whose subscriber went away before it is dispatched is dropped, rows streaming in once
+                        //unsubscribed from are released by the core without being decoded
+                        request.subscriber(s);
+                        timer.encoded();
+                        timer.payloadSize(request.query().length());
+                        return core.send(request);
                     }
-                });
-                final Observable<AnalyticsMetrics> info = response.info().map(new Func1<ByteBuf, JsonObject>() {
+                }).flatMap(new Func1<GenericAnalyticsResponse, Observable<AsyncAnalyticsQueryResult>>() {
                     @Override
-                    public JsonObject call(ByteBuf byteBuf) {
-                        try {
-                            return JSON_OBJECT_TRANSCODER.byteBufToJsonObject(byteBuf);
-                        } catch (Exception e) {
-                            throw new TranscodingException("Could not decode Analytics Query Metrics.", e);
-                        } finally {
-                            byteBuf.release();
-                        }
-                    }
-                })
-                    .map(new Func1<JsonObject, AnalyticsMetrics>() {
-                        @Override
-                        public AnalyticsMetrics call(JsonObject jsonObject) {
-                            return new AnalyticsMetrics(jsonObject);
-                        }
-                    });
-                final Observable<String> finalStatus = response.queryStatus();
-                final Observable<JsonObject> errors = response.errors().map(new Func1<ByteBuf, JsonObject>() {
+                    public Observable<AsyncAnalyticsQueryResult> call(final GenericAnalyticsResponse response) {
+                        responded.set(true);
+                        timer.received();
+                        final Observable<AsyncAnalyticsQueryRow> rows = timer.finishOnRows(decoder.decode(response.rows().map(new Func1<ByteBuf, AsyncAnalyticsQueryRow>() {
+                            @Override
+                            public AsyncAnalyticsQueryRow call(ByteBuf byteBuf) {
+                                long decodeStart = timer.decodeStart();
+                                try {
+                                    TranscoderUtils.ByteBufToArray rawData = TranscoderUtils.byteBufToByteArray(byteBuf);
+                                    byte[] copy = Arrays.copyOfRange(rawData.byteArray, rawData.offset, rawData.offset + rawData.length);
+                                    return new DefaultAsyncAnalyticsQueryRow(copy);
+                                } catch (Exception e) {
+                                    throw new TranscodingException("Could not decode Analytics Query Row.", e);
+                                } finally {
+                                    byteBuf.release();
+                                    timer.decoded(decodeStart);
+                                }
+                            }
+                        }), PARSE_ROW), response.queryStatus());
+                        final Observable<Object> signature = response.signature().map(new Func1<ByteBuf, Object>() {
+                            @Override
+                            public Object call(ByteBuf byteBuf) {
+                                try {
+                                    return JSON_OBJECT_TRANSCODER.byteBufJsonValueToObject(byteBuf);
+                                } catch (Exception e) {
+                                    throw new TranscodingException("Could not decode Analytics Query Signature", e);
+                                } finally {
+                                    byteBuf.release();
+                                }
+                            }
+                        });
+                        final Observable<AnalyticsMetrics> info = response.info().map(new Func1<ByteBuf, JsonObject>() {
+                            @Override
+                            public JsonObject call(ByteBuf byteBuf) {
+                                try {
+                                    return JSON_OBJECT_TRANSCODER.byteBufToJsonObject(byteBuf);
+                                } catch (Exception e) {
+                                    throw new TranscodingException("Could not decode Analytics Query Metrics.", e);
+                                } finally {
+                                    byteBuf.release();
+                                }
+                            }
+                        })
+                            .map(new Func1<JsonObject, AnalyticsMetrics>() {
+                                @Override
+                                public AnalyticsMetrics call(JsonObject jsonObject) {
+                                    AnalyticsMetrics metrics = new AnalyticsMetrics(jsonObject);
+                                    timer.serverDuration(SlowOperationRecorder.parseServerDuration(metrics.executionTime()));
+                                    return metrics;
+                                }
+                            });
+                        final Observable<String> finalStatus = response.queryStatus();
+                        final Observable<JsonObject> errors = response.errors().map(new Func1<ByteBuf, JsonObject>() {
+                            @Override
+                            public JsonObject call(ByteBuf byteBuf) {
+                                try {
+                                    return JSON_OBJECT_TRANSCODER.byteBufToJsonObject(byteBuf);
+                                } catch (Exception e) {
+                                    throw new TranscodingException("Could not decode Analytics Errors.", e);
+                                } finally {
+                                    byteBuf.release();
+                                }
+                            }
+                        });
+                        boolean parseSuccess = response.status().isSuccess();
+                        String contextId = response.clientRequestId() == null ? "" : response.clientRequestId();
+                        String requestId = response.requestId();
+
+                        AsyncAnalyticsQueryResult r = new DefaultAsyncAnalyticsQueryResult(rows, signature, info, errors,
+                            finalStatus, parseSuccess, requestId, contextId);
+                        return Observable.just(r);            }
+                }).doOnUnsubscribe(new Action0() {
                     @Override
-                    public JsonObject call(ByteBuf byteBuf) {
-                        try {
-                            return JSON_OBJECT_TRANSCODER.byteBufToJsonObject(byteBuf);
-                        } catch (Exception e) {
-                            throw new TranscodingException("Could not decode Analytics Errors.", e);
-                        } finally {
-                            byteBuf.release();
+                    public void call() {
+                        //failed or given up on before the response, rows finish the timer otherwise
+                        if (!responded.get()) {
+                            timer.finish();
                         }
                     }
                 });
-                boolean parseSuccess = response.status().isSuccess();
-                String contextId = response.clientRequestId() == null ? "" : response.clientRequestId();
-                String requestId = response.requestId();
-
-                AsyncAnalyticsQueryResult r = new DefaultAsyncAnalyticsQueryResult(rows, signature, info, errors,
-                    finalStatus, parseSuccess, requestId, contextId);
-                return Observable.just(r);            }
+            }
         });
     }
 
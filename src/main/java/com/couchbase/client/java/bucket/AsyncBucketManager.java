@@ -418,6 +418,31 @@ public interface AsyncBucketManager {
      */
     Observable<List<String>> buildN1qlDeferredIndexes();
 
+    /**
+     * Builds the indexes that have been deferred in waves of at most waveSize indexes, and reports their progress.
+     * This only considers GSI indexes, as the index management API only deals with this type of indexes.
+     *
+     * Each wave is triggered with a single BUILD INDEX once all the indexes of the previous wave are online, which
+     * keeps the load on the index service bounded. The indexes of a wave are watched with one listing per poll,
+     * polling more and more slowly while none of them changes state. If none of them changes state within the
+     * watchTimeout, the watch of the wave is given up and the next wave is triggered anyway.
+     *
+     * Note: You can activate DEBUG level logs on the "{@value DefaultAsyncBucketManager#INDEX_WATCH_LOG_NAME}" logger
+     * to see various stages of the polling.
+     *
+     * The {@link Observable} can error under the following conditions:
+     *
+     *  - {@link CouchbaseException} if the build of a wave could not be triggered.
+     *
+     * @param waveSize the maximum number of indexes built at the same time.
+     * @param watchTimeout the maximum time to wait for a state change in a wave, after which the next wave is built.
+     * @param watchTimeUnit the time unit for the watchTimeout.
+     * @return a stream of the {@link IndexInfo} of each built index every time its state changes, the last one being
+     * "online" (unless the watchTimeout expired for its wave).
+     */
+    @InterfaceStability.Experimental
+    Observable<IndexInfo> buildN1qlDeferredIndexes(int waveSize, long watchTimeout, TimeUnit watchTimeUnit);
+
     /**
      * Watches all given indexes (possibly including the primary one), polling the query service until they become
      * "online" or the watchTimeout has expired.. This only considers GSI indexes, as the index management API only
@@ -806,6 +806,24 @@ public interface BucketManager {
      */
     List<String> buildN1qlDeferredIndexes(long timeout, TimeUnit timeUnit);
 
+    /**
+     * Builds the indexes that have been deferred in waves of at most waveSize indexes, and waits for them to be
+     * online. This only considers GSI indexes, as the index management API only deals with this type of indexes.
+     *
+     * Each wave is triggered with a single BUILD INDEX once all the indexes of the previous wave are online, which
+     * keeps the load on the index service bounded. If none of them changes state within the watchTimeout, the next
+     * wave is triggered anyway.
+     *
+     * @param waveSize the maximum number of indexes built at the same time.
+     * @param watchTimeout the maximum time to wait for a state change in a wave, after which the next wave is built.
+     * @param watchTimeUnit the time unit for the watchTimeout.
+     * @return a {@link List} of the {@link IndexInfo} of each built index every time its state changed, in order.
+     * @see AsyncBucketManager#buildN1qlDeferredIndexes(int, long, TimeUnit) to be notified of the progress as it
+     * happens.
+     */
+    @InterfaceStability.Experimental
+    List<IndexInfo> buildN1qlDeferredIndexes(int waveSize, long watchTimeout, TimeUnit watchTimeUnit);
+
     /**
      * Watches all given indexes (possibly including the primary one), polling the query service until they become
      * "online" or the watchTimeout has expired. This only considers GSI indexes, as the index management API only
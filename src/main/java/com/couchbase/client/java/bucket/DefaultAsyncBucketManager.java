@@ -25,8 +25,10 @@ import static com.couchbase.client.java.util.retry.RetryBuilder.anyOf;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -89,6 +91,9 @@ public class DefaultAsyncBucketManager implements AsyncBucketManager {
     //big enough as to only really consider the timeout, but without risk of overflowing
     private static final int INDEX_WATCH_MAX_ATTEMPTS = Integer.MAX_VALUE - 5;
     private static final Delay INDEX_WATCH_DELAY = Delay.linear(TimeUnit.MILLISECONDS, 1000, 50, 500);
+    //bounds of the adaptive delay between two polls while builds progress, in milliseconds
+    private static final long INDEX_PROGRESS_MIN_DELAY = 250;
+    private static final long INDEX_PROGRESS_MAX_DELAY = 5000;
 
     private final ClusterFacade core;
     private final String bucket;
@@ -550,10 +555,48 @@ public class DefaultAsyncBucketManager implements AsyncBucketManager {
 
     @Override
     public Observable<List<String>> buildN1qlDeferredIndexes() {
+        return listDeferredIndexes()
+                .flatMap(new Func1<List<String>, Observable<List<String>>>() {
+                    @Override
+                    public Observable<List<String>> call(final List<String> pendingIndexes) {
+                        return buildIndexes(pendingIndexes);
+                    }
+                });
+    }
 
-        final Func1<List<JsonObject>, Observable<List<String>>> errorHandler = errorsToThrowable(
-                "Error while triggering index build: ");
+    @Override
+    public Observable<IndexInfo> buildN1qlDeferredIndexes(final int waveSize, final long watchTimeout,
+            final TimeUnit watchTimeUnit) {
+        if (waveSize < 1) {
+            throw new IllegalArgumentException("The wave size must be at least 1");
+        }
+        return listDeferredIndexes()
+                .flatMap(new Func1<List<String>, Observable<List<String>>>() {
+                    @Override
+                    public Observable<List<String>> call(List<String> pendingIndexes) {
+                        List<List<String>> waves = new ArrayList<List<String>>();
+                        for (int i = 0; i < pendingIndexes.size(); i += waveSize) {
+                            waves.add(pendingIndexes.subList(i, Math.min(i + waveSize, pendingIndexes.size())));
+                        }
+                        return Observable.from(waves);
+                    }
+                })
+                .concatMap(new Func1<List<String>, Observable<IndexInfo>>() {
+                    @Override
+                    public Observable<IndexInfo> call(final List<String> wave) {
+                        INDEX_WATCH_LOG.debug("Building index wave {}", wave);
+                        return buildIndexes(wave)
+                                .ignoreElements()
+                                .cast(IndexInfo.class)
+                                .concatWith(watchProgress(wave).compose(safeAbort(watchTimeout, watchTimeUnit, null)));
+                    }
+                });
+    }
 
+    /**
+     * Lists the names of the indexes that are currently deferred, in a single emission.
+     */
+    private Observable<List<String>> listDeferredIndexes() {
         return listN1qlIndexes()
                 .filter(new Func1<IndexInfo, Boolean>() {
                     @Override
@@ -569,39 +612,110 @@ public class DefaultAsyncBucketManager implements AsyncBucketManager {
                         return indexInfo.name();
                     }
                 })
-                .toList()
-                .flatMap(new Func1<List<String>, Observable<List<String>>>() {
-                    @Override
-                    public Observable<List<String>> call(final List<String> pendingIndexes) {
-                        if (pendingIndexes.isEmpty()) {
-                            return Observable.just(pendingIndexes);
-                        }
-                        Statement buildStatement = Index.buildIndex().on(bucket)
-                                .indexes(pendingIndexes)
-                                .using(IndexType.GSI);
+                .toList();
+    }
+
+    /**
+     * Triggers the build of the given indexes with a single BUILD INDEX, emitting their names once triggered.
+     */
+    private Observable<List<String>> buildIndexes(final List<String> pendingIndexes) {
+        if (pendingIndexes.isEmpty()) {
+            return Observable.just(pendingIndexes);
+        }
+        final Func1<List<JsonObject>, Observable<List<String>>> errorHandler = errorsToThrowable(
+                "Error while triggering index build: ");
+        Statement buildStatement = Index.buildIndex().on(bucket)
+                .indexes(pendingIndexes)
+                .using(IndexType.GSI);
 
-                        return queryExecutor.execute(N1qlQuery.simple(buildStatement))
-                                .flatMap(new Func1<AsyncN1qlQueryResult, Observable<List<String>>>() {
+        return queryExecutor.execute(N1qlQuery.simple(buildStatement))
+                .flatMap(new Func1<AsyncN1qlQueryResult, Observable<List<String>>>() {
+                    @Override
+                    public Observable<List<String>> call(final AsyncN1qlQueryResult aqr) {
+                        return aqr.finalSuccess()
+                                .flatMap(new Func1<Boolean, Observable<List<String>>>() {
                                     @Override
-                                    public Observable<List<String>> call(final AsyncN1qlQueryResult aqr) {
-                                        return aqr.finalSuccess()
-                                                .flatMap(new Func1<Boolean, Observable<List<String>>>() {
-                                                    @Override
-                                                    public Observable<List<String>> call(
-                                                            Boolean success) {
-                                                        if (success) {
-                                                            return Observable.just(pendingIndexes);
-                                                        } else {
-                                                            return aqr.errors().toList().flatMap(errorHandler);
-                                                        }
-                                                    }
-                                                });
+                                    public Observable<List<String>> call(
+                                            Boolean success) {
+                                        if (success) {
+                                            return Observable.just(pendingIndexes);
+                                        } else {
+                                            return aqr.errors().toList().flatMap(errorHandler);
+                                        }
                                     }
                                 });
                     }
                 });
     }
 
+    /**
+     * Polls the state of all the given indexes with one listing per poll, emitting the {@link IndexInfo} of an index
+     * each time its state changes, until they are all online.
+     *
+     * The delay between two polls doubles, up to {@value #INDEX_PROGRESS_MAX_DELAY}ms, as long as nothing changes,
+     * and goes back to {@value #INDEX_PROGRESS_MIN_DELAY}ms as soon as an index moves on.
+     */
+    private Observable<IndexInfo> watchProgress(final List<String> watchList) {
+        return Observable.defer(new Func0<Observable<IndexInfo>>() {
+            @Override
+            public Observable<IndexInfo> call() {
+                final Set<String> watchSet = new HashSet<String>(watchList);
+                final Map<String, String> states = new HashMap<String, String>();
+                final long[] delay = { INDEX_PROGRESS_MIN_DELAY };
+
+                return listN1qlIndexes()
+                        .filter(new Func1<IndexInfo, Boolean>() {
+                            @Override
+                            public Boolean call(IndexInfo indexInfo) {
+                                return watchSet.contains(indexInfo.name());
+                            }
+                        })
+                        .toList()
+                        .flatMap(new Func1<List<IndexInfo>, Observable<IndexInfo>>() {
+                            @Override
+                            public Observable<IndexInfo> call(List<IndexInfo> indexes) {
+                                List<IndexInfo> changed = new ArrayList<IndexInfo>();
+                                int online = 0;
+                                for (IndexInfo index : indexes) {
+                                    if (!index.state().equals(states.put(index.name(), index.state()))) {
+                                        changed.add(index);
+                                    }
+                                    if ("online".equals(index.state())) {
+                                        online++;
+                                    }
+                                }
+                                delay[0] = changed.isEmpty()
+                                        ? Math.min(delay[0] * 2, INDEX_PROGRESS_MAX_DELAY)
+                                        : INDEX_PROGRESS_MIN_DELAY;
+
+                                Observable<IndexInfo> progress = Observable.from(changed);
+                                if (online == watchSet.size()) {
+                                    return progress;
+                                }
+                                return progress.concatWith(Observable.<IndexInfo>error(new IndexesNotReadyException(
+                                        (watchSet.size() - online) + " of " + watchSet.size() + " indexes not ready")));
+                            }
+                        })
+                        .retryWhen(new Func1<Observable<? extends Throwable>, Observable<?>>() {
+                            @Override
+                            public Observable<?> call(Observable<? extends Throwable> errors) {
+                                return errors.flatMap(new Func1<Throwable, Observable<Long>>() {
+                                    @Override
+                                    public Observable<Long> call(Throwable error) {
+                                        if (!(error instanceof IndexesNotReadyException)) {
+                                            return Observable.error(error);
+                                        }
+                                        INDEX_WATCH_LOG.debug("Will poll again in {}ms: {}", delay[0],
+                                                error.getMessage());
+                                        return Observable.timer(delay[0], TimeUnit.MILLISECONDS);
+                                    }
+                                });
+                            }
+                        });
+            }
+        });
+    }
+
     @Override
     public Observable<IndexInfo> watchN1qlIndexes(List<String> watchList, final long watchTimeout,
             final TimeUnit watchTimeUnit) {
@@ -312,6 +312,14 @@ public class DefaultBucketManager implements BucketManager {
         return Blocking.blockForSingle(asyncBucketManager.buildN1qlDeferredIndexes(), timeout, timeUnit);
     }
 
+    @Override
+    public List<IndexInfo> buildN1qlDeferredIndexes(int waveSize, long watchTimeout, TimeUnit watchTimeUnit) {
+        return asyncBucketManager.buildN1qlDeferredIndexes(waveSize, watchTimeout, watchTimeUnit)
+                .toList()
+                .toBlocking()
+                .single();
+    }
+
     @Override
     public List<IndexInfo> watchN1qlIndexes(List<String> watchList, long watchTimeout, TimeUnit watchTimeUnit) {
         return asyncBucketManager.watchN1qlIndexes(watchList, watchTimeout, watchTimeUnit)
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2017 Couchbase, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.couchbase.client.java.datastructures;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.couchbase.client.core.annotations.InterfaceAudience;
+import com.couchbase.client.core.annotations.InterfaceStability;
+import com.couchbase.client.java.document.JsonArrayDocument;
+
+/**
+ * An immutable hash index over the elements of a set stored as a {@link JsonArrayDocument}, valid for as long
+ * as the document keeps the CAS it was built from.
+ *
+ * Membership checks against the index are O(1). Callers are expected to compare the current CAS of the document,
+ * which can be fetched without transferring the content, with {@link #cas()} and to only rebuild the index from
+ * the full document when it changed. Indexes for local mutations can be derived without refetching the document.
+ *
+ * @since 2.5.2
+ */
+@InterfaceStability.Experimental
+@InterfaceAudience.Private
+public class ArraySetIndex {
+
+    private final long cas;
+    private final List<Object> elements;
+    private final Map<Object, Integer> positions;
+
+    private ArraySetIndex(long cas, List<Object> elements) {
+        this.cas = cas;
+        this.elements = elements;
+        this.positions = new HashMap<Object, Integer>((int) (elements.size() / 0.75f) + 1);
+        for (int i = elements.size() - 1; i >= 0; i--) {
+            //walking backwards so that the first occurrence wins
+            positions.put(elements.get(i), i);
+        }
+    }
+
+    /**
+     * Builds the index of the given document.
+     *
+     * @param document the document holding the set.
+     * @return the index, bound to the CAS of the document.
+     */
+    public static ArraySetIndex create(JsonArrayDocument document) {
+        List<Object> elements = new ArrayList<Object>(document.content().size());
+        //Care not to use toList, as it will convert internal JsonObject/JsonArray to Map/List
+        for (Object element : document.content()) {
+            elements.add(element);
+        }
+        return new ArraySetIndex(document.cas(), elements);
+    }
+
+    /**
+     * @return the CAS of the document this index reflects.
+     */
+    public long cas() {
+        return cas;
+    }
+
+    /**
+     * @return the number of elements in the set.
+     */
+    public int size() {
+        return elements.size();
+    }
+
+    /**
+     * @return the elements of the set, in the order of the backing array.
+     */
+    public List<Object> elements() {
+        return Collections.unmodifiableList(elements);
+    }
+
+    /**
+     * @param element the element to look for.
+     * @return true if the set contains the element.
+     */
+    public boolean contains(Object element) {
+        return positions.containsKey(element);
+    }
+
+    /**
+     * @param element the element to look for.
+     * @return the position of the element in the backing array, -1 if absent.
+     */
+    public int indexOf(Object element) {
+        Integer position = positions.get(element);
+        return position == null ? -1 : position;
+    }
+
+    /**
+     * Derives the index of the document after the element was appended to it.
+     *
+     * @param element the appended element.
+     * @param newCas the CAS of the document after the mutation.
+     * @return the new index.
+     */
+    public ArraySetIndex withAppended(Object element, long newCas) {
+        List<Object> newElements = new ArrayList<Object>(elements.size() + 1);
+        newElements.addAll(elements);
+        newElements.add(element);
+        return new ArraySetIndex(newCas, newElements);
+    }
+
+    /**
+     * Derives the index of the document after the element at the given position was removed from it.
+     *
+     * @param position the position of the removed element.
+     * @param newCas the CAS of the document after the mutation.
+     * @return the new index.
+     */
+    public ArraySetIndex withRemoved(int position, long newCas) {
+        List<Object> newElements = new ArrayList<Object>(elements);
+        newElements.remove(position);
+        return new ArraySetIndex(newCas, newElements);
+    }
+}
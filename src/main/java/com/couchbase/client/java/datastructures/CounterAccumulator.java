@@ -0,0 +1,285 @@
+/*
+ * Copyright (c) 2017 Couchbase, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.couchbase.client.java.datastructures;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.couchbase.client.core.annotations.InterfaceAudience;
+import com.couchbase.client.core.annotations.InterfaceStability;
+import com.couchbase.client.core.logging.CouchbaseLogger;
+import com.couchbase.client.core.logging.CouchbaseLoggerFactory;
+import com.couchbase.client.java.document.JsonLongDocument;
+import com.couchbase.client.java.util.Blocking;
+import rx.Observable;
+import rx.Scheduler;
+import rx.Subscription;
+import rx.functions.Action1;
+import rx.functions.Func0;
+import rx.functions.Func1;
+import rx.functions.Func2;
+
+/**
+ * Combines the increments of counters locally and writes them in periodic batches, trading the freshness of the
+ * stored values for a single counter request per key and flush.
+ *
+ * Deltas are summed per key in striped cells, so that concurrent threads incrementing the same key don't contend on
+ * a single memory location. Every flush interval, the pending sum of each key is written with one counter request
+ * through the {@link ShardedCounter} layout. A key whose deltas have been pending for longer than the max staleness,
+ * for instance because the previous flush is still in flight, is flushed on its next increment.
+ *
+ * Deltas whose write failed are added back to their key and retried at the next flush. Cells are kept for the
+ * lifetime of the accumulator, which is meant for a bounded set of hot keys.
+ *
+ * @since 2.5.2
+ */
+@InterfaceStability.Experimental
+@InterfaceAudience.Public
+public class CounterAccumulator {
+
+    private static final CouchbaseLogger LOGGER = CouchbaseLoggerFactory.getInstance(CounterAccumulator.class);
+
+    /**
+     * The maximum number of counter requests in flight during a flush.
+     */
+    private static final int MAX_CONCURRENT_WRITES = 128;
+
+    private final ShardedCounter layout;
+    private final long maxStalenessNanos;
+    private final ConcurrentMap<String, Cell> cells = new ConcurrentHashMap<String, Cell>();
+    private final Subscription ticker;
+
+    /**
+     * Creates an accumulator flushing periodically on the given scheduler.
+     *
+     * @param layout the layout of the counters to write to.
+     * @param flushInterval the interval between two flushes of all the pending deltas.
+     * @param maxStaleness the maximum duration a delta can stay pending before its key is flushed on increment.
+     * @param unit the time unit of the interval and staleness.
+     * @param scheduler the scheduler to flush on, usually the one of the environment.
+     */
+    public CounterAccumulator(ShardedCounter layout, long flushInterval, long maxStaleness, TimeUnit unit,
+        Scheduler scheduler) {
+        this.layout = layout;
+        this.maxStalenessNanos = unit.toNanos(maxStaleness);
+        this.ticker = Observable
+            .interval(flushInterval, flushInterval, unit, scheduler)
+            .onBackpressureDrop()
+            .concatMap(new Func1<Long, Observable<Integer>>() {
+                @Override
+                public Observable<Integer> call(Long tick) {
+                    return flush();
+                }
+            })
+            .subscribe(new Action1<Integer>() {
+                @Override
+                public void call(Integer flushed) {
+                    LOGGER.trace("Flushed {} accumulated counters", flushed);
+                }
+            });
+    }
+
+    /**
+     * Adds a delta to the given counter locally, to be written at the next flush.
+     *
+     * @param key the key of the counter.
+     * @param delta the value to add, which can be negative.
+     */
+    public void add(String key, long delta) {
+        Cell cell = cells.get(key);
+        if (cell == null) {
+            Cell created = new Cell();
+            cell = cells.putIfAbsent(key, created);
+            if (cell == null) {
+                cell = created;
+            }
+        }
+        cell.add(delta);
+
+        long pendingSince = cell.pendingSince.get();
+        if (pendingSince != 0 && System.nanoTime() - pendingSince > maxStalenessNanos) {
+            flush(key, cell).subscribe();
+        }
+    }
+
+    /**
+     * Returns the deltas of the given counter which are not written yet.
+     *
+     * @param key the key of the counter.
+     * @return the sum of the pending deltas.
+     */
+    public long pending(String key) {
+        Cell cell = cells.get(key);
+        return cell == null ? 0 : cell.sum();
+    }
+
+    /**
+     * Reads the value of the counter as stored plus the deltas not written yet. Deltas being flushed concurrently
+     * may be counted twice or not at all.
+     *
+     * @param key the key of the counter.
+     * @return the estimated value of the counter.
+     */
+    public Observable<Long> get(final String key) {
+        return layout.get(key).map(new Func1<Long, Long>() {
+            @Override
+            public Long call(Long stored) {
+                return stored + pending(key);
+            }
+        });
+    }
+
+    /**
+     * Reads the value of the counter after writing its pending deltas, which makes it exact as of the time of the
+     * subscription at the cost of a round trip.
+     *
+     * @param key the key of the counter.
+     * @return the value of the counter.
+     */
+    public Observable<Long> getExact(final String key) {
+        return Observable.defer(new Func0<Observable<Boolean>>() {
+            @Override
+            public Observable<Boolean> call() {
+                Cell cell = cells.get(key);
+                return cell == null ? Observable.just(false) : flush(key, cell);
+            }
+        }).last().flatMap(new Func1<Boolean, Observable<Long>>() {
+            @Override
+            public Observable<Long> call(Boolean ignored) {
+                return layout.get(key);
+            }
+        });
+    }
+
+    /**
+     * Writes the pending deltas of all the counters.
+     *
+     * @return the number of counters written, once all the writes completed.
+     */
+    public Observable<Integer> flush() {
+        return Observable.from(cells.keySet())
+            .flatMap(new Func1<String, Observable<Boolean>>() {
+                @Override
+                public Observable<Boolean> call(String key) {
+                    return flush(key, cells.get(key));
+                }
+            }, MAX_CONCURRENT_WRITES)
+            .reduce(0, new Func2<Integer, Boolean, Integer>() {
+                @Override
+                public Integer call(Integer count, Boolean written) {
+                    return written ? count + 1 : count;
+                }
+            });
+    }
+
+    /**
+     * Writes the pending deltas of all the counters and waits for the writes to complete.
+     *
+     * @param timeout the maximum time to wait for.
+     * @param timeUnit the unit of the timeout.
+     * @return the number of counters written.
+     */
+    public int flush(long timeout, TimeUnit timeUnit) {
+        return Blocking.blockForSingle(flush(), timeout, timeUnit);
+    }
+
+    /**
+     * Stops the periodic flushes and writes the remaining pending deltas.
+     *
+     * @return the number of counters written by the last flush.
+     */
+    public Observable<Integer> close() {
+        ticker.unsubscribe();
+        return flush();
+    }
+
+    private Observable<Boolean> flush(final String key, final Cell cell) {
+        return Observable.defer(new Func0<Observable<Boolean>>() {
+            @Override
+            public Observable<Boolean> call() {
+                cell.pendingSince.set(0);
+                final long delta = cell.sumThenReset();
+                if (delta == 0) {
+                    return Observable.just(false);
+                }
+                return layout.add(key, delta)
+                    .map(new Func1<JsonLongDocument, Boolean>() {
+                        @Override
+                        public Boolean call(JsonLongDocument document) {
+                            return true;
+                        }
+                    })
+                    .onErrorResumeNext(new Func1<Throwable, Observable<Boolean>>() {
+                        @Override
+                        public Observable<Boolean> call(Throwable error) {
+                            LOGGER.warn("Could not write accumulated counter {}, will retry at next flush", key, error);
+                            cell.add(delta);
+                            return Observable.just(false);
+                        }
+                    });
+            }
+        });
+    }
+
+    /**
+     * The pending sum of a single counter, striped over several slots picked by thread.
+     */
+    static class Cell {
+
+        private static final int STRIPES = stripes();
+
+        //only every 8th slot is used, so that two stripes don't share a cache line
+        private static final int PADDING = 8;
+
+        private final AtomicLongArray slots = new AtomicLongArray(STRIPES * PADDING);
+        final AtomicLong pendingSince = new AtomicLong();
+
+        private static int stripes() {
+            int stripes = 1;
+            while (stripes < Runtime.getRuntime().availableProcessors()) {
+                stripes <<= 1;
+            }
+            return stripes;
+        }
+
+        void add(long delta) {
+            int slot = (int) (Thread.currentThread().getId() & (STRIPES - 1)) * PADDING;
+            slots.addAndGet(slot, delta);
+            if (pendingSince.get() == 0) {
+                pendingSince.compareAndSet(0, System.nanoTime());
+            }
+        }
+
+        long sum() {
+            long sum = 0;
+            for (int i = 0; i < slots.length(); i += PADDING) {
+                sum += slots.get(i);
+            }
+            return sum;
+        }
+
+        long sumThenReset() {
+            long sum = 0;
+            for (int i = 0; i < slots.length(); i += PADDING) {
+                sum += slots.getAndSet(i, 0);
+            }
+            return sum;
+        }
+    }
+}
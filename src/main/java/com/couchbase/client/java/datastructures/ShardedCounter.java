@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2017 Couchbase, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.couchbase.client.java.datastructures;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.couchbase.client.core.annotations.InterfaceAudience;
+import com.couchbase.client.core.annotations.InterfaceStability;
+import com.couchbase.client.java.AsyncBucket;
+import com.couchbase.client.java.document.JsonLongDocument;
+import com.couchbase.client.java.error.CASMismatchException;
+import com.couchbase.client.java.error.DocumentDoesNotExistException;
+import rx.Observable;
+import rx.functions.Func1;
+import rx.functions.Func2;
+
+/**
+ * A counter layout spreading each logical counter over several documents, so that heavily incremented counters
+ * don't all hit the same vBucket.
+ *
+ * Each increment goes to one of the shards, picked in a round-robin fashion, and reading the counter sums all of
+ * its shards. With a single shard the logical counter is stored as a plain counter under its own key, otherwise
+ * shard i of the counter "key" is stored under "key::i".
+ *
+ * Since counters can't go below 0, a decrement of a counter spread over several shards takes from each shard at
+ * most its current value, carrying the rest over to the next shards. As for a plain counter, the logical counter
+ * stops at 0 if the decrement is larger than its value.
+ *
+ * @since 2.5.2
+ */
+@InterfaceStability.Experimental
+@InterfaceAudience.Public
+public class ShardedCounter {
+
+    private final AsyncBucket bucket;
+    private final int shards;
+    private final AtomicInteger nextShard = new AtomicInteger();
+
+    /**
+     * Creates a layout for counters spread over the given number of shards.
+     *
+     * @param bucket the bucket the counters are stored in.
+     * @param shards the number of documents each counter is spread over.
+     */
+    public ShardedCounter(AsyncBucket bucket, int shards) {
+        if (shards < 1) {
+            throw new IllegalArgumentException("The number of shards must be at least 1");
+        }
+        this.bucket = bucket;
+        this.shards = shards;
+    }
+
+    /**
+     * @return the number of documents each counter is spread over.
+     */
+    public int shards() {
+        return shards;
+    }
+
+    /**
+     * Returns the key of a shard of the given counter.
+     *
+     * @param key the key of the logical counter.
+     * @param shard the index of the shard, between 0 and {@link #shards()} excluded.
+     * @return the key of the document holding the shard.
+     */
+    public String shardKey(String key, int shard) {
+        return shards == 1 ? key : key + "::" + shard;
+    }
+
+    /**
+     * Adds the given delta to the counter, creating the shard if needed.
+     *
+     * A negative delta is spread over as many shards as needed, starting with the next shard in the round-robin
+     * order, each of them being updated against its CAS.
+     *
+     * @param key the key of the logical counter.
+     * @param delta the value to add, which can be negative.
+     * @return the updated shard, or the last one updated if the delta has been spread over several shards.
+     */
+    public Observable<JsonLongDocument> add(String key, long delta) {
+        int shard = (nextShard.getAndIncrement() & Integer.MAX_VALUE) % shards;
+        if (delta < 0 && shards > 1) {
+            return decrement(key, shard, shard, -delta, null);
+        }
+        //a missing counter is created with the initial value instead of applying the delta, and can't be negative
+        return bucket.counter(shardKey(key, shard), delta, Math.max(delta, 0));
+    }
+
+    /**
+     * Takes what can be taken of the remaining amount from the given shard, then moves on to the next one until
+     * either the whole amount has been taken or all the shards have been visited.
+     */
+    private Observable<JsonLongDocument> decrement(final String key, final int first, final int shard,
+        final long remaining, final JsonLongDocument last) {
+        final String shardKey = shardKey(key, shard);
+        final int next = (shard + 1) % shards;
+        return bucket.get(shardKey, JsonLongDocument.class)
+            .toList()
+            .concatMap(new Func1<List<JsonLongDocument>, Observable<JsonLongDocument>>() {
+                @Override
+                public Observable<JsonLongDocument> call(List<JsonLongDocument> found) {
+                    long value = found.isEmpty() ? 0 : found.get(0).content();
+                    if (value <= 0) {
+                        return decrementNext(key, first, next, remaining, last);
+                    }
+                    final long taken = Math.min(value, remaining);
+                    return bucket.replace(JsonLongDocument.create(shardKey, value - taken, found.get(0).cas()))
+                        .concatMap(new Func1<JsonLongDocument, Observable<JsonLongDocument>>() {
+                            @Override
+                            public Observable<JsonLongDocument> call(JsonLongDocument updated) {
+                                return decrementNext(key, first, next, remaining - taken, updated);
+                            }
+                        })
+                        .onErrorResumeNext(new Func1<Throwable, Observable<JsonLongDocument>>() {
+                            @Override
+                            public Observable<JsonLongDocument> call(Throwable error) {
+                                if (error instanceof CASMismatchException
+                                    || error instanceof DocumentDoesNotExistException) {
+                                    //the shard changed concurrently, read it again
+                                    return decrement(key, first, shard, remaining, last);
+                                }
+                                return Observable.error(error);
+                            }
+                        });
+                }
+            });
+    }
+
+    private Observable<JsonLongDocument> decrementNext(String key, int first, int next, long remaining,
+        JsonLongDocument last) {
+        if (remaining > 0 && next != first) {
+            return decrement(key, first, next, remaining, last);
+        }
+        if (last != null) {
+            return Observable.just(last);
+        }
+        //the counter was already 0, only make sure the first shard exists as it would for a single shard
+        return bucket.counter(shardKey(key, first), 0, 0);
+    }
+
+    /**
+     * Reads the value of the counter by summing all of its shards, missing shards counting as 0.
+     *
+     * @param key the key of the logical counter.
+     * @return the value of the counter.
+     */
+    public Observable<Long> get(final String key) {
+        return Observable.range(0, shards)
+            .flatMap(new Func1<Integer, Observable<JsonLongDocument>>() {
+                @Override
+                public Observable<JsonLongDocument> call(Integer shard) {
+                    return bucket.get(shardKey(key, shard), JsonLongDocument.class);
+                }
+            })
+            .map(new Func1<JsonLongDocument, Long>() {
+                @Override
+                public Long call(JsonLongDocument shard) {
+                    return shard.content();
+                }
+            })
+            .reduce(0L, new Func2<Long, Long, Long>() {
+                @Override
+                public Long call(Long sum, Long value) {
+                    return sum + value;
+                }
+            });
+    }
+}
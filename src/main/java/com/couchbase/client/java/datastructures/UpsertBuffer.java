@@ -0,0 +1,443 @@
+/*
+ * Copyright (c) 2017 Couchbase, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.couchbase.client.java.datastructures;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.couchbase.client.core.BackpressureException;
+import com.couchbase.client.core.annotations.InterfaceAudience;
+import com.couchbase.client.core.annotations.InterfaceStability;
+import com.couchbase.client.core.logging.CouchbaseLogger;
+import com.couchbase.client.core.logging.CouchbaseLoggerFactory;
+import com.couchbase.client.deps.io.netty.util.ReferenceCounted;
+import com.couchbase.client.java.AsyncBucket;
+import com.couchbase.client.java.PersistTo;
+import com.couchbase.client.java.ReplicateTo;
+import com.couchbase.client.java.document.Document;
+import com.couchbase.client.java.util.Blocking;
+import rx.Observable;
+import rx.Observer;
+import rx.Scheduler;
+import rx.functions.Action0;
+import rx.functions.Func1;
+import rx.functions.Func2;
+import rx.schedulers.Schedulers;
+import rx.subjects.AsyncSubject;
+
+/**
+ * Buffers upserts and coalesces the ones hitting the same key within a window into a single write of the latest
+ * document, for documents rewritten many times per second where only the last write matters.
+ *
+ * The first upsert of a key schedules its write after the window, the upserts arriving until then replace the
+ * document to write. All the callers coalesced into a write get the written document, with the final CAS and
+ * mutation token, or its error. There is at most one write in flight per key: upserts arriving while a key is
+ * being written are coalesced into the next write, sent as soon as the previous one completes, so the writes of a
+ * key are applied in order.
+ *
+ * The content of a document replaced before being written is released if it is {@link ReferenceCounted}, like the
+ * buffer of a {@link com.couchbase.client.java.document.BinaryDocument}.
+ *
+ * Memory is bounded by the maximum number of keys with buffered or in-flight writes, upserts of new keys beyond it
+ * fail with a {@link BackpressureException}. Writes are not retried, and the optional durability requirement only
+ * applies to the coalesced write.
+ *
+ * The counters exposed by the buffer give the {@link #coalescingRatio() coalescing ratio}, the number of upserts
+ * per write sent.
+ *
+ * @since 2.5.2
+ */
+@InterfaceStability.Experimental
+@InterfaceAudience.Public
+public class UpsertBuffer<D extends Document<?>> {
+
+    private static final CouchbaseLogger LOGGER = CouchbaseLoggerFactory.getInstance(UpsertBuffer.class);
+
+    private final AsyncBucket bucket;
+    private final long windowNanos;
+    private final int maxKeys;
+    private final PersistTo persistTo;
+    private final ReplicateTo replicateTo;
+    private final Scheduler.Worker worker;
+
+    private final ConcurrentMap<String, Slot<D>> slots = new ConcurrentHashMap<String, Slot<D>>();
+    private final AtomicInteger keys = new AtomicInteger();
+    private final AtomicLong upserts = new AtomicLong();
+    private final AtomicLong writes = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    private volatile boolean closed;
+
+    private UpsertBuffer(Builder<D> builder) {
+        this.bucket = builder.bucket;
+        this.windowNanos = builder.windowNanos;
+        this.maxKeys = builder.maxKeys;
+        this.persistTo = builder.persistTo;
+        this.replicateTo = builder.replicateTo;
+        this.worker = builder.scheduler.createWorker();
+    }
+
+    /**
+     * Creates a builder for a buffer of the given document type.
+     *
+     * @param bucket the bucket to write to.
+     * @param type the type of the buffered documents.
+     * @return the builder.
+     */
+    public static <D extends Document<?>> Builder<D> builder(AsyncBucket bucket, Class<D> type) {
+        return new Builder<D>(bucket);
+    }
+
+    /**
+     * Buffers the upsert of a document, to be written with the upserts of the same key coalesced with it.
+     *
+     * The upsert is buffered when this method is called, the returned {@link Observable} only reports the outcome.
+     *
+     * @param document the document to upsert.
+     * @return an {@link Observable} emitting the document written for this upsert, which is the latest one
+     *   coalesced with it, or failing with a {@link BackpressureException} if too many keys are buffered.
+     */
+    public Observable<D> upsert(final D document) {
+        if (closed) {
+            return Observable.error(new IllegalStateException("The upsert buffer has been closed."));
+        }
+
+        String key = document.id();
+        Observable<D> result = null;
+        Slot<D> slot = null;
+        while (result == null) {
+            slot = slots.get(key);
+            if (slot == null) {
+                if (keys.incrementAndGet() > maxKeys) {
+                    keys.decrementAndGet();
+                    rejected.incrementAndGet();
+                    return Observable.error(new BackpressureException());
+                }
+                Slot<D> created = new Slot<D>(key);
+                slot = slots.putIfAbsent(key, created);
+                if (slot == null) {
+                    slot = created;
+                } else {
+                    keys.decrementAndGet();
+                }
+            }
+
+            boolean schedule = false;
+            synchronized (slot) {
+                if (slot.retired) {
+                    continue;
+                }
+                release(slot.pending, document);
+                slot.pending = document;
+                if (slot.waiting == null) {
+                    slot.waiting = AsyncSubject.create();
+                    schedule = !slot.inFlight;
+                }
+                result = slot.waiting;
+            }
+            upserts.incrementAndGet();
+
+            if (schedule) {
+                schedule(slot);
+            }
+        }
+
+        if (closed) {
+            write(slot);
+        }
+        return result.asObservable();
+    }
+
+    /**
+     * Writes the buffered upserts of all the keys without waiting for their window.
+     *
+     * @return the number of keys written successfully, once all the buffered writes completed.
+     */
+    public Observable<Integer> flush() {
+        List<Observable<Boolean>> outcomes = new ArrayList<Observable<Boolean>>();
+        for (Slot<D> slot : slots.values()) {
+            AsyncSubject<D> waiting;
+            synchronized (slot) {
+                waiting = slot.waiting;
+            }
+            if (waiting == null) {
+                continue;
+            }
+            write(slot);
+            outcomes.add(waiting
+                .map(new Func1<D, Boolean>() {
+                    @Override
+                    public Boolean call(D document) {
+                        return true;
+                    }
+                })
+                .onErrorResumeNext(Observable.just(false)));
+        }
+
+        return Observable.merge(outcomes).reduce(0, new Func2<Integer, Boolean, Integer>() {
+            @Override
+            public Integer call(Integer count, Boolean written) {
+                return written ? count + 1 : count;
+            }
+        });
+    }
+
+    /**
+     * Writes the buffered upserts of all the keys and waits for the writes to complete.
+     *
+     * @param timeout the maximum time to wait for.
+     * @param timeUnit the unit of the timeout.
+     * @return the number of keys written successfully.
+     */
+    public int flush(long timeout, TimeUnit timeUnit) {
+        return Blocking.blockForSingle(flush(), timeout, timeUnit);
+    }
+
+    /**
+     * Rejects further upserts and writes the buffered ones.
+     *
+     * @return the number of keys written successfully by the last flush.
+     */
+    public Observable<Integer> close() {
+        closed = true;
+        worker.unsubscribe();
+        return flush();
+    }
+
+    /**
+     * @return the number of upserts buffered so far.
+     */
+    public long upserts() {
+        return upserts.get();
+    }
+
+    /**
+     * @return the number of writes sent so far.
+     */
+    public long writes() {
+        return writes.get();
+    }
+
+    /**
+     * @return the number of writes which failed, each failing all the upserts coalesced into it.
+     */
+    public long failures() {
+        return failures.get();
+    }
+
+    /**
+     * @return the number of upserts rejected because too many keys were buffered.
+     */
+    public long rejected() {
+        return rejected.get();
+    }
+
+    /**
+     * @return the number of keys with buffered or in-flight writes.
+     */
+    public int pendingKeys() {
+        return keys.get();
+    }
+
+    /**
+     * Releases the content of a buffered document replaced by a newer one before being written.
+     */
+    private static void release(Document<?> replaced, Document<?> document) {
+        if (replaced == null || replaced == document || replaced.content() == document.content()) {
+            return;
+        }
+        if (replaced.content() instanceof ReferenceCounted) {
+            ReferenceCounted content = (ReferenceCounted) replaced.content();
+            if (content.refCnt() > 0) {
+                content.release();
+            }
+        }
+    }
+
+    /**
+     * @return the number of upserts per write sent, 1 meaning no upsert has been coalesced.
+     */
+    public double coalescingRatio() {
+        long sent = writes.get();
+        return sent == 0 ? 0 : (double) upserts.get() / sent;
+    }
+
+    private void schedule(final Slot<D> slot) {
+        if (windowNanos <= 0) {
+            write(slot);
+            return;
+        }
+        worker.schedule(new Action0() {
+            @Override
+            public void call() {
+                write(slot);
+            }
+        }, windowNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Sends the buffered document of the key, unless a write is already in flight for it.
+     */
+    private void write(final Slot<D> slot) {
+        final D document;
+        final AsyncSubject<D> waiting;
+        synchronized (slot) {
+            if (slot.inFlight || slot.waiting == null) {
+                return;
+            }
+            document = slot.pending;
+            waiting = slot.waiting;
+            slot.pending = null;
+            slot.waiting = null;
+            slot.inFlight = true;
+        }
+
+        writes.incrementAndGet();
+        Observable<D> write = persistTo == PersistTo.NONE && replicateTo == ReplicateTo.NONE
+            ? bucket.upsert(document) : bucket.upsert(document, persistTo, replicateTo);
+        write.subscribe(new Observer<D>() {
+            private D written;
+
+            @Override
+            public void onNext(D document) {
+                written = document;
+            }
+
+            @Override
+            public void onCompleted() {
+                try {
+                    waiting.onNext(written);
+                    waiting.onCompleted();
+                } finally {
+                    completed(slot);
+                }
+            }
+
+            @Override
+            public void onError(Throwable e) {
+                failures.incrementAndGet();
+                LOGGER.debug("Coalesced upsert of {} failed", slot.key, e);
+                try {
+                    waiting.onError(e);
+                } finally {
+                    completed(slot);
+                }
+            }
+        });
+    }
+
+    /**
+     * Sends the upserts buffered while the write was in flight, or releases the key if there are none.
+     */
+    private void completed(Slot<D> slot) {
+        boolean next;
+        synchronized (slot) {
+            slot.inFlight = false;
+            next = slot.waiting != null;
+            if (!next) {
+                slot.retired = true;
+                slots.remove(slot.key, slot);
+                keys.decrementAndGet();
+            }
+        }
+        if (next) {
+            write(slot);
+        }
+    }
+
+    /**
+     * The buffered and in-flight writes of a single key, guarded by its own monitor.
+     */
+    private static class Slot<D> {
+
+        final String key;
+        /** the latest document buffered, written by the next write. */
+        D pending;
+        /** the callers of the next write, null if nothing is buffered. */
+        AsyncSubject<D> waiting;
+        boolean inFlight;
+        /** set once the slot is removed from the buffer, upserts must then create a new one. */
+        boolean retired;
+
+        Slot(String key) {
+            this.key = key;
+        }
+    }
+
+    public static class Builder<D extends Document<?>> {
+
+        private final AsyncBucket bucket;
+        private long windowNanos = TimeUnit.MILLISECONDS.toNanos(100);
+        private int maxKeys = 10000;
+        private PersistTo persistTo = PersistTo.NONE;
+        private ReplicateTo replicateTo = ReplicateTo.NONE;
+        private Scheduler scheduler = Schedulers.computation();
+
+        private Builder(AsyncBucket bucket) {
+            this.bucket = bucket;
+        }
+
+        /**
+         * Sets how long the first upsert of a key waits for others to be coalesced with it, 100ms by default. A
+         * window of 0 writes right away and only coalesces the upserts arriving while a write is in flight.
+         */
+        public Builder<D> window(long window, TimeUnit unit) {
+            if (window < 0) {
+                throw new IllegalArgumentException("The window must not be negative");
+            }
+            this.windowNanos = unit.toNanos(window);
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of keys with buffered or in-flight writes, 10000 by default.
+         */
+        public Builder<D> maxKeys(int maxKeys) {
+            if (maxKeys < 1) {
+                throw new IllegalArgumentException("The maximum number of keys must be at least 1");
+            }
+            this.maxKeys = maxKeys;
+            return this;
+        }
+
+        /**
+         * Sets the durability requirement of the coalesced writes, none by default.
+         */
+        public Builder<D> durability(PersistTo persistTo, ReplicateTo replicateTo) {
+            this.persistTo = persistTo;
+            this.replicateTo = replicateTo;
+            return this;
+        }
+
+        /**
+         * Sets the scheduler the windows elapse on, the computation scheduler by default.
+         */
+        public Builder<D> scheduler(Scheduler scheduler) {
+            this.scheduler = scheduler;
+            return this;
+        }
+
+        public UpsertBuffer<D> build() {
+            return new UpsertBuffer<D>(this);
+        }
+    }
+}
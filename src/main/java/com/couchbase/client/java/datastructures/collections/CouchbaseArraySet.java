@@ -17,6 +17,7 @@ package com.couchbase.client.java.datastructures.collections;
 import java.util.AbstractSet;
 import java.util.ConcurrentModificationException;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
 
 import com.couchbase.client.core.annotations.InterfaceAudience;
@@ -25,6 +26,7 @@ import com.couchbase.client.core.message.ResponseStatus;
 import com.couchbase.client.core.message.kv.subdoc.multi.Lookup;
 import com.couchbase.client.core.message.kv.subdoc.multi.Mutation;
 import com.couchbase.client.java.Bucket;
+import com.couchbase.client.java.datastructures.ArraySetIndex;
 import com.couchbase.client.java.datastructures.collections.iterators.JsonArrayDocumentIterator;
 import com.couchbase.client.java.document.JsonArrayDocument;
 import com.couchbase.client.java.document.json.JsonArray;
@@ -56,6 +58,11 @@ public class CouchbaseArraySet<T> extends AbstractSet<T> {
     private final String id;
     private final Bucket bucket;
 
+    /**
+     * Hash index of the elements as of the last known CAS of the document, rebuilt only when the CAS changes.
+     */
+    private volatile ArraySetIndex index;
+
     /**
      * Create a new {@link CouchbaseArraySet}, backed by the document identified by <code>id</code>
      * in the given Couchbase <code>bucket</code>. Note that if the document already exists,
@@ -115,15 +122,8 @@ public class CouchbaseArraySet<T> extends AbstractSet<T> {
 
     @Override
     public boolean contains(Object t) {
-        //TODO subpar implementation for a Set, use ARRAY_CONTAINS when available
         enforcePrimitive(t);
-        JsonArrayDocument current = bucket.get(id, JsonArrayDocument.class);
-        for (Object in : current.content()) {
-            if (safeEquals(in, t)) {
-                return true;
-            }
-        }
-        return false;
+        return indexOf(currentIndex(), t) >= 0;
     }
 
     @Override
@@ -137,22 +137,13 @@ public class CouchbaseArraySet<T> extends AbstractSet<T> {
 
         for (int i = 0; i < MAX_OPTIMISTIC_LOCKING_ATTEMPTS; i++) {
             try {
-                JsonArrayDocument current = bucket.get(id, JsonArrayDocument.class);
-                long cas = current.cas();
-                //Care not to use toList, as it will convert internal JsonObject/JsonArray to Map/List
-                boolean absent = true;
-                for (Object in : current.content()) {
-                    if (safeEquals(in, t)) {
-                        absent = false;
-                        break;
-                    }
-                }
-
-                if (absent) {
+                ArraySetIndex current = currentIndex();
+                if (indexOf(current, t) < 0) {
                     DocumentFragment<Mutation> result = bucket.mutateIn(id)
                             .arrayAppend("", t, true) //append at the root array
-                            .withCas(cas)
+                            .withCas(current.cas())
                             .execute();
+                    index = current.withAppended(t, result.cas());
                     return true;
                 } else {
                     return false;
@@ -170,26 +161,14 @@ public class CouchbaseArraySet<T> extends AbstractSet<T> {
 
         for (int i = 0; i < MAX_OPTIMISTIC_LOCKING_ATTEMPTS; i++) {
             try {
-                JsonArrayDocument current = bucket.get(id, JsonArrayDocument.class);
-                long cas = current.cas();
-                int index = 0;
-                boolean found = false;
-                Iterator<Object> it = current.content().iterator();
-                while (it.hasNext()) {
-                    Object next = it.next();
-                    if (safeEquals(next, t)) {
-                        found = true;
-                        break;
-                    }
-                    index++;
-                }
-                String path = "[" + index + "]";
-
-                if (!found) {
+                ArraySetIndex current = currentIndex();
+                int position = indexOf(current, t);
+                if (position < 0) {
                     return false;
                 } else {
                     DocumentFragment<Mutation> result = bucket
-                            .mutateIn(id).remove(path).withCas(cas).execute();
+                            .mutateIn(id).remove("[" + position + "]").withCas(current.cas()).execute();
+                    index = current.withRemoved(position, result.cas());
                     return true;
                 }
             } catch (CASMismatchException e) {
@@ -204,6 +183,39 @@ public class CouchbaseArraySet<T> extends AbstractSet<T> {
         bucket.upsert(JsonArrayDocument.create(id, JsonArray.empty()));
     }
 
+    /**
+     * Returns the position of the element in the set, comparing elements through {@link #safeEquals(Object, Object)}
+     * if the hash index is not used.
+     */
+    private int indexOf(ArraySetIndex current, Object t) {
+        if (useHashIndex()) {
+            return current.indexOf(t);
+        }
+        List<Object> elements = current.elements();
+        for (int i = 0; i < elements.size(); i++) {
+            if (safeEquals(elements.get(i), t)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the index of the set, only fetching the whole document if its CAS changed since the index was built.
+     */
+    private ArraySetIndex currentIndex() {
+        ArraySetIndex current = index;
+        if (current != null) {
+            DocumentFragment<Lookup> probe = bucket.lookupIn(id).exists("[0]").execute();
+            if (probe.cas() != 0 && probe.cas() == current.cas()) {
+                return current;
+            }
+        }
+        current = ArraySetIndex.create(bucket.get(id, JsonArrayDocument.class));
+        index = current;
+        return current;
+    }
+
     /**
      * Verify that the type of object t is compatible with CouchbaseArraySet storage.
      *
@@ -217,6 +229,28 @@ public class CouchbaseArraySet<T> extends AbstractSet<T> {
         }
     }
 
+    /**
+     * Whether {@link #contains(Object)}, {@link #add(Object)} and {@link #remove(Object)} look elements up in a hash
+     * index of the set, or scan through them with {@link #safeEquals(Object, Object)}.
+     *
+     * Subclasses overriding {@link #safeEquals(Object, Object)} must override this method to return false,
+     * otherwise their equality is ignored.
+     *
+     * @return true by default.
+     */
+    protected boolean useHashIndex() {
+        return true;
+    }
+
+    /**
+     * Compares an element of the set with a tested value. Elements are looked up in a hash index by default, which
+     * is equivalent to this implementation, so overriding this method only takes effect if {@link #useHashIndex()}
+     * is overridden to return false.
+     *
+     * @param expected the element of the set.
+     * @param tested the tested value.
+     * @return true if both are considered equal.
+     */
     protected boolean safeEquals(Object expected, Object tested) {
         if (expected == null) {
             return tested == null;
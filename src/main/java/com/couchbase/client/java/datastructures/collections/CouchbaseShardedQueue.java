@@ -0,0 +1,293 @@
+/*
+ * Copyright (c) 2017 Couchbase, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.couchbase.client.java.datastructures.collections;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.couchbase.client.core.annotations.InterfaceAudience;
+import com.couchbase.client.core.annotations.InterfaceStability;
+import com.couchbase.client.core.message.ResponseStatus;
+import com.couchbase.client.core.message.kv.subdoc.multi.Lookup;
+import com.couchbase.client.java.Bucket;
+import com.couchbase.client.java.datastructures.collections.iterators.JsonArrayDocumentIterator;
+import com.couchbase.client.java.document.JsonArrayDocument;
+import com.couchbase.client.java.document.json.JsonArray;
+import com.couchbase.client.java.document.json.JsonValue;
+import com.couchbase.client.java.error.CASMismatchException;
+import com.couchbase.client.java.error.DocumentAlreadyExistsException;
+import com.couchbase.client.java.error.subdoc.PathNotFoundException;
+import com.couchbase.client.java.subdoc.DocumentFragment;
+import com.couchbase.client.java.subdoc.SubdocOptionsBuilder;
+
+/**
+ * A CouchbaseShardedQueue is a {@link Queue} whose elements are spread over several {@link Bucket Couchbase}
+ * documents (more specifically {@link JsonArrayDocument JSON arrays}), called shards, to avoid the contention
+ * a single {@link CouchbaseQueue} document suffers from when many producers and consumers share it.
+ *
+ * Producers distribute elements over the shards in a round-robin fashion, and each consumer thread starts
+ * polling from its own preferred shard before moving on to the others, so that concurrent consumers mostly work
+ * on distinct documents. Elements are popped through a sub-document lookup of the oldest element followed by a
+ * CAS-guarded sub-document removal, without transferring the whole shard. On a CAS mismatch the consumer backs off
+ * for a random delay and moves on to the next shard.
+ *
+ * Ordering is FIFO within each shard, but only approximately FIFO across the whole queue. Like for
+ * {@link CouchbaseQueue}, elements are restricted to the types a {@link JsonArray JSON array} can contain and
+ * null values are not allowed.
+ *
+ * @param <E> the type of values in the queue.
+ *
+ * @since 2.5.2
+ */
+@InterfaceStability.Experimental
+@InterfaceAudience.Public
+public class CouchbaseShardedQueue<E> extends AbstractQueue<E> {
+
+    private static final int MAX_OPTIMISTIC_LOCKING_ATTEMPTS = Integer.parseInt(System.getProperty("com.couchbase.datastructureCASRetryLimit", "10"));
+    private static final int MAX_BACKOFF_MILLIS = 32;
+    private static final String OLDEST = "[-1]"; //FIFO per shard as offer uses ARRAY_PREPEND
+
+    private final String id;
+    private final Bucket bucket;
+    private final String[] shardIds;
+    private final AtomicInteger nextShard;
+    private final Random random;
+
+    /**
+     * Create a new {@link Bucket Couchbase-backed} sharded Queue, backed by the <code>shards</code> documents
+     * whose ids are derived from <code>id</code> in <code>bucket</code>. Note that if the shard documents
+     * already exist, their content will be used as initial content for this collection. Otherwise they are
+     * created empty.
+     *
+     * @param id the prefix of the ids of the Couchbase documents backing the queue.
+     * @param bucket the {@link Bucket} through which to interact with the documents.
+     * @param shards the number of documents to spread the elements over.
+     */
+    public CouchbaseShardedQueue(String id, Bucket bucket, int shards) {
+        if (shards < 1) {
+            throw new IllegalArgumentException("At least one shard is required.");
+        }
+        this.id = id;
+        this.bucket = bucket;
+        this.shardIds = new String[shards];
+        this.random = new Random();
+        this.nextShard = new AtomicInteger(random.nextInt(shards));
+
+        for (int i = 0; i < shards; i++) {
+            shardIds[i] = shardId(id, i);
+            try {
+                bucket.insert(JsonArrayDocument.create(shardIds[i], JsonArray.empty()));
+            } catch (DocumentAlreadyExistsException ex) {
+                // Ignore concurrent creations, keep on moving.
+            }
+        }
+    }
+
+    /**
+     * Returns the id of the document backing the given shard of a sharded queue.
+     *
+     * @param id the prefix of the ids of the documents backing the queue.
+     * @param shard the index of the shard.
+     * @return the id of the shard document.
+     */
+    public static String shardId(String id, int shard) {
+        return id + "::" + shard;
+    }
+
+    /**
+     * @return the prefix of the ids of the documents backing this queue.
+     */
+    public String id() {
+        return id;
+    }
+
+    /**
+     * @return the number of documents the elements are spread over.
+     */
+    public int shards() {
+        return shardIds.length;
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return new Iterator<E>() {
+            private int shard = 0;
+            private Iterator<E> current = new JsonArrayDocumentIterator<E>(bucket, shardIds[0]);
+
+            @Override
+            public boolean hasNext() {
+                while (!current.hasNext() && shard < shardIds.length - 1) {
+                    current = new JsonArrayDocumentIterator<E>(bucket, shardIds[++shard]);
+                }
+                return current.hasNext();
+            }
+
+            @Override
+            public E next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return current.next();
+            }
+
+            @Override
+            public void remove() {
+                current.remove();
+            }
+        };
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (String shardId : shardIds) {
+            //the root path is rejected by GET_COUNT, so fetch the whole shard like CouchbaseQueue does
+            size += bucket.get(shardId, JsonArrayDocument.class).content().size();
+        }
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        for (String shardId : shardIds) {
+            bucket.upsert(JsonArrayDocument.create(shardId, JsonArray.empty()));
+        }
+    }
+
+    @Override
+    public boolean offer(E e) {
+        checkElement(e);
+        bucket.mutateIn(shardIds[pushShard()]).arrayPrepend("", e).execute();
+        return true;
+    }
+
+    /**
+     * Adds all the elements of the collection with one mutation per shard rather than one per element. The
+     * elements pushed to a given shard keep their relative iteration order.
+     */
+    @Override
+    public boolean addAll(Collection<? extends E> c) {
+        if (c == this) {
+            throw new IllegalArgumentException("Can't add a queue to itself");
+        }
+        List<List<E>> batches = new ArrayList<List<E>>(shardIds.length);
+        for (int i = 0; i < shardIds.length; i++) {
+            batches.add(new ArrayList<E>());
+        }
+        int shard = pushShard();
+        for (E e : c) {
+            checkElement(e);
+            //prepended as a block, so the first element must end up closest to the tail
+            batches.get(shard).add(0, e);
+            shard = (shard + 1) % shardIds.length;
+        }
+
+        boolean modified = false;
+        for (int i = 0; i < shardIds.length; i++) {
+            List<E> batch = batches.get(i);
+            if (!batch.isEmpty()) {
+                bucket.mutateIn(shardIds[i]).arrayPrependAll("", batch, SubdocOptionsBuilder.builder()).execute();
+                modified = true;
+            }
+        }
+        return modified;
+    }
+
+    @Override
+    public E poll() {
+        int shard = homeShard();
+        int emptyInARow = 0;
+        for (int i = 0; i < MAX_OPTIMISTIC_LOCKING_ATTEMPTS * shardIds.length; i++) {
+            String shardId = shardIds[shard];
+            shard = (shard + 1) % shardIds.length;
+
+            DocumentFragment<Lookup> current = bucket.lookupIn(shardId).get(OLDEST).execute();
+            if (current.status(OLDEST) == ResponseStatus.SUBDOC_PATH_NOT_FOUND) {
+                if (++emptyInARow == shardIds.length) {
+                    return null; //every shard is empty
+                }
+                continue;
+            }
+            emptyInARow = 0;
+
+            try {
+                bucket.mutateIn(shardId).remove(OLDEST).withCas(current.cas()).execute();
+                @SuppressWarnings("unchecked")
+                E element = (E) current.content(OLDEST);
+                return element;
+            } catch (CASMismatchException ex) {
+                backoff(i);
+            } catch (PathNotFoundException ex) {
+                backoff(i);
+            }
+        }
+        throw new ConcurrentModificationException("Couldn't perform poll in less than "
+            + MAX_OPTIMISTIC_LOCKING_ATTEMPTS * shardIds.length + " iterations");
+    }
+
+    @Override
+    public E peek() {
+        int shard = homeShard();
+        for (int i = 0; i < shardIds.length; i++) {
+            DocumentFragment<Lookup> current = bucket.lookupIn(shardIds[(shard + i) % shardIds.length])
+                .get(OLDEST).execute();
+            if (current.status(OLDEST) != ResponseStatus.SUBDOC_PATH_NOT_FOUND) {
+                @SuppressWarnings("unchecked")
+                E element = (E) current.content(OLDEST);
+                return element;
+            }
+        }
+        return null;
+    }
+
+    private int pushShard() {
+        return (nextShard.getAndIncrement() & Integer.MAX_VALUE) % shardIds.length;
+    }
+
+    /**
+     * Consumers start from a shard derived from their thread, so concurrent consumers favor distinct shards.
+     */
+    private int homeShard() {
+        return (int) ((Thread.currentThread().getId() & Integer.MAX_VALUE) % shardIds.length);
+    }
+
+    private void backoff(int attempt) {
+        int bound = Math.min(1 << Math.min(attempt, 5), MAX_BACKOFF_MILLIS);
+        try {
+            Thread.sleep(random.nextInt(bound) + 1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConcurrentModificationException("Interrupted while backing off from a concurrent poll");
+        }
+    }
+
+    private static void checkElement(Object e) {
+        if (e == null) {
+            throw new NullPointerException("Unsupported null value");
+        }
+        if (!JsonValue.checkType(e)) {
+            throw new IllegalArgumentException("Unsupported value type.");
+        }
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2017 Couchbase, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.couchbase.client.java.document;
+
+import com.couchbase.client.core.annotations.InterfaceAudience;
+import com.couchbase.client.core.annotations.InterfaceStability;
+import com.couchbase.client.core.message.kv.MutationToken;
+import com.couchbase.client.deps.io.netty.buffer.ByteBuf;
+import com.couchbase.client.java.transcoder.TranscoderUtils;
+
+/**
+ * Carries the raw {@link ByteBuf} content of a document together with its flags, whatever its format.
+ *
+ * This document is meant for services forwarding documents without looking at them: the buffer received from
+ * the server is handed out as-is on reads and written as-is on mutations, along with the original flags so that
+ * JSON stays JSON and binary stays binary, without any copy to the heap.
+ *
+ * Unlike most other documents, the content is reference counted and ownership is explicit:
+ *
+ * - A document returned by a read owns its buffer, which must be {@link #release() released} (or written) once done.
+ * - Writing a document transfers the ownership of its buffer to the SDK, which releases it once sent. Retain the
+ *   buffer beforehand if it needs to be used afterwards, for instance to write it to several buckets.
+ * - The content of a document returned by a mutation is the buffer which has been written, so it has usually
+ *   already been released at that point.
+ *
+ * If in doubt, prefer {@link RawJsonDocument} or {@link ByteArrayDocument} which are not reference counted.
+ *
+ * @since 2.5.2
+ */
+@InterfaceStability.Experimental
+@InterfaceAudience.Public
+public class PassThroughDocument extends AbstractDocument<ByteBuf> {
+
+    private final int flags;
+
+    /**
+     * Creates a {@link PassThroughDocument} which the document id, JSON content and no flags.
+     *
+     * @param id the per-bucket unique document id.
+     * @return a {@link PassThroughDocument}.
+     */
+    public static PassThroughDocument create(String id) {
+        return new PassThroughDocument(id, 0, null, 0, TranscoderUtils.JSON_COMPAT_FLAGS, null);
+    }
+
+    /**
+     * Creates a {@link PassThroughDocument} which the document id, content and flags.
+     *
+     * @param id the per-bucket unique document id.
+     * @param content the content of the document.
+     * @param flags the flags describing the format of the content.
+     * @return a {@link PassThroughDocument}.
+     */
+    public static PassThroughDocument create(String id, ByteBuf content, int flags) {
+        return new PassThroughDocument(id, 0, content, 0, flags, null);
+    }
+
+    /**
+     * Creates a {@link PassThroughDocument} which the document id, expiration time, content and flags.
+     *
+     * @param id the per-bucket unique document id.
+     * @param expiry the expiration time of the document.
+     * @param content the content of the document.
+     * @param flags the flags describing the format of the content.
+     * @return a {@link PassThroughDocument}.
+     */
+    public static PassThroughDocument create(String id, int expiry, ByteBuf content, int flags) {
+        return new PassThroughDocument(id, expiry, content, 0, flags, null);
+    }
+
+    /**
+     * Creates a {@link PassThroughDocument} which the document id, expiration time, content, CAS value and flags.
+     *
+     * @param id the per-bucket unique document id.
+     * @param expiry the expiration time of the document.
+     * @param content the content of the document.
+     * @param cas the CAS (compare and swap) value for optimistic concurrency.
+     * @param flags the flags describing the format of the content.
+     * @return a {@link PassThroughDocument}.
+     */
+    public static PassThroughDocument create(String id, int expiry, ByteBuf content, long cas, int flags) {
+        return new PassThroughDocument(id, expiry, content, cas, flags, null);
+    }
+
+    /**
+     * Creates a {@link PassThroughDocument} which the document id, expiration time, content, CAS value, flags and
+     * mutation token.
+     *
+     * @param id the per-bucket unique document id.
+     * @param expiry the expiration time of the document.
+     * @param content the content of the document.
+     * @param cas the CAS (compare and swap) value for optimistic concurrency.
+     * @param flags the flags describing the format of the content.
+     * @param mutationToken the optional mutation token of the document.
+     * @return a {@link PassThroughDocument}.
+     */
+    public static PassThroughDocument create(String id, int expiry, ByteBuf content, long cas, int flags,
+        MutationToken mutationToken) {
+        return new PassThroughDocument(id, expiry, content, cas, flags, mutationToken);
+    }
+
+    /**
+     * Creates a copy from a different {@link PassThroughDocument}, but changes the document ID.
+     *
+     * The copy shares the buffer of the original document, so only one of them should be released or written.
+     *
+     * @param doc the original {@link PassThroughDocument} to copy.
+     * @param id the per-bucket unique document id.
+     * @return a copied {@link PassThroughDocument} with the changed properties.
+     */
+    public static PassThroughDocument from(PassThroughDocument doc, String id) {
+        return new PassThroughDocument(id, doc.expiry(), doc.content(), doc.cas(), doc.flags(),
+            doc.mutationToken());
+    }
+
+    /**
+     * Creates a copy from a different {@link PassThroughDocument}, but changes the CAS value.
+     *
+     * The copy shares the buffer of the original document, so only one of them should be released or written.
+     *
+     * @param doc the original {@link PassThroughDocument} to copy.
+     * @param cas the CAS (compare and swap) value for optimistic concurrency.
+     * @return a copied {@link PassThroughDocument} with the changed properties.
+     */
+    public static PassThroughDocument from(PassThroughDocument doc, long cas) {
+        return new PassThroughDocument(doc.id(), doc.expiry(), doc.content(), cas, doc.flags(),
+            doc.mutationToken());
+    }
+
+    private PassThroughDocument(String id, int expiry, ByteBuf content, long cas, int flags,
+        MutationToken mutationToken) {
+        super(id, expiry, content, cas, mutationToken);
+        this.flags = flags;
+    }
+
+    /**
+     * @return the flags describing the format of the content, as stored on the server.
+     */
+    public int flags() {
+        return flags;
+    }
+
+    /**
+     * Releases the content of this document, if any and not already released.
+     *
+     * @return true if the buffer has been deallocated as a result, false otherwise.
+     */
+    public boolean release() {
+        ByteBuf content = content();
+        return content != null && content.refCnt() > 0 && content.release();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(this.getClass().getSimpleName() + "{");
+        sb.append("id='").append(id()).append('\'');
+        sb.append(", cas=").append(cas());
+        sb.append(", expiry=").append(expiry());
+        sb.append(", flags=0x").append(Integer.toHexString(flags));
+        sb.append(", content=").append(content());
+        sb.append(", mutationToken=").append(mutationToken());
+        sb.append('}');
+        return sb.toString();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return super.equals(o) && flags == ((PassThroughDocument) o).flags;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * super.hashCode() + flags;
+    }
+}
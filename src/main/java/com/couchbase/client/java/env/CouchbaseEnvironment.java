@@ -86,6 +86,153 @@ public interface CouchbaseEnvironment extends CoreEnvironment {
      */
     boolean dnsSrvEnabled();
 
+    /**
+     * Returns whether concurrent gets for the same document ID are coalesced into a single request.
+     *
+     * When enabled, every get arriving while another get on the same ID is still in flight shares the
+     * response of the first one instead of sending its own request. Each caller still receives its own
+     * decoded {@link com.couchbase.client.java.document.Document} instance.
+     *
+     * @return true if enabled, false otherwise.
+     */
+    @InterfaceStability.Experimental
+    boolean kvGetCoalescingEnabled();
+
+    /**
+     * Returns whether per-operation latency histograms are recorded for each bucket.
+     *
+     * When enabled, the latencies are available through
+     * {@link com.couchbase.client.java.CouchbaseAsyncBucket#operationMetrics()} and via JMX.
+     *
+     * @return true if enabled, false otherwise.
+     */
+    @InterfaceStability.Experimental
+    boolean operationMetricsEnabled();
+
+    /**
+     * Returns the threshold in milliseconds above which operations are recorded as slow.
+     *
+     * When greater than 0, each bucket keeps the {@link #slowOperationSampleSize()} slowest operations over
+     * the threshold and logs them every {@link #slowOperationLogInterval()}, along with the phase they spent
+     * most of their time in.
+     *
+     * @return the threshold in milliseconds, 0 if disabled.
+     */
+    @InterfaceStability.Experimental
+    long slowOperationThreshold();
+
+    /**
+     * Returns how many of the slowest operations are kept and logged per interval.
+     *
+     * @return the sample size.
+     */
+    @InterfaceStability.Experimental
+    int slowOperationSampleSize();
+
+    /**
+     * Returns the interval in milliseconds at which slow operations are logged.
+     *
+     * @return the interval in milliseconds.
+     */
+    @InterfaceStability.Experimental
+    long slowOperationLogInterval();
+
+    /**
+     * Returns how many documents a multi-document subdoc lookup or mutation works on concurrently.
+     *
+     * @return the maximum number of documents in flight.
+     */
+    @InterfaceStability.Experimental
+    int subdocBatchConcurrency();
+
+    /**
+     * Returns how many entities a bulk repository operation loads or stores concurrently.
+     *
+     * @return the maximum number of entities in flight.
+     */
+    @InterfaceStability.Experimental
+    int repositoryBatchConcurrency();
+
+    /**
+     * Returns whether requests go through client side admission control before being handed to the core.
+     *
+     * When enabled, each bucket limits the number of concurrent KV, query, search, view and analytics requests
+     * per service, adapting the limit to the observed latency and backpressure, and queues the requests over it.
+     *
+     * @return true if admission control is enabled.
+     */
+    @InterfaceStability.Experimental
+    boolean admissionControlEnabled();
+
+    /**
+     * Returns the upper bound, and starting point, of the adaptive per-service concurrency limit.
+     *
+     * @return the maximum number of concurrent requests per service and bucket.
+     */
+    @InterfaceStability.Experimental
+    int admissionMaxConcurrency();
+
+    /**
+     * Returns the latency over which a completed request lowers the concurrency limit of its service.
+     *
+     * With 0, only backpressure from the core lowers the limit.
+     *
+     * @return the latency target in milliseconds.
+     */
+    @InterfaceStability.Experimental
+    long admissionLatencyTarget();
+
+    /**
+     * Returns how many requests can wait for admission per service before new ones are rejected.
+     *
+     * @return the maximum number of queued requests per service and bucket.
+     */
+    @InterfaceStability.Experimental
+    int admissionQueueSize();
+
+    /**
+     * Returns how long a request waits for admission before failing with a backpressure error.
+     *
+     * @return the wait timeout in milliseconds.
+     */
+    @InterfaceStability.Experimental
+    long admissionWaitTimeout();
+
+    /**
+     * Returns the directory the prepared N1QL statements of each bucket are persisted to, so that they survive
+     * restarts.
+     *
+     * @return the directory, or null if prepared statements are not persisted.
+     */
+    @InterfaceStability.Experimental
+    String queryPlanCacheDirectory();
+
+    /**
+     * Returns the interval at which the prepared N1QL statements are persisted, if they changed.
+     *
+     * @return the interval in milliseconds.
+     */
+    @InterfaceStability.Experimental
+    long queryPlanCacheCheckpointInterval();
+
+    /**
+     * Returns the maximum number of batches of N1QL and Analytics rows decoded in parallel on the
+     * {@link #scheduler()}, ahead of their consumption. Rows are decoded inline by their consumer when 0.
+     *
+     * @return the number of batches decoded in parallel, 0 if disabled.
+     */
+    @InterfaceStability.Experimental
+    int queryDecodeParallelism();
+
+    /**
+     * Returns the number of N1QL and Analytics rows decoded together when parallel decoding is enabled. Results
+     * smaller than a batch are always decoded inline.
+     *
+     * @return the number of rows per batch.
+     */
+    @InterfaceStability.Experimental
+    int queryDecodeBatchSize();
+
     /**
      * Returns version information on the Couchbase Java SDK client. Version number
      * is in the form MAJOR.MINOR.PATCH, and is the one for the java-client layer.
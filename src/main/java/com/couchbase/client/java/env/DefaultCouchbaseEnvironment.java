@@ -70,6 +70,22 @@ public class DefaultCouchbaseEnvironment extends DefaultCoreEnvironment implemen
     private static final long KV_TIMEOUT = 2500;
     private static final long CONNECT_TIMEOUT = TimeUnit.SECONDS.toMillis(5);
     private static final boolean DNS_SRV_ENABLED = false;
+    private static final boolean KV_GET_COALESCING_ENABLED = false;
+    private static final boolean OPERATION_METRICS_ENABLED = false;
+    private static final long SLOW_OPERATION_THRESHOLD = 0;
+    private static final int SLOW_OPERATION_SAMPLE_SIZE = 10;
+    private static final long SLOW_OPERATION_LOG_INTERVAL = TimeUnit.SECONDS.toMillis(10);
+    private static final int SUBDOC_BATCH_CONCURRENCY = 64;
+    private static final int REPOSITORY_BATCH_CONCURRENCY = 64;
+    private static final boolean ADMISSION_CONTROL_ENABLED = false;
+    private static final int ADMISSION_MAX_CONCURRENCY = 1024;
+    private static final long ADMISSION_LATENCY_TARGET = 0;
+    private static final int ADMISSION_QUEUE_SIZE = 4096;
+    private static final long ADMISSION_WAIT_TIMEOUT = TimeUnit.SECONDS.toMillis(1);
+    private static final String QUERY_PLAN_CACHE_DIRECTORY = null;
+    private static final long QUERY_PLAN_CACHE_CHECKPOINT_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+    private static final int QUERY_DECODE_PARALLELISM = 0;
+    private static final int QUERY_DECODE_BATCH_SIZE = 512;
 
     private final long managementTimeout;
     private final long queryTimeout;
@@ -79,6 +95,22 @@ public class DefaultCouchbaseEnvironment extends DefaultCoreEnvironment implemen
     private final long kvTimeout;
     private final long connectTimeout;
     private final boolean dnsSrvEnabled;
+    private final boolean kvGetCoalescingEnabled;
+    private final boolean operationMetricsEnabled;
+    private final long slowOperationThreshold;
+    private final int slowOperationSampleSize;
+    private final long slowOperationLogInterval;
+    private final int subdocBatchConcurrency;
+    private final int repositoryBatchConcurrency;
+    private final boolean admissionControlEnabled;
+    private final int admissionMaxConcurrency;
+    private final long admissionLatencyTarget;
+    private final int admissionQueueSize;
+    private final long admissionWaitTimeout;
+    private final String queryPlanCacheDirectory;
+    private final long queryPlanCacheCheckpointInterval;
+    private final int queryDecodeParallelism;
+    private final int queryDecodeBatchSize;
 
     protected static String CLIENT_VERSION;
     protected static String CLIENT_GIT_VERSION;
@@ -143,6 +175,22 @@ public class DefaultCouchbaseEnvironment extends DefaultCoreEnvironment implemen
         analyticsTimeout = longPropertyOr("analyticsTimeout", builder.analyticsTimeout);
         connectTimeout = longPropertyOr("connectTimeout", builder.connectTimeout);
         dnsSrvEnabled = booleanPropertyOr("dnsSrvEnabled", builder.dnsSrvEnabled);
+        kvGetCoalescingEnabled = booleanPropertyOr("kvGetCoalescingEnabled", builder.kvGetCoalescingEnabled);
+        operationMetricsEnabled = booleanPropertyOr("operationMetricsEnabled", builder.operationMetricsEnabled);
+        slowOperationThreshold = longPropertyOr("slowOperationThreshold", builder.slowOperationThreshold);
+        slowOperationSampleSize = intPropertyOr("slowOperationSampleSize", builder.slowOperationSampleSize);
+        slowOperationLogInterval = longPropertyOr("slowOperationLogInterval", builder.slowOperationLogInterval);
+        subdocBatchConcurrency = intPropertyOr("subdocBatchConcurrency", builder.subdocBatchConcurrency);
+        repositoryBatchConcurrency = intPropertyOr("repositoryBatchConcurrency", builder.repositoryBatchConcurrency);
+        admissionControlEnabled = booleanPropertyOr("admissionControlEnabled", builder.admissionControlEnabled);
+        admissionMaxConcurrency = intPropertyOr("admissionMaxConcurrency", builder.admissionMaxConcurrency);
+        admissionLatencyTarget = longPropertyOr("admissionLatencyTarget", builder.admissionLatencyTarget);
+        admissionQueueSize = intPropertyOr("admissionQueueSize", builder.admissionQueueSize);
+        admissionWaitTimeout = longPropertyOr("admissionWaitTimeout", builder.admissionWaitTimeout);
+        queryPlanCacheDirectory = stringPropertyOr("queryPlanCacheDirectory", builder.queryPlanCacheDirectory);
+        queryPlanCacheCheckpointInterval = longPropertyOr("queryPlanCacheCheckpointInterval", builder.queryPlanCacheCheckpointInterval);
+        queryDecodeParallelism = intPropertyOr("queryDecodeParallelism", builder.queryDecodeParallelism);
+        queryDecodeBatchSize = intPropertyOr("queryDecodeBatchSize", builder.queryDecodeBatchSize);
 
         if (queryTimeout > maxRequestLifetime()) {
             LOGGER.warn("The configured query timeout is greater than the maximum request lifetime. " +
@@ -198,6 +246,22 @@ public class DefaultCouchbaseEnvironment extends DefaultCoreEnvironment implemen
         private long analyticsTimeout = ANALYTICS_TIMEOUT;
         private long connectTimeout = CONNECT_TIMEOUT;
         private boolean dnsSrvEnabled = DNS_SRV_ENABLED;
+        private boolean kvGetCoalescingEnabled = KV_GET_COALESCING_ENABLED;
+        private boolean operationMetricsEnabled = OPERATION_METRICS_ENABLED;
+        private long slowOperationThreshold = SLOW_OPERATION_THRESHOLD;
+        private int slowOperationSampleSize = SLOW_OPERATION_SAMPLE_SIZE;
+        private long slowOperationLogInterval = SLOW_OPERATION_LOG_INTERVAL;
+        private int subdocBatchConcurrency = SUBDOC_BATCH_CONCURRENCY;
+        private int repositoryBatchConcurrency = REPOSITORY_BATCH_CONCURRENCY;
+        private boolean admissionControlEnabled = ADMISSION_CONTROL_ENABLED;
+        private int admissionMaxConcurrency = ADMISSION_MAX_CONCURRENCY;
+        private long admissionLatencyTarget = ADMISSION_LATENCY_TARGET;
+        private int admissionQueueSize = ADMISSION_QUEUE_SIZE;
+        private long admissionWaitTimeout = ADMISSION_WAIT_TIMEOUT;
+        private String queryPlanCacheDirectory = QUERY_PLAN_CACHE_DIRECTORY;
+        private long queryPlanCacheCheckpointInterval = QUERY_PLAN_CACHE_CHECKPOINT_INTERVAL;
+        private int queryDecodeParallelism = QUERY_DECODE_PARALLELISM;
+        private int queryDecodeBatchSize = QUERY_DECODE_BATCH_SIZE;
 
         public Builder() {
             super();
@@ -438,6 +502,86 @@ public class DefaultCouchbaseEnvironment extends DefaultCoreEnvironment implemen
             return this;
         }
 
+        public Builder kvGetCoalescingEnabled(boolean kvGetCoalescingEnabled) {
+            this.kvGetCoalescingEnabled = kvGetCoalescingEnabled;
+            return this;
+        }
+
+        public Builder operationMetricsEnabled(boolean operationMetricsEnabled) {
+            this.operationMetricsEnabled = operationMetricsEnabled;
+            return this;
+        }
+
+        public Builder slowOperationThreshold(long slowOperationThreshold) {
+            this.slowOperationThreshold = slowOperationThreshold;
+            return this;
+        }
+
+        public Builder slowOperationSampleSize(int slowOperationSampleSize) {
+            this.slowOperationSampleSize = slowOperationSampleSize;
+            return this;
+        }
+
+        public Builder slowOperationLogInterval(long slowOperationLogInterval) {
+            this.slowOperationLogInterval = slowOperationLogInterval;
+            return this;
+        }
+
+        public Builder subdocBatchConcurrency(int subdocBatchConcurrency) {
+            this.subdocBatchConcurrency = subdocBatchConcurrency;
+            return this;
+        }
+
+        public Builder repositoryBatchConcurrency(int repositoryBatchConcurrency) {
+            this.repositoryBatchConcurrency = repositoryBatchConcurrency;
+            return this;
+        }
+
+        public Builder admissionControlEnabled(boolean admissionControlEnabled) {
+            this.admissionControlEnabled = admissionControlEnabled;
+            return this;
+        }
+
+        public Builder admissionMaxConcurrency(int admissionMaxConcurrency) {
+            this.admissionMaxConcurrency = admissionMaxConcurrency;
+            return this;
+        }
+
+        public Builder admissionLatencyTarget(long admissionLatencyTarget) {
+            this.admissionLatencyTarget = admissionLatencyTarget;
+            return this;
+        }
+
+        public Builder admissionQueueSize(int admissionQueueSize) {
+            this.admissionQueueSize = admissionQueueSize;
+            return this;
+        }
+
+        public Builder admissionWaitTimeout(long admissionWaitTimeout) {
+            this.admissionWaitTimeout = admissionWaitTimeout;
+            return this;
+        }
+
+        public Builder queryPlanCacheDirectory(String queryPlanCacheDirectory) {
+            this.queryPlanCacheDirectory = queryPlanCacheDirectory;
+            return this;
+        }
+
+        public Builder queryPlanCacheCheckpointInterval(long queryPlanCacheCheckpointInterval) {
+            this.queryPlanCacheCheckpointInterval = queryPlanCacheCheckpointInterval;
+            return this;
+        }
+
+        public Builder queryDecodeParallelism(int queryDecodeParallelism) {
+            this.queryDecodeParallelism = queryDecodeParallelism;
+            return this;
+        }
+
+        public Builder queryDecodeBatchSize(int queryDecodeBatchSize) {
+            this.queryDecodeBatchSize = queryDecodeBatchSize;
+            return this;
+        }
+
         @Override
         public Builder mutationTokensEnabled(boolean mutationTokensEnabled) {
             super.mutationTokensEnabled(mutationTokensEnabled);
@@ -664,6 +808,86 @@ public class DefaultCouchbaseEnvironment extends DefaultCoreEnvironment implemen
         return dnsSrvEnabled;
     }
 
+    @Override
+    public boolean kvGetCoalescingEnabled() {
+        return kvGetCoalescingEnabled;
+    }
+
+    @Override
+    public boolean operationMetricsEnabled() {
+        return operationMetricsEnabled;
+    }
+
+    @Override
+    public long slowOperationThreshold() {
+        return slowOperationThreshold;
+    }
+
+    @Override
+    public int slowOperationSampleSize() {
+        return slowOperationSampleSize;
+    }
+
+    @Override
+    public long slowOperationLogInterval() {
+        return slowOperationLogInterval;
+    }
+
+    @Override
+    public int subdocBatchConcurrency() {
+        return subdocBatchConcurrency;
+    }
+
+    @Override
+    public int repositoryBatchConcurrency() {
+        return repositoryBatchConcurrency;
+    }
+
+    @Override
+    public boolean admissionControlEnabled() {
+        return admissionControlEnabled;
+    }
+
+    @Override
+    public int admissionMaxConcurrency() {
+        return admissionMaxConcurrency;
+    }
+
+    @Override
+    public long admissionLatencyTarget() {
+        return admissionLatencyTarget;
+    }
+
+    @Override
+    public int admissionQueueSize() {
+        return admissionQueueSize;
+    }
+
+    @Override
+    public long admissionWaitTimeout() {
+        return admissionWaitTimeout;
+    }
+
+    @Override
+    public String queryPlanCacheDirectory() {
+        return queryPlanCacheDirectory;
+    }
+
+    @Override
+    public long queryPlanCacheCheckpointInterval() {
+        return queryPlanCacheCheckpointInterval;
+    }
+
+    @Override
+    public int queryDecodeParallelism() {
+        return queryDecodeParallelism;
+    }
+
+    @Override
+    public int queryDecodeBatchSize() {
+        return queryDecodeBatchSize;
+    }
+
     @Override
     public String clientVersion() {
         return CLIENT_VERSION;
@@ -686,6 +910,22 @@ public class DefaultCouchbaseEnvironment extends DefaultCoreEnvironment implemen
         sb.append(", kvTimeout=").append(this.kvTimeout);
         sb.append(", connectTimeout=").append(this.connectTimeout);
         sb.append(", dnsSrvEnabled=").append(this.dnsSrvEnabled);
+        sb.append(", kvGetCoalescingEnabled=").append(this.kvGetCoalescingEnabled);
+        sb.append(", operationMetricsEnabled=").append(this.operationMetricsEnabled);
+        sb.append(", slowOperationThreshold=").append(this.slowOperationThreshold);
+        sb.append(", slowOperationSampleSize=").append(this.slowOperationSampleSize);
+        sb.append(", slowOperationLogInterval=").append(this.slowOperationLogInterval);
+        sb.append(", subdocBatchConcurrency=").append(this.subdocBatchConcurrency);
+        sb.append(", repositoryBatchConcurrency=").append(this.repositoryBatchConcurrency);
+        sb.append(", admissionControlEnabled=").append(this.admissionControlEnabled);
+        sb.append(", admissionMaxConcurrency=").append(this.admissionMaxConcurrency);
+        sb.append(", admissionLatencyTarget=").append(this.admissionLatencyTarget);
+        sb.append(", admissionQueueSize=").append(this.admissionQueueSize);
+        sb.append(", admissionWaitTimeout=").append(this.admissionWaitTimeout);
+        sb.append(", queryPlanCacheDirectory=").append(this.queryPlanCacheDirectory);
+        sb.append(", queryPlanCacheCheckpointInterval=").append(this.queryPlanCacheCheckpointInterval);
+        sb.append(", queryDecodeParallelism=").append(this.queryDecodeParallelism);
+        sb.append(", queryDecodeBatchSize=").append(this.queryDecodeBatchSize);
         return sb;
     }
 
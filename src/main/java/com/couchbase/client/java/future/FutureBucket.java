@@ -0,0 +1,522 @@
+/*
+ * Copyright (c) 2017 Couchbase, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.couchbase.client.java.future;
+
+import java.util.Collections;
+import java.util.Map;
+
+import com.couchbase.client.core.ClusterFacade;
+import com.couchbase.client.core.CouchbaseException;
+import com.couchbase.client.core.annotations.InterfaceAudience;
+import com.couchbase.client.core.annotations.InterfaceStability;
+import com.couchbase.client.core.lang.Tuple2;
+import com.couchbase.client.core.logging.CouchbaseLogger;
+import com.couchbase.client.core.logging.CouchbaseLoggerFactory;
+import com.couchbase.client.core.message.CouchbaseRequest;
+import com.couchbase.client.core.message.CouchbaseResponse;
+import com.couchbase.client.core.message.ResponseStatus;
+import com.couchbase.client.core.message.kv.AbstractKeyValueResponse;
+import com.couchbase.client.core.message.kv.GetRequest;
+import com.couchbase.client.core.message.kv.GetResponse;
+import com.couchbase.client.core.message.kv.InsertRequest;
+import com.couchbase.client.core.message.kv.InsertResponse;
+import com.couchbase.client.core.message.kv.RemoveRequest;
+import com.couchbase.client.core.message.kv.RemoveResponse;
+import com.couchbase.client.core.message.kv.ReplaceRequest;
+import com.couchbase.client.core.message.kv.ReplaceResponse;
+import com.couchbase.client.core.message.kv.UpsertRequest;
+import com.couchbase.client.core.message.kv.UpsertResponse;
+import com.couchbase.client.core.message.kv.subdoc.multi.Mutation;
+import com.couchbase.client.core.message.kv.subdoc.simple.SimpleSubdocResponse;
+import com.couchbase.client.core.message.kv.subdoc.simple.SubDictUpsertRequest;
+import com.couchbase.client.core.message.kv.subdoc.simple.SubExistRequest;
+import com.couchbase.client.core.message.kv.subdoc.simple.SubGetRequest;
+import com.couchbase.client.deps.io.netty.buffer.ByteBuf;
+import com.couchbase.client.java.document.Document;
+import com.couchbase.client.java.document.JsonDocument;
+import com.couchbase.client.java.error.CASMismatchException;
+import com.couchbase.client.java.error.CouchbaseOutOfMemoryException;
+import com.couchbase.client.java.error.DocumentAlreadyExistsException;
+import com.couchbase.client.java.error.DocumentDoesNotExistException;
+import com.couchbase.client.java.error.RequestTooBigException;
+import com.couchbase.client.java.error.TemporaryFailureException;
+import com.couchbase.client.java.error.subdoc.PathInvalidException;
+import com.couchbase.client.java.error.subdoc.PathMismatchException;
+import com.couchbase.client.java.subdoc.DocumentFragment;
+import com.couchbase.client.java.subdoc.SubdocHelper;
+import com.couchbase.client.java.subdoc.SubdocOperationResult;
+import com.couchbase.client.java.transcoder.Transcoder;
+import com.couchbase.client.java.transcoder.subdoc.FragmentTranscoder;
+import rx.Subscriber;
+
+/**
+ * Exposes the single-result key/value and sub-document operations of a bucket as {@link ResultFuture}s.
+ *
+ * Every operation sends its request to the core and subscribes a single subscriber to the response, which
+ * decodes it and completes the future. There is no deferred {@link rx.Observable} and operator chain in between,
+ * and blocking on {@link ResultFuture#await(long, java.util.concurrent.TimeUnit)} waits on the future itself
+ * instead of a latch and a tracking subscriber, so each operation allocates and dispatches less than its
+ * counterpart on {@link com.couchbase.client.java.AsyncBucket} or {@link com.couchbase.client.java.Bucket}.
+ *
+ * The requests are sent right away, the result and the errors are the same as with the
+ * {@link com.couchbase.client.java.AsyncBucket} operations. Durability requirements, get coalescing and
+ * operation metrics are not supported on this path.
+ *
+ * @since 2.5.2
+ */
+@InterfaceStability.Experimental
+@InterfaceAudience.Public
+public class FutureBucket {
+
+    private static final CouchbaseLogger LOGGER = CouchbaseLoggerFactory.getInstance(FutureBucket.class);
+
+    private final ClusterFacade core;
+    private final String bucket;
+    private final Map<Class<? extends Document>, Transcoder<? extends Document, ?>> transcoders;
+    private final FragmentTranscoder fragmentTranscoder;
+
+    @InterfaceAudience.Private
+    public FutureBucket(final ClusterFacade core, final String bucket,
+        final Map<Class<? extends Document>, Transcoder<? extends Document, ?>> transcoders,
+        final FragmentTranscoder fragmentTranscoder) {
+        this.core = core;
+        this.bucket = bucket;
+        this.transcoders = transcoders;
+        this.fragmentTranscoder = fragmentTranscoder;
+    }
+
+    /**
+     * Retrieves a {@link JsonDocument} by its unique ID.
+     *
+     * @param id the unique ID of the document.
+     * @return a future completed with the document, or with null if it does not exist.
+     */
+    public ResultFuture<JsonDocument> get(final String id) {
+        return get(id, JsonDocument.class);
+    }
+
+    /**
+     * Retrieves any type of {@link Document} by the ID of the given document.
+     *
+     * @param document the source document from which the ID and the type are taken.
+     * @return a future completed with the document, or with null if it does not exist.
+     */
+    @SuppressWarnings("unchecked")
+    public <D extends Document<?>> ResultFuture<D> get(final D document) {
+        return get(document.id(), (Class<D>) document.getClass());
+    }
+
+    /**
+     * Retrieves any type of {@link Document} by its unique ID.
+     *
+     * @param id the unique ID of the document.
+     * @param target the target document type.
+     * @return a future completed with the document, or with null if it does not exist.
+     */
+    @SuppressWarnings("unchecked")
+    public <D extends Document<?>> ResultFuture<D> get(final String id, final Class<D> target) {
+        final Transcoder<?, Object> transcoder = (Transcoder<?, Object>) transcoders.get(target);
+        return send(new GetRequest(id, bucket), new ResponseHandler<GetResponse, D>() {
+            @Override
+            D decode(GetResponse response) {
+                if (response.status().isSuccess()) {
+                    return (D) transcoder.decode(id, response.content(), response.cas(), 0, response.flags(),
+                        response.status());
+                }
+                release(response);
+                switch (response.status()) {
+                    case NOT_EXISTS:
+                        return null;
+                    case TEMPORARY_FAILURE:
+                    case SERVER_BUSY:
+                        throw addDetails(new TemporaryFailureException(), response);
+                    case OUT_OF_MEMORY:
+                        throw addDetails(new CouchbaseOutOfMemoryException(), response);
+                    default:
+                        throw addDetails(new CouchbaseException(response.status().toString()), response);
+                }
+            }
+        });
+    }
+
+    /**
+     * Inserts a {@link Document} if it does not exist already.
+     *
+     * @param document the document to insert.
+     * @return a future completed with the document and its new CAS, or failed with a
+     *   {@link DocumentAlreadyExistsException} if it already exists.
+     */
+    @SuppressWarnings("unchecked")
+    public <D extends Document<?>> ResultFuture<D> insert(final D document) {
+        final Transcoder<Document<Object>, Object> transcoder =
+            (Transcoder<Document<Object>, Object>) transcoders.get(document.getClass());
+        Tuple2<ByteBuf, Integer> encoded;
+        try {
+            encoded = transcoder.encode((Document<Object>) document);
+        } catch (RuntimeException e) {
+            return failed(e);
+        }
+
+        return send(new InsertRequest(document.id(), encoded.value1(), document.expiry(), encoded.value2(), bucket),
+            new ResponseHandler<InsertResponse, D>() {
+                @Override
+                D decode(InsertResponse response) {
+                    release(response);
+                    if (response.status().isSuccess()) {
+                        return (D) transcoder.newDocument(document.id(), document.expiry(), document.content(),
+                            response.cas(), response.mutationToken());
+                    }
+                    switch (response.status()) {
+                        case TOO_BIG:
+                            throw addDetails(new RequestTooBigException(), response);
+                        case EXISTS:
+                            throw addDetails(new DocumentAlreadyExistsException(), response);
+                        default:
+                            throw commonErrors(response);
+                    }
+                }
+            });
+    }
+
+    /**
+     * Inserts or overwrites a {@link Document}.
+     *
+     * @param document the document to upsert.
+     * @return a future completed with the document and its new CAS.
+     */
+    @SuppressWarnings("unchecked")
+    public <D extends Document<?>> ResultFuture<D> upsert(final D document) {
+        final Transcoder<Document<Object>, Object> transcoder =
+            (Transcoder<Document<Object>, Object>) transcoders.get(document.getClass());
+        Tuple2<ByteBuf, Integer> encoded;
+        try {
+            encoded = transcoder.encode((Document<Object>) document);
+        } catch (RuntimeException e) {
+            return failed(e);
+        }
+
+        return send(new UpsertRequest(document.id(), encoded.value1(), document.expiry(), encoded.value2(), bucket),
+            new ResponseHandler<UpsertResponse, D>() {
+                @Override
+                D decode(UpsertResponse response) {
+                    release(response);
+                    if (response.status().isSuccess()) {
+                        return (D) transcoder.newDocument(document.id(), document.expiry(), document.content(),
+                            response.cas(), response.mutationToken());
+                    }
+                    switch (response.status()) {
+                        case TOO_BIG:
+                            throw addDetails(new RequestTooBigException(), response);
+                        case EXISTS:
+                        case LOCKED:
+                            throw addDetails(new CASMismatchException(), response);
+                        default:
+                            throw commonErrors(response);
+                    }
+                }
+            });
+    }
+
+    /**
+     * Replaces a {@link Document} if it exists, guarded by its CAS if set.
+     *
+     * @param document the document to replace.
+     * @return a future completed with the document and its new CAS, or failed with a
+     *   {@link DocumentDoesNotExistException} or a {@link CASMismatchException}.
+     */
+    @SuppressWarnings("unchecked")
+    public <D extends Document<?>> ResultFuture<D> replace(final D document) {
+        final Transcoder<Document<Object>, Object> transcoder =
+            (Transcoder<Document<Object>, Object>) transcoders.get(document.getClass());
+        Tuple2<ByteBuf, Integer> encoded;
+        try {
+            encoded = transcoder.encode((Document<Object>) document);
+        } catch (RuntimeException e) {
+            return failed(e);
+        }
+
+        return send(new ReplaceRequest(document.id(), encoded.value1(), document.cas(), document.expiry(),
+                encoded.value2(), bucket),
+            new ResponseHandler<ReplaceResponse, D>() {
+                @Override
+                D decode(ReplaceResponse response) {
+                    release(response);
+                    if (response.status().isSuccess()) {
+                        return (D) transcoder.newDocument(document.id(), document.expiry(), document.content(),
+                            response.cas(), response.mutationToken());
+                    }
+                    switch (response.status()) {
+                        case TOO_BIG:
+                            throw addDetails(new RequestTooBigException(), response);
+                        case NOT_EXISTS:
+                            throw addDetails(new DocumentDoesNotExistException(), response);
+                        case EXISTS:
+                        case LOCKED:
+                            throw addDetails(new CASMismatchException(), response);
+                        default:
+                            throw commonErrors(response);
+                    }
+                }
+            });
+    }
+
+    /**
+     * Removes a {@link JsonDocument} by its unique ID.
+     *
+     * @param id the unique ID of the document.
+     * @return a future completed with a document holding the ID and the new CAS.
+     */
+    public ResultFuture<JsonDocument> remove(final String id) {
+        return remove(id, JsonDocument.class);
+    }
+
+    /**
+     * Removes any type of {@link Document} by its unique ID.
+     *
+     * @param id the unique ID of the document.
+     * @param target the target document type.
+     * @return a future completed with a document holding the ID and the new CAS.
+     */
+    @SuppressWarnings("unchecked")
+    public <D extends Document<?>> ResultFuture<D> remove(final String id, final Class<D> target) {
+        Transcoder<Document<Object>, Object> transcoder = (Transcoder<Document<Object>, Object>) transcoders.get(target);
+        return remove((D) transcoder.newDocument(id, 0, null, 0));
+    }
+
+    /**
+     * Removes a {@link Document}, guarded by its CAS if set.
+     *
+     * @param document the document to remove.
+     * @return a future completed with a document holding the ID and the new CAS, or failed with a
+     *   {@link DocumentDoesNotExistException} or a {@link CASMismatchException}.
+     */
+    @SuppressWarnings("unchecked")
+    public <D extends Document<?>> ResultFuture<D> remove(final D document) {
+        final Transcoder<Document<Object>, Object> transcoder =
+            (Transcoder<Document<Object>, Object>) transcoders.get(document.getClass());
+        return send(new RemoveRequest(document.id(), document.cas(), bucket),
+            new ResponseHandler<RemoveResponse, D>() {
+                @Override
+                D decode(RemoveResponse response) {
+                    release(response);
+                    if (response.status().isSuccess()) {
+                        return (D) transcoder.newDocument(document.id(), 0, null, response.cas(),
+                            response.mutationToken());
+                    }
+                    switch (response.status()) {
+                        case NOT_EXISTS:
+                            throw addDetails(new DocumentDoesNotExistException(), response);
+                        case EXISTS:
+                        case LOCKED:
+                            throw addDetails(new CASMismatchException(), response);
+                        default:
+                            throw commonErrors(response);
+                    }
+                }
+            });
+    }
+
+    /**
+     * Retrieves the value at a path inside a JSON document, without fetching the whole document.
+     *
+     * @param id the unique ID of the document.
+     * @param path the path of the value.
+     * @param fragmentType the type the value is decoded to.
+     * @return a future completed with the value, or with null if the path does not exist.
+     */
+    public <T> ResultFuture<T> getIn(final String id, final String path, final Class<T> fragmentType) {
+        return send(new SubGetRequest(id, path, bucket), new ResponseHandler<SimpleSubdocResponse, T>() {
+            @Override
+            T decode(SimpleSubdocResponse response) {
+                try {
+                    if (response.status().isSuccess()) {
+                        return fragmentTranscoder.decodeWithMessage(response.content(), fragmentType,
+                            "Couldn't decode subget fragment for " + id + "/" + path);
+                    } else if (response.status() == ResponseStatus.SUBDOC_PATH_NOT_FOUND) {
+                        return null;
+                    }
+                    throw SubdocHelper.commonSubdocErrors(response.status(), id, path);
+                } finally {
+                    release(response);
+                }
+            }
+        });
+    }
+
+    /**
+     * Checks if a path exists inside a JSON document, without fetching the whole document.
+     *
+     * @param id the unique ID of the document.
+     * @param path the path to check.
+     * @return a future completed with true if the path exists, false otherwise.
+     */
+    public ResultFuture<Boolean> existsIn(final String id, final String path) {
+        return send(new SubExistRequest(id, path, bucket), new ResponseHandler<SimpleSubdocResponse, Boolean>() {
+            @Override
+            Boolean decode(SimpleSubdocResponse response) {
+                release(response);
+                if (response.status().isSuccess()) {
+                    return Boolean.TRUE;
+                } else if (response.status() == ResponseStatus.SUBDOC_PATH_NOT_FOUND) {
+                    return Boolean.FALSE;
+                }
+                throw SubdocHelper.commonSubdocErrors(response.status(), id, path);
+            }
+        });
+    }
+
+    /**
+     * Inserts or replaces the value at a path inside a JSON document, without sending the whole document.
+     *
+     * @param id the unique ID of the document.
+     * @param path the path of the value, which must end in a dictionary entry.
+     * @param value the new value.
+     * @param createParents true to create the missing parents of the path.
+     * @return a future completed with a fragment holding the new CAS and mutation token of the document.
+     */
+    public <T> ResultFuture<DocumentFragment<Mutation>> upsertIn(final String id, final String path, final T value,
+        final boolean createParents) {
+        ByteBuf fragment;
+        try {
+            fragment = fragmentTranscoder.encodeWithMessage(value,
+                "Couldn't encode subdoc fragment " + id + "/" + path + " \"" + value + "\"");
+        } catch (RuntimeException e) {
+            return failed(e);
+        }
+
+        SubDictUpsertRequest request = new SubDictUpsertRequest(id, path, fragment, bucket);
+        request.createIntermediaryPath(createParents);
+        return send(request, new ResponseHandler<SimpleSubdocResponse, DocumentFragment<Mutation>>() {
+            @Override
+            DocumentFragment<Mutation> decode(SimpleSubdocResponse response) {
+                release(response);
+                switch (response.status()) {
+                    case SUCCESS:
+                        SubdocOperationResult<Mutation> result = SubdocOperationResult.createResult(path,
+                            Mutation.DICT_UPSERT, response.status(), null);
+                        return new DocumentFragment<Mutation>(id, response.cas(), response.mutationToken(),
+                            Collections.singletonList(result));
+                    case SUBDOC_PATH_INVALID:
+                        throw new PathInvalidException("Path " + path + " ends in an array index in "
+                            + id + ", expected dictionary");
+                    case SUBDOC_PATH_MISMATCH:
+                        throw new PathMismatchException("Path " + path + " ends in a scalar value in "
+                            + id + ", expected dictionary");
+                    default:
+                        throw SubdocHelper.commonSubdocErrors(response.status(), id, path);
+                }
+            }
+        });
+    }
+
+    /**
+     * Sends the request and wires its response into the future of the handler.
+     */
+    private <R extends CouchbaseResponse, T> ResultFuture<T> send(CouchbaseRequest request,
+        ResponseHandler<R, T> handler) {
+        try {
+            core.<R>send(request).unsafeSubscribe(handler);
+        } catch (RuntimeException e) {
+            handler.future.fail(e);
+        }
+        return handler.future;
+    }
+
+    private static <T> ResultFuture<T> failed(Throwable cause) {
+        ResultFuture<T> future = new ResultFuture<T>();
+        future.fail(cause);
+        return future;
+    }
+
+    private static void release(AbstractKeyValueResponse response) {
+        ByteBuf content = response.content();
+        if (content != null && content.refCnt() > 0) {
+            content.release();
+        }
+    }
+
+    private static CouchbaseException commonErrors(CouchbaseResponse response) {
+        switch (response.status()) {
+            case TEMPORARY_FAILURE:
+            case SERVER_BUSY:
+                return addDetails(new TemporaryFailureException(), response);
+            case OUT_OF_MEMORY:
+                return addDetails(new CouchbaseOutOfMemoryException(), response);
+            default:
+                return addDetails(new CouchbaseException(response.status().toString()), response);
+        }
+    }
+
+    /**
+     * Helper method to encapsulate the logic of enriching the exception with detailed status info.
+     */
+    private static <X extends CouchbaseException, R extends CouchbaseResponse> X addDetails(X ex, R r) {
+        if (r.statusDetails() != null) {
+            ex.details(r.statusDetails());
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("{} returned with enhanced error details {}", r, ex);
+            }
+        }
+        return ex;
+    }
+
+    /**
+     * Subscribes to the response of a single request and completes its future with the decoded response.
+     *
+     * The subscriber is never unsubscribed, so that the content of a response arriving after the future got
+     * cancelled can still be released.
+     */
+    private abstract static class ResponseHandler<R extends CouchbaseResponse, T> extends Subscriber<R> {
+
+        final ResultFuture<T> future = new ResultFuture<T>();
+
+        /**
+         * Decodes the response and releases its content, throwing if it is a failure.
+         */
+        abstract T decode(R response);
+
+        @Override
+        public void onNext(R response) {
+            if (future.isDone()) {
+                if (response instanceof AbstractKeyValueResponse) {
+                    release((AbstractKeyValueResponse) response);
+                }
+                return;
+            }
+
+            T result;
+            try {
+                result = decode(response);
+            } catch (Throwable t) {
+                future.fail(t);
+                return;
+            }
+            future.complete(result);
+        }
+
+        @Override
+        public void onError(Throwable e) {
+            future.fail(e);
+        }
+
+        @Override
+        public void onCompleted() {
+            if (!future.isDone()) {
+                future.fail(new CouchbaseException("The request completed without a response"));
+            }
+        }
+    }
+}
@@ -0,0 +1,301 @@
+/*
+ * Copyright (c) 2017 Couchbase, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.couchbase.client.java.future;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.couchbase.client.core.annotations.InterfaceAudience;
+import com.couchbase.client.core.annotations.InterfaceStability;
+import com.couchbase.client.core.logging.CouchbaseLogger;
+import com.couchbase.client.core.logging.CouchbaseLoggerFactory;
+
+/**
+ * The result of a single operation sent through a {@link FutureBucket}, completed directly when the response
+ * arrives.
+ *
+ * Next to the {@link Future} contract, listeners can be registered with {@link #addListener(ResultListener)}
+ * and {@link #await(long, TimeUnit)} blocks with the same semantics as the blocking {@link
+ * com.couchbase.client.java.Bucket} API: the failure is thrown as-is and a timeout is raised as a
+ * {@link TimeoutException} nested in a {@link RuntimeException}.
+ *
+ * Listeners run on the thread completing the future, which usually is an I/O or computation thread of the SDK,
+ * so they must not block. On Java 8 a listener completing a `CompletableFuture` bridges to it:
+ *
+ * ```java
+ * final CompletableFuture<JsonDocument> cf = new CompletableFuture<JsonDocument>();
+ * bucket.futures().get("id").addListener(new ResultListener<JsonDocument>() {
+ *     public void onSuccess(JsonDocument result) { cf.complete(result); }
+ *     public void onFailure(Throwable cause) { cf.completeExceptionally(cause); }
+ * });
+ * ```
+ *
+ * Cancelling a future only discards its result, the request itself is not withdrawn.
+ *
+ * @since 2.5.2
+ */
+@InterfaceStability.Experimental
+@InterfaceAudience.Public
+public class ResultFuture<T> implements Future<T> {
+
+    private static final CouchbaseLogger LOGGER = CouchbaseLoggerFactory.getInstance(ResultFuture.class);
+
+    private volatile boolean done;
+    private T result;
+    private Throwable cause;
+    private boolean cancelled;
+    /** null, a single {@link ResultListener} or a list of them, only accessed while holding the monitor. */
+    private Object listeners;
+
+    ResultFuture() {
+    }
+
+    /**
+     * Adds a listener, called right away on the current thread if the future is already completed.
+     *
+     * @param listener the listener to notify on completion.
+     * @return this future, for chaining purposes.
+     */
+    @SuppressWarnings("unchecked")
+    public ResultFuture<T> addListener(ResultListener<? super T> listener) {
+        synchronized (this) {
+            if (!done) {
+                if (listeners == null) {
+                    listeners = listener;
+                } else if (listeners instanceof List) {
+                    ((List<Object>) listeners).add(listener);
+                } else {
+                    List<Object> all = new ArrayList<Object>(2);
+                    all.add(listeners);
+                    all.add(listener);
+                    listeners = all;
+                }
+                return this;
+            }
+        }
+        notifyListener(listener);
+        return this;
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return fail(new CancellationException(), true);
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    @Override
+    public boolean isDone() {
+        return done;
+    }
+
+    /**
+     * Returns whether the future completed successfully.
+     *
+     * @return true if completed with a result, false if not completed yet, failed or cancelled.
+     */
+    public synchronized boolean isSuccess() {
+        return done && cause == null;
+    }
+
+    /**
+     * Returns the failure of the operation.
+     *
+     * @return the failure, or null if not completed yet or successful.
+     */
+    public synchronized Throwable cause() {
+        return cause;
+    }
+
+    @Override
+    public T get() throws InterruptedException, ExecutionException {
+        synchronized (this) {
+            while (!done) {
+                wait();
+            }
+        }
+        return resultOrThrow();
+    }
+
+    @Override
+    public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        if (!waitFor(unit.toNanos(timeout))) {
+            throw new TimeoutException();
+        }
+        return resultOrThrow();
+    }
+
+    /**
+     * Blocks until the operation completes and returns its result.
+     *
+     * If the timeout kicks in the future is cancelled, so that a late response is released as soon as it arrives.
+     *
+     * @param timeout the maximum time to wait.
+     * @param unit the unit of the timeout.
+     * @return the result of the operation.
+     * @throws RuntimeException the failure of the operation, wrapping it if it is a checked exception, or a
+     *   {@link TimeoutException} nested in a {@link RuntimeException} if the timeout kicked in.
+     */
+    public T await(long timeout, TimeUnit unit) {
+        try {
+            if (!waitFor(unit.toNanos(timeout))) {
+                cancel(false);
+                throw new RuntimeException(new TimeoutException());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for the operation to complete.", e);
+        }
+
+        synchronized (this) {
+            if (cause == null) {
+                return result;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    /**
+     * Completes the future with a result.
+     *
+     * @return true if completed, false if it was already completed.
+     */
+    boolean complete(T value) {
+        Object toNotify;
+        synchronized (this) {
+            if (done) {
+                return false;
+            }
+            result = value;
+            done = true;
+            toNotify = listeners;
+            listeners = null;
+            notifyAll();
+        }
+        notifyListeners(toNotify);
+        return true;
+    }
+
+    /**
+     * Completes the future with a failure.
+     *
+     * @return true if completed, false if it was already completed.
+     */
+    boolean fail(Throwable failure) {
+        return fail(failure, false);
+    }
+
+    private boolean fail(Throwable failure, boolean cancel) {
+        Object toNotify;
+        synchronized (this) {
+            if (done) {
+                return false;
+            }
+            cause = failure;
+            cancelled = cancel;
+            done = true;
+            toNotify = listeners;
+            listeners = null;
+            notifyAll();
+        }
+        notifyListeners(toNotify);
+        return true;
+    }
+
+    private boolean waitFor(long nanos) throws InterruptedException {
+        if (done) {
+            return true;
+        }
+        long deadline = System.nanoTime() + nanos;
+        synchronized (this) {
+            while (!done) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+        }
+        return true;
+    }
+
+    private synchronized T resultOrThrow() throws ExecutionException {
+        if (cancelled) {
+            throw (CancellationException) cause;
+        }
+        if (cause != null) {
+            throw new ExecutionException(cause);
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void notifyListeners(Object toNotify) {
+        if (toNotify == null) {
+            return;
+        }
+        if (toNotify instanceof List) {
+            for (Object listener : (List<Object>) toNotify) {
+                notifyListener((ResultListener<? super T>) listener);
+            }
+        } else {
+            notifyListener((ResultListener<? super T>) toNotify);
+        }
+    }
+
+    private void notifyListener(ResultListener<? super T> listener) {
+        T value;
+        Throwable failure;
+        synchronized (this) {
+            value = result;
+            failure = cause;
+        }
+        try {
+            if (failure == null) {
+                listener.onSuccess(value);
+            } else {
+                listener.onFailure(failure);
+            }
+        } catch (RuntimeException e) {
+            LOGGER.warn("Listener {} of an operation threw an exception.", listener, e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        synchronized (this) {
+            if (!done) {
+                return "ResultFuture{pending}";
+            } else if (cancelled) {
+                return "ResultFuture{cancelled}";
+            } else if (cause != null) {
+                return "ResultFuture{failure=" + cause + "}";
+            }
+            return "ResultFuture{success=" + result + "}";
+        }
+    }
+}
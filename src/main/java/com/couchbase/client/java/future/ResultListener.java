@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2017 Couchbase, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.couchbase.client.java.future;
+
+import com.couchbase.client.core.annotations.InterfaceAudience;
+import com.couchbase.client.core.annotations.InterfaceStability;
+
+/**
+ * Gets notified when a {@link ResultFuture} completes.
+ *
+ * @since 2.5.2
+ */
+@InterfaceStability.Experimental
+@InterfaceAudience.Public
+public interface ResultListener<T> {
+
+    /**
+     * Called with the result once the operation succeeded.
+     *
+     * @param result the result, which can be null if the operation has no result (like a get of a missing document).
+     */
+    void onSuccess(T result);
+
+    /**
+     * Called once the operation failed or was cancelled.
+     *
+     * @param cause the failure, a {@link java.util.concurrent.CancellationException} if it was cancelled.
+     */
+    void onFailure(Throwable cause);
+}
@@ -0,0 +1,668 @@
+/*
+ * Copyright (c) 2017 Couchbase, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.couchbase.client.java.largeobject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.couchbase.client.core.CouchbaseException;
+import com.couchbase.client.core.annotations.InterfaceAudience;
+import com.couchbase.client.core.annotations.InterfaceStability;
+import com.couchbase.client.core.logging.CouchbaseLogger;
+import com.couchbase.client.core.logging.CouchbaseLoggerFactory;
+import com.couchbase.client.deps.io.netty.buffer.ByteBuf;
+import com.couchbase.client.deps.io.netty.buffer.Unpooled;
+import com.couchbase.client.java.AsyncBucket;
+import com.couchbase.client.java.document.BinaryDocument;
+import com.couchbase.client.java.document.JsonDocument;
+import com.couchbase.client.java.error.CASMismatchException;
+import com.couchbase.client.java.error.DocumentAlreadyExistsException;
+import com.couchbase.client.java.error.DocumentDoesNotExistException;
+import rx.Observable;
+import rx.Subscriber;
+import rx.functions.Action0;
+import rx.functions.Action1;
+import rx.functions.Func0;
+import rx.functions.Func1;
+
+/**
+ * Stores objects larger than what a single document can hold, or can efficiently transfer, as a sequence of
+ * fixed-size binary chunk documents described by a {@link LargeObjectManifest}.
+ *
+ * Chunks are written and read in parallel with a bounded number of requests in flight, and reads emit them in
+ * order. A write first stores the chunks under a new version, then replaces the manifest and finally removes the
+ * chunks of the previous version, so that readers see either the old or the new object. A read racing with the
+ * removal of the version it started from fails with a {@link CouchbaseException}.
+ *
+ * The manifest is only replaced if it did not change since the write started, so that of two overlapping writes of
+ * the same object the last one to complete fails with a {@link CASMismatchException} (or a
+ * {@link DocumentAlreadyExistsException} if the object did not exist yet) after removing the chunks it wrote.
+ *
+ * The {@link ByteBuf buffers} emitted by reads must be released by the caller.
+ *
+ * @since 2.5.2
+ */
+@InterfaceStability.Experimental
+@InterfaceAudience.Public
+public class AsyncLargeObjectStore {
+
+    private static final CouchbaseLogger LOGGER = CouchbaseLoggerFactory.getInstance(AsyncLargeObjectStore.class);
+
+    /**
+     * The default size of the chunks, in bytes.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+
+    /**
+     * The default maximum number of chunk requests in flight for a single object.
+     */
+    public static final int DEFAULT_MAX_CONCURRENCY = 16;
+
+    private final AsyncBucket bucket;
+    private final int chunkSize;
+    private final int maxConcurrency;
+
+    /**
+     * Creates a store with the {@link #DEFAULT_CHUNK_SIZE default chunk size} and
+     * {@link #DEFAULT_MAX_CONCURRENCY default concurrency}.
+     *
+     * @param bucket the bucket to store the objects in.
+     */
+    public AsyncLargeObjectStore(AsyncBucket bucket) {
+        this(bucket, DEFAULT_CHUNK_SIZE, DEFAULT_MAX_CONCURRENCY);
+    }
+
+    /**
+     * Creates a store.
+     *
+     * @param bucket the bucket to store the objects in.
+     * @param chunkSize the size of the chunks new objects are split into, in bytes.
+     * @param maxConcurrency the maximum number of chunk requests in flight for a single object.
+     */
+    public AsyncLargeObjectStore(AsyncBucket bucket, int chunkSize, int maxConcurrency) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("The chunk size must be at least 1 byte");
+        }
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("The concurrency must be at least 1");
+        }
+        this.bucket = bucket;
+        this.chunkSize = chunkSize;
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    /**
+     * Stores the content of the buffer as the given object, replacing any previous version.
+     *
+     * As for {@link BinaryDocument}, the buffer is released once written.
+     *
+     * @param id the id of the object.
+     * @param content the content of the object.
+     * @return the manifest of the stored object.
+     */
+    public Observable<LargeObjectManifest> upsert(final String id, final ByteBuf content) {
+        final AtomicBoolean released = new AtomicBoolean();
+        final Action0 release = new Action0() {
+            @Override
+            public void call() {
+                if (released.compareAndSet(false, true)) {
+                    content.release();
+                }
+            }
+        };
+        final int start = content.readerIndex();
+        final int length = content.readableBytes();
+        int chunks = (length + chunkSize - 1) / chunkSize;
+
+        Observable<ByteBuf> slices = Observable.range(0, chunks)
+            .map(new Func1<Integer, ByteBuf>() {
+                @Override
+                public ByteBuf call(Integer chunk) {
+                    int offset = chunk * chunkSize;
+                    return content.slice(start + offset, Math.min(chunkSize, length - offset)).retain();
+                }
+            });
+        return write(id, slices)
+            .doAfterTerminate(release)
+            .doOnUnsubscribe(release);
+    }
+
+    /**
+     * Stores the content of the stream as the given object, replacing any previous version.
+     *
+     * The stream is read one chunk at a time as chunk writes complete, so that at most the configured number of
+     * chunks are held in memory. It is not closed by the store.
+     *
+     * @param id the id of the object.
+     * @param content the content of the object.
+     * @return the manifest of the stored object.
+     */
+    public Observable<LargeObjectManifest> upsert(final String id, final InputStream content) {
+        return write(id, Observable.from(new Iterable<ByteBuf>() {
+            @Override
+            public Iterator<ByteBuf> iterator() {
+                return new ChunkIterator(content, chunkSize);
+            }
+        }));
+    }
+
+    /**
+     * Reads the manifest of the given object.
+     *
+     * @param id the id of the object.
+     * @return the manifest of the object, or an empty {@link Observable} if it doesn't exist.
+     */
+    public Observable<LargeObjectManifest> manifest(final String id) {
+        return bucket.get(id).map(new Func1<JsonDocument, LargeObjectManifest>() {
+            @Override
+            public LargeObjectManifest call(JsonDocument document) {
+                return LargeObjectManifest.fromJson(id, document.content(), document.cas());
+            }
+        });
+    }
+
+    /**
+     * Reads the whole content of the given object, as its chunks in order.
+     *
+     * @param id the id of the object.
+     * @return the chunks of the object, or an empty {@link Observable} if it doesn't exist.
+     */
+    public Observable<ByteBuf> get(String id) {
+        return get(id, 0, Long.MAX_VALUE);
+    }
+
+    /**
+     * Reads a range of the content of the given object, only fetching the chunks which overlap the range.
+     *
+     * @param id the id of the object.
+     * @param offset the offset of the first byte to read.
+     * @param length the maximum number of bytes to read, fewer being read if the object ends before.
+     * @return the requested bytes in order, or an empty {@link Observable} if the object doesn't exist.
+     */
+    public Observable<ByteBuf> get(String id, final long offset, final long length) {
+        if (offset < 0 || length < 0) {
+            throw new IllegalArgumentException("The offset and length must not be negative");
+        }
+        return manifest(id).concatMap(new Func1<LargeObjectManifest, Observable<ByteBuf>>() {
+            @Override
+            public Observable<ByteBuf> call(LargeObjectManifest manifest) {
+                long end = Math.min(manifest.length(), offset + Math.min(length, Long.MAX_VALUE - offset));
+                if (offset >= end) {
+                    return Observable.empty();
+                }
+                return read(manifest, offset, end);
+            }
+        });
+    }
+
+    /**
+     * Opens a blocking stream over the content of the given object, fetching its chunks ahead of the reads.
+     *
+     * @param id the id of the object.
+     * @return a stream over the content of the object, which is empty if the object doesn't exist.
+     */
+    public InputStream openStream(String id) {
+        ChunkInputStream stream = new ChunkInputStream();
+        get(id).subscribe(stream.subscriber());
+        return stream;
+    }
+
+    /**
+     * Removes the given object and its chunks.
+     *
+     * The manifest is removed with the CAS it was read with, so that a write replacing the object concurrently
+     * makes the removal fail with a {@link CASMismatchException} rather than leaving the new chunks unreferenced.
+     *
+     * @param id the id of the object.
+     * @return true if the object existed, false otherwise.
+     */
+    public Observable<Boolean> remove(String id) {
+        return manifest(id)
+            .concatMap(new Func1<LargeObjectManifest, Observable<Boolean>>() {
+                @Override
+                public Observable<Boolean> call(final LargeObjectManifest manifest) {
+                    return bucket.remove(JsonDocument.create(manifest.id(), null, manifest.cas()))
+                        .concatMap(new Func1<JsonDocument, Observable<Boolean>>() {
+                            @Override
+                            public Observable<Boolean> call(JsonDocument removed) {
+                                return removeChunks(manifest.id(), manifest.version(), manifest.chunks())
+                                    .cast(Boolean.class)
+                                    .concatWith(Observable.just(true));
+                            }
+                        });
+                }
+            })
+            .defaultIfEmpty(false);
+    }
+
+    private Observable<LargeObjectManifest> write(final String id, final Observable<ByteBuf> chunks) {
+        return bucket.get(id)
+            .toList()
+            .concatMap(new Func1<List<JsonDocument>, Observable<LargeObjectManifest>>() {
+                @Override
+                public Observable<LargeObjectManifest> call(final List<JsonDocument> documents) {
+                    if (documents.isEmpty()) {
+                        return writeVersion(id, chunks, null, null);
+                    }
+                    JsonDocument current = documents.get(0);
+                    LargeObjectManifest previous = null;
+                    try {
+                        previous = LargeObjectManifest.fromJson(id, current.content(), current.cas());
+                    } catch (IllegalArgumentException e) {
+                        //the id holds something else than a manifest, which will be overwritten
+                    }
+                    return writeVersion(id, chunks, current, previous);
+                }
+            });
+    }
+
+    /**
+     * Writes the chunks under a new version, then the manifest, against the CAS of the current document if any.
+     */
+    private Observable<LargeObjectManifest> writeVersion(final String id, final Observable<ByteBuf> chunks,
+        final JsonDocument current, final LargeObjectManifest previous) {
+        final String version = UUID.randomUUID().toString();
+        final AtomicInteger written = new AtomicInteger();
+        final AtomicLong length = new AtomicLong();
+
+        return chunks
+            .map(new Func1<ByteBuf, BinaryDocument>() {
+                @Override
+                public BinaryDocument call(ByteBuf chunk) {
+                    length.addAndGet(chunk.readableBytes());
+                    return BinaryDocument.create(LargeObjectManifest.chunkId(id, version, written.getAndIncrement()),
+                        chunk);
+                }
+            })
+            .flatMap(new Func1<BinaryDocument, Observable<BinaryDocument>>() {
+                @Override
+                public Observable<BinaryDocument> call(BinaryDocument chunk) {
+                    return bucket.upsert(chunk);
+                }
+            }, maxConcurrency)
+            .ignoreElements()
+            .cast(LargeObjectManifest.class)
+            .onErrorResumeNext(new Func1<Throwable, Observable<LargeObjectManifest>>() {
+                @Override
+                public Observable<LargeObjectManifest> call(Throwable error) {
+                    //the chunks written so far are not referenced by any manifest
+                    return removeChunks(id, version, written.get())
+                        .cast(LargeObjectManifest.class)
+                        .concatWith(Observable.<LargeObjectManifest>error(error));
+                }
+            })
+            .concatWith(Observable.defer(new Func0<Observable<LargeObjectManifest>>() {
+                @Override
+                public Observable<LargeObjectManifest> call() {
+                    final LargeObjectManifest manifest = new LargeObjectManifest(id, version, length.get(), chunkSize,
+                        written.get(), 0);
+                    Observable<JsonDocument> stored = current == null
+                        ? bucket.insert(JsonDocument.create(id, manifest.toJson()))
+                        : bucket.replace(JsonDocument.create(id, manifest.toJson(), current.cas()));
+                    return stored
+                        .map(new Func1<JsonDocument, LargeObjectManifest>() {
+                            @Override
+                            public LargeObjectManifest call(JsonDocument document) {
+                                return new LargeObjectManifest(id, version, manifest.length(), chunkSize,
+                                    manifest.chunks(), document.cas());
+                            }
+                        })
+                        .onErrorResumeNext(new Func1<Throwable, Observable<LargeObjectManifest>>() {
+                            @Override
+                            public Observable<LargeObjectManifest> call(Throwable error) {
+                                if (error instanceof CASMismatchException
+                                    || error instanceof DocumentAlreadyExistsException
+                                    || error instanceof DocumentDoesNotExistException) {
+                                    //another write replaced the object first, this version is not referenced
+                                    return removeChunks(id, version, manifest.chunks())
+                                        .cast(LargeObjectManifest.class)
+                                        .concatWith(Observable.<LargeObjectManifest>error(error));
+                                }
+                                return Observable.error(error);
+                            }
+                        });
+                }
+            }))
+            .concatMap(new Func1<LargeObjectManifest, Observable<LargeObjectManifest>>() {
+                @Override
+                public Observable<LargeObjectManifest> call(LargeObjectManifest manifest) {
+                    if (previous == null) {
+                        return Observable.just(manifest);
+                    }
+                    return removeChunks(id, previous.version(), previous.chunks())
+                        .cast(LargeObjectManifest.class)
+                        .concatWith(Observable.just(manifest));
+                }
+            });
+    }
+
+    /**
+     * Removes the chunks of a version, ignoring missing ones and logging failures rather than propagating them.
+     */
+    private Observable<BinaryDocument> removeChunks(final String id, final String version, int chunks) {
+        return Observable.range(0, chunks)
+            .flatMap(new Func1<Integer, Observable<BinaryDocument>>() {
+                @Override
+                public Observable<BinaryDocument> call(Integer chunk) {
+                    final String chunkId = LargeObjectManifest.chunkId(id, version, chunk);
+                    return bucket.remove(chunkId, BinaryDocument.class)
+                        .onErrorResumeNext(new Func1<Throwable, Observable<BinaryDocument>>() {
+                            @Override
+                            public Observable<BinaryDocument> call(Throwable error) {
+                                if (!(error instanceof DocumentDoesNotExistException)) {
+                                    LOGGER.warn("Could not remove large object chunk {}", chunkId, error);
+                                }
+                                return Observable.empty();
+                            }
+                        });
+                }
+            }, maxConcurrency)
+            .ignoreElements();
+    }
+
+    private Observable<ByteBuf> read(final LargeObjectManifest manifest, final long start, final long end) {
+        final int size = manifest.chunkSize();
+        final int first = (int) (start / size);
+        final int last = (int) ((end - 1) / size);
+
+        return Observable.defer(new Func0<Observable<ByteBuf>>() {
+            @Override
+            public Observable<ByteBuf> call() {
+                final PendingChunks pending = new PendingChunks();
+                return Observable.range(first, last - first + 1)
+                    .concatMapEager(new Func1<Integer, Observable<ByteBuf>>() {
+                        @Override
+                        public Observable<ByteBuf> call(final Integer chunk) {
+                            return readChunk(manifest, chunk, start, end).filter(new Func1<ByteBuf, Boolean>() {
+                                @Override
+                                public Boolean call(ByteBuf content) {
+                                    return pending.add(content);
+                                }
+                            });
+                        }
+                    }, maxConcurrency, maxConcurrency)
+                    .doOnNext(new Action1<ByteBuf>() {
+                        @Override
+                        public void call(ByteBuf content) {
+                            pending.remove(content);
+                        }
+                    })
+                    .doOnTerminate(pending)
+                    .doOnUnsubscribe(pending);
+            }
+        });
+    }
+
+    private Observable<ByteBuf> readChunk(final LargeObjectManifest manifest, final int chunk, final long start,
+        final long end) {
+        final int size = manifest.chunkSize();
+        final String chunkId = manifest.chunkId(chunk);
+        return bucket.get(chunkId, BinaryDocument.class)
+            .switchIfEmpty(Observable.<BinaryDocument>error(new CouchbaseException("Chunk " + chunkId
+                + " does not exist, the object has been replaced or removed while reading it")))
+            .map(new Func1<BinaryDocument, ByteBuf>() {
+                @Override
+                public ByteBuf call(BinaryDocument document) {
+                    ByteBuf content = document.content();
+                    long chunkStart = (long) chunk * size;
+                    int from = (int) Math.max(0, start - chunkStart);
+                    int to = (int) Math.min(content.readableBytes(), end - chunkStart);
+                    //the slice shares the reference count of the chunk, releasing it releases both
+                    return content.slice(content.readerIndex() + from, to - from);
+                }
+            });
+    }
+
+    /**
+     * Keeps track of the chunks fetched ahead and not emitted yet, so that they are released if the read fails or
+     * is unsubscribed before emitting them.
+     */
+    private static class PendingChunks implements Action0 {
+
+        private final Set<ByteBuf> chunks = Collections.newSetFromMap(new IdentityHashMap<ByteBuf, Boolean>());
+        private boolean terminated;
+
+        synchronized boolean add(ByteBuf chunk) {
+            if (terminated) {
+                chunk.release();
+                return false;
+            }
+            chunks.add(chunk);
+            return true;
+        }
+
+        synchronized void remove(ByteBuf chunk) {
+            chunks.remove(chunk);
+        }
+
+        @Override
+        public synchronized void call() {
+            terminated = true;
+            for (ByteBuf chunk : chunks) {
+                chunk.release();
+            }
+            chunks.clear();
+        }
+    }
+
+    /**
+     * Reads a stream one chunk at a time, a short last chunk marking its end.
+     */
+    static class ChunkIterator implements Iterator<ByteBuf> {
+
+        private final InputStream stream;
+        private final int chunkSize;
+        private ByteBuf next;
+        private boolean done;
+
+        ChunkIterator(InputStream stream, int chunkSize) {
+            this.stream = stream;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null && !done) {
+                next = readChunk();
+            }
+            return next != null;
+        }
+
+        @Override
+        public ByteBuf next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            ByteBuf chunk = next;
+            next = null;
+            return chunk;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        private ByteBuf readChunk() {
+            byte[] chunk = new byte[chunkSize];
+            int read = 0;
+            try {
+                while (read < chunkSize) {
+                    int count = stream.read(chunk, read, chunkSize - read);
+                    if (count < 0) {
+                        done = true;
+                        break;
+                    }
+                    read += count;
+                }
+            } catch (IOException e) {
+                throw new CouchbaseException("Could not read the content of the large object", e);
+            }
+            return read == 0 ? null : Unpooled.wrappedBuffer(chunk, 0, read);
+        }
+    }
+
+    /**
+     * Exposes the chunks emitted by a read as a stream, releasing each of them once consumed.
+     *
+     * Chunks are requested one at a time as the stream is read, the read itself fetching up to the configured
+     * number of chunks ahead. Closing the stream releases the chunks not consumed yet and cancels the read.
+     */
+    static class ChunkInputStream extends InputStream {
+
+        private final Queue<ByteBuf> chunks = new LinkedList<ByteBuf>();
+        private final ChunkSubscriber subscriber = new ChunkSubscriber();
+        private ByteBuf current;
+        private Throwable error;
+        private boolean done;
+        private boolean closed;
+
+        Subscriber<ByteBuf> subscriber() {
+            return subscriber;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!advance()) {
+                return -1;
+            }
+            return current.readByte() & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!advance()) {
+                return -1;
+            }
+            int count = Math.min(len, current.readableBytes());
+            current.readBytes(b, off, count);
+            return count;
+        }
+
+        @Override
+        public synchronized int available() throws IOException {
+            return current == null ? 0 : current.readableBytes();
+        }
+
+        @Override
+        public void close() throws IOException {
+            subscriber.unsubscribe();
+            synchronized (this) {
+                closed = true;
+                if (current != null) {
+                    current.release();
+                    current = null;
+                }
+                ByteBuf chunk;
+                while ((chunk = chunks.poll()) != null) {
+                    chunk.release();
+                }
+            }
+        }
+
+        private boolean advance() throws IOException {
+            boolean polled = false;
+            synchronized (this) {
+                if (closed) {
+                    throw new IOException("The stream is closed");
+                }
+                while (current == null || !current.isReadable()) {
+                    if (current != null) {
+                        current.release();
+                        current = null;
+                    }
+                    while (chunks.isEmpty() && !done) {
+                        try {
+                            wait();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new InterruptedIOException("Interrupted while reading the large object");
+                        }
+                    }
+                    current = chunks.poll();
+                    polled = true;
+                    if (current == null) {
+                        if (error != null) {
+                            throw new IOException("Could not read the large object", error);
+                        }
+                        return false;
+                    }
+                }
+            }
+            if (polled) {
+                subscriber.requestNext();
+            }
+            return true;
+        }
+
+        private class ChunkSubscriber extends Subscriber<ByteBuf> {
+
+            @Override
+            public void onStart() {
+                request(1);
+            }
+
+            @Override
+            public void onNext(ByteBuf chunk) {
+                synchronized (ChunkInputStream.this) {
+                    if (closed) {
+                        chunk.release();
+                        return;
+                    }
+                    chunks.add(chunk);
+                    ChunkInputStream.this.notifyAll();
+                }
+            }
+
+            @Override
+            public void onError(Throwable e) {
+                synchronized (ChunkInputStream.this) {
+                    error = e;
+                    done = true;
+                    ChunkInputStream.this.notifyAll();
+                }
+            }
+
+            @Override
+            public void onCompleted() {
+                synchronized (ChunkInputStream.this) {
+                    done = true;
+                    ChunkInputStream.this.notifyAll();
+                }
+            }
+
+            void requestNext() {
+                request(1);
+            }
+        }
+    }
+}
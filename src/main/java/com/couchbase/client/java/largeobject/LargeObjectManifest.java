@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2017 Couchbase, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.couchbase.client.java.largeobject;
+
+import com.couchbase.client.core.annotations.InterfaceAudience;
+import com.couchbase.client.core.annotations.InterfaceStability;
+import com.couchbase.client.java.document.json.JsonObject;
+
+/**
+ * Describes a large object stored as a sequence of fixed-size chunk documents.
+ *
+ * The manifest is stored as a JSON document under the id of the object, and chunk i of the object is stored as a
+ * binary document under "id::version::i". Each write of an object uses a new version, so that the chunks of the
+ * previous version stay readable until the new manifest replaced the old one.
+ *
+ * @since 2.5.2
+ */
+@InterfaceStability.Experimental
+@InterfaceAudience.Public
+public class LargeObjectManifest {
+
+    private final String id;
+    private final String version;
+    private final long length;
+    private final int chunkSize;
+    private final int chunks;
+    private final long cas;
+
+    LargeObjectManifest(String id, String version, long length, int chunkSize, int chunks, long cas) {
+        this.id = id;
+        this.version = version;
+        this.length = length;
+        this.chunkSize = chunkSize;
+        this.chunks = chunks;
+        this.cas = cas;
+    }
+
+    /**
+     * Reads a manifest from its JSON representation.
+     *
+     * @param id the id of the object.
+     * @param content the content of the manifest document.
+     * @param cas the CAS of the manifest document.
+     * @return the manifest.
+     * @throws IllegalArgumentException if the content is not a manifest.
+     */
+    static LargeObjectManifest fromJson(String id, JsonObject content, long cas) {
+        if (content == null || !content.containsKey("version") || !content.containsKey("chunkSize")) {
+            throw new IllegalArgumentException("Document " + id + " is not a large object manifest");
+        }
+        return new LargeObjectManifest(id, content.getString("version"), content.getNumber("length").longValue(),
+            content.getInt("chunkSize"), content.getInt("chunks"), cas);
+    }
+
+    /**
+     * @return the JSON representation of this manifest.
+     */
+    JsonObject toJson() {
+        return JsonObject.create()
+            .put("version", version)
+            .put("length", length)
+            .put("chunkSize", chunkSize)
+            .put("chunks", chunks);
+    }
+
+    /**
+     * @return the id of the object.
+     */
+    public String id() {
+        return id;
+    }
+
+    /**
+     * @return the version of the object, unique to each write.
+     */
+    public String version() {
+        return version;
+    }
+
+    /**
+     * @return the length of the object, in bytes.
+     */
+    public long length() {
+        return length;
+    }
+
+    /**
+     * @return the size of each chunk, in bytes, only the last chunk being possibly smaller.
+     */
+    public int chunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * @return the number of chunks of the object.
+     */
+    public int chunks() {
+        return chunks;
+    }
+
+    /**
+     * @return the CAS of the manifest document this manifest was read from or written as.
+     */
+    public long cas() {
+        return cas;
+    }
+
+    /**
+     * Returns the id of the document holding the given chunk.
+     *
+     * @param chunk the index of the chunk, between 0 and {@link #chunks()} excluded.
+     * @return the id of the chunk document.
+     */
+    public String chunkId(int chunk) {
+        return chunkId(id, version, chunk);
+    }
+
+    static String chunkId(String id, String version, int chunk) {
+        return id + "::" + version + "::" + chunk;
+    }
+
+    @Override
+    public String toString() {
+        return "LargeObjectManifest{" +
+            "id='" + id + '\'' +
+            ", version='" + version + '\'' +
+            ", length=" + length +
+            ", chunkSize=" + chunkSize +
+            ", chunks=" + chunks +
+            ", cas=" + cas +
+            '}';
+    }
+}
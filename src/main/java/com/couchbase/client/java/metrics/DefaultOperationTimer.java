@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2017 Couchbase, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.couchbase.client.java.metrics;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import rx.Observable;
+import rx.Subscriber;
+import rx.functions.Action0;
+
+/**
+ * The {@link OperationTimer} handed out by enabled {@link OperationMetrics}.
+ *
+ * The sequential steps of an operation happen one after the other (even if on different threads), so plain
+ * volatile fields are enough to carry their state. Rows may be decoded in parallel though, so the accumulated
+ * segments are atomic. The timer finishes at most once, whichever of the termination or the unsubscription of
+ * the operation comes first.
+ *
+ * @since 2.5.2
+ */
+class DefaultOperationTimer implements OperationTimer, Action0 {
+
+    private final OperationMetrics metrics;
+    private final OperationType type;
+
+    private final long start;
+    private volatile long mark;
+    private final AtomicLong encode = new AtomicLong();
+    private final AtomicLong wire = new AtomicLong();
+    private final AtomicLong decode = new AtomicLong();
+    private volatile Object id;
+    private volatile long payloadSize;
+    private volatile long serverDuration = -1;
+    private volatile SlowOperation slowOperation;
+    private final AtomicBoolean finished = new AtomicBoolean();
+
+    DefaultOperationTimer(OperationMetrics metrics, OperationType type) {
+        this.metrics = metrics;
+        this.type = type;
+        this.start = System.nanoTime();
+        this.mark = start;
+    }
+
+    @Override
+    public void describe(Object id) {
+        this.id = id;
+    }
+
+    @Override
+    public void payloadSize(long bytes) {
+        this.payloadSize = bytes;
+    }
+
+    @Override
+    public void serverDuration(long nanos) {
+        this.serverDuration = nanos;
+        SlowOperation recorded = slowOperation;
+        if (recorded != null) {
+            recorded.serverDuration(nanos);
+        }
+    }
+
+    @Override
+    public void encoded() {
+        long now = System.nanoTime();
+        encode.addAndGet(now - mark);
+        mark = now;
+    }
+
+    @Override
+    public void received() {
+        long now = System.nanoTime();
+        wire.addAndGet(now - mark);
+        mark = now;
+    }
+
+    @Override
+    public long decodeStart() {
+        return System.nanoTime();
+    }
+
+    @Override
+    public void decoded(long decodeStart) {
+        decode.addAndGet(System.nanoTime() - decodeStart);
+    }
+
+    @Override
+    public void finish() {
+        if (!finished.compareAndSet(false, true)) {
+            return;
+        }
+        long total = System.nanoTime() - start;
+        long encode = this.encode.get();
+        long wire = this.wire.get();
+        long decode = this.decode.get();
+        if (encode > 0) {
+            metrics.record(type, LatencySegment.ENCODE, encode);
+        }
+        if (wire > 0) {
+            metrics.record(type, LatencySegment.WIRE, wire);
+        }
+        if (decode > 0) {
+            metrics.record(type, LatencySegment.DECODE, decode);
+        }
+        metrics.record(type, LatencySegment.TOTAL, total);
+
+        SlowOperationRecorder recorder = metrics.slowOperations();
+        if (recorder != null && total >= recorder.thresholdNanos()) {
+            SlowOperation operation = new SlowOperation(type, id, payloadSize, total, encode, wire, decode,
+                serverDuration);
+            slowOperation = operation;
+            recorder.record(operation);
+        }
+    }
+
+    @Override
+    public void call() {
+        finish();
+    }
+
+    @Override
+    public <T> Observable<T> finishOnTerminate(Observable<T> source) {
+        return source.doAfterTerminate(this).doOnUnsubscribe(this);
+    }
+
+    @Override
+    public <T> Observable<T> finishOnRows(Observable<T> rows, Observable<?> completion) {
+        final AtomicBoolean subscribed = new AtomicBoolean();
+        completion.subscribe(new Subscriber<Object>() {
+            @Override
+            public void onCompleted() {
+                finishUnlessSubscribed();
+            }
+
+            @Override
+            public void onError(Throwable e) {
+                finishUnlessSubscribed();
+            }
+
+            @Override
+            public void onNext(Object o) {
+            }
+
+            private void finishUnlessSubscribed() {
+                if (!subscribed.get()) {
+                    finish();
+                }
+            }
+        });
+        return finishOnTerminate(rows).doOnSubscribe(new Action0() {
+            @Override
+            public void call() {
+                subscribed.set(true);
+            }
+        });
+    }
+}
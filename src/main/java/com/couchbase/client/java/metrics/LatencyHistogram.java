@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 2017 Couchbase, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.couchbase.client.java.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.couchbase.client.core.annotations.InterfaceAudience;
+import com.couchbase.client.core.annotations.InterfaceStability;
+
+/**
+ * A lock-free latency histogram with log-linear buckets, in the spirit of HDR histograms.
+ *
+ * Values (in nanoseconds) are grouped by their power of two and each power of two is split into
+ * {@value #SUB_BUCKET_COUNT} linear sub-buckets, which bounds the relative error of any reported
+ * percentile to about 6%. Recording is a couple of atomic increments and never allocates, so it is
+ * safe to use on hot paths from any number of threads. Values larger than roughly 36 minutes are
+ * clamped into the last bucket.
+ *
+ * @since 2.5.2
+ */
+@InterfaceStability.Experimental
+@InterfaceAudience.Public
+public class LatencyHistogram implements LatencyHistogramMXBean {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 40;
+    private static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+    private static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a single latency.
+     *
+     * @param nanos the latency in nanoseconds, negative values are ignored.
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            return;
+        }
+        buckets.incrementAndGet(bucketIndex(Math.min(nanos, MAX_VALUE)));
+        count.incrementAndGet();
+        sum.addAndGet(nanos);
+
+        long currentMin = min.get();
+        while (nanos < currentMin && !min.compareAndSet(currentMin, nanos)) {
+            currentMin = min.get();
+        }
+        long currentMax = max.get();
+        while (nanos > currentMax && !max.compareAndSet(currentMax, nanos)) {
+            currentMax = max.get();
+        }
+    }
+
+    /**
+     * Returns the latency below which the given percentage of the recorded values fall.
+     *
+     * @param percentile the percentile, between 0 and 100.
+     * @return the latency in nanoseconds, or 0 if nothing has been recorded.
+     */
+    public long valueAtPercentile(double percentile) {
+        long total = count.get();
+        if (total == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(Math.min(100.0, percentile) / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += buckets.get(i);
+            if (seen >= target) {
+                return Math.min(bucketUpperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * @return the number of recorded values.
+     */
+    @Override
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * @return the smallest recorded value in nanoseconds, or 0 if nothing has been recorded.
+     */
+    public long min() {
+        long value = min.get();
+        return value == Long.MAX_VALUE ? 0 : value;
+    }
+
+    /**
+     * @return the largest recorded value in nanoseconds.
+     */
+    public long max() {
+        return max.get();
+    }
+
+    /**
+     * @return the mean of the recorded values in nanoseconds, or 0 if nothing has been recorded.
+     */
+    public double mean() {
+        long total = count.get();
+        return total == 0 ? 0 : (double) sum.get() / total;
+    }
+
+    @Override
+    public long getMinMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(min());
+    }
+
+    @Override
+    public long getMaxMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(max());
+    }
+
+    @Override
+    public double getMeanMicros() {
+        return mean() / 1000.0;
+    }
+
+    @Override
+    public long getPercentile50Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(valueAtPercentile(50.0));
+    }
+
+    @Override
+    public long getPercentile90Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(valueAtPercentile(90.0));
+    }
+
+    @Override
+    public long getPercentile99Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(valueAtPercentile(99.0));
+    }
+
+    @Override
+    public long getPercentile999Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(valueAtPercentile(99.9));
+    }
+
+    /**
+     * Clears all recorded values. Values recorded concurrently with a reset may be partially lost.
+     */
+    @Override
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        min.set(Long.MAX_VALUE);
+        max.set(0);
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) ((value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1));
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKET_COUNT + SUB_BUCKET_BITS - 1;
+        long subBucket = index % SUB_BUCKET_COUNT;
+        long lowerBound = (1L << exponent) | (subBucket << (exponent - SUB_BUCKET_BITS));
+        return lowerBound + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+    @Override
+    public String toString() {
+        return "LatencyHistogram{" +
+            "count=" + getCount() +
+            ", min=" + min() +
+            ", mean=" + (long) mean() +
+            ", p50=" + valueAtPercentile(50.0) +
+            ", p99=" + valueAtPercentile(99.0) +
+            ", max=" + max() +
+            '}';
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2017 Couchbase, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.couchbase.client.java.metrics;
+
+import com.couchbase.client.core.annotations.InterfaceAudience;
+import com.couchbase.client.core.annotations.InterfaceStability;
+
+/**
+ * The segments an operation latency is broken into by the {@link OperationMetrics}.
+ *
+ * @since 2.5.2
+ */
+@InterfaceStability.Experimental
+@InterfaceAudience.Public
+public enum LatencySegment {
+
+    /**
+     * Time spent encoding the request: document transcoding, statement rendering, query export.
+     */
+    ENCODE("encode"),
+
+    /**
+     * Time between handing the request to the core and receiving its response.
+     */
+    WIRE("wire"),
+
+    /**
+     * Time spent decoding the response: document transcoding, fragment and row decoding.
+     */
+    DECODE("decode"),
+
+    /**
+     * End-to-end time as seen by the application, from subscription to termination.
+     */
+    TOTAL("total");
+
+    private final String identifier;
+
+    LatencySegment(String identifier) {
+        this.identifier = identifier;
+    }
+
+    /**
+     * @return the short name identifying the segment, as used in JMX object names.
+     */
+    public String identifier() {
+        return identifier;
+    }
+}
@@ -0,0 +1,288 @@
+/*
+ * Copyright (c) 2017 Couchbase, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.couchbase.client.java.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.couchbase.client.core.annotations.InterfaceAudience;
+import com.couchbase.client.core.annotations.InterfaceStability;
+import com.couchbase.client.core.logging.CouchbaseLogger;
+import com.couchbase.client.core.logging.CouchbaseLoggerFactory;
+import rx.Observable;
+import rx.functions.Func0;
+import rx.functions.Func1;
+
+/**
+ * Records end-to-end latencies of the operations performed through a bucket, as seen by the application.
+ *
+ * Each {@link OperationType} gets one {@link LatencyHistogram} per {@link LatencySegment}, so that time spent
+ * transcoding can be told apart from time spent waiting on the network. Histograms can be read programmatically
+ * through {@link #histogram(OperationType, LatencySegment)} and, once {@link #registerMBeans() registered}, through
+ * JMX under the {@value #JMX_DOMAIN} domain. Since the same bucket can be opened several times in a JVM, the MBean
+ * names carry the {@link #instance() instance} number of the metrics next to the bucket name.
+ *
+ * When disabled (see {@link #DISABLED}), {@link #start(OperationType)} hands out a no-op timer, so that the only
+ * overhead left on the instrumented paths is a virtual call.
+ *
+ * @since 2.5.2
+ */
+@InterfaceStability.Experimental
+@InterfaceAudience.Public
+public class OperationMetrics {
+
+    private static final CouchbaseLogger LOGGER = CouchbaseLoggerFactory.getInstance(OperationMetrics.class);
+
+    public static final String JMX_DOMAIN = "com.couchbase.client.java";
+
+    private static final AtomicInteger INSTANCES = new AtomicInteger();
+
+    /**
+     * Metrics which record nothing.
+     */
+    public static final OperationMetrics DISABLED = new OperationMetrics(null, false, null);
+
+    private final String bucket;
+    private final int instance;
+    private final boolean enabled;
+    private final SlowOperationRecorder slowOperations;
+    private final LatencyHistogram[][] histograms;
+    private final List<ObjectName> registeredNames;
+    private volatile long resetTime;
+
+    private OperationMetrics(String bucket, boolean enabled, SlowOperationRecorder slowOperations) {
+        this.bucket = bucket;
+        this.instance = INSTANCES.incrementAndGet();
+        this.enabled = enabled;
+        this.slowOperations = slowOperations;
+        this.registeredNames = new ArrayList<ObjectName>();
+        this.histograms = new LatencyHistogram[OperationType.values().length][LatencySegment.values().length];
+        if (enabled) {
+            for (OperationType type : OperationType.values()) {
+                for (LatencySegment segment : LatencySegment.values()) {
+                    histograms[type.ordinal()][segment.ordinal()] = new LatencyHistogram();
+                }
+            }
+        }
+        this.resetTime = System.nanoTime();
+    }
+
+    /**
+     * Creates enabled metrics for the given bucket.
+     *
+     * @param bucket the name of the bucket the operations are performed against.
+     * @return the metrics.
+     */
+    public static OperationMetrics create(String bucket) {
+        return new OperationMetrics(bucket, true, null);
+    }
+
+    /**
+     * Creates metrics for the given bucket.
+     *
+     * @param bucket the name of the bucket the operations are performed against.
+     * @param histograms whether latency histograms should be recorded.
+     * @param slowOperations the recorder slow operations are handed to, or null.
+     * @return the metrics.
+     */
+    public static OperationMetrics create(String bucket, boolean histograms, SlowOperationRecorder slowOperations) {
+        if (!histograms && slowOperations == null) {
+            return DISABLED;
+        }
+        return new OperationMetrics(bucket, histograms, slowOperations);
+    }
+
+    /**
+     * @return true if this instance records latencies, false otherwise.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return the number of this instance, unique within the JVM, which tells apart the MBeans of the same bucket
+     *         opened several times.
+     */
+    public int instance() {
+        return instance;
+    }
+
+    /**
+     * @return the recorder slow operations are handed to, or null if slow operations are not recorded.
+     */
+    public SlowOperationRecorder slowOperations() {
+        return slowOperations;
+    }
+
+    /**
+     * Starts timing an operation of the given type.
+     *
+     * @param type the type of the operation.
+     * @return the timer tracking the operation, {@link OperationTimer#NOOP} if neither latencies nor slow
+     *         operations are recorded.
+     */
+    public OperationTimer start(OperationType type) {
+        if (!enabled && slowOperations == null) {
+            return OperationTimer.NOOP;
+        }
+        return new DefaultOperationTimer(this, type);
+    }
+
+    /**
+     * Times an operation, starting a new timer each time the returned {@link Observable} is subscribed to.
+     *
+     * Since retries, repeats and concurrent subscribers resubscribe to the same {@link Observable}, a timer
+     * must not be created when the {@link Observable} is assembled, or all of them would share its marks.
+     * The operation is responsible for {@link OperationTimer#finishOnTerminate(Observable) finishing} the timer.
+     *
+     * @param type the type of the operation.
+     * @param id what identifies the operation, see {@link OperationTimer#describe(Object)}.
+     * @param operation assembles the operation given its timer.
+     * @return the timed operation.
+     */
+    public <T> Observable<T> timed(final OperationType type, final Object id,
+        final Func1<OperationTimer, Observable<T>> operation) {
+        if (!enabled && slowOperations == null) {
+            return operation.call(OperationTimer.NOOP);
+        }
+        return Observable.defer(new Func0<Observable<T>>() {
+            @Override
+            public Observable<T> call() {
+                OperationTimer timer = start(type);
+                timer.describe(id);
+                return operation.call(timer);
+            }
+        });
+    }
+
+    /**
+     * Records a latency directly.
+     *
+     * @param type the type of the operation.
+     * @param segment the segment of the latency.
+     * @param nanos the latency in nanoseconds.
+     */
+    public void record(OperationType type, LatencySegment segment, long nanos) {
+        if (enabled) {
+            histograms[type.ordinal()][segment.ordinal()].record(nanos);
+        }
+    }
+
+    /**
+     * Returns the histogram for a given operation type and segment.
+     *
+     * @param type the type of the operation.
+     * @param segment the segment of the latency.
+     * @return the histogram, or null if disabled.
+     */
+    public LatencyHistogram histogram(OperationType type, LatencySegment segment) {
+        return histograms[type.ordinal()][segment.ordinal()];
+    }
+
+    /**
+     * @param type the type of the operation.
+     * @return the number of completed operations of the given type since the last reset.
+     */
+    public long count(OperationType type) {
+        return enabled ? histogram(type, LatencySegment.TOTAL).getCount() : 0;
+    }
+
+    /**
+     * @param type the type of the operation.
+     * @return the average number of completed operations of the given type per second since the last reset.
+     */
+    public double throughput(OperationType type) {
+        long elapsed = System.nanoTime() - resetTime;
+        if (elapsed <= 0) {
+            return 0;
+        }
+        return count(type) / (elapsed / (double) TimeUnit.SECONDS.toNanos(1));
+    }
+
+    /**
+     * Clears all histograms and restarts the throughput measurement.
+     */
+    public void reset() {
+        if (enabled) {
+            for (LatencyHistogram[] perType : histograms) {
+                for (LatencyHistogram histogram : perType) {
+                    histogram.reset();
+                }
+            }
+        }
+        resetTime = System.nanoTime();
+    }
+
+    /**
+     * Registers one {@link LatencyHistogramMXBean} per operation type and segment in the platform MBean server.
+     *
+     * Registration failures are logged and otherwise ignored, since metrics are not essential to operations.
+     */
+    public synchronized void registerMBeans() {
+        if (!enabled || !registeredNames.isEmpty()) {
+            return;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (OperationType type : OperationType.values()) {
+            for (LatencySegment segment : LatencySegment.values()) {
+                try {
+                    ObjectName name = new ObjectName(JMX_DOMAIN + ":type=OperationMetrics"
+                        + ",bucket=" + ObjectName.quote(bucket)
+                        + ",instance=" + instance
+                        + ",operation=" + type.identifier()
+                        + ",segment=" + segment.identifier());
+                    server.registerMBean(histogram(type, segment), name);
+                    registeredNames.add(name);
+                } catch (Exception ex) {
+                    LOGGER.warn("Could not register operation metrics MBean for {}/{}.", type, segment, ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Unregisters all MBeans previously registered through {@link #registerMBeans()}.
+     */
+    public synchronized void unregisterMBeans() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName name : registeredNames) {
+            try {
+                server.unregisterMBean(name);
+            } catch (Exception ex) {
+                LOGGER.debug("Could not unregister operation metrics MBean {}.", name, ex);
+            }
+        }
+        registeredNames.clear();
+    }
+
+    @Override
+    public String toString() {
+        if (!enabled) {
+            return "OperationMetrics{disabled}";
+        }
+        StringBuilder sb = new StringBuilder("OperationMetrics{bucket=").append(bucket);
+        for (OperationType type : OperationType.values()) {
+            sb.append(", ").append(type.identifier()).append('=')
+                .append(histogram(type, LatencySegment.TOTAL));
+        }
+        return sb.append('}').toString();
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2017 Couchbase, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.couchbase.client.java.metrics;
+
+import com.couchbase.client.core.annotations.InterfaceAudience;
+import com.couchbase.client.core.annotations.InterfaceStability;
+import rx.Observable;
+
+/**
+ * Tracks the latency segments of a single operation and records them into its {@link OperationMetrics} once
+ * the operation finishes.
+ *
+ * Timers are obtained through {@link OperationMetrics#timed(OperationType, Object, rx.functions.Func1)}, which
+ * starts a new timer for each subscription, or {@link OperationMetrics#start(OperationType)}. A timer starts its
+ * clock when created and must not be shared between subscriptions. When metrics are disabled the
+ * {@link #NOOP} timer is handed out, so instrumented code paths do not have to check for it.
+ *
+ * @since 2.5.2
+ */
+@InterfaceStability.Experimental
+@InterfaceAudience.Private
+public interface OperationTimer {
+
+    /**
+     * A timer which does nothing, used when metrics are disabled.
+     */
+    OperationTimer NOOP = new OperationTimer() {
+        @Override
+        public void describe(Object id) {
+        }
+
+        @Override
+        public void payloadSize(long bytes) {
+        }
+
+        @Override
+        public void serverDuration(long nanos) {
+        }
+
+        @Override
+        public void encoded() {
+        }
+
+        @Override
+        public void received() {
+        }
+
+        @Override
+        public long decodeStart() {
+            return 0;
+        }
+
+        @Override
+        public void decoded(long decodeStart) {
+        }
+
+        @Override
+        public void finish() {
+        }
+
+        @Override
+        public <T> Observable<T> finishOnTerminate(Observable<T> source) {
+            return source;
+        }
+
+        @Override
+        public <T> Observable<T> finishOnRows(Observable<T> rows, Observable<?> completion) {
+            return rows;
+        }
+    };
+
+    /**
+     * Sets what identifies the operation in the {@link SlowOperationRecorder slow operations} summary, like
+     * the document ID or the statement. It is only turned into a string if the operation turns out to be slow.
+     *
+     * @param id the identifier of the operation.
+     */
+    void describe(Object id);
+
+    /**
+     * Sets the size of the payload sent or received by the operation, if known.
+     *
+     * @param bytes the size in bytes.
+     */
+    void payloadSize(long bytes);
+
+    /**
+     * Sets the duration reported by the server for the operation, if any. Since servers usually report it
+     * at the very end of a response, it may be set after the timer {@link #finish() finished}.
+     *
+     * @param nanos the duration in nanoseconds.
+     */
+    void serverDuration(long nanos);
+
+    /**
+     * Accounts the time since the last step as {@link LatencySegment#ENCODE}.
+     */
+    void encoded();
+
+    /**
+     * Accounts the time since the last step as {@link LatencySegment#WIRE}.
+     */
+    void received();
+
+    /**
+     * Marks the start of a decoding step, to be passed to {@link #decoded(long)}.
+     *
+     * @return the current timestamp, or 0 if the timer is disabled.
+     */
+    long decodeStart();
+
+    /**
+     * Accounts the time since the given timestamp as {@link LatencySegment#DECODE}. Can be called
+     * several times, for instance once per row, in which case the durations are added up.
+     *
+     * @param decodeStart the timestamp returned by {@link #decodeStart()}.
+     */
+    void decoded(long decodeStart);
+
+    /**
+     * Records all accounted segments and the {@link LatencySegment#TOTAL} latency, and hands the operation
+     * over to the {@link SlowOperationRecorder} if it exceeded its threshold. Only the first call has an effect.
+     */
+    void finish();
+
+    /**
+     * Returns the source, finishing this timer once it terminates or is unsubscribed from, so that operations
+     * which time out or whose results are only partially consumed are recorded as well.
+     *
+     * @param source the observable representing the operation.
+     * @return the observable to subscribe to instead of the source.
+     */
+    <T> Observable<T> finishOnTerminate(Observable<T> source);
+
+    /**
+     * Returns the rows of a streamed response, finishing this timer like {@link #finishOnTerminate(Observable)}, or
+     * once the response completes if the rows have not been subscribed to by then.
+     *
+     * @param rows the rows of the response.
+     * @param completion an observable terminating once the whole response has been received.
+     * @return the rows to hand out instead.
+     */
+    <T> Observable<T> finishOnRows(Observable<T> rows, Observable<?> completion);
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2017 Couchbase, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.couchbase.client.java.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+import com.couchbase.client.core.annotations.InterfaceAudience;
+import com.couchbase.client.core.annotations.InterfaceStability;
+
+/**
+ * An operation which took longer than the threshold of a {@link SlowOperationRecorder}.
+ *
+ * All durations are in nanoseconds. Segments which have not been measured for the operation are 0, the
+ * server duration is negative until (and unless) reported by the server.
+ *
+ * @since 2.5.2
+ */
+@InterfaceStability.Experimental
+@InterfaceAudience.Public
+public class SlowOperation {
+
+    private static final int MAX_ID_LENGTH = 128;
+
+    private final OperationType type;
+    private final String id;
+    private final long payloadSize;
+    private final long timestamp;
+    private final long total;
+    private final long encode;
+    private final long wire;
+    private final long decode;
+    private volatile long serverDuration;
+
+    SlowOperation(OperationType type, Object id, long payloadSize, long total, long encode, long wire,
+        long decode, long serverDuration) {
+        this.type = type;
+        this.id = abbreviate(id);
+        this.payloadSize = payloadSize;
+        this.timestamp = System.currentTimeMillis();
+        this.total = total;
+        this.encode = encode;
+        this.wire = wire;
+        this.decode = decode;
+        this.serverDuration = serverDuration;
+    }
+
+    private static String abbreviate(Object id) {
+        if (id == null) {
+            return null;
+        }
+        String value = id.toString();
+        return value.length() <= MAX_ID_LENGTH ? value : value.substring(0, MAX_ID_LENGTH) + "...";
+    }
+
+    public OperationType type() {
+        return type;
+    }
+
+    /**
+     * @return the identifier of the operation (document ID, statement, index...), possibly abbreviated.
+     */
+    public String id() {
+        return id;
+    }
+
+    /**
+     * @return the size of the payload in bytes, or 0 if unknown.
+     */
+    public long payloadSize() {
+        return payloadSize;
+    }
+
+    /**
+     * @return the wall clock time at which the operation completed, in milliseconds.
+     */
+    public long timestamp() {
+        return timestamp;
+    }
+
+    public long total() {
+        return total;
+    }
+
+    public long encode() {
+        return encode;
+    }
+
+    public long wire() {
+        return wire;
+    }
+
+    public long decode() {
+        return decode;
+    }
+
+    /**
+     * @return the duration reported by the server, or a negative value if not reported.
+     */
+    public long serverDuration() {
+        return serverDuration;
+    }
+
+    void serverDuration(long nanos) {
+        this.serverDuration = nanos;
+    }
+
+    /**
+     * Returns the segment in which the operation spent most of its time. Unaccounted time (for instance spent
+     * waiting for a subscriber) is attributed to {@link LatencySegment#TOTAL}.
+     *
+     * @return the slowest segment.
+     */
+    public LatencySegment slowestSegment() {
+        long accounted = encode + wire + decode;
+        long unaccounted = total - accounted;
+        if (unaccounted >= encode && unaccounted >= wire && unaccounted >= decode) {
+            return LatencySegment.TOTAL;
+        } else if (wire >= encode && wire >= decode) {
+            return LatencySegment.WIRE;
+        } else if (encode >= decode) {
+            return LatencySegment.ENCODE;
+        } else {
+            return LatencySegment.DECODE;
+        }
+    }
+
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("SlowOperation{");
+        sb.append("type=").append(type.identifier());
+        sb.append(", id='").append(id).append('\'');
+        if (payloadSize > 0) {
+            sb.append(", payloadSize=").append(payloadSize);
+        }
+        sb.append(", totalMicros=").append(micros(total));
+        sb.append(", encodeMicros=").append(micros(encode));
+        sb.append(", wireMicros=").append(micros(wire));
+        sb.append(", decodeMicros=").append(micros(decode));
+        long server = serverDuration;
+        if (server >= 0) {
+            sb.append(", serverMicros=").append(micros(server));
+        }
+        sb.append(", slowest=").append(slowestSegment().identifier());
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright (c) 2017 Couchbase, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.couchbase.client.java.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.couchbase.client.core.annotations.InterfaceAudience;
+import com.couchbase.client.core.annotations.InterfaceStability;
+import com.couchbase.client.core.logging.CouchbaseLogger;
+import com.couchbase.client.core.logging.CouchbaseLoggerFactory;
+import rx.Observable;
+import rx.Scheduler;
+import rx.Subscription;
+import rx.functions.Action1;
+
+/**
+ * Keeps the slowest operations of a bucket exceeding a threshold and periodically logs them.
+ *
+ * Samples are kept in a fixed array of slots which is updated with compare-and-set only, so that recording
+ * never blocks the thread completing an operation. Once all slots are taken, a new sample replaces the fastest
+ * one if it is slower, so at any time the array holds the top N slowest operations of the current interval.
+ * Operations below the threshold are never handed to the recorder.
+ *
+ * @since 2.5.2
+ */
+@InterfaceStability.Experimental
+@InterfaceAudience.Public
+public class SlowOperationRecorder {
+
+    private static final CouchbaseLogger LOGGER = CouchbaseLoggerFactory.getInstance(SlowOperationRecorder.class);
+
+    private static final Comparator<SlowOperation> SLOWEST_FIRST = new Comparator<SlowOperation>() {
+        @Override
+        public int compare(SlowOperation o1, SlowOperation o2) {
+            return o1.total() < o2.total() ? 1 : (o1.total() == o2.total() ? 0 : -1);
+        }
+    };
+
+    private final String bucket;
+    private final long thresholdNanos;
+    private final int sampleSize;
+    private final AtomicLong slowCount;
+    private volatile AtomicReferenceArray<SlowOperation> samples;
+    private volatile Subscription summarySubscription;
+    private volatile long intervalStart;
+
+    /**
+     * Creates a new recorder.
+     *
+     * @param bucket the name of the bucket, used in the summary.
+     * @param threshold the duration above which an operation is considered slow.
+     * @param unit the unit of the threshold.
+     * @param sampleSize the number of slowest operations kept per interval.
+     */
+    public SlowOperationRecorder(String bucket, long threshold, TimeUnit unit, int sampleSize) {
+        if (sampleSize <= 0) {
+            throw new IllegalArgumentException("The sample size must be positive.");
+        }
+        this.bucket = bucket;
+        this.thresholdNanos = unit.toNanos(threshold);
+        this.sampleSize = sampleSize;
+        this.slowCount = new AtomicLong();
+        this.samples = new AtomicReferenceArray<SlowOperation>(sampleSize);
+        this.intervalStart = System.currentTimeMillis();
+    }
+
+    /**
+     * @return the threshold above which operations are recorded, in nanoseconds.
+     */
+    public long thresholdNanos() {
+        return thresholdNanos;
+    }
+
+    /**
+     * Records an operation, which is kept only if it is among the slowest ones of the current interval.
+     *
+     * @param operation the operation, which must be over the threshold.
+     * @return true if the operation has been kept, false otherwise.
+     */
+    public boolean record(SlowOperation operation) {
+        slowCount.incrementAndGet();
+        AtomicReferenceArray<SlowOperation> slots = samples;
+        while (true) {
+            int fastestIndex = -1;
+            SlowOperation fastest = null;
+            for (int i = 0; i < sampleSize; i++) {
+                SlowOperation current = slots.get(i);
+                if (current == null) {
+                    if (slots.compareAndSet(i, null, operation)) {
+                        return true;
+                    }
+                    current = slots.get(i);
+                }
+                if (current != null && (fastest == null || current.total() < fastest.total())) {
+                    fastest = current;
+                    fastestIndex = i;
+                }
+            }
+            if (fastest == null || fastest.total() >= operation.total()) {
+                return false;
+            }
+            if (slots.compareAndSet(fastestIndex, fastest, operation)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Returns the operations recorded since the last drain, slowest first, and starts a new interval.
+     *
+     * Operations recorded concurrently with the drain may be lost, which is acceptable for sampling.
+     *
+     * @return the slowest operations of the interval.
+     */
+    public List<SlowOperation> drain() {
+        AtomicReferenceArray<SlowOperation> slots = samples;
+        samples = new AtomicReferenceArray<SlowOperation>(sampleSize);
+        intervalStart = System.currentTimeMillis();
+        slowCount.set(0);
+
+        List<SlowOperation> result = new ArrayList<SlowOperation>(sampleSize);
+        for (int i = 0; i < sampleSize; i++) {
+            SlowOperation operation = slots.get(i);
+            if (operation != null) {
+                result.add(operation);
+            }
+        }
+        Collections.sort(result, SLOWEST_FIRST);
+        return result;
+    }
+
+    /**
+     * Starts logging a summary of the slowest operations at the given interval. Nothing is logged for
+     * intervals without slow operations.
+     *
+     * @param interval the interval between two summaries.
+     * @param unit the unit of the interval.
+     * @param scheduler the scheduler to run the summary on.
+     */
+    public synchronized void start(long interval, TimeUnit unit, Scheduler scheduler) {
+        if (summarySubscription != null) {
+            return;
+        }
+        summarySubscription = Observable
+            .interval(interval, interval, unit, scheduler)
+            .subscribe(new Action1<Long>() {
+                @Override
+                public void call(Long tick) {
+                    logSummary();
+                }
+            });
+    }
+
+    /**
+     * Stops the periodic summary, if started.
+     */
+    public synchronized void stop() {
+        if (summarySubscription != null) {
+            summarySubscription.unsubscribe();
+            summarySubscription = null;
+        }
+    }
+
+    /**
+     * Drains the recorded operations and logs them, if any.
+     */
+    void logSummary() {
+        long count = slowCount.get();
+        long duration = System.currentTimeMillis() - intervalStart;
+        List<SlowOperation> slowest = drain();
+        if (slowest.isEmpty()) {
+            return;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (SlowOperation operation : slowest) {
+            sb.append(System.getProperty("line.separator")).append("  ").append(operation);
+        }
+        LOGGER.info("{} operation(s) on bucket {} took more than {}ms during the last {}ms, slowest: {}",
+            count, bucket, TimeUnit.NANOSECONDS.toMillis(thresholdNanos), duration, sb);
+    }
+
+    /**
+     * Parses a duration as reported by the query and analytics services, like "1.5s", "12.34ms" or "870µs".
+     *
+     * @param duration the duration string.
+     * @return the duration in nanoseconds, or -1 if it could not be parsed.
+     */
+    public static long parseServerDuration(String duration) {
+        if (duration == null || duration.isEmpty()) {
+            return -1;
+        }
+        double total = 0;
+        int i = 0;
+        int length = duration.length();
+        while (i < length) {
+            int numberStart = i;
+            while (i < length && (Character.isDigit(duration.charAt(i)) || duration.charAt(i) == '.')) {
+                i++;
+            }
+            int unitStart = i;
+            while (i < length && !Character.isDigit(duration.charAt(i)) && duration.charAt(i) != '.') {
+                i++;
+            }
+            if (numberStart == unitStart) {
+                return -1;
+            }
+            double value;
+            try {
+                value = Double.parseDouble(duration.substring(numberStart, unitStart));
+            } catch (NumberFormatException ex) {
+                return -1;
+            }
+            String unit = duration.substring(unitStart, i);
+            if ("ns".equals(unit)) {
+                total += value;
+            } else if ("us".equals(unit) || "µs".equals(unit) || "μs".equals(unit)) {
+                total += value * 1e3;
+            } else if ("ms".equals(unit)) {
+                total += value * 1e6;
+            } else if ("s".equals(unit)) {
+                total += value * 1e9;
+            } else if ("m".equals(unit)) {
+                total += value * 6e10;
+            } else if ("h".equals(unit)) {
+                total += value * 3.6e12;
+            } else {
+                return -1;
+            }
+        }
+        return (long) total;
+    }
+
+    @Override
+    public String toString() {
+        return "SlowOperationRecorder{bucket=" + bucket
+            + ", thresholdMillis=" + TimeUnit.NANOSECONDS.toMillis(thresholdNanos)
+            + ", sampleSize=" + sampleSize + '}';
+    }
+}
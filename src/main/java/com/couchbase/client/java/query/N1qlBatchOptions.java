@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2017 Couchbase, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.couchbase.client.java.query;
+
+import com.couchbase.client.core.annotations.InterfaceAudience;
+import com.couchbase.client.core.annotations.InterfaceStability;
+
+/**
+ * Options of a batched execution of one prepared N1QL statement over many parameter sets, see
+ * {@link com.couchbase.client.java.AsyncBucket#queryBatch(Statement, rx.Observable, N1qlBatchOptions)}.
+ *
+ * @since 2.5.2
+ */
+@InterfaceStability.Experimental
+@InterfaceAudience.Public
+public class N1qlBatchOptions {
+
+    private int concurrency = 16;
+    private int rowsPerInsert = 1;
+    private N1qlParams params = N1qlParams.build();
+
+    private N1qlBatchOptions() {
+    }
+
+    /**
+     * Start building a {@link N1qlBatchOptions}, with 16 executions in flight and one execution per parameter set.
+     *
+     * @return a new {@link N1qlBatchOptions}.
+     */
+    public static N1qlBatchOptions build() {
+        return new N1qlBatchOptions();
+    }
+
+    /**
+     * Sets the maximum number of executions in flight.
+     *
+     * @param concurrency the number of executions in flight, at least 1.
+     * @return this {@link N1qlBatchOptions} for chaining.
+     */
+    public N1qlBatchOptions concurrency(int concurrency) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("The concurrency must be at least 1");
+        }
+        this.concurrency = concurrency;
+        return this;
+    }
+
+    /**
+     * Sets how many parameter sets of an `INSERT` or `UPSERT ... VALUES` statement with positional placeholders are
+     * sent in a single execution, by repeating its `VALUES` clause with renumbered placeholders.
+     *
+     * Statements which cannot be rewritten, like ones with named placeholders, are executed once per parameter set.
+     *
+     * @param rowsPerInsert the number of parameter sets per execution, 1 (the default) disables the rewriting.
+     * @return this {@link N1qlBatchOptions} for chaining.
+     */
+    public N1qlBatchOptions rowsPerInsert(int rowsPerInsert) {
+        if (rowsPerInsert < 1) {
+            throw new IllegalArgumentException("The number of rows per insert must be at least 1");
+        }
+        this.rowsPerInsert = rowsPerInsert;
+        return this;
+    }
+
+    /**
+     * Sets the {@link N1qlParams} every execution is sent with. Executions always go through the prepared statement
+     * cache, whatever {@link N1qlParams#adhoc(boolean)} says.
+     *
+     * @param params the parameters of the executions.
+     * @return this {@link N1qlBatchOptions} for chaining.
+     */
+    public N1qlBatchOptions params(N1qlParams params) {
+        this.params = params == null ? N1qlParams.build() : params;
+        return this;
+    }
+
+    public int concurrency() {
+        return concurrency;
+    }
+
+    public int rowsPerInsert() {
+        return rowsPerInsert;
+    }
+
+    public N1qlParams params() {
+        return params;
+    }
+
+    @Override
+    public String toString() {
+        return "N1qlBatchOptions{" +
+            "concurrency=" + concurrency +
+            ", rowsPerInsert=" + rowsPerInsert +
+            ", params=" + params +
+            '}';
+    }
+}
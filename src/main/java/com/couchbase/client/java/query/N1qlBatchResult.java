@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2017 Couchbase, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.couchbase.client.java.query;
+
+import java.util.Collections;
+import java.util.List;
+
+import com.couchbase.client.core.annotations.InterfaceAudience;
+import com.couchbase.client.core.annotations.InterfaceStability;
+import com.couchbase.client.java.document.json.JsonObject;
+
+/**
+ * The aggregated outcome of a batched execution of one prepared N1QL statement over many parameter sets.
+ *
+ * @since 2.5.2
+ */
+@InterfaceStability.Experimental
+@InterfaceAudience.Public
+public class N1qlBatchResult {
+
+    private final long rows;
+    private final long executions;
+    private final long failedExecutions;
+    private final long mutationCount;
+    private final List<Long> failedRows;
+    private final List<JsonObject> errors;
+
+    public N1qlBatchResult(long rows, long executions, long failedExecutions, long mutationCount,
+        List<Long> failedRows, List<JsonObject> errors) {
+        this.rows = rows;
+        this.executions = executions;
+        this.failedExecutions = failedExecutions;
+        this.mutationCount = mutationCount;
+        this.failedRows = Collections.unmodifiableList(failedRows);
+        this.errors = Collections.unmodifiableList(errors);
+    }
+
+    /**
+     * @return the number of parameter sets processed.
+     */
+    public long rows() {
+        return rows;
+    }
+
+    /**
+     * @return the number of statements executed, lower than {@link #rows()} if rows were grouped per insert.
+     */
+    public long executions() {
+        return executions;
+    }
+
+    /**
+     * @return the number of executions which failed.
+     */
+    public long failedExecutions() {
+        return failedExecutions;
+    }
+
+    /**
+     * @return the sum of the mutation counts reported by the executions.
+     */
+    public long mutationCount() {
+        return mutationCount;
+    }
+
+    /**
+     * @return the positions of the parameter sets whose execution failed, in ascending order.
+     */
+    public List<Long> failedRows() {
+        return failedRows;
+    }
+
+    /**
+     * @return the errors of the failed executions, as reported by the server or describing the client-side failure.
+     */
+    public List<JsonObject> errors() {
+        return errors;
+    }
+
+    /**
+     * @return true if all the executions succeeded.
+     */
+    public boolean success() {
+        return failedExecutions == 0;
+    }
+
+    @Override
+    public String toString() {
+        return "N1qlBatchResult{" +
+            "rows=" + rows +
+            ", executions=" + executions +
+            ", failedExecutions=" + failedExecutions +
+            ", mutationCount=" + mutationCount +
+            ", errors=" + errors +
+            '}';
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2017 Couchbase, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.couchbase.client.java.query.core;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Rewrites an `INSERT` or `UPSERT ... VALUES` statement with positional placeholders into one inserting several
+ * rows at once, by repeating its `VALUES` clause with the placeholders of each repetition shifted past the ones of
+ * the previous repetition.
+ *
+ * `INSERT INTO b (KEY, VALUE) VALUES ($1, $2)` becomes `INSERT INTO b (KEY, VALUE) VALUES ($1, $2), ($3, $4)` for
+ * two rows, executed with the positional parameters of both rows concatenated.
+ *
+ * @since 2.5.2
+ */
+class MultiValuesInsert {
+
+    private static final Pattern INSERT = Pattern.compile(
+        "^(\\s*(?:INSERT|UPSERT)\\s+INTO\\s+.+?\\s+VALUES\\s*)(\\(.*?\\))(\\s+RETURNING\\s+.*)?\\s*;?\\s*$",
+        Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    private static final Pattern POSITIONAL = Pattern.compile("\\$(\\d+)");
+    private static final Pattern NAMED = Pattern.compile("\\$[A-Za-z_]");
+
+    private final String prefix;
+    private final String values;
+    private final String suffix;
+    private final int parameters;
+
+    private MultiValuesInsert(String prefix, String values, String suffix, int parameters) {
+        this.prefix = prefix;
+        this.values = values;
+        this.suffix = suffix;
+        this.parameters = parameters;
+    }
+
+    /**
+     * Parses a statement.
+     *
+     * @param statement the statement to rewrite.
+     * @return the rewriter, or null if the statement is not an insert of values with positional placeholders only.
+     */
+    static MultiValuesInsert parse(String statement) {
+        Matcher matcher = INSERT.matcher(statement);
+        if (!matcher.matches()) {
+            return null;
+        }
+        String values = matcher.group(2);
+        if (NAMED.matcher(values).find()) {
+            return null;
+        }
+
+        int parameters = 0;
+        Matcher placeholder = POSITIONAL.matcher(values);
+        while (placeholder.find()) {
+            parameters = Math.max(parameters, Integer.parseInt(placeholder.group(1)));
+        }
+        if (parameters == 0) {
+            return null;
+        }
+        String suffix = matcher.group(3) == null ? "" : matcher.group(3);
+        return new MultiValuesInsert(matcher.group(1), values, suffix, parameters);
+    }
+
+    /**
+     * @return the number of positional parameters of a single row.
+     */
+    int parameters() {
+        return parameters;
+    }
+
+    /**
+     * Builds the statement inserting the given number of rows.
+     *
+     * @param rows the number of rows.
+     * @return the rewritten statement.
+     */
+    String statement(int rows) {
+        StringBuilder statement = new StringBuilder(prefix.length() + suffix.length() + rows * (values.length() + 8));
+        statement.append(prefix);
+        for (int row = 0; row < rows; row++) {
+            if (row > 0) {
+                statement.append(", ");
+            }
+            Matcher placeholder = POSITIONAL.matcher(values);
+            int offset = row * parameters;
+            int last = 0;
+            while (placeholder.find()) {
+                statement.append(values, last, placeholder.start())
+                    .append('$')
+                    .append(Integer.parseInt(placeholder.group(1)) + offset);
+                last = placeholder.end();
+            }
+            statement.append(values, last, values.length());
+        }
+        return statement.append(suffix).toString();
+    }
+}
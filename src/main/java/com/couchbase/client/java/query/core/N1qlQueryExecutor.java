@@ -34,14 +34,22 @@ import com.couchbase.client.deps.io.netty.buffer.ByteBuf;
 import com.couchbase.client.java.CouchbaseAsyncBucket;
 import com.couchbase.client.java.document.json.JsonArray;
 import com.couchbase.client.java.document.json.JsonObject;
+import com.couchbase.client.java.document.json.JsonValue;
 import com.couchbase.client.java.error.QueryExecutionException;
 import com.couchbase.client.java.error.TranscodingException;
+import com.couchbase.client.java.metrics.OperationMetrics;
+import com.couchbase.client.java.metrics.OperationTimer;
+import com.couchbase.client.java.metrics.OperationType;
+import com.couchbase.client.java.metrics.SlowOperationRecorder;
 import com.couchbase.client.java.query.AsyncN1qlQueryResult;
 import com.couchbase.client.java.query.AsyncN1qlQueryRow;
 import com.couchbase.client.java.query.DefaultAsyncN1qlQueryResult;
 import com.couchbase.client.java.query.DefaultAsyncN1qlQueryRow;
 import com.couchbase.client.java.query.DefaultN1qlQueryResult;
+import com.couchbase.client.java.query.N1qlBatchOptions;
+import com.couchbase.client.java.query.N1qlBatchResult;
 import com.couchbase.client.java.query.N1qlMetrics;
+import com.couchbase.client.java.query.N1qlParams;
 import com.couchbase.client.java.query.N1qlQuery;
 import com.couchbase.client.java.query.N1qlQueryResult;
 import com.couchbase.client.java.query.ParameterizedN1qlQuery;
@@ -52,11 +60,17 @@ import com.couchbase.client.java.query.SimpleN1qlQuery;
 import com.couchbase.client.java.query.Statement;
 import com.couchbase.client.java.transcoder.TranscoderUtils;
 import com.couchbase.client.java.util.LRUCache;
+import com.couchbase.client.java.util.ParallelDecoder;
 import rx.Observable;
+import rx.Subscriber;
 import rx.exceptions.CompositeException;
+import rx.functions.Action0;
+import rx.functions.Action1;
+import rx.functions.Action2;
 import rx.functions.Func0;
 import rx.functions.Func1;
 import rx.functions.Func2;
+import rx.functions.Func4;
 import rx.functions.Func7;
 
 import java.net.InetAddress;
@@ -64,10 +78,14 @@ import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static com.couchbase.client.java.CouchbaseAsyncBucket.JSON_OBJECT_TRANSCODER;
+import static com.couchbase.client.java.util.OnSubscribeDeferAndWatch.deferAndWatch;
 
 /**
  * A class used to execute various N1QL queries.
@@ -88,6 +106,22 @@ public class N1qlQueryExecutor {
 
     private static final String ERROR_FIELD_CODE = "code";
     private static final String ERROR_FIELD_MSG = "msg";
+
+    /**
+     * Parses the value of a row ahead of its consumption, leaving parsing errors for the consumer to hit.
+     */
+    private static final Action1<AsyncN1qlQueryRow> PARSE_ROW = new Action1<AsyncN1qlQueryRow>() {
+        @Override
+        public void call(AsyncN1qlQueryRow row) {
+            try {
+                row.value();
+            } catch (TranscodingException e) {
+                //thrown again when the consumer accesses the value
+            }
+        }
+    };
+
+    private static final String CANCEL_STATEMENT = "DELETE FROM system:active_requests WHERE requestId = $1";
     protected static final String ERROR_5000_SPECIFIC_MESSAGE = "queryport.indexNotFound";
 
     public static final java.lang.String ENCODED_PLAN_ENABLED_PROPERTY = "com.couchbase.query.encodedPlanEnabled";
@@ -97,7 +131,11 @@ public class N1qlQueryExecutor {
     private final String username;
     private final String password;
     private final Map<String, PreparedPayload> queryCache;
+    /** incremented on every change of the query cache, so that unchanged snapshots can be detected. */
+    private final AtomicLong queryCacheModifications = new AtomicLong();
     private final boolean encodedPlanEnabled;
+    private final OperationMetrics operationMetrics;
+    private final ParallelDecoder decoder;
 
     /**
      * Construct a new N1qlQueryExecutor that will send requests through the given {@link ClusterFacade}. For queries that
@@ -151,16 +189,69 @@ public class N1qlQueryExecutor {
         this(core, bucket, username, password, new LRUCache<String, PreparedPayload>(QUERY_CACHE_SIZE), encodedPlanEnabled);
     }
 
+    /**
+     * Construct a new N1qlQueryExecutor that will send requests through the given {@link ClusterFacade}. For queries that
+     * are not ad-hoc, it will cache up to {@value #QUERY_CACHE_SIZE} queries.
+     *
+     * @param core the core through which to send requests.
+     * @param bucket the bucket to bootstrap from.
+     * @param username the user authorized for bucket access.
+     * @param password the password for the user.
+     * @param encodedPlanEnabled true to include an encoded plan when running prepared queries, false otherwise.
+     * @param operationMetrics the metrics into which query latencies are recorded.
+     */
+    public N1qlQueryExecutor(ClusterFacade core, String bucket, String username, String password, boolean encodedPlanEnabled,
+            OperationMetrics operationMetrics) {
+        this(core, bucket, username, password, encodedPlanEnabled, operationMetrics, ParallelDecoder.INLINE);
+    }
+
+    /**
+     * Construct a new N1qlQueryExecutor that will send requests through the given {@link ClusterFacade}. For queries that
+     * are not ad-hoc, it will cache up to {@value #QUERY_CACHE_SIZE} queries.
+     *
+     * @param core the core through which to send requests.
+     * @param bucket the bucket to bootstrap from.
+     * @param username the user authorized for bucket access.
+     * @param password the password for the user.
+     * @param encodedPlanEnabled true to include an encoded plan when running prepared queries, false otherwise.
+     * @param operationMetrics the metrics into which query latencies are recorded.
+     * @param decoder the decoder parsing the rows ahead of their consumption.
+     */
+    public N1qlQueryExecutor(ClusterFacade core, String bucket, String username, String password, boolean encodedPlanEnabled,
+            OperationMetrics operationMetrics, ParallelDecoder decoder) {
+        this(core, bucket, username, password, new LRUCache<String, PreparedPayload>(QUERY_CACHE_SIZE), encodedPlanEnabled,
+            operationMetrics, decoder);
+    }
+
     /**
      * This constructor is for testing purpose, prefer using {@link #N1qlQueryExecutor(ClusterFacade, String, String, String)}.
      */
     protected N1qlQueryExecutor(ClusterFacade core, String bucket, String username, String password,
             LRUCache<String, PreparedPayload> lruCache, boolean encodedPlanEnabled) {
+        this(core, bucket, username, password, lruCache, encodedPlanEnabled, OperationMetrics.DISABLED);
+    }
+
+    /**
+     * This constructor is for testing purpose, prefer using {@link #N1qlQueryExecutor(ClusterFacade, String, String, String)}.
+     */
+    protected N1qlQueryExecutor(ClusterFacade core, String bucket, String username, String password,
+            LRUCache<String, PreparedPayload> lruCache, boolean encodedPlanEnabled, OperationMetrics operationMetrics) {
+        this(core, bucket, username, password, lruCache, encodedPlanEnabled, operationMetrics, ParallelDecoder.INLINE);
+    }
+
+    /**
+     * This constructor is for testing purpose, prefer using {@link #N1qlQueryExecutor(ClusterFacade, String, String, String)}.
+     */
+    protected N1qlQueryExecutor(ClusterFacade core, String bucket, String username, String password,
+            LRUCache<String, PreparedPayload> lruCache, boolean encodedPlanEnabled, OperationMetrics operationMetrics,
+            ParallelDecoder decoder) {
         this.core = core;
         this.bucket = bucket;
         this.username = username;
         this.password = password;
         this.encodedPlanEnabled = encodedPlanEnabled;
+        this.operationMetrics = operationMetrics;
+        this.decoder = decoder;
 
         queryCache = Collections.synchronizedMap(lruCache);
     }
@@ -186,93 +277,194 @@ public class N1qlQueryExecutor {
      * @return a result containing all found rows and additional information.
      */
     protected Observable<AsyncN1qlQueryResult> executeQuery(final N1qlQuery query) {
-        return Observable.defer(new Func0<Observable<GenericQueryResponse>>() {
+        return operationMetrics.timed(OperationType.N1QL, query.statement(), new Func1<OperationTimer, Observable<AsyncN1qlQueryResult>>() {
             @Override
-            public Observable<GenericQueryResponse> call() {
-                return core.send(createN1qlRequest(query, bucket, username, password, null));
-            }
-        }).flatMap(new Func1<GenericQueryResponse, Observable<AsyncN1qlQueryResult>>() {
-            @Override
-            public Observable<AsyncN1qlQueryResult> call(final GenericQueryResponse response) {
-                final Observable<AsyncN1qlQueryRow> rows = response.rows().map(new Func1<ByteBuf, AsyncN1qlQueryRow>() {
+            public Observable<AsyncN1qlQueryResult> call(final OperationTimer timer) {
+                final AtomicBoolean responded = new AtomicBoolean();
+                return deferAndWatch(new Func1<Subscriber, Observable<GenericQueryResponse>>() {
                     @Override
-                    public AsyncN1qlQueryRow call(ByteBuf byteBuf) {
-                        try {
-                            byte[] copy = TranscoderUtils.copyByteBufToByteArray(byteBuf);
-                            return new DefaultAsyncN1qlQueryRow(copy);
-                        } catch (Exception e) {
-                            throw new TranscodingException("Could not decode N1QL Query Row.", e);
-                        } finally {
-                            byteBuf.release();
-                        }
+                    public Observable<GenericQueryResponse> call(Subscriber s) {
+                        GenericQueryRequest request = createN1qlRequest(query, bucket, username, password, null);
+                        //a request whose subscriber went away before it is dispatched is dropped
+                        request.subscriber(s);
+                        timer.encoded();
+                        timer.payloadSize(request.query().length());
+                        return core.send(request);
                     }
-                });
-                final Observable<Object> signature = response.signature().map(new Func1<ByteBuf, Object>() {
+                }).flatMap(new Func1<GenericQueryResponse, Observable<AsyncN1qlQueryResult>>() {
                     @Override
-                    public Object call(ByteBuf byteBuf) {
-                        try {
-                            return JSON_OBJECT_TRANSCODER.byteBufJsonValueToObject(byteBuf);
-                        } catch (Exception e) {
-                            throw new TranscodingException("Could not decode N1QL Query Signature", e);
-                        } finally {
-                            byteBuf.release();
-                        }
-                    }
-                });
-                final Observable<N1qlMetrics> info = response.info().map(new Func1<ByteBuf, JsonObject>() {
-                    @Override
-                    public JsonObject call(ByteBuf byteBuf) {
-                        try {
-                            return JSON_OBJECT_TRANSCODER.byteBufToJsonObject(byteBuf);
-                        } catch (Exception e) {
-                            throw new TranscodingException("Could not decode N1QL Query Info.", e);
-                        } finally {
-                            byteBuf.release();
-                        }
-                    }
-                })
-                .map(new Func1<JsonObject, N1qlMetrics>() {
-                    @Override
-                    public N1qlMetrics call(JsonObject jsonObject) {
-                        return new N1qlMetrics(jsonObject);
+                    public Observable<AsyncN1qlQueryResult> call(final GenericQueryResponse response) {
+                        responded.set(true);
+                        timer.received();
+                        final Observable<AsyncN1qlQueryRow> rows = cancelOnUnsubscribe(response, timer.finishOnRows(decoder.decode(response.rows().map(new Func1<ByteBuf, AsyncN1qlQueryRow>() {
+                            @Override
+                            public AsyncN1qlQueryRow call(ByteBuf byteBuf) {
+                                long decodeStart = timer.decodeStart();
+                                try {
+                                    byte[] copy = TranscoderUtils.copyByteBufToByteArray(byteBuf);
+                                    return new DefaultAsyncN1qlQueryRow(copy);
+                                } catch (Exception e) {
+                                    throw new TranscodingException("Could not decode N1QL Query Row.", e);
+                                } finally {
+                                    byteBuf.release();
+                                    timer.decoded(decodeStart);
+                                }
+                            }
+                        }), PARSE_ROW), response.queryStatus()));
+                        final Observable<Object> signature = response.signature().map(new Func1<ByteBuf, Object>() {
+                            @Override
+                            public Object call(ByteBuf byteBuf) {
+                                try {
+                                    return JSON_OBJECT_TRANSCODER.byteBufJsonValueToObject(byteBuf);
+                                } catch (Exception e) {
+                                    throw new TranscodingException("Could not decode N1QL Query Signature", e);
+                                } finally {
+                                    byteBuf.release();
+                                }
+                            }
+                        });
+                        final Observable<N1qlMetrics> info = response.info().map(new Func1<ByteBuf, JsonObject>() {
+                            @Override
+                            public JsonObject call(ByteBuf byteBuf) {
+                                try {
+                                    return JSON_OBJECT_TRANSCODER.byteBufToJsonObject(byteBuf);
+                                } catch (Exception e) {
+                                    throw new TranscodingException("Could not decode N1QL Query Info.", e);
+                                } finally {
+                                    byteBuf.release();
+                                }
+                            }
+                        })
+                        .map(new Func1<JsonObject, N1qlMetrics>() {
+                            @Override
+                            public N1qlMetrics call(JsonObject jsonObject) {
+                                N1qlMetrics metrics = new N1qlMetrics(jsonObject);
+                                timer.serverDuration(SlowOperationRecorder.parseServerDuration(metrics.executionTime()));
+                                return metrics;
+                            }
+                        });
+                        final Observable<String> finalStatus = response.queryStatus();
+                        final Observable<JsonObject> errors = response.errors().map(new Func1<ByteBuf, JsonObject>() {
+                            @Override
+                            public JsonObject call(ByteBuf byteBuf) {
+                                try {
+                                    return JSON_OBJECT_TRANSCODER.byteBufToJsonObject(byteBuf);
+                                } catch (Exception e) {
+                                    throw new TranscodingException("Could not decode View Info.", e);
+                                } finally {
+                                    byteBuf.release();
+                                }
+                            }
+                        });
+
+                        final Observable<JsonObject> profileInfo = response.profileInfo().map(new Func1<ByteBuf, JsonObject>() {
+                            @Override
+                            public JsonObject call(ByteBuf byteBuf) {
+                                try {
+                                    return JSON_OBJECT_TRANSCODER.byteBufToJsonObject(byteBuf);
+                                } catch (Exception e) {
+                                    throw new TranscodingException("Could not decode profile Info.", e);
+                                } finally {
+                                    byteBuf.release();
+                                }
+                            }
+                        });
+
+                        boolean parseSuccess = response.status().isSuccess();
+                        String contextId = response.clientRequestId() == null ? "" : response.clientRequestId();
+                        String requestId = response.requestId();
+
+                        AsyncN1qlQueryResult r = new DefaultAsyncN1qlQueryResult(rows, signature, info, errors, profileInfo,
+                                finalStatus, parseSuccess, requestId, contextId);
+                        return Observable.just(r);
                     }
-                });
-                final Observable<String> finalStatus = response.queryStatus();
-                final Observable<JsonObject> errors = response.errors().map(new Func1<ByteBuf, JsonObject>() {
+                }).doOnUnsubscribe(new Action0() {
                     @Override
-                    public JsonObject call(ByteBuf byteBuf) {
-                        try {
-                            return JSON_OBJECT_TRANSCODER.byteBufToJsonObject(byteBuf);
-                        } catch (Exception e) {
-                            throw new TranscodingException("Could not decode View Info.", e);
-                        } finally {
-                            byteBuf.release();
+                    public void call() {
+                        //failed or given up on before the response, rows finish the timer otherwise
+                        if (!responded.get()) {
+                            timer.finish();
                         }
                     }
                 });
+            }
+        });
+    }
 
-                final Observable<JsonObject> profileInfo = response.profileInfo().map(new Func1<ByteBuf, JsonObject>() {
-                    @Override
-                    public JsonObject call(ByteBuf byteBuf) {
-                        try {
-                            return JSON_OBJECT_TRANSCODER.byteBufToJsonObject(byteBuf);
-                        } catch (Exception e) {
-                            throw new TranscodingException("Could not decode profile Info.", e);
-                        } finally {
-                            byteBuf.release();
-                        }
-                    }
-                });
+    /**
+     * Cancels the query on the server when the rows are unsubscribed from before the response completed, for
+     * instance after a take or first.
+     *
+     * The rows still streaming in are released by the core as soon as they are not subscribed to anymore, the
+     * cancellation additionally stops the server from producing the remaining ones. It is a best effort: the query
+     * may complete before it is cancelled, and failures to cancel are only logged.
+     */
+    private Observable<AsyncN1qlQueryRow> cancelOnUnsubscribe(final GenericQueryResponse response,
+        Observable<AsyncN1qlQueryRow> rows) {
+        final String requestId = response.requestId();
+        if (requestId == null) {
+            return rows;
+        }
+        final AtomicBoolean done = new AtomicBoolean();
+        response.queryStatus().subscribe(new Subscriber<String>() {
+            @Override
+            public void onCompleted() {
+                done.set(true);
+            }
 
-                boolean parseSuccess = response.status().isSuccess();
-                String contextId = response.clientRequestId() == null ? "" : response.clientRequestId();
-                String requestId = response.requestId();
+            @Override
+            public void onError(Throwable e) {
+                done.set(true);
+            }
 
-                AsyncN1qlQueryResult r = new DefaultAsyncN1qlQueryResult(rows, signature, info, errors, profileInfo,
-                        finalStatus, parseSuccess, requestId, contextId);
-                return Observable.just(r);
+            @Override
+            public void onNext(String status) {
             }
         });
+        return rows
+            .doOnTerminate(new Action0() {
+                @Override
+                public void call() {
+                    done.set(true);
+                }
+            })
+            .doOnUnsubscribe(new Action0() {
+                @Override
+                public void call() {
+                    if (done.compareAndSet(false, true)) {
+                        cancel(requestId);
+                    }
+                }
+            });
+    }
+
+    /**
+     * Deletes the given request from the active requests of the query service, which stops its execution.
+     */
+    private void cancel(final String requestId) {
+        LOGGER.debug("Rows of N1QL request {} unsubscribed before completion, cancelling it", requestId);
+        executeQuery(N1qlQuery.parameterized(CANCEL_STATEMENT, JsonArray.from(requestId)))
+            .flatMap(new Func1<AsyncN1qlQueryResult, Observable<JsonObject>>() {
+                @Override
+                public Observable<JsonObject> call(AsyncN1qlQueryResult result) {
+                    return result.rows().ignoreElements().cast(JsonObject.class).concatWith(result.errors());
+                }
+            })
+            .subscribe(new Subscriber<JsonObject>() {
+                @Override
+                public void onCompleted() {
+                }
+
+                @Override
+                public void onError(Throwable e) {
+                    LOGGER.debug("Could not cancel N1QL request {}", requestId, e);
+                }
+
+                @Override
+                public void onNext(JsonObject error) {
+                    LOGGER.debug("Could not cancel N1QL request {}: {}", requestId, error);
+                }
+            });
     }
 
     //==== Section related to prepared statements, PREPARE and EXECUTE support ====
@@ -286,7 +478,7 @@ public class N1qlQueryExecutor {
 
         if (code == null || msg == null) return false;
 
-        if (code == 4050 || code == 4070 ||
+        if (code == 4040 || code == 4050 || code == 4070 ||
                 (code == 5000 && msg.contains(ERROR_5000_SPECIFIC_MESSAGE))) {
             return true;
         }
@@ -370,6 +562,7 @@ public class N1qlQueryExecutor {
         if (error instanceof QueryExecutionException &&
                 shouldRetry(((QueryExecutionException) error).getN1qlError())) {
             queryCache.remove(query.statement().toString());
+            queryCacheModifications.incrementAndGet();
             return prepareAndExecute(query);
         }
         return Observable.error(error);
@@ -384,11 +577,229 @@ public class N1qlQueryExecutor {
                     @Override
                     public Observable<AsyncN1qlQueryResult> call(PreparedPayload payload) {
                         queryCache.put(query.statement().toString(), payload);
+                        queryCacheModifications.incrementAndGet();
                         return executePrepared(query, payload);
                     }
                 });
     }
 
+    /**
+     * Issues a N1QL PREPARE and puts the plan in cache, without executing it.
+     *
+     * @param statement the statement to prepare, as it will be executed later.
+     * @return the cached {@link PreparedPayload}.
+     */
+    public Observable<PreparedPayload> prime(final Statement statement) {
+        return prepare(statement)
+                .doOnNext(new Action1<PreparedPayload>() {
+                    @Override
+                    public void call(PreparedPayload payload) {
+                        queryCache.put(statement.toString(), payload);
+                        queryCacheModifications.incrementAndGet();
+                    }
+                });
+    }
+
+    /**
+     * Executes one prepared statement once per parameter set, with bounded concurrency, and aggregates the
+     * mutation counts and errors of all the executions.
+     *
+     * The statement is prepared once upfront unless its plan is already cached, then every execution goes through
+     * {@link #dispatchPrepared(N1qlQuery)} with the cached plan. If more than one row per insert is requested and the
+     * statement is an insert of values with positional placeholders, consecutive parameter sets are grouped into
+     * multi-row executions. A failed execution is recorded in the result, it does not stop the batch.
+     *
+     * @param statement the statement to execute, with positional or named placeholders.
+     * @param parameters the parameter sets, {@link JsonArray}s for positional or {@link JsonObject}s for named
+     *   placeholders.
+     * @param options the options of the batch.
+     * @return the aggregated result, once all the executions completed.
+     */
+    public Observable<N1qlBatchResult> executeBatch(final Statement statement,
+        final Observable<? extends JsonValue> parameters, final N1qlBatchOptions options) {
+        return Observable.defer(new Func0<Observable<N1qlBatchResult>>() {
+            @Override
+            public Observable<N1qlBatchResult> call() {
+                final N1qlParams params = options.params();
+                final AtomicLong nextRow = new AtomicLong();
+                final MultiValuesInsert insert = options.rowsPerInsert() > 1
+                    ? MultiValuesInsert.parse(statement.toString()) : null;
+                if (options.rowsPerInsert() > 1 && insert == null) {
+                    LOGGER.debug("Statement \"{}\" cannot be rewritten into multi-row inserts, executing it once per row",
+                        statement);
+                }
+
+                final Statement prepared;
+                Observable<BatchExecution> executions;
+                if (insert != null) {
+                    prepared = N1qlQuery.simple(insert.statement(options.rowsPerInsert())).statement();
+                    executions = parameters
+                        .buffer(options.rowsPerInsert())
+                        .map(new Func1<List<? extends JsonValue>, BatchExecution>() {
+                            @Override
+                            public BatchExecution call(List<? extends JsonValue> rows) {
+                                JsonArray values = JsonArray.create();
+                                for (JsonValue row : rows) {
+                                    if (!(row instanceof JsonArray) || ((JsonArray) row).size() != insert.parameters()) {
+                                        throw new IllegalArgumentException("Expected " + insert.parameters()
+                                            + " positional parameters per row, got " + row);
+                                    }
+                                    for (Object value : (JsonArray) row) {
+                                        values.add(value);
+                                    }
+                                }
+                                return new BatchExecution(nextRow.getAndAdd(rows.size()), rows.size(),
+                                    N1qlQuery.parameterized(insert.statement(rows.size()), values, params));
+                            }
+                        });
+                } else {
+                    prepared = statement;
+                    executions = parameters.map(new Func1<JsonValue, BatchExecution>() {
+                        @Override
+                        public BatchExecution call(JsonValue row) {
+                            N1qlQuery query;
+                            if (row instanceof JsonArray) {
+                                query = N1qlQuery.parameterized(statement, (JsonArray) row, params);
+                            } else if (row instanceof JsonObject) {
+                                query = N1qlQuery.parameterized(statement, (JsonObject) row, params);
+                            } else {
+                                throw new IllegalArgumentException("Expected a JsonArray or a JsonObject, got " + row);
+                            }
+                            return new BatchExecution(nextRow.getAndIncrement(), 1, query);
+                        }
+                    });
+                }
+
+                Observable<BatchExecution> primed = queryCache.containsKey(prepared.toString())
+                    ? Observable.<BatchExecution>empty()
+                    : prime(prepared)
+                        .ignoreElements()
+                        .onErrorResumeNext(new Func1<Throwable, Observable<PreparedPayload>>() {
+                            @Override
+                            public Observable<PreparedPayload> call(Throwable throwable) {
+                                //the executions prepare again and report the failure
+                                LOGGER.debug("Could not prepare batched statement \"{}\"", prepared, throwable);
+                                return Observable.empty();
+                            }
+                        })
+                        .cast(BatchExecution.class);
+
+                return primed
+                    .concatWith(executions)
+                    .flatMap(new Func1<BatchExecution, Observable<BatchExecution>>() {
+                        @Override
+                        public Observable<BatchExecution> call(BatchExecution execution) {
+                            return execution.run();
+                        }
+                    }, options.concurrency())
+                    .collect(new Func0<BatchAggregate>() {
+                        @Override
+                        public BatchAggregate call() {
+                            return new BatchAggregate();
+                        }
+                    }, new Action2<BatchAggregate, BatchExecution>() {
+                        @Override
+                        public void call(BatchAggregate aggregate, BatchExecution execution) {
+                            aggregate.add(execution);
+                        }
+                    })
+                    .map(new Func1<BatchAggregate, N1qlBatchResult>() {
+                        @Override
+                        public N1qlBatchResult call(BatchAggregate aggregate) {
+                            return aggregate.result();
+                        }
+                    });
+            }
+        });
+    }
+
+    /**
+     * A single execution of a batch, covering one or more consecutive parameter sets.
+     */
+    private class BatchExecution {
+
+        final long firstRow;
+        final int rows;
+        final N1qlQuery query;
+        boolean success;
+        int mutationCount;
+        List<JsonObject> errors;
+
+        BatchExecution(long firstRow, int rows, N1qlQuery query) {
+            this.firstRow = firstRow;
+            this.rows = rows;
+            this.query = query;
+        }
+
+        Observable<BatchExecution> run() {
+            return dispatchPrepared(query)
+                .flatMap(new Func1<AsyncN1qlQueryResult, Observable<BatchExecution>>() {
+                    @Override
+                    public Observable<BatchExecution> call(AsyncN1qlQueryResult result) {
+                        return Observable.zip(result.rows().count(),
+                            result.info().singleOrDefault(N1qlMetrics.EMPTY_METRICS),
+                            result.errors().toList(),
+                            result.finalSuccess().singleOrDefault(Boolean.FALSE),
+                            new Func4<Integer, N1qlMetrics, List<JsonObject>, Boolean, BatchExecution>() {
+                                @Override
+                                public BatchExecution call(Integer rowCount, N1qlMetrics metrics,
+                                    List<JsonObject> errors, Boolean finalSuccess) {
+                                    success = finalSuccess && errors.isEmpty();
+                                    mutationCount = metrics.mutationCount();
+                                    BatchExecution.this.errors = errors;
+                                    return BatchExecution.this;
+                                }
+                            });
+                    }
+                })
+                .onErrorResumeNext(new Func1<Throwable, Observable<BatchExecution>>() {
+                    @Override
+                    public Observable<BatchExecution> call(Throwable throwable) {
+                        success = false;
+                        if (throwable instanceof QueryExecutionException
+                            && ((QueryExecutionException) throwable).getN1qlError() != null) {
+                            errors = Collections.singletonList(((QueryExecutionException) throwable).getN1qlError());
+                        } else {
+                            errors = Collections.singletonList(JsonObject.create()
+                                .put(ERROR_FIELD_MSG, String.valueOf(throwable)));
+                        }
+                        return Observable.just(BatchExecution.this);
+                    }
+                });
+        }
+    }
+
+    /**
+     * Sums up the executions of a batch as they complete.
+     */
+    private static class BatchAggregate {
+
+        private long rows;
+        private long executions;
+        private long failedExecutions;
+        private long mutationCount;
+        private final List<Long> failedRows = new ArrayList<Long>();
+        private final List<JsonObject> errors = new ArrayList<JsonObject>();
+
+        void add(BatchExecution execution) {
+            rows += execution.rows;
+            executions++;
+            mutationCount += execution.mutationCount;
+            if (!execution.success) {
+                failedExecutions++;
+                for (int i = 0; i < execution.rows; i++) {
+                    failedRows.add(execution.firstRow + i);
+                }
+                errors.addAll(execution.errors);
+            }
+        }
+
+        N1qlBatchResult result() {
+            Collections.sort(failedRows);
+            return new N1qlBatchResult(rows, executions, failedExecutions, mutationCount, failedRows, errors);
+        }
+    }
+
     /**
      * Issues a proper N1QL EXECUTE, detecting if parameters must be added to it.
      */
@@ -578,9 +989,57 @@ public class N1qlQueryExecutor {
     public int invalidateQueryCache() {
         int oldSize = queryCache.size();
         queryCache.clear();
+        queryCacheModifications.incrementAndGet();
         return oldSize;
     }
 
+    /**
+     * Returns a copy of the query cache, in eviction order (eldest first).
+     *
+     * @return the cached payloads by statement.
+     */
+    public Map<String, PreparedPayload> queryCacheSnapshot() {
+        synchronized (queryCache) {
+            return new LinkedHashMap<String, PreparedPayload>(queryCache);
+        }
+    }
+
+    /**
+     * Returns the number of changes made to the query cache so far, which tells whether a previous
+     * {@link #queryCacheSnapshot() snapshot} is still current if read before it.
+     *
+     * @return the modification count.
+     */
+    public long queryCacheModifications() {
+        return queryCacheModifications.get();
+    }
+
+    /**
+     * Adds payloads to the query cache, for instance the ones persisted by a previous instance, without replacing the
+     * ones already cached.
+     *
+     * Stale payloads are not detected here but when executed, through the same retry path as plans invalidated on
+     * the server.
+     *
+     * @param payloads the payloads by statement, in eviction order (eldest first).
+     * @return the number of payloads added.
+     */
+    public int restoreQueryCache(Map<String, PreparedPayload> payloads) {
+        int restored = 0;
+        synchronized (queryCache) {
+            for (Map.Entry<String, PreparedPayload> entry : payloads.entrySet()) {
+                if (!queryCache.containsKey(entry.getKey())) {
+                    queryCache.put(entry.getKey(), entry.getValue());
+                    restored++;
+                }
+            }
+        }
+        if (restored > 0) {
+            queryCacheModifications.incrementAndGet();
+        }
+        return restored;
+    }
+
     /**
      * @return true if prepared queries produced by this QueryExecutor will include an encoded plan, false otherwise.
      */
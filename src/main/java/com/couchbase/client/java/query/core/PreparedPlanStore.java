@@ -0,0 +1,249 @@
+/*
+ * Copyright (c) 2017 Couchbase, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.couchbase.client.java.query.core;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.couchbase.client.core.annotations.InterfaceAudience;
+import com.couchbase.client.core.annotations.InterfaceStability;
+import com.couchbase.client.core.logging.CouchbaseLogger;
+import com.couchbase.client.core.logging.CouchbaseLoggerFactory;
+import com.couchbase.client.java.document.json.JsonObject;
+import com.couchbase.client.java.query.N1qlQuery;
+import com.couchbase.client.java.query.PreparedPayload;
+import rx.Observable;
+import rx.Scheduler;
+import rx.Subscription;
+import rx.functions.Action1;
+
+/**
+ * Persists the prepared statement cache of a {@link N1qlQueryExecutor} to a local file, so that a restarted
+ * instance does not have to PREPARE its whole working set again.
+ *
+ * The file holds one JSON object per line with the statement, the prepared name and the encoded plan, eldest
+ * first so that restoring keeps the eviction order. It is rewritten through a temporary file and a rename, and only
+ * if the cache changed since the last checkpoint. Unreadable lines are skipped.
+ *
+ * Restored payloads are not validated up front: a stale one fails on EXECUTE with one of the errors that already
+ * trigger a PREPARE and retry for plans invalidated on the server.
+ *
+ * @since 2.5.2
+ */
+@InterfaceStability.Experimental
+@InterfaceAudience.Private
+public class PreparedPlanStore {
+
+    private static final CouchbaseLogger LOGGER = CouchbaseLoggerFactory.getInstance(PreparedPlanStore.class);
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String FILE_SUFFIX = ".n1ql-plans";
+
+    private final File file;
+    private final N1qlQueryExecutor executor;
+    private volatile long checkpointedModifications = -1;
+    private Subscription checkpoints;
+
+    /**
+     * Creates a store for the cache of the given executor.
+     *
+     * @param file the file the cache is persisted to.
+     * @param executor the executor whose cache is persisted.
+     */
+    public PreparedPlanStore(File file, N1qlQueryExecutor executor) {
+        this.file = file;
+        this.executor = executor;
+    }
+
+    /**
+     * Creates a store persisting the cache of a bucket's executor in the given directory.
+     *
+     * @param directory the directory holding the files of all buckets.
+     * @param bucket the name of the bucket, which names the file.
+     * @param executor the executor whose cache is persisted.
+     * @return the store.
+     */
+    public static PreparedPlanStore create(String directory, String bucket, N1qlQueryExecutor executor) {
+        return new PreparedPlanStore(new File(directory, bucket + FILE_SUFFIX), executor);
+    }
+
+    /**
+     * @return the file the cache is persisted to.
+     */
+    public File file() {
+        return file;
+    }
+
+    /**
+     * Loads the persisted payloads into the executor's cache. A missing or unreadable file restores nothing.
+     *
+     * @return the number of restored payloads.
+     */
+    public int restore() {
+        Map<String, PreparedPayload> payloads = new LinkedHashMap<String, PreparedPayload>();
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                PreparedPayload payload = decode(line);
+                if (payload != null) {
+                    payloads.put(payload.originalStatement().toString(), payload);
+                }
+            }
+        } catch (FileNotFoundException ex) {
+            LOGGER.debug("No persisted prepared statements at {}.", file);
+        } catch (IOException ex) {
+            LOGGER.warn("Could not read persisted prepared statements from {}.", file, ex);
+        } finally {
+            close(reader);
+        }
+
+        int restored = executor.restoreQueryCache(payloads);
+        checkpointedModifications = executor.queryCacheModifications();
+        LOGGER.debug("Restored {} prepared statements from {}.", restored, file);
+        return restored;
+    }
+
+    /**
+     * Persists the executor's cache if it changed since the last checkpoint or restore.
+     *
+     * @return true if the file was written, false if the cache did not change.
+     * @throws IOException if the file could not be written.
+     */
+    public synchronized boolean checkpoint() throws IOException {
+        long modifications = executor.queryCacheModifications();
+        if (modifications == checkpointedModifications) {
+            return false;
+        }
+        Map<String, PreparedPayload> snapshot = executor.queryCacheSnapshot();
+
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Could not create directory " + parent);
+        }
+        File temporary = new File(parent, file.getName() + ".tmp");
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temporary), UTF_8));
+        try {
+            for (Map.Entry<String, PreparedPayload> entry : snapshot.entrySet()) {
+                writer.write(encode(entry.getKey(), entry.getValue()));
+                writer.write('\n');
+            }
+        } finally {
+            writer.close();
+        }
+        if (!temporary.renameTo(file) && !(file.delete() && temporary.renameTo(file))) {
+            throw new IOException("Could not replace " + file);
+        }
+        checkpointedModifications = modifications;
+        return true;
+    }
+
+    /**
+     * Starts checkpointing periodically, if not started yet.
+     *
+     * @param interval the interval between two checkpoints.
+     * @param unit the unit of the interval.
+     * @param scheduler the scheduler the checkpoints run on, which should allow blocking I/O.
+     */
+    public synchronized void start(long interval, TimeUnit unit, Scheduler scheduler) {
+        if (checkpoints != null) {
+            return;
+        }
+        checkpoints = Observable
+            .interval(interval, interval, unit, scheduler)
+            .subscribe(new Action1<Long>() {
+                @Override
+                public void call(Long tick) {
+                    checkpointQuietly();
+                }
+            });
+    }
+
+    /**
+     * Stops the periodic checkpoints, if started, and performs a last one.
+     */
+    public synchronized void stop() {
+        if (checkpoints != null) {
+            checkpoints.unsubscribe();
+            checkpoints = null;
+        }
+        checkpointQuietly();
+    }
+
+    private void checkpointQuietly() {
+        try {
+            if (checkpoint()) {
+                LOGGER.debug("Persisted prepared statements to {}.", file);
+            }
+        } catch (IOException ex) {
+            LOGGER.warn("Could not persist prepared statements to {}.", file, ex);
+        }
+    }
+
+    static String encode(String statement, PreparedPayload payload) {
+        JsonObject json = JsonObject.create()
+            .put("statement", statement)
+            .put("name", payload.preparedName());
+        if (payload.encodedPlan() != null) {
+            json.put("encodedPlan", payload.encodedPlan());
+        }
+        return json.toString();
+    }
+
+    static PreparedPayload decode(String line) {
+        try {
+            JsonObject json = JsonObject.fromJson(line);
+            String statement = json.getString("statement");
+            String name = json.getString("name");
+            if (statement == null || name == null) {
+                return null;
+            }
+            return new PreparedPayload(N1qlQuery.simple(statement).statement(), name, json.getString("encodedPlan"));
+        } catch (Exception ex) {
+            LOGGER.debug("Skipping unreadable persisted prepared statement.", ex);
+            return null;
+        }
+    }
+
+    private static void close(Reader reader) {
+        if (reader != null) {
+            try {
+                reader.close();
+            } catch (IOException ex) {
+                LOGGER.debug("Could not close {}.", reader, ex);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "PreparedPlanStore{file=" + file + '}';
+    }
+}
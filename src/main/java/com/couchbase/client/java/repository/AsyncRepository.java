@@ -21,8 +21,11 @@ import com.couchbase.client.java.PersistTo;
 import com.couchbase.client.java.ReplicaMode;
 import com.couchbase.client.java.ReplicateTo;
 import com.couchbase.client.java.document.EntityDocument;
+import com.couchbase.client.java.query.N1qlQuery;
 import rx.Observable;
 
+import java.util.Collection;
+
 /**
  * The async repository abstraction for entities on top of an AsyncBucket.
  *
@@ -65,4 +68,29 @@ public interface AsyncRepository {
     <T> Observable<EntityDocument<T>> remove(String id, ReplicateTo replicateTo, Class<T> entityClass);
     <T> Observable<EntityDocument<T>> remove(String id, PersistTo persistTo, ReplicateTo replicateTo, Class<T> entityClass);
 
+    /**
+     * Loads the entities with the given ids, skipping the ones which do not exist.
+     *
+     * At most {@link com.couchbase.client.java.env.CouchbaseEnvironment#repositoryBatchConcurrency()} entities are
+     * loaded concurrently, and they are emitted as they arrive rather than in the order of the ids.
+     */
+    <T> Observable<EntityDocument<T>> getAll(Collection<String> ids, Class<T> entityClass);
+
+    /**
+     * Stores the given entities, at most
+     * {@link com.couchbase.client.java.env.CouchbaseEnvironment#repositoryBatchConcurrency()} of them concurrently,
+     * and emits them with their new CAS as they are stored.
+     */
+    <T> Observable<EntityDocument<T>> upsertAll(Collection<EntityDocument<T>> documents);
+    <T> Observable<EntityDocument<T>> upsertAll(Collection<EntityDocument<T>> documents, PersistTo persistTo, ReplicateTo replicateTo);
+
+    /**
+     * Runs the given N1QL query and maps each row straight into an entity.
+     *
+     * Row fields are mapped to the entity properties by name, and the document id is read from the field named
+     * like the id property, for example "SELECT META(b).id AS id, b.* FROM bucket b WHERE ...". Errors returned by
+     * the query service are raised as a {@link com.couchbase.client.java.error.QueryExecutionException}.
+     */
+    <T> Observable<EntityDocument<T>> find(N1qlQuery query, Class<T> entityClass);
+
 }
@@ -24,21 +24,30 @@ import com.couchbase.client.java.ReplicateTo;
 import com.couchbase.client.java.document.Document;
 import com.couchbase.client.java.document.EntityDocument;
 import com.couchbase.client.java.document.JsonDocument;
+import com.couchbase.client.java.document.json.JsonObject;
+import com.couchbase.client.java.error.QueryExecutionException;
+import com.couchbase.client.java.query.AsyncN1qlQueryResult;
+import com.couchbase.client.java.query.AsyncN1qlQueryRow;
+import com.couchbase.client.java.query.N1qlQuery;
 import com.couchbase.client.java.repository.mapping.DefaultEntityConverter;
 import com.couchbase.client.java.repository.mapping.EntityConverter;
 import rx.Observable;
 import rx.functions.Func1;
 
+import java.util.Collection;
+
 @InterfaceAudience.Public
 @InterfaceStability.Experimental
 public class CouchbaseAsyncRepository implements AsyncRepository {
 
     private final EntityConverter converter;
+    private final DefaultEntityConverter rowConverter;
     private final AsyncBucket bucket;
 
     public CouchbaseAsyncRepository(AsyncBucket bucket) {
         this.bucket = bucket;
-        converter = new DefaultEntityConverter();
+        rowConverter = new DefaultEntityConverter();
+        converter = rowConverter;
     }
 
     @Override
@@ -283,6 +292,62 @@ public class CouchbaseAsyncRepository implements AsyncRepository {
             .map(new DocumentToType<T>(entityClass));
     }
 
+    @Override
+    public <T> Observable<EntityDocument<T>> getAll(Collection<String> ids, Class<T> entityClass) {
+        return Observable
+            .from(ids)
+            .flatMap(new Func1<String, Observable<JsonDocument>>() {
+                @Override
+                public Observable<JsonDocument> call(String id) {
+                    return bucket.get(id);
+                }
+            }, bucket.environment().repositoryBatchConcurrency())
+            .map(new DocumentToType<T>(entityClass));
+    }
+
+    @Override
+    public <T> Observable<EntityDocument<T>> upsertAll(Collection<EntityDocument<T>> documents) {
+        return upsertAll(documents, PersistTo.NONE, ReplicateTo.NONE);
+    }
+
+    @Override
+    public <T> Observable<EntityDocument<T>> upsertAll(Collection<EntityDocument<T>> documents, final PersistTo persistTo,
+        final ReplicateTo replicateTo) {
+        return Observable
+            .from(documents)
+            .flatMap(new Func1<EntityDocument<T>, Observable<EntityDocument<T>>>() {
+                @Override
+                public Observable<EntityDocument<T>> call(EntityDocument<T> document) {
+                    return upsert(document, persistTo, replicateTo);
+                }
+            }, bucket.environment().repositoryBatchConcurrency());
+    }
+
+    @Override
+    public <T> Observable<EntityDocument<T>> find(N1qlQuery query, final Class<T> entityClass) {
+        return bucket
+            .query(query)
+            .flatMap(new Func1<AsyncN1qlQueryResult, Observable<EntityDocument<T>>>() {
+                @Override
+                public Observable<EntityDocument<T>> call(AsyncN1qlQueryResult result) {
+                    return result.rows()
+                        .map(new Func1<AsyncN1qlQueryRow, EntityDocument<T>>() {
+                            @Override
+                            public EntityDocument<T> call(AsyncN1qlQueryRow row) {
+                                return rowConverter.toEntity(row.byteValue(), entityClass);
+                            }
+                        })
+                        .concatWith(result.errors().flatMap(new Func1<JsonObject, Observable<EntityDocument<T>>>() {
+                            @Override
+                            public Observable<EntityDocument<T>> call(JsonObject error) {
+                                return Observable.error(new QueryExecutionException(
+                                    "Could not execute repository query: " + error.getString("msg"), error));
+                            }
+                        }));
+                }
+            });
+    }
+
     class DocumentToType<T> implements Func1<JsonDocument, EntityDocument<T>> {
 
         private final Class<T> entityClass;
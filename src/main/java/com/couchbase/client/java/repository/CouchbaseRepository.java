@@ -23,8 +23,10 @@ import com.couchbase.client.java.ReplicaMode;
 import com.couchbase.client.java.ReplicateTo;
 import com.couchbase.client.java.document.EntityDocument;
 import com.couchbase.client.java.env.CouchbaseEnvironment;
+import com.couchbase.client.java.query.N1qlQuery;
 import com.couchbase.client.java.util.Blocking;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
@@ -36,9 +38,11 @@ public class CouchbaseRepository implements Repository {
 
     private final AsyncRepository asyncRepository;
     private final long timeout;
+    private final long queryTimeout;
 
     public CouchbaseRepository(Bucket bucket, CouchbaseEnvironment environment) {
         this.timeout = environment.kvTimeout();
+        this.queryTimeout = environment.queryTimeout();
         this.asyncRepository = bucket.async().repository().toBlocking().single();
     }
 
@@ -306,4 +310,34 @@ public class CouchbaseRepository implements Repository {
     public <T> EntityDocument<T> remove(String id, PersistTo persistTo, ReplicateTo replicateTo, Class<T> entityClass, long timeout, TimeUnit timeUnit) {
         return Blocking.blockForSingle(asyncRepository.remove(id, persistTo, replicateTo, entityClass), timeout, timeUnit);
     }
+
+    @Override
+    public <T> List<EntityDocument<T>> getAll(Collection<String> ids, Class<T> entityClass) {
+        return getAll(ids, entityClass, timeout, TIMEOUT_UNIT);
+    }
+
+    @Override
+    public <T> List<EntityDocument<T>> getAll(Collection<String> ids, Class<T> entityClass, long timeout, TimeUnit timeUnit) {
+        return Blocking.blockForSingle(asyncRepository.getAll(ids, entityClass).toList(), timeout, timeUnit);
+    }
+
+    @Override
+    public <T> List<EntityDocument<T>> upsertAll(Collection<EntityDocument<T>> documents) {
+        return upsertAll(documents, timeout, TIMEOUT_UNIT);
+    }
+
+    @Override
+    public <T> List<EntityDocument<T>> upsertAll(Collection<EntityDocument<T>> documents, long timeout, TimeUnit timeUnit) {
+        return Blocking.blockForSingle(asyncRepository.upsertAll(documents).toList(), timeout, timeUnit);
+    }
+
+    @Override
+    public <T> List<EntityDocument<T>> find(N1qlQuery query, Class<T> entityClass) {
+        return find(query, entityClass, queryTimeout, TIMEOUT_UNIT);
+    }
+
+    @Override
+    public <T> List<EntityDocument<T>> find(N1qlQuery query, Class<T> entityClass, long timeout, TimeUnit timeUnit) {
+        return Blocking.blockForSingle(asyncRepository.find(query, entityClass).toList(), timeout, timeUnit);
+    }
 }
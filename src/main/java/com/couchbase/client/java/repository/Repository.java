@@ -21,6 +21,9 @@ import com.couchbase.client.java.PersistTo;
 import com.couchbase.client.java.ReplicaMode;
 import com.couchbase.client.java.ReplicateTo;
 import com.couchbase.client.java.document.EntityDocument;
+import com.couchbase.client.java.query.N1qlQuery;
+
+import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
@@ -97,4 +100,28 @@ public interface Repository {
     <T> EntityDocument<T> remove(String id, PersistTo persistTo, ReplicateTo replicateTo, Class<T> entityClass);
     <T> EntityDocument<T> remove(String id, PersistTo persistTo, ReplicateTo replicateTo, Class<T> entityClass, long timeout, TimeUnit timeUnit);
 
+    /**
+     * Loads the entities with the given ids, skipping the ones which do not exist.
+     *
+     * @see AsyncRepository#getAll(Collection, Class)
+     */
+    <T> List<EntityDocument<T>> getAll(Collection<String> ids, Class<T> entityClass);
+    <T> List<EntityDocument<T>> getAll(Collection<String> ids, Class<T> entityClass, long timeout, TimeUnit timeUnit);
+
+    /**
+     * Stores the given entities and returns them with their new CAS, in completion order.
+     *
+     * @see AsyncRepository#upsertAll(Collection)
+     */
+    <T> List<EntityDocument<T>> upsertAll(Collection<EntityDocument<T>> documents);
+    <T> List<EntityDocument<T>> upsertAll(Collection<EntityDocument<T>> documents, long timeout, TimeUnit timeUnit);
+
+    /**
+     * Runs the given N1QL query and maps each row straight into an entity.
+     *
+     * @see AsyncRepository#find(N1qlQuery, Class)
+     */
+    <T> List<EntityDocument<T>> find(N1qlQuery query, Class<T> entityClass);
+    <T> List<EntityDocument<T>> find(N1qlQuery query, Class<T> entityClass, long timeout, TimeUnit timeUnit);
+
 }
@@ -15,19 +15,30 @@
  */
 package com.couchbase.client.java.repository.mapping;
 
+import com.couchbase.client.deps.com.fasterxml.jackson.core.JsonParser;
+import com.couchbase.client.deps.com.fasterxml.jackson.core.JsonToken;
 import com.couchbase.client.java.document.EntityDocument;
 import com.couchbase.client.java.document.JsonDocument;
 import com.couchbase.client.java.document.json.JsonObject;
+import com.couchbase.client.java.transcoder.JacksonTransformers;
 
-import java.util.Map;
+import java.io.IOException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 public class DefaultEntityConverter implements EntityConverter<JsonDocument> {
 
-    private final Map<Class<?>, EntityMetadata> metadataCache;
+    /**
+     * The metadata is shared between all converters, since it only depends on the entity class
+     * and every repository instance creates its own converter.
+     */
+    private static final ConcurrentMap<Class<?>, EntityMetadata> METADATA_CACHE =
+        new ConcurrentHashMap<Class<?>, EntityMetadata>();
+
+    private final ConcurrentMap<Class<?>, EntityMetadata> metadataCache;
 
     public DefaultEntityConverter() {
-        this.metadataCache = new ConcurrentHashMap<Class<?>, EntityMetadata>();
+        this.metadataCache = METADATA_CACHE;
     }
 
     @Override
@@ -94,6 +105,102 @@ public class DefaultEntityConverter implements EntityConverter<JsonDocument> {
         }
     }
 
+    /**
+     * Converts the raw JSON of a query row straight into an entity, without building an intermediate
+     * {@link JsonObject}.
+     *
+     * The row needs to be a JSON object whose fields are named like the entity properties. The document id
+     * is read from the field named like the {@link com.couchbase.client.java.repository.annotation.Id} property
+     * (for example with "SELECT META(b).id AS id, b.* FROM bucket b"), fields which are not mapped are skipped.
+     *
+     * @param row the raw JSON of the row.
+     * @param clazz the entity class.
+     * @return the entity document, without expiry nor CAS.
+     */
+    public <T> EntityDocument<T> toEntity(byte[] row, Class<T> clazz) {
+        EntityMetadata entityMetadata = metadata(clazz);
+        T instance;
+        try {
+            instance = clazz.newInstance(); // for now only support no-args constructor
+        } catch (Exception e) {
+            throw new RepositoryMappingException("Could not instantiate entity.", e);
+        }
+
+        String id = null;
+        JsonParser parser = null;
+        try {
+            parser = JacksonTransformers.MAPPER.getFactory().createParser(row);
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new RepositoryMappingException("Query row is not a JSON object.");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                PropertyMetadata propertyMetadata = property(entityMetadata, parser.getCurrentName());
+                JsonToken token = parser.nextToken();
+                if (propertyMetadata == null) {
+                    parser.skipChildren();
+                    continue;
+                }
+
+                Object value = readValue(parser, token, propertyMetadata.type());
+                if (value != null || !propertyMetadata.type().isPrimitive()) {
+                    propertyMetadata.set(value, instance);
+                }
+                if (propertyMetadata.isId() && value != null) {
+                    id = value.toString();
+                }
+            }
+        } catch (IOException e) {
+            throw new RepositoryMappingException("Could not decode query row.", e);
+        } finally {
+            if (parser != null) {
+                try {
+                    parser.close();
+                } catch (IOException e) {
+                    //ignore, the parser works on an in-memory array
+                }
+            }
+        }
+        return EntityDocument.create(id, instance);
+    }
+
+    private static PropertyMetadata property(EntityMetadata entityMetadata, String name) {
+        for (PropertyMetadata propertyMetadata : entityMetadata.properties()) {
+            if (propertyMetadata.name().equals(name)) {
+                return propertyMetadata;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reads the current scalar value, converting numbers to the type of the target property.
+     */
+    private static Object readValue(JsonParser parser, JsonToken token, Class<?> type) throws IOException {
+        switch (token) {
+            case VALUE_NULL:
+                return null;
+            case VALUE_TRUE:
+            case VALUE_FALSE:
+                return parser.getBooleanValue();
+            case VALUE_STRING:
+                return parser.getText();
+            case VALUE_NUMBER_INT:
+            case VALUE_NUMBER_FLOAT:
+                if (type == Integer.class || type == int.class) {
+                    return parser.getIntValue();
+                } else if (type == Long.class || type == long.class) {
+                    return parser.getLongValue();
+                } else if (type == Double.class || type == double.class) {
+                    return parser.getDoubleValue();
+                } else if (type == String.class) {
+                    return parser.getText();
+                }
+                return parser.getNumberValue();
+            default:
+                throw new RepositoryMappingException("Unsupported field type: " + type);
+        }
+    }
+
     /**
      * Helper method to return and cache the entity metadata.
      *
@@ -105,8 +212,8 @@ public class DefaultEntityConverter implements EntityConverter<JsonDocument> {
 
         if (metadata == null) {
             EntityMetadata generated = new ReflectionBasedEntityMetadata(source);
-            metadataCache.put(source, generated);
-            return generated;
+            EntityMetadata existing = metadataCache.putIfAbsent(source, generated);
+            return existing == null ? generated : existing;
         } else {
             return metadata;
         }
@@ -51,6 +51,7 @@ import com.couchbase.client.java.search.queries.TermRangeQuery;
 import com.couchbase.client.java.search.queries.WildcardQuery;
 import com.couchbase.client.java.search.result.SearchQueryResult;
 import com.couchbase.client.java.search.result.SearchQueryRow;
+import com.couchbase.client.java.search.result.impl.DefaultSearchQueryRow;
 import com.couchbase.client.java.search.sort.SearchSort;
 import com.couchbase.client.java.subdoc.DocumentFragment;
 import rx.Observable;
@@ -83,6 +84,7 @@ public class SearchQuery {
     private Long serverSideTimeout;
     private SearchConsistency consistency;
     private MutationState mutationState;
+    private JsonArray searchAfter;
 
     /**
      * Prepare an FTS {@link SearchQuery} on an index. Top level query parameters can be set after that
@@ -165,6 +167,9 @@ public class SearchQuery {
         if (!sort.isEmpty()) {
             queryJson.put("sort", sort);
         }
+        if (searchAfter != null && !searchAfter.isEmpty()) {
+            queryJson.put("search_after", searchAfter);
+        }
         if (!this.facets.isEmpty()) {
             JsonObject facets = JsonObject.create();
             for (Map.Entry<String, SearchFacet> entry : this.facets.entrySet()) {
@@ -359,6 +364,23 @@ public class SearchQuery {
         return this;
     }
 
+    /**
+     * Only return the hits sorted after the given sort values, usually the
+     * {@link DefaultSearchQueryRow#sort() sort values} of the last hit of the previous page. Unlike {@link #skip(int)},
+     * this keeps the cost of deep pages constant on the server, provided the {@link #sort(Object...) sort} totally
+     * orders the hits (eg. ends with "_id").
+     *
+     * Note that this requires a server version supporting "search_after". Calling it without values clears it.
+     *
+     * @param sortValues the sort values to continue after.
+     * @return this SearchQuery for chaining.
+     */
+    @InterfaceStability.Experimental
+    public SearchQuery searchAfter(Object... sortValues) {
+        this.searchAfter = sortValues == null || sortValues.length == 0 ? null : JsonArray.from(sortValues);
+        return this;
+    }
+
     /**
      * Adds one {@link SearchFacet} to the query.
      *
@@ -473,6 +495,20 @@ public class SearchQuery {
         return skip;
     }
 
+    /**
+     * @return the {@link #sort(Object...) sort} parameter, or an empty array if it was not set.
+     */
+    public JsonArray getSort() {
+        return sort;
+    }
+
+    /**
+     * @return the value of the {@link #searchAfter(Object...)} parameter, or null if it was not set.
+     */
+    public JsonArray getSearchAfter() {
+        return searchAfter;
+    }
+
     /**
      * @return the value of the {@link #highlight(HighlightStyle, String...) highlight style} parameter,
      * or null if it was not set.
@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2017 Couchbase, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.couchbase.client.java.search;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import com.couchbase.client.core.annotations.InterfaceAudience;
+import com.couchbase.client.core.annotations.InterfaceStability;
+import com.couchbase.client.deps.com.fasterxml.jackson.core.JsonProcessingException;
+import com.couchbase.client.java.document.json.JsonObject;
+import com.couchbase.client.java.transcoder.JacksonTransformers;
+
+/**
+ * A {@link SearchQuery} serialized once, whose request body is rebuilt by splicing parameter values
+ * into the pre-rendered JSON rather than by exporting and serializing the whole query again.
+ *
+ * Parameters are declared by using a {@link #param(String) placeholder} in place of any string value
+ * of the query (the match text, a facet field, a sort field...). At execution time each placeholder is
+ * replaced by the JSON rendering of the value bound to its name, which can be of any JSON type.
+ *
+ * If the query had no server side timeout when it was compiled, the client side search timeout is
+ * spliced in at execution time, just like {@link SearchQuery} gets it when executed.
+ *
+ * Instances are immutable and can be shared and executed concurrently.
+ *
+ * @since 2.5.2
+ */
+@InterfaceStability.Experimental
+@InterfaceAudience.Public
+public class SearchQueryTemplate {
+
+    private static final Pattern PARAM_NAME = Pattern.compile("[A-Za-z0-9_]+");
+    private static final String PLACEHOLDER_START = "\"${";
+    private static final String PLACEHOLDER_END = "}\"";
+    private static final String TIMEOUT_PARAM = "$timeout";
+
+    private final String indexName;
+    private final String[] literals;
+    private final String[] params;
+    private final int literalsLength;
+
+    private SearchQueryTemplate(String indexName, String[] literals, String[] params) {
+        this.indexName = indexName;
+        this.literals = literals;
+        this.params = params;
+        int length = 0;
+        for (String literal : literals) {
+            length += literal.length();
+        }
+        this.literalsLength = length;
+    }
+
+    /**
+     * Returns the placeholder to use in the query for the parameter of the given name.
+     *
+     * @param name the name of the parameter, made of letters, digits and underscores.
+     * @return the placeholder to use in place of a string value of the query.
+     */
+    public static String param(String name) {
+        if (name == null || !PARAM_NAME.matcher(name).matches()) {
+            throw new IllegalArgumentException("Parameter name must be made of letters, digits and underscores: " + name);
+        }
+        return "${" + name + "}";
+    }
+
+    /**
+     * Serializes the given query, which is not referenced afterwards, into a reusable template.
+     *
+     * @param query the query, using {@link #param(String) placeholders} for its parameters.
+     * @return the compiled template.
+     */
+    public static SearchQueryTemplate compile(SearchQuery query) {
+        JsonObject json = query.export();
+        if (query.getServerSideTimeout() == null) {
+            JsonObject control = json.getObject("ctl");
+            if (control == null) {
+                control = JsonObject.create();
+                json.put("ctl", control);
+            }
+            control.put("timeout", "${" + TIMEOUT_PARAM + "}");
+        }
+        String rendered = json.toString();
+
+        List<String> literals = new ArrayList<String>();
+        List<String> params = new ArrayList<String>();
+        int literalStart = 0;
+        int from = 0;
+        int start;
+        while ((start = rendered.indexOf(PLACEHOLDER_START, from)) >= 0) {
+            int end = rendered.indexOf(PLACEHOLDER_END, start + PLACEHOLDER_START.length());
+            if (end < 0) {
+                break;
+            }
+            String name = rendered.substring(start + PLACEHOLDER_START.length(), end);
+            if (!TIMEOUT_PARAM.equals(name) && !PARAM_NAME.matcher(name).matches()) {
+                //not one of our placeholders, keep it as part of the literal
+                from = start + 1;
+                continue;
+            }
+            literals.add(rendered.substring(literalStart, start));
+            params.add(name);
+            literalStart = end + PLACEHOLDER_END.length();
+            from = literalStart;
+        }
+        literals.add(rendered.substring(literalStart));
+        return new SearchQueryTemplate(query.indexName(),
+            literals.toArray(new String[literals.size()]), params.toArray(new String[params.size()]));
+    }
+
+    /**
+     * @return the name of the index the template queries.
+     */
+    public String indexName() {
+        return indexName;
+    }
+
+    /**
+     * Renders the request body, using the given search timeout if none was set on the compiled query.
+     *
+     * @param params the values of the parameters, by name. Every parameter of the template must be bound.
+     * @param timeout the server side timeout to use if the query had none.
+     * @param timeUnit the unit of the timeout.
+     * @return the JSON request body.
+     */
+    public String export(JsonObject params, long timeout, TimeUnit timeUnit) {
+        StringBuilder body = new StringBuilder(literalsLength + 32 * this.params.length);
+        for (int i = 0; i < this.params.length; i++) {
+            body.append(literals[i]);
+            String name = this.params[i];
+            if (TIMEOUT_PARAM.equals(name)) {
+                body.append(timeUnit.toMillis(timeout));
+            } else if (params == null || !params.containsKey(name)) {
+                throw new IllegalArgumentException("No value bound for parameter " + name);
+            } else {
+                appendValue(body, params.get(name));
+            }
+        }
+        return body.append(literals[literals.length - 1]).toString();
+    }
+
+    private static void appendValue(StringBuilder body, Object value) {
+        if (value == null) {
+            body.append("null");
+        } else if (value instanceof Number || value instanceof Boolean) {
+            body.append(value);
+        } else {
+            try {
+                body.append(JacksonTransformers.MAPPER.writeValueAsString(value));
+            } catch (JsonProcessingException e) {
+                throw new IllegalArgumentException("Cannot render parameter value " + value, e);
+            }
+        }
+    }
+
+    /**
+     * @return the names of the parameters, in the order they appear in the request body.
+     */
+    public List<String> params() {
+        List<String> result = new ArrayList<String>(params.length);
+        for (String param : params) {
+            if (!TIMEOUT_PARAM.equals(param)) {
+                result.add(param);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "SearchQueryTemplate{" +
+            "indexName='" + indexName + '\'' +
+            ", params=" + params() +
+            '}';
+    }
+}
@@ -159,7 +159,12 @@ public class DefaultAsyncSearchQueryResult implements AsyncSearchQueryResult {
                     fields = Collections.emptyMap();
                 }
 
-                hits.add(new DefaultSearchQueryRow(index, id, score, explanationJson, locations, fragments, fields));
+                JsonArray sort = hit.getArray("sort");
+                if (sort == null) {
+                    sort = JsonArray.empty();
+                }
+
+                hits.add(new DefaultSearchQueryRow(index, id, score, explanationJson, locations, fragments, fields, sort));
             }
         }
 
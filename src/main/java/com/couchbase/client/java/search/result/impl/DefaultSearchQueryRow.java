@@ -20,7 +20,9 @@ import java.util.Map;
 
 import com.couchbase.client.core.annotations.InterfaceAudience;
 import com.couchbase.client.core.annotations.InterfaceStability;
+import com.couchbase.client.java.document.json.JsonArray;
 import com.couchbase.client.java.document.json.JsonObject;
+import com.couchbase.client.java.search.SearchQuery;
 import com.couchbase.client.java.search.result.SearchQueryRow;
 import com.couchbase.client.java.search.result.hits.HitLocations;
 
@@ -42,9 +44,15 @@ public class DefaultSearchQueryRow implements SearchQueryRow {
     private final HitLocations locations;
     private final Map<String, List<String>> fragments;
     private final Map<String, String> fields;
+    private final JsonArray sort;
 
     public DefaultSearchQueryRow(String index, String id, double score, JsonObject explanation, HitLocations locations,
             Map<String, List<String>> fragments, Map<String, String> fields) {
+        this(index, id, score, explanation, locations, fragments, fields, JsonArray.empty());
+    }
+
+    public DefaultSearchQueryRow(String index, String id, double score, JsonObject explanation, HitLocations locations,
+            Map<String, List<String>> fragments, Map<String, String> fields, JsonArray sort) {
         this.index = index;
         this.id = id;
         this.score = score;
@@ -52,6 +60,7 @@ public class DefaultSearchQueryRow implements SearchQueryRow {
         this.locations = locations;
         this.fragments = fragments;
         this.fields = fields;
+        this.sort = sort;
     }
 
     @Override
@@ -89,6 +98,20 @@ public class DefaultSearchQueryRow implements SearchQueryRow {
         return this.fields;
     }
 
+    /**
+     * The values of the {@link SearchQuery#sort(Object...) sort} keys for this hit, which can be fed back to
+     * {@link SearchQuery#searchAfter(Object...)} to fetch the hits following it.
+     *
+     * This is only exposed here rather than on {@link SearchQueryRow}, so that its other implementations
+     * don't have to provide it.
+     *
+     * @return the sort values, empty if the server didn't return any.
+     */
+    @InterfaceStability.Experimental
+    public JsonArray sort() {
+        return this.sort;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) {
@@ -131,6 +154,7 @@ public class DefaultSearchQueryRow implements SearchQueryRow {
                 ", locations=" + locations +
                 ", fragments=" + fragments +
                 ", fields=" + fields +
+                ", sort=" + sort +
                 '}';
     }
 }
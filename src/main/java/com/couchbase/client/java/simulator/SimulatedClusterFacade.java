@@ -0,0 +1,1113 @@
+/*
+ * Copyright (c) 2017 Couchbase, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.couchbase.client.java.simulator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+import com.couchbase.client.core.ClusterFacade;
+import com.couchbase.client.core.annotations.InterfaceAudience;
+import com.couchbase.client.core.annotations.InterfaceStability;
+import com.couchbase.client.core.endpoint.kv.KeyValueHandler;
+import com.couchbase.client.core.endpoint.kv.KeyValueStatus;
+import com.couchbase.client.core.message.CouchbaseRequest;
+import com.couchbase.client.core.message.CouchbaseResponse;
+import com.couchbase.client.core.message.ResponseStatus;
+import com.couchbase.client.core.message.cluster.CloseBucketRequest;
+import com.couchbase.client.core.message.cluster.CloseBucketResponse;
+import com.couchbase.client.core.message.kv.AppendRequest;
+import com.couchbase.client.core.message.kv.AppendResponse;
+import com.couchbase.client.core.message.kv.BinaryRequest;
+import com.couchbase.client.core.message.kv.BinaryStoreRequest;
+import com.couchbase.client.core.message.kv.CounterRequest;
+import com.couchbase.client.core.message.kv.CounterResponse;
+import com.couchbase.client.core.message.kv.GetRequest;
+import com.couchbase.client.core.message.kv.GetResponse;
+import com.couchbase.client.core.message.kv.InsertRequest;
+import com.couchbase.client.core.message.kv.InsertResponse;
+import com.couchbase.client.core.message.kv.MutationToken;
+import com.couchbase.client.core.message.kv.ObserveRequest;
+import com.couchbase.client.core.message.kv.ObserveResponse;
+import com.couchbase.client.core.message.kv.PrependRequest;
+import com.couchbase.client.core.message.kv.PrependResponse;
+import com.couchbase.client.core.message.kv.RemoveRequest;
+import com.couchbase.client.core.message.kv.RemoveResponse;
+import com.couchbase.client.core.message.kv.ReplaceRequest;
+import com.couchbase.client.core.message.kv.ReplaceResponse;
+import com.couchbase.client.core.message.kv.TouchRequest;
+import com.couchbase.client.core.message.kv.TouchResponse;
+import com.couchbase.client.core.message.kv.UnlockRequest;
+import com.couchbase.client.core.message.kv.UnlockResponse;
+import com.couchbase.client.core.message.kv.UpsertRequest;
+import com.couchbase.client.core.message.kv.UpsertResponse;
+import com.couchbase.client.core.message.kv.subdoc.BinarySubdocMultiLookupRequest;
+import com.couchbase.client.core.message.kv.subdoc.BinarySubdocMultiMutationRequest;
+import com.couchbase.client.core.message.kv.subdoc.BinarySubdocRequest;
+import com.couchbase.client.core.message.kv.subdoc.multi.Lookup;
+import com.couchbase.client.core.message.kv.subdoc.multi.LookupCommand;
+import com.couchbase.client.core.message.kv.subdoc.multi.MultiLookupResponse;
+import com.couchbase.client.core.message.kv.subdoc.multi.MultiMutationResponse;
+import com.couchbase.client.core.message.kv.subdoc.multi.MultiResult;
+import com.couchbase.client.core.message.kv.subdoc.multi.Mutation;
+import com.couchbase.client.core.message.kv.subdoc.simple.AbstractSubdocMutationRequest;
+import com.couchbase.client.core.message.kv.subdoc.simple.SimpleSubdocResponse;
+import com.couchbase.client.core.message.kv.subdoc.simple.SubExistRequest;
+import com.couchbase.client.core.message.kv.subdoc.simple.SubGetCountRequest;
+import com.couchbase.client.core.message.kv.subdoc.simple.SubGetRequest;
+import com.couchbase.client.core.message.query.GenericQueryRequest;
+import com.couchbase.client.core.message.query.GenericQueryResponse;
+import com.couchbase.client.core.message.search.SearchQueryRequest;
+import com.couchbase.client.core.message.search.SearchQueryResponse;
+import com.couchbase.client.core.utils.Base64;
+import com.couchbase.client.deps.io.netty.buffer.ByteBuf;
+import com.couchbase.client.deps.io.netty.buffer.Unpooled;
+import com.couchbase.client.deps.io.netty.util.CharsetUtil;
+import com.couchbase.client.java.Bucket;
+import com.couchbase.client.java.CouchbaseBucket;
+import com.couchbase.client.java.document.Document;
+import com.couchbase.client.java.document.json.JsonArray;
+import com.couchbase.client.java.document.json.JsonObject;
+import com.couchbase.client.java.env.CouchbaseEnvironment;
+import com.couchbase.client.java.transcoder.Transcoder;
+import rx.Observable;
+import rx.Scheduler;
+import rx.functions.Func0;
+import rx.functions.Func1;
+import rx.schedulers.Schedulers;
+
+/**
+ * An in-memory {@link ClusterFacade} standing in for a single bucket, for load and regression testing
+ * application code and the SDK itself without a cluster.
+ *
+ * Documents are spread over partitions the same way the server spreads them over vbuckets, each partition
+ * serializing the operations on its documents. CAS values, expiration, pessimistic locks, counters, append
+ * and prepend, sub-document lookups and mutations (including extended attributes) and mutation tokens behave
+ * like on the server. Durability requirements, replicas and views are not simulated.
+ *
+ * The N1QL and FTS endpoints answer with canned responses registered through {@link #cannedQuery(String,
+ * JsonObject...)} and {@link #cannedSearch(String, JsonObject)}, statements and indexes without a canned
+ * response return no results. Prepared statements are supported, so the SDK prepare and execute paths are
+ * exercised as well.
+ *
+ * Latency and failures can be injected through the {@link Builder}. With a fixed seed and a deterministic
+ * {@link Scheduler} (which is also the clock used for expiration and locks) runs are reproducible:
+ *
+ * ```
+ * SimulatedClusterFacade core = SimulatedClusterFacade.builder()
+ *     .latency(100, 500, TimeUnit.MICROSECONDS)
+ *     .failureRate(0.001, ResponseStatus.TEMPORARY_FAILURE)
+ *     .seed(42)
+ *     .build();
+ * Bucket bucket = core.openBucket(env);
+ * ```
+ *
+ * @since 2.5.2
+ */
+@InterfaceStability.Experimental
+@InterfaceAudience.Public
+public class SimulatedClusterFacade implements ClusterFacade {
+
+    public static final int DEFAULT_PARTITIONS = 1024;
+    public static final String DEFAULT_BUCKET = "default";
+
+    /** largest value the server accepts. */
+    private static final int MAX_VALUE_SIZE = 20 * 1024 * 1024;
+    /** expiration values above 30 days are absolute unix timestamps. */
+    private static final int RELATIVE_EXPIRY_LIMIT = 30 * 24 * 60 * 60;
+    private static final int DEFAULT_LOCK_TIME = 15;
+    private static final int MAX_LOCK_TIME = 30;
+    /** the CAS reported when reading a locked document. */
+    private static final long LOCKED_CAS = -1L;
+    private static final short LOCKED_CODE = 0x09;
+
+    private static final Pattern PREPARE =
+        Pattern.compile("^\\s*PREPARE\\s+(?:(?:`([^`]+)`|([^\\s`]+))\\s+FROM\\s+)?(.+)$",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    private static final String SEARCH_PATH_PREFIX = "/api/index/";
+    private static final String SEARCH_PATH_SUFFIX = "/query";
+    private static final JsonObject EMPTY_SEARCH_RESULT = JsonObject.create()
+        .put("status", JsonObject.create().put("total", 1).put("failed", 0).put("successful", 1))
+        .put("hits", JsonArray.empty())
+        .put("total_hits", 0)
+        .put("max_score", 0.0)
+        .put("took", 0)
+        .put("facets", JsonObject.empty());
+
+    private final String bucket;
+    private final SimulatedPartition[] partitions;
+    private final Scheduler scheduler;
+    private final long minLatency;
+    private final long maxLatency;
+    private final double failureRate;
+    private final ResponseStatus failureStatus;
+    private final Func1<CouchbaseRequest, ResponseStatus> faults;
+    private final boolean mutationTokens;
+    private final Random random;
+    private final AtomicLong casSequence = new AtomicLong();
+    private final ConcurrentMap<String, List<byte[]>> cannedQueries = new ConcurrentHashMap<String, List<byte[]>>();
+    private final ConcurrentMap<String, String> cannedSearches = new ConcurrentHashMap<String, String>();
+    private final ConcurrentMap<String, String> preparedStatements = new ConcurrentHashMap<String, String>();
+
+    private SimulatedClusterFacade(Builder builder) {
+        this.bucket = builder.bucket;
+        this.scheduler = builder.scheduler;
+        this.minLatency = builder.minLatency;
+        this.maxLatency = builder.maxLatency;
+        this.failureRate = builder.failureRate;
+        this.failureStatus = builder.failureStatus;
+        this.faults = builder.faults;
+        this.mutationTokens = builder.mutationTokens;
+        this.random = new Random(builder.seed);
+        this.partitions = new SimulatedPartition[builder.partitions];
+        for (int i = 0; i < partitions.length; i++) {
+            partitions[i] = new SimulatedPartition((short) i, random.nextLong());
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Creates a {@link SimulatedClusterFacade} with the default settings: 1024 partitions, no latency
+     * and no failures.
+     */
+    public static SimulatedClusterFacade create() {
+        return builder().build();
+    }
+
+    /**
+     * Opens the simulated bucket.
+     *
+     * @param environment the environment of the bucket.
+     * @return a {@link Bucket} backed by this simulator.
+     */
+    public Bucket openBucket(CouchbaseEnvironment environment) {
+        return new CouchbaseBucket(environment, this, bucket, bucket, "",
+            Collections.<Transcoder<? extends Document, ?>>emptyList());
+    }
+
+    /**
+     * Registers the rows returned for a N1QL statement, replacing the previously registered ones.
+     *
+     * @param statement the statement, matched exactly (ignoring leading and trailing whitespace).
+     * @param rows the rows to return.
+     */
+    public void cannedQuery(String statement, JsonObject... rows) {
+        List<byte[]> encoded = new ArrayList<byte[]>(rows.length);
+        for (JsonObject row : rows) {
+            encoded.add(row.toString().getBytes(CharsetUtil.UTF_8));
+        }
+        cannedQueries.put(statement.trim(), encoded);
+    }
+
+    /**
+     * Registers the response returned for queries against a FTS index, replacing the previously
+     * registered one.
+     *
+     * @param index the name of the index.
+     * @param response the whole response, as returned by the search service.
+     */
+    public void cannedSearch(String index, JsonObject response) {
+        cannedSearches.put(index, response.toString());
+    }
+
+    /**
+     * Returns the number of documents currently stored.
+     */
+    public int size() {
+        long now = now();
+        int size = 0;
+        for (SimulatedPartition partition : partitions) {
+            synchronized (partition) {
+                size += partition.size(now);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Removes all the documents, the canned responses are kept.
+     */
+    public void clear() {
+        for (SimulatedPartition partition : partitions) {
+            synchronized (partition) {
+                partition.clear();
+            }
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <R extends CouchbaseResponse> Observable<R> send(CouchbaseRequest request) {
+        ResponseStatus injected = inject(request);
+        CouchbaseResponse response;
+        try {
+            response = dispatch(request, injected);
+        } catch (UnsupportedOperationException e) {
+            release(request);
+            return Observable.error(e);
+        }
+
+        Observable<R> result = Observable.just((R) response);
+        long latency = latency();
+        return latency > 0 ? result.delay(latency, TimeUnit.NANOSECONDS, scheduler) : result;
+    }
+
+    private CouchbaseResponse dispatch(CouchbaseRequest request, ResponseStatus injected) {
+        if (request instanceof GetRequest) {
+            GetRequest get = (GetRequest) request;
+            Outcome o = injected == null ? get(get) : Outcome.failed(injected);
+            return new GetResponse(o.status, code(o.status), o.cas, o.flags, bucket, o.content(), request);
+        } else if (request instanceof UpsertRequest || request instanceof InsertRequest
+            || request instanceof ReplaceRequest) {
+            BinaryStoreRequest store = (BinaryStoreRequest) request;
+            Outcome o = injected == null ? store(store) : Outcome.failed(injected);
+            release(request);
+            if (request instanceof UpsertRequest) {
+                return new UpsertResponse(o.status, code(o.status), o.cas, bucket, Unpooled.EMPTY_BUFFER, o.token, request);
+            } else if (request instanceof InsertRequest) {
+                return new InsertResponse(o.status, code(o.status), o.cas, bucket, Unpooled.EMPTY_BUFFER, o.token, request);
+            }
+            return new ReplaceResponse(o.status, code(o.status), o.cas, bucket, Unpooled.EMPTY_BUFFER, o.token, request);
+        } else if (request instanceof RemoveRequest) {
+            Outcome o = injected == null ? remove((RemoveRequest) request) : Outcome.failed(injected);
+            return new RemoveResponse(o.status, code(o.status), o.cas, bucket, Unpooled.EMPTY_BUFFER, o.token, request);
+        } else if (request instanceof CounterRequest) {
+            Outcome o = injected == null ? counter((CounterRequest) request) : Outcome.failed(injected);
+            return new CounterResponse(o.status, code(o.status), bucket, o.value, o.cas, o.token, request);
+        } else if (request instanceof TouchRequest) {
+            Outcome o = injected == null ? touch((TouchRequest) request) : Outcome.failed(injected);
+            return new TouchResponse(o.status, code(o.status), bucket, Unpooled.EMPTY_BUFFER, request);
+        } else if (request instanceof UnlockRequest) {
+            Outcome o = injected == null ? unlock((UnlockRequest) request) : Outcome.failed(injected);
+            return new UnlockResponse(o.status, code(o.status), bucket, Unpooled.EMPTY_BUFFER, request);
+        } else if (request instanceof AppendRequest) {
+            AppendRequest append = (AppendRequest) request;
+            Outcome o = injected == null
+                ? concat(append, append.cas(), bytes(append.content()), true) : Outcome.failed(injected);
+            release(request);
+            return new AppendResponse(o.status, code(o.status), o.cas, bucket, Unpooled.EMPTY_BUFFER, o.token, request);
+        } else if (request instanceof PrependRequest) {
+            PrependRequest prepend = (PrependRequest) request;
+            Outcome o = injected == null
+                ? concat(prepend, prepend.cas(), bytes(prepend.content()), false) : Outcome.failed(injected);
+            release(request);
+            return new PrependResponse(o.status, code(o.status), o.cas, bucket, Unpooled.EMPTY_BUFFER, o.token, request);
+        } else if (request instanceof ObserveRequest) {
+            return observe((ObserveRequest) request, injected);
+        } else if (request instanceof AbstractSubdocMutationRequest) {
+            AbstractSubdocMutationRequest mutation = (AbstractSubdocMutationRequest) request;
+            Outcome o = injected == null ? subdocMutation(mutation) : Outcome.failed(injected);
+            release(request);
+            return new SimpleSubdocResponse(o.status, code(o.status), bucket, o.content(), mutation, o.cas, o.token);
+        } else if (request instanceof SubGetRequest || request instanceof SubExistRequest
+            || request instanceof SubGetCountRequest) {
+            BinarySubdocRequest lookup = (BinarySubdocRequest) request;
+            Outcome o = injected == null ? subdocLookup(lookup) : Outcome.failed(injected);
+            release(request);
+            return new SimpleSubdocResponse(o.status, code(o.status), bucket, o.content(), lookup, o.cas, null);
+        } else if (request instanceof BinarySubdocMultiLookupRequest) {
+            BinarySubdocMultiLookupRequest lookup = (BinarySubdocMultiLookupRequest) request;
+            MultiLookupResponse response = injected == null ? multiLookup(lookup)
+                : new MultiLookupResponse(injected, code(injected), bucket,
+                    Collections.<MultiResult<Lookup>>emptyList(), lookup, 0);
+            release(request);
+            return response;
+        } else if (request instanceof BinarySubdocMultiMutationRequest) {
+            BinarySubdocMultiMutationRequest mutation = (BinarySubdocMultiMutationRequest) request;
+            MultiMutationResponse response = injected == null ? multiMutation(mutation)
+                : new MultiMutationResponse(injected, code(injected), bucket, mutation, 0, null);
+            release(request);
+            return response;
+        } else if (request instanceof GenericQueryRequest) {
+            return query((GenericQueryRequest) request, injected);
+        } else if (request instanceof SearchQueryRequest) {
+            return search((SearchQueryRequest) request, injected);
+        } else if (request instanceof CloseBucketRequest) {
+            return new CloseBucketResponse(ResponseStatus.SUCCESS);
+        }
+        throw new UnsupportedOperationException("The simulator does not support "
+            + request.getClass().getSimpleName());
+    }
+
+    private Outcome get(GetRequest request) {
+        SimulatedPartition partition = partition(request);
+        long now = now();
+        synchronized (partition) {
+            SimulatedPartition.Document document = partition.get(request.key(), now);
+            if (document == null) {
+                return Outcome.failed(ResponseStatus.NOT_EXISTS);
+            }
+            if (request.lock()) {
+                if (document.locked(now)) {
+                    return Outcome.failed(ResponseStatus.TEMPORARY_FAILURE);
+                }
+                int lockTime = request.expiry() <= 0 || request.expiry() > MAX_LOCK_TIME
+                    ? DEFAULT_LOCK_TIME : request.expiry();
+                document.lockedUntil = now + TimeUnit.SECONDS.toMillis(lockTime);
+                document.cas = nextCas();
+            } else if (request.touch()) {
+                if (document.locked(now)) {
+                    return Outcome.failed(ResponseStatus.LOCKED);
+                }
+                document.expiresAt = expiresAt(request.expiry(), now);
+                document.cas = nextCas();
+                partition.touch(bucket);
+            }
+            long cas = document.locked(now) && !request.lock() ? LOCKED_CAS : document.cas;
+            return Outcome.success(cas, null).content(document.content, document.flags);
+        }
+    }
+
+    private Outcome store(BinaryStoreRequest request) {
+        byte[] content = bytes(request.content());
+        if (content.length > MAX_VALUE_SIZE) {
+            return Outcome.failed(ResponseStatus.TOO_BIG);
+        }
+        long cas = request instanceof ReplaceRequest ? ((ReplaceRequest) request).cas() : 0;
+        SimulatedPartition partition = partition(request);
+        long now = now();
+        synchronized (partition) {
+            SimulatedPartition.Document document = partition.get(request.key(), now);
+            if (request instanceof InsertRequest && document != null) {
+                return Outcome.failed(ResponseStatus.EXISTS);
+            }
+            if (request instanceof ReplaceRequest && document == null) {
+                return Outcome.failed(ResponseStatus.NOT_EXISTS);
+            }
+            ResponseStatus conflict = conflict(document, cas, now);
+            if (conflict != null) {
+                return Outcome.failed(conflict);
+            }
+            SimulatedPartition.Document stored = new SimulatedPartition.Document(content, null, request.flags(),
+                nextCas(), expiresAt(request.expiration(), now));
+            return Outcome.success(stored.cas, token(partition.store(request.key(), stored, bucket)));
+        }
+    }
+
+    private Outcome remove(RemoveRequest request) {
+        SimulatedPartition partition = partition(request);
+        long now = now();
+        synchronized (partition) {
+            SimulatedPartition.Document document = partition.get(request.key(), now);
+            if (document == null) {
+                return Outcome.failed(ResponseStatus.NOT_EXISTS);
+            }
+            ResponseStatus conflict = conflict(document, request.cas(), now);
+            if (conflict != null) {
+                return Outcome.failed(conflict);
+            }
+            return Outcome.success(nextCas(), token(partition.remove(request.key(), bucket)));
+        }
+    }
+
+    private Outcome counter(CounterRequest request) {
+        SimulatedPartition partition = partition(request);
+        long now = now();
+        synchronized (partition) {
+            SimulatedPartition.Document document = partition.get(request.key(), now);
+            long value;
+            if (document == null) {
+                if (request.initial() < 0) {
+                    return Outcome.failed(ResponseStatus.NOT_EXISTS);
+                }
+                value = request.initial();
+                document = new SimulatedPartition.Document(null, null, 0, 0, expiresAt(request.expiry(), now));
+            } else {
+                if (document.locked(now)) {
+                    return Outcome.failed(ResponseStatus.LOCKED);
+                }
+                try {
+                    value = Long.parseLong(new String(document.content, CharsetUtil.UTF_8).trim());
+                } catch (NumberFormatException e) {
+                    return Outcome.failed(ResponseStatus.INVALID_ARGUMENTS);
+                }
+                if (value < 0) {
+                    return Outcome.failed(ResponseStatus.INVALID_ARGUMENTS);
+                }
+                long delta = request.delta();
+                if (delta >= 0) {
+                    value = value > Long.MAX_VALUE - delta ? value + delta - Long.MAX_VALUE - 1 : value + delta;
+                } else {
+                    value = value + delta < 0 ? 0 : value + delta;
+                }
+            }
+            document.content = String.valueOf(value).getBytes(CharsetUtil.UTF_8);
+            document.xattrs = null;
+            document.cas = nextCas();
+            Outcome outcome = Outcome.success(document.cas, token(partition.store(request.key(), document, bucket)));
+            outcome.value = value;
+            return outcome;
+        }
+    }
+
+    private Outcome touch(TouchRequest request) {
+        SimulatedPartition partition = partition(request);
+        long now = now();
+        synchronized (partition) {
+            SimulatedPartition.Document document = partition.get(request.key(), now);
+            if (document == null) {
+                return Outcome.failed(ResponseStatus.NOT_EXISTS);
+            }
+            if (document.locked(now)) {
+                return Outcome.failed(ResponseStatus.LOCKED);
+            }
+            document.expiresAt = expiresAt(request.expiry(), now);
+            document.cas = nextCas();
+            return Outcome.success(document.cas, token(partition.touch(bucket)));
+        }
+    }
+
+    private Outcome unlock(UnlockRequest request) {
+        SimulatedPartition partition = partition(request);
+        long now = now();
+        synchronized (partition) {
+            SimulatedPartition.Document document = partition.get(request.key(), now);
+            if (document == null) {
+                return Outcome.failed(ResponseStatus.NOT_EXISTS);
+            }
+            if (!document.locked(now)) {
+                return Outcome.failed(ResponseStatus.TEMPORARY_FAILURE);
+            }
+            if (request.cas() != document.cas) {
+                return Outcome.failed(ResponseStatus.LOCKED);
+            }
+            document.lockedUntil = 0;
+            return Outcome.success(document.cas, null);
+        }
+    }
+
+    private Outcome concat(BinaryRequest request, long cas, byte[] content, boolean append) {
+        SimulatedPartition partition = partition(request);
+        long now = now();
+        synchronized (partition) {
+            SimulatedPartition.Document document = partition.get(request.key(), now);
+            if (document == null) {
+                return Outcome.failed(ResponseStatus.NOT_STORED);
+            }
+            ResponseStatus conflict = conflict(document, cas, now);
+            if (conflict != null) {
+                return Outcome.failed(conflict);
+            }
+            if ((long) document.content.length + content.length > MAX_VALUE_SIZE) {
+                return Outcome.failed(ResponseStatus.TOO_BIG);
+            }
+            byte[] first = append ? document.content : content;
+            byte[] second = append ? content : document.content;
+            byte[] concatenated = new byte[first.length + second.length];
+            System.arraycopy(first, 0, concatenated, 0, first.length);
+            System.arraycopy(second, 0, concatenated, first.length, second.length);
+            document.content = concatenated;
+            document.cas = nextCas();
+            document.lockedUntil = 0;
+            return Outcome.success(document.cas, token(partition.touch(bucket)));
+        }
+    }
+
+    private ObserveResponse observe(ObserveRequest request, ResponseStatus injected) {
+        if (!request.master()) {
+            throw new UnsupportedOperationException("The simulator does not simulate replicas");
+        }
+        if (injected != null) {
+            return new ObserveResponse(injected, code(injected), (byte) 0, true, 0, bucket, request);
+        }
+        SimulatedPartition partition = partition(request);
+        synchronized (partition) {
+            SimulatedPartition.Document document = partition.get(request.key(), now());
+            byte status = document == null
+                ? ObserveResponse.ObserveStatus.NOT_FOUND_PERSISTED.value()
+                : ObserveResponse.ObserveStatus.FOUND_PERSISTED.value();
+            return new ObserveResponse(ResponseStatus.SUCCESS, code(ResponseStatus.SUCCESS), status, true,
+                document == null ? 0 : document.cas, bucket, request);
+        }
+    }
+
+    private Outcome subdocLookup(BinarySubdocRequest request) {
+        boolean xattr = request instanceof SubGetRequest ? ((SubGetRequest) request).xattr()
+            : request instanceof SubExistRequest ? ((SubExistRequest) request).xattr()
+            : ((SubGetCountRequest) request).xattr();
+        SimulatedPartition partition = partition(request);
+        synchronized (partition) {
+            SimulatedPartition.Document document = partition.get(request.key(), now());
+            if (document == null) {
+                return Outcome.failed(ResponseStatus.NOT_EXISTS);
+            }
+            try {
+                byte[] value = new SimulatedSubdoc(document.content, document.xattrs)
+                    .lookup(request.opcode(), request.path(), xattr);
+                return Outcome.success(document.cas, null).content(value, 0);
+            } catch (SimulatedSubdoc.Failure e) {
+                return Outcome.failed(e.status());
+            }
+        }
+    }
+
+    private Outcome subdocMutation(AbstractSubdocMutationRequest request) {
+        byte[] fragment = bytes(request.fragment());
+        SimulatedPartition partition = partition(request);
+        long now = now();
+        synchronized (partition) {
+            SimulatedPartition.Document document = partition.get(request.key(), now);
+            ResponseStatus status = documentStatus(document, request.cas(), request.upsertDocument() || request.createDocument(),
+                request.insertDocument(), now);
+            if (status != null) {
+                return Outcome.failed(status);
+            }
+            try {
+                SimulatedSubdoc subdoc = document == null
+                    ? new SimulatedSubdoc(new byte[0], null)
+                    : new SimulatedSubdoc(document.content, document.xattrs);
+                byte[] value = subdoc.mutate(request.opcode(), request.path(), fragment,
+                    request.createIntermediaryPath(), request.xattr());
+                MutationToken token = storeSubdoc(partition, request.key(), document, subdoc,
+                    request.expiration(), now);
+                return Outcome.success(partition.get(request.key(), now).cas, token).content(value, 0);
+            } catch (SimulatedSubdoc.Failure e) {
+                return Outcome.failed(e.status());
+            }
+        }
+    }
+
+    private MultiLookupResponse multiLookup(BinarySubdocMultiLookupRequest request) {
+        SimulatedPartition partition = partition(request);
+        synchronized (partition) {
+            SimulatedPartition.Document document = partition.get(request.key(), now());
+            if (document == null) {
+                return new MultiLookupResponse(ResponseStatus.NOT_EXISTS, code(ResponseStatus.NOT_EXISTS), bucket,
+                    Collections.<MultiResult<Lookup>>emptyList(), request, 0);
+            }
+            SimulatedSubdoc subdoc;
+            try {
+                subdoc = new SimulatedSubdoc(document.content, document.xattrs);
+            } catch (SimulatedSubdoc.Failure e) {
+                return new MultiLookupResponse(e.status(), code(e.status()), bucket,
+                    Collections.<MultiResult<Lookup>>emptyList(), request, 0);
+            }
+            List<MultiResult<Lookup>> results = new ArrayList<MultiResult<Lookup>>(request.commands().size());
+            ResponseStatus status = ResponseStatus.SUCCESS;
+            for (LookupCommand command : request.commands()) {
+                ResponseStatus result = ResponseStatus.SUCCESS;
+                ByteBuf value = Unpooled.EMPTY_BUFFER;
+                try {
+                    byte[] bytes = subdoc.lookup(command.opCode(), command.path(), command.xattr());
+                    if (bytes != null) {
+                        value = Unpooled.wrappedBuffer(bytes);
+                    }
+                } catch (SimulatedSubdoc.Failure e) {
+                    result = e.status();
+                    status = ResponseStatus.SUBDOC_MULTI_PATH_FAILURE;
+                }
+                results.add(MultiResult.create(code(result), result, command.path(), command.lookup(), value));
+            }
+            return new MultiLookupResponse(status, code(status), bucket, results, request, document.cas);
+        }
+    }
+
+    private MultiMutationResponse multiMutation(BinarySubdocMultiMutationRequest request) {
+        List<Spec> specs = Spec.decode(request.content());
+        byte docFlags = request.docFlags();
+        SimulatedPartition partition = partition(request);
+        long now = now();
+        synchronized (partition) {
+            SimulatedPartition.Document document = partition.get(request.key(), now);
+            ResponseStatus status = documentStatus(document, request.cas(),
+                (docFlags & KeyValueHandler.SUBDOC_DOCFLAG_MKDOC) != 0,
+                (docFlags & KeyValueHandler.SUBDOC_DOCFLAG_INSERT) != 0, now);
+            if (status != null) {
+                return new MultiMutationResponse(status, code(status), bucket, request, 0, null);
+            }
+            SimulatedSubdoc subdoc;
+            try {
+                subdoc = document == null
+                    ? new SimulatedSubdoc(new byte[0], null)
+                    : new SimulatedSubdoc(document.content, document.xattrs);
+            } catch (SimulatedSubdoc.Failure e) {
+                return new MultiMutationResponse(e.status(), code(e.status()), bucket, request, 0, null);
+            }
+            List<MultiResult<Mutation>> results = new ArrayList<MultiResult<Mutation>>(specs.size());
+            for (int i = 0; i < specs.size(); i++) {
+                Spec spec = specs.get(i);
+                try {
+                    byte[] value = subdoc.mutate(spec.opcode, spec.path, spec.fragment,
+                        (spec.flags & KeyValueHandler.SUBDOC_BITMASK_MKDIR_P) != 0,
+                        (spec.flags & KeyValueHandler.SUBDOC_FLAG_XATTR_PATH) != 0);
+                    results.add(MultiResult.create(code(ResponseStatus.SUCCESS), ResponseStatus.SUCCESS, spec.path,
+                        mutation(spec.opcode), value == null ? Unpooled.EMPTY_BUFFER : Unpooled.wrappedBuffer(value)));
+                } catch (SimulatedSubdoc.Failure e) {
+                    for (MultiResult<Mutation> result : results) {
+                        result.value().release();
+                    }
+                    return new MultiMutationResponse(ResponseStatus.SUBDOC_MULTI_PATH_FAILURE,
+                        code(ResponseStatus.SUBDOC_MULTI_PATH_FAILURE), bucket, i, code(e.status()), request, 0, null);
+                }
+            }
+            MutationToken token = storeSubdoc(partition, request.key(), document, subdoc, request.expiration(), now);
+            return new MultiMutationResponse(bucket, request, partition.get(request.key(), now).cas, token, results);
+        }
+    }
+
+    /**
+     * Checks whether a sub-document mutation can be applied to the given document.
+     *
+     * @return the status to fail with, or null if the mutation can proceed.
+     */
+    private static ResponseStatus documentStatus(SimulatedPartition.Document document, long cas, boolean upsert,
+        boolean insert, long now) {
+        if (document == null) {
+            return upsert || insert ? null : ResponseStatus.NOT_EXISTS;
+        }
+        if (insert) {
+            return ResponseStatus.EXISTS;
+        }
+        return conflict(document, cas, now);
+    }
+
+    private MutationToken storeSubdoc(SimulatedPartition partition, String key, SimulatedPartition.Document document,
+        SimulatedSubdoc subdoc, int expiration, long now) {
+        int flags = document == null ? 0 : document.flags;
+        SimulatedPartition.Document stored = new SimulatedPartition.Document(subdoc.content(), subdoc.xattrs(), flags,
+            nextCas(), expiresAt(expiration, now));
+        return token(partition.store(key, stored, bucket));
+    }
+
+    private GenericQueryResponse query(GenericQueryRequest request, ResponseStatus injected) {
+        String statement;
+        String prepared = null;
+        String encodedPlan = null;
+        String clientContextId = "";
+        if (request.isJsonFormat()) {
+            JsonObject query = JsonObject.fromJson(request.query());
+            statement = query.getString("statement");
+            prepared = query.getString("prepared");
+            encodedPlan = query.getString("encoded_plan");
+            if (query.getString("client_context_id") != null) {
+                clientContextId = query.getString("client_context_id");
+            }
+        } else {
+            statement = request.query();
+        }
+
+        if (injected != null) {
+            return queryResponse(request, injected, clientContextId, Collections.<byte[]>emptyList(),
+                JsonObject.create().put("code", 5000).put("msg", "Simulated failure: " + injected));
+        }
+
+        if (prepared != null) {
+            statement = preparedStatements.get(prepared);
+            if (statement == null && encodedPlan != null) {
+                statement = new String(Base64.decode(encodedPlan), CharsetUtil.UTF_8);
+                preparedStatements.put(prepared, statement);
+            }
+            if (statement == null) {
+                return queryResponse(request, ResponseStatus.FAILURE, clientContextId, Collections.<byte[]>emptyList(),
+                    JsonObject.create().put("code", 4040).put("msg", "No such prepared statement: " + prepared));
+            }
+        } else if (statement == null) {
+            return queryResponse(request, ResponseStatus.FAILURE, clientContextId, Collections.<byte[]>emptyList(),
+                JsonObject.create().put("code", 1050).put("msg", "No statement or prepared value"));
+        } else {
+            Matcher prepare = PREPARE.matcher(statement);
+            if (prepare.matches()) {
+                String toPrepare = prepare.group(3).trim();
+                String name = prepare.group(1) != null ? prepare.group(1)
+                    : prepare.group(2) != null ? prepare.group(2) : UUID.randomUUID().toString();
+                preparedStatements.put(name, toPrepare);
+                JsonObject plan = JsonObject.create()
+                    .put("name", name)
+                    .put("encoded_plan", Base64.encode(toPrepare.getBytes(CharsetUtil.UTF_8)))
+                    .put("operator", JsonObject.empty())
+                    .put("text", statement.trim());
+                return queryResponse(request, ResponseStatus.SUCCESS, clientContextId,
+                    Collections.singletonList(plan.toString().getBytes(CharsetUtil.UTF_8)), null);
+            }
+        }
+
+        List<byte[]> rows = cannedQueries.get(statement.trim());
+        return queryResponse(request, ResponseStatus.SUCCESS, clientContextId,
+            rows == null ? Collections.<byte[]>emptyList() : rows, null);
+    }
+
+    private GenericQueryResponse queryResponse(GenericQueryRequest request, ResponseStatus status,
+        String clientContextId, List<byte[]> rows, JsonObject error) {
+        long size = 0;
+        for (byte[] row : rows) {
+            size += row.length;
+        }
+        JsonObject metrics = JsonObject.create()
+            .put("elapsedTime", "0s")
+            .put("executionTime", "0s")
+            .put("resultCount", rows.size())
+            .put("resultSize", size);
+        List<byte[]> errors = Collections.emptyList();
+        if (error != null) {
+            metrics.put("errorCount", 1);
+            errors = Collections.singletonList(error.toString().getBytes(CharsetUtil.UTF_8));
+        }
+        return new GenericQueryResponse(
+            buffers(errors),
+            buffers(rows),
+            buffers(Collections.singletonList("{\"*\":\"*\"}".getBytes(CharsetUtil.UTF_8))),
+            Observable.just(status.isSuccess() ? "success" : "fatal"),
+            buffers(Collections.singletonList(metrics.toString().getBytes(CharsetUtil.UTF_8))),
+            Observable.<ByteBuf>empty(),
+            request, status, UUID.randomUUID().toString(), clientContextId);
+    }
+
+    private SearchQueryResponse search(SearchQueryRequest request, ResponseStatus injected) {
+        if (injected != null) {
+            return new SearchQueryResponse("Simulated failure: " + injected, injected);
+        }
+        String index = request.path();
+        if (index.startsWith(SEARCH_PATH_PREFIX) && index.endsWith(SEARCH_PATH_SUFFIX)) {
+            index = index.substring(SEARCH_PATH_PREFIX.length(), index.length() - SEARCH_PATH_SUFFIX.length());
+        }
+        String payload = cannedSearches.get(index);
+        return new SearchQueryResponse(payload == null ? EMPTY_SEARCH_RESULT.toString() : payload,
+            ResponseStatus.SUCCESS);
+    }
+
+    /**
+     * Returns the status a mutation of an existing document fails with because of a pessimistic lock
+     * or a CAS mismatch, null if there is no conflict. A mutation carrying the CAS of the lock unlocks.
+     */
+    private static ResponseStatus conflict(SimulatedPartition.Document document, long cas, long now) {
+        if (document == null) {
+            return null;
+        }
+        if (document.locked(now)) {
+            return cas == document.cas ? null : ResponseStatus.LOCKED;
+        }
+        return cas != 0 && cas != document.cas ? ResponseStatus.EXISTS : null;
+    }
+
+    private ResponseStatus inject(CouchbaseRequest request) {
+        if (faults != null) {
+            ResponseStatus status = faults.call(request);
+            if (status != null) {
+                return status;
+            }
+        }
+        if (failureRate > 0 && random.nextDouble() < failureRate) {
+            return failureStatus;
+        }
+        return null;
+    }
+
+    private long latency() {
+        if (maxLatency <= 0) {
+            return 0;
+        }
+        if (maxLatency == minLatency) {
+            return minLatency;
+        }
+        return minLatency + (long) (random.nextDouble() * (maxLatency - minLatency));
+    }
+
+    private SimulatedPartition partition(BinaryRequest request) {
+        CRC32 crc = new CRC32();
+        crc.update(request.keyBytes());
+        long hash = (crc.getValue() >> 16) & 0x7fff;
+        return partitions[(int) (hash % partitions.length)];
+    }
+
+    private long now() {
+        return scheduler.now();
+    }
+
+    private long nextCas() {
+        return casSequence.incrementAndGet();
+    }
+
+    private long expiresAt(int expiry, long now) {
+        if (expiry <= 0) {
+            return 0;
+        }
+        return expiry <= RELATIVE_EXPIRY_LIMIT ? now + TimeUnit.SECONDS.toMillis(expiry)
+            : TimeUnit.SECONDS.toMillis(expiry);
+    }
+
+    private MutationToken token(MutationToken token) {
+        return mutationTokens ? token : null;
+    }
+
+    private static Mutation mutation(byte opcode) {
+        for (Mutation mutation : Mutation.values()) {
+            if (mutation.opCode() == opcode) {
+                return mutation;
+            }
+        }
+        throw new IllegalArgumentException("Unknown sub-document mutation opcode " + opcode);
+    }
+
+    private static short code(ResponseStatus status) {
+        switch (status) {
+            case SUCCESS:
+                return KeyValueStatus.SUCCESS.code();
+            case EXISTS:
+                return KeyValueStatus.ERR_EXISTS.code();
+            case NOT_EXISTS:
+                return KeyValueStatus.ERR_NOT_FOUND.code();
+            case NOT_STORED:
+                return KeyValueStatus.ERR_NOT_STORED.code();
+            case TOO_BIG:
+                return KeyValueStatus.ERR_TOO_BIG.code();
+            case TEMPORARY_FAILURE:
+                return KeyValueStatus.ERR_TEMP_FAIL.code();
+            case SERVER_BUSY:
+                return KeyValueStatus.ERR_BUSY.code();
+            case OUT_OF_MEMORY:
+                return KeyValueStatus.ERR_NO_MEM.code();
+            case INVALID_ARGUMENTS:
+                return KeyValueStatus.ERR_INVALID.code();
+            case ACCESS_ERROR:
+                return KeyValueStatus.ERR_ACCESS.code();
+            case LOCKED:
+                return LOCKED_CODE;
+            default:
+                if (status.name().startsWith("SUBDOC_")) {
+                    return KeyValueStatus.valueOf("ERR_" + status.name()).code();
+                }
+                return KeyValueStatus.ERR_INTERNAL.code();
+        }
+    }
+
+    private static Observable<ByteBuf> buffers(final List<byte[]> contents) {
+        return Observable.defer(new Func0<Observable<ByteBuf>>() {
+            @Override
+            public Observable<ByteBuf> call() {
+                List<ByteBuf> buffers = new ArrayList<ByteBuf>(contents.size());
+                for (byte[] content : contents) {
+                    buffers.add(Unpooled.wrappedBuffer(content));
+                }
+                return Observable.from(buffers);
+            }
+        });
+    }
+
+    private static byte[] bytes(ByteBuf content) {
+        byte[] bytes = new byte[content.readableBytes()];
+        content.getBytes(content.readerIndex(), bytes);
+        return bytes;
+    }
+
+    /**
+     * Releases the content of a request, which the core would have released once written to the wire.
+     */
+    private static void release(CouchbaseRequest request) {
+        ByteBuf content = null;
+        if (request instanceof BinaryStoreRequest) {
+            content = ((BinaryStoreRequest) request).content();
+        } else if (request instanceof AppendRequest) {
+            content = ((AppendRequest) request).content();
+        } else if (request instanceof PrependRequest) {
+            content = ((PrependRequest) request).content();
+        } else if (request instanceof BinarySubdocRequest) {
+            content = ((BinarySubdocRequest) request).content();
+        } else if (request instanceof BinarySubdocMultiLookupRequest) {
+            content = ((BinarySubdocMultiLookupRequest) request).content();
+        } else if (request instanceof BinarySubdocMultiMutationRequest) {
+            content = ((BinarySubdocMultiMutationRequest) request).content();
+        }
+        if (content != null && content.refCnt() > 0) {
+            content.release();
+        }
+    }
+
+    /**
+     * The outcome of a key/value operation, before it is turned into the response of the request type.
+     */
+    private static class Outcome {
+
+        final ResponseStatus status;
+        final long cas;
+        final MutationToken token;
+        byte[] content;
+        int flags;
+        long value;
+
+        private Outcome(ResponseStatus status, long cas, MutationToken token) {
+            this.status = status;
+            this.cas = cas;
+            this.token = token;
+        }
+
+        static Outcome success(long cas, MutationToken token) {
+            return new Outcome(ResponseStatus.SUCCESS, cas, token);
+        }
+
+        static Outcome failed(ResponseStatus status) {
+            return new Outcome(status, 0, null);
+        }
+
+        Outcome content(byte[] content, int flags) {
+            this.content = content;
+            this.flags = flags;
+            return this;
+        }
+
+        ByteBuf content() {
+            return content == null ? Unpooled.EMPTY_BUFFER : Unpooled.wrappedBuffer(content);
+        }
+    }
+
+    /**
+     * A single specification of a multi mutation, as encoded on the wire.
+     */
+    private static class Spec {
+
+        final byte opcode;
+        final byte flags;
+        final String path;
+        final byte[] fragment;
+
+        private Spec(byte opcode, byte flags, String path, byte[] fragment) {
+            this.opcode = opcode;
+            this.flags = flags;
+            this.path = path;
+            this.fragment = fragment;
+        }
+
+        static List<Spec> decode(ByteBuf content) {
+            List<Spec> specs = new ArrayList<Spec>();
+            int index = content.readerIndex();
+            int end = content.writerIndex();
+            while (index < end) {
+                byte opcode = content.getByte(index);
+                byte flags = content.getByte(index + 1);
+                int pathLength = content.getUnsignedShort(index + 2);
+                int fragmentLength = content.getInt(index + 4);
+                index += 8;
+                String path = content.toString(index, pathLength, CharsetUtil.UTF_8);
+                index += pathLength;
+                byte[] fragment = new byte[fragmentLength];
+                content.getBytes(index, fragment);
+                index += fragmentLength;
+                specs.add(new Spec(opcode, flags, path, fragment));
+            }
+            return specs;
+        }
+    }
+
+    public static class Builder {
+
+        private String bucket = DEFAULT_BUCKET;
+        private int partitions = DEFAULT_PARTITIONS;
+        private Scheduler scheduler = Schedulers.computation();
+        private long minLatency;
+        private long maxLatency;
+        private double failureRate;
+        private ResponseStatus failureStatus = ResponseStatus.TEMPORARY_FAILURE;
+        private Func1<CouchbaseRequest, ResponseStatus> faults;
+        private boolean mutationTokens;
+        private long seed = System.nanoTime();
+
+        protected Builder() {
+        }
+
+        public Builder bucket(String bucket) {
+            this.bucket = bucket;
+            return this;
+        }
+
+        public Builder partitions(int partitions) {
+            if (partitions < 1) {
+                throw new IllegalArgumentException("At least one partition is needed");
+            }
+            this.partitions = partitions;
+            return this;
+        }
+
+        /**
+         * Sets the scheduler responses are delayed on, which is also the clock of expiration and locks.
+         */
+        public Builder scheduler(Scheduler scheduler) {
+            this.scheduler = scheduler;
+            return this;
+        }
+
+        /**
+         * Delays every response by the given latency.
+         */
+        public Builder latency(long latency, TimeUnit unit) {
+            return latency(latency, latency, unit);
+        }
+
+        /**
+         * Delays every response by a latency uniformly distributed between the given bounds.
+         */
+        public Builder latency(long min, long max, TimeUnit unit) {
+            if (min < 0 || max < min) {
+                throw new IllegalArgumentException("Invalid latency bounds " + min + " and " + max);
+            }
+            this.minLatency = unit.toNanos(min);
+            this.maxLatency = unit.toNanos(max);
+            return this;
+        }
+
+        /**
+         * Fails the given ratio of the requests, picked at random, with the given status without applying them.
+         */
+        public Builder failureRate(double rate, ResponseStatus status) {
+            if (rate < 0 || rate > 1) {
+                throw new IllegalArgumentException("The failure rate must be between 0 and 1");
+            }
+            this.failureRate = rate;
+            this.failureStatus = status;
+            return this;
+        }
+
+        /**
+         * Sets a function consulted for every request, returning the status to fail the request with
+         * without applying it, or null to let it through.
+         */
+        public Builder faults(Func1<CouchbaseRequest, ResponseStatus> faults) {
+            this.faults = faults;
+            return this;
+        }
+
+        /**
+         * Sets whether mutations return mutation tokens, which should match
+         * {@link CouchbaseEnvironment#mutationTokensEnabled()}.
+         */
+        public Builder mutationTokens(boolean mutationTokens) {
+            this.mutationTokens = mutationTokens;
+            return this;
+        }
+
+        /**
+         * Sets the seed of the random source used for latency, failure injection and vbucket UUIDs.
+         */
+        public Builder seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        public SimulatedClusterFacade build() {
+            return new SimulatedClusterFacade(this);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2017 Couchbase, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.couchbase.client.java.simulator;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import com.couchbase.client.core.message.kv.MutationToken;
+
+/**
+ * A single partition (vbucket) of the simulated bucket.
+ *
+ * Not thread safe on its own: callers synchronize on the partition for the duration of each operation,
+ * which mirrors the per-vbucket serialization of the server while keeping independent partitions concurrent.
+ *
+ * @since 2.5.2
+ */
+class SimulatedPartition {
+
+    private final short id;
+    private final long uuid;
+    private final Map<String, Document> documents = new HashMap<String, Document>();
+    private long sequenceNumber;
+
+    SimulatedPartition(short id, long uuid) {
+        this.id = id;
+        this.uuid = uuid;
+    }
+
+    /**
+     * Returns the live document stored under the given key, removing it first if it has expired.
+     *
+     * @param key the document key.
+     * @param now the current time in milliseconds.
+     * @return the document, or null if there is none.
+     */
+    Document get(String key, long now) {
+        Document document = documents.get(key);
+        if (document != null && document.expired(now)) {
+            documents.remove(key);
+            return null;
+        }
+        return document;
+    }
+
+    /**
+     * Stores a document and returns the mutation token of the mutation.
+     */
+    MutationToken store(String key, Document document, String bucket) {
+        documents.put(key, document);
+        return new MutationToken(id, uuid, ++sequenceNumber, bucket);
+    }
+
+    /**
+     * Records a mutation of a document already stored and returns its mutation token.
+     */
+    MutationToken touch(String bucket) {
+        return new MutationToken(id, uuid, ++sequenceNumber, bucket);
+    }
+
+    /**
+     * Removes a document and returns the mutation token of the removal.
+     */
+    MutationToken remove(String key, String bucket) {
+        documents.remove(key);
+        return new MutationToken(id, uuid, ++sequenceNumber, bucket);
+    }
+
+    /**
+     * Returns the number of live documents, dropping the expired ones.
+     */
+    int size(long now) {
+        Iterator<Document> iterator = documents.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().expired(now)) {
+                iterator.remove();
+            }
+        }
+        return documents.size();
+    }
+
+    void clear() {
+        documents.clear();
+    }
+
+    /**
+     * A stored document and its metadata, only accessed while holding the lock of its partition.
+     */
+    static class Document {
+
+        byte[] content;
+        byte[] xattrs;
+        int flags;
+        long cas;
+        /** absolute expiration time in milliseconds, 0 if the document does not expire. */
+        long expiresAt;
+        /** absolute time in milliseconds until which the document is locked, 0 if it is not locked. */
+        long lockedUntil;
+
+        Document(byte[] content, byte[] xattrs, int flags, long cas, long expiresAt) {
+            this.content = content;
+            this.xattrs = xattrs;
+            this.flags = flags;
+            this.cas = cas;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean expired(long now) {
+            return expiresAt != 0 && now >= expiresAt;
+        }
+
+        boolean locked(long now) {
+            return lockedUntil > now;
+        }
+    }
+}
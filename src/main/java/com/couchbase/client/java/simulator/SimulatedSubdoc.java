@@ -0,0 +1,499 @@
+/*
+ * Copyright (c) 2017 Couchbase, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.couchbase.client.java.simulator;
+
+import static com.couchbase.client.core.endpoint.kv.KeyValueHandler.OP_GET;
+import static com.couchbase.client.core.endpoint.kv.KeyValueHandler.OP_SUB_ARRAY_ADD_UNIQUE;
+import static com.couchbase.client.core.endpoint.kv.KeyValueHandler.OP_SUB_ARRAY_INSERT;
+import static com.couchbase.client.core.endpoint.kv.KeyValueHandler.OP_SUB_ARRAY_PUSH_FIRST;
+import static com.couchbase.client.core.endpoint.kv.KeyValueHandler.OP_SUB_ARRAY_PUSH_LAST;
+import static com.couchbase.client.core.endpoint.kv.KeyValueHandler.OP_SUB_COUNTER;
+import static com.couchbase.client.core.endpoint.kv.KeyValueHandler.OP_SUB_DELETE;
+import static com.couchbase.client.core.endpoint.kv.KeyValueHandler.OP_SUB_DICT_ADD;
+import static com.couchbase.client.core.endpoint.kv.KeyValueHandler.OP_SUB_DICT_UPSERT;
+import static com.couchbase.client.core.endpoint.kv.KeyValueHandler.OP_SUB_EXIST;
+import static com.couchbase.client.core.endpoint.kv.KeyValueHandler.OP_SUB_GET;
+import static com.couchbase.client.core.endpoint.kv.KeyValueHandler.OP_SUB_GET_COUNT;
+import static com.couchbase.client.core.endpoint.kv.KeyValueHandler.OP_SUB_REPLACE;
+import static com.couchbase.client.core.endpoint.kv.KeyValueHandler.OP_UPSERT;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.couchbase.client.core.message.ResponseStatus;
+import com.couchbase.client.deps.com.fasterxml.jackson.databind.JsonNode;
+import com.couchbase.client.deps.com.fasterxml.jackson.databind.node.ArrayNode;
+import com.couchbase.client.deps.com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.couchbase.client.deps.com.fasterxml.jackson.databind.node.ObjectNode;
+import com.couchbase.client.deps.io.netty.util.CharsetUtil;
+import com.couchbase.client.java.transcoder.JacksonTransformers;
+
+/**
+ * Applies sub-document lookups and mutations to a parsed copy of a simulated document.
+ *
+ * Paths follow the server syntax: dictionary keys separated by dots, optionally escaped with backticks,
+ * and array indexes in brackets, where {@code [-1]} addresses the last element. Extended attributes are
+ * kept in a separate tree, macro expansion is not supported.
+ *
+ * @since 2.5.2
+ */
+class SimulatedSubdoc {
+
+    private static final JsonNodeFactory NODES = JsonNodeFactory.instance;
+
+    private JsonNode body;
+    private ObjectNode xattrs;
+
+    /**
+     * Parses the given document body and extended attributes.
+     *
+     * @param content the document body.
+     * @param xattrs the encoded extended attributes, null if the document has none.
+     * @throws Failure with {@link ResponseStatus#SUBDOC_DOC_NOT_JSON} if the body is not JSON.
+     */
+    SimulatedSubdoc(byte[] content, byte[] xattrs) throws Failure {
+        try {
+            this.body = content.length == 0 ? NODES.objectNode() : JacksonTransformers.MAPPER.readTree(content);
+        } catch (IOException e) {
+            throw new Failure(ResponseStatus.SUBDOC_DOC_NOT_JSON);
+        }
+        try {
+            this.xattrs = xattrs == null ? NODES.objectNode() : (ObjectNode) JacksonTransformers.MAPPER.readTree(xattrs);
+        } catch (IOException e) {
+            throw new Failure(ResponseStatus.INTERNAL_ERROR);
+        }
+    }
+
+    /**
+     * @return the encoded document body.
+     */
+    byte[] content() {
+        return encode(body);
+    }
+
+    /**
+     * @return the encoded extended attributes, null if there are none.
+     */
+    byte[] xattrs() {
+        return xattrs.size() == 0 ? null : encode(xattrs);
+    }
+
+    /**
+     * Performs a lookup.
+     *
+     * @param opcode the lookup opcode.
+     * @param path the path to look up.
+     * @param xattr true if the path addresses the extended attributes.
+     * @return the encoded value, or null if the lookup does not return one.
+     * @throws Failure if the lookup fails.
+     */
+    byte[] lookup(byte opcode, String path, boolean xattr) throws Failure {
+        if (opcode == OP_GET && path.isEmpty()) {
+            return encode(body);
+        }
+        JsonNode value = resolve(root(xattr), parse(path));
+        switch (opcode) {
+            case OP_SUB_GET:
+                return encode(value);
+            case OP_SUB_EXIST:
+                return null;
+            case OP_SUB_GET_COUNT:
+                if (!value.isContainerNode()) {
+                    throw new Failure(ResponseStatus.SUBDOC_PATH_MISMATCH);
+                }
+                return String.valueOf(value.size()).getBytes(CharsetUtil.UTF_8);
+            default:
+                throw new Failure(ResponseStatus.INVALID_ARGUMENTS);
+        }
+    }
+
+    /**
+     * Performs a mutation.
+     *
+     * @param opcode the mutation opcode.
+     * @param path the path to mutate.
+     * @param fragment the encoded fragment, empty for operations not taking one.
+     * @param createParents true if missing intermediate dictionaries should be created.
+     * @param xattr true if the path addresses the extended attributes.
+     * @return the encoded result for counter operations, null otherwise.
+     * @throws Failure if the mutation fails, in which case the document may be partially modified.
+     */
+    byte[] mutate(byte opcode, String path, byte[] fragment, boolean createParents, boolean xattr) throws Failure {
+        if (opcode == OP_UPSERT && path.isEmpty()) {
+            body = fragment(fragment);
+            return null;
+        }
+
+        JsonNode root = root(xattr);
+        List<Object> tokens = parse(path);
+        if (tokens.isEmpty() && opcode != OP_SUB_ARRAY_PUSH_LAST && opcode != OP_SUB_ARRAY_PUSH_FIRST
+            && opcode != OP_SUB_ARRAY_ADD_UNIQUE) {
+            throw new Failure(ResponseStatus.SUBDOC_PATH_INVALID);
+        }
+        Object last = tokens.isEmpty() ? null : tokens.get(tokens.size() - 1);
+
+        switch (opcode) {
+            case OP_SUB_DICT_ADD:
+            case OP_SUB_DICT_UPSERT: {
+                ObjectNode parent = dictionary(container(root, tokens, createParents), last);
+                if (opcode == OP_SUB_DICT_ADD && parent.has((String) last)) {
+                    throw new Failure(ResponseStatus.SUBDOC_PATH_EXISTS);
+                }
+                parent.set((String) last, fragment(fragment));
+                return null;
+            }
+            case OP_SUB_REPLACE: {
+                JsonNode parent = container(root, tokens, false);
+                if (child(parent, last) == null) {
+                    throw new Failure(ResponseStatus.SUBDOC_PATH_NOT_FOUND);
+                }
+                if (last instanceof String) {
+                    ((ObjectNode) parent).set((String) last, fragment(fragment));
+                } else {
+                    ((ArrayNode) parent).set(index((ArrayNode) parent, (Integer) last), fragment(fragment));
+                }
+                return null;
+            }
+            case OP_SUB_DELETE: {
+                JsonNode parent = container(root, tokens, false);
+                if (child(parent, last) == null) {
+                    throw new Failure(ResponseStatus.SUBDOC_PATH_NOT_FOUND);
+                }
+                if (last instanceof String) {
+                    ((ObjectNode) parent).remove((String) last);
+                } else {
+                    ((ArrayNode) parent).remove(index((ArrayNode) parent, (Integer) last));
+                }
+                return null;
+            }
+            case OP_SUB_ARRAY_PUSH_LAST:
+            case OP_SUB_ARRAY_PUSH_FIRST: {
+                ArrayNode array = array(root, tokens, createParents);
+                List<JsonNode> values = values(fragment);
+                if (opcode == OP_SUB_ARRAY_PUSH_LAST) {
+                    array.addAll(values);
+                } else {
+                    for (int i = values.size() - 1; i >= 0; i--) {
+                        array.insert(0, values.get(i));
+                    }
+                }
+                return null;
+            }
+            case OP_SUB_ARRAY_INSERT: {
+                if (!(last instanceof Integer)) {
+                    throw new Failure(ResponseStatus.SUBDOC_PATH_INVALID);
+                }
+                JsonNode parent = container(root, tokens, false);
+                if (!parent.isArray()) {
+                    throw new Failure(ResponseStatus.SUBDOC_PATH_MISMATCH);
+                }
+                int index = (Integer) last;
+                if (index < 0 || index > parent.size()) {
+                    throw new Failure(ResponseStatus.SUBDOC_PATH_NOT_FOUND);
+                }
+                List<JsonNode> values = values(fragment);
+                for (int i = 0; i < values.size(); i++) {
+                    ((ArrayNode) parent).insert(index + i, values.get(i));
+                }
+                return null;
+            }
+            case OP_SUB_ARRAY_ADD_UNIQUE: {
+                JsonNode value = fragment(fragment);
+                if (value.isContainerNode()) {
+                    throw new Failure(ResponseStatus.SUBDOC_VALUE_CANTINSERT);
+                }
+                ArrayNode array = array(root, tokens, createParents);
+                for (JsonNode element : array) {
+                    if (element.isContainerNode()) {
+                        throw new Failure(ResponseStatus.SUBDOC_PATH_MISMATCH);
+                    }
+                    if (element.equals(value)) {
+                        throw new Failure(ResponseStatus.SUBDOC_PATH_EXISTS);
+                    }
+                }
+                array.add(value);
+                return null;
+            }
+            case OP_SUB_COUNTER: {
+                long delta;
+                try {
+                    delta = Long.parseLong(new String(fragment, CharsetUtil.UTF_8));
+                } catch (NumberFormatException e) {
+                    throw new Failure(ResponseStatus.SUBDOC_DELTA_RANGE);
+                }
+                if (delta == 0) {
+                    throw new Failure(ResponseStatus.SUBDOC_DELTA_RANGE);
+                }
+                JsonNode parent = container(root, tokens, createParents);
+                JsonNode current = child(parent, last);
+                long value;
+                if (current == null) {
+                    if (!(last instanceof String)) {
+                        throw new Failure(ResponseStatus.SUBDOC_PATH_NOT_FOUND);
+                    }
+                    value = delta;
+                } else if (!current.isIntegralNumber() || !current.canConvertToLong()) {
+                    throw new Failure(ResponseStatus.SUBDOC_PATH_MISMATCH);
+                } else {
+                    long previous = current.longValue();
+                    if ((delta > 0 && previous > Long.MAX_VALUE - delta)
+                        || (delta < 0 && previous < Long.MIN_VALUE - delta)) {
+                        throw new Failure(ResponseStatus.SUBDOC_VALUE_CANTINSERT);
+                    }
+                    value = previous + delta;
+                }
+                if (last instanceof String) {
+                    dictionary(parent, last).set((String) last, NODES.numberNode(value));
+                } else {
+                    ((ArrayNode) parent).set(index((ArrayNode) parent, (Integer) last), NODES.numberNode(value));
+                }
+                return String.valueOf(value).getBytes(CharsetUtil.UTF_8);
+            }
+            default:
+                throw new Failure(ResponseStatus.INVALID_ARGUMENTS);
+        }
+    }
+
+    private JsonNode root(boolean xattr) {
+        return xattr ? xattrs : body;
+    }
+
+    /**
+     * Resolves the node at the given path.
+     */
+    private static JsonNode resolve(JsonNode root, List<Object> tokens) throws Failure {
+        JsonNode current = root;
+        for (Object token : tokens) {
+            current = child(current, token);
+            if (current == null) {
+                throw new Failure(ResponseStatus.SUBDOC_PATH_NOT_FOUND);
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Resolves the container holding the last element of the path, creating missing intermediate
+     * dictionaries if asked to.
+     */
+    private static JsonNode container(JsonNode root, List<Object> tokens, boolean create) throws Failure {
+        JsonNode current = root;
+        for (int i = 0; i < tokens.size() - 1; i++) {
+            Object token = tokens.get(i);
+            JsonNode next = child(current, token);
+            if (next == null) {
+                if (!create || !(token instanceof String)) {
+                    throw new Failure(ResponseStatus.SUBDOC_PATH_NOT_FOUND);
+                }
+                next = ((ObjectNode) current).putObject((String) token);
+            }
+            current = next;
+        }
+        return current;
+    }
+
+    /**
+     * Resolves the array at the given path, creating it if missing and asked to.
+     */
+    private static ArrayNode array(JsonNode root, List<Object> tokens, boolean create) throws Failure {
+        JsonNode target;
+        if (tokens.isEmpty()) {
+            target = root;
+        } else {
+            Object last = tokens.get(tokens.size() - 1);
+            JsonNode parent = container(root, tokens, create);
+            target = child(parent, last);
+            if (target == null) {
+                if (!create || !(last instanceof String)) {
+                    throw new Failure(ResponseStatus.SUBDOC_PATH_NOT_FOUND);
+                }
+                target = ((ObjectNode) parent).putArray((String) last);
+            }
+        }
+        if (!target.isArray()) {
+            throw new Failure(ResponseStatus.SUBDOC_PATH_MISMATCH);
+        }
+        return (ArrayNode) target;
+    }
+
+    private static ObjectNode dictionary(JsonNode parent, Object last) throws Failure {
+        if (!(last instanceof String)) {
+            throw new Failure(ResponseStatus.SUBDOC_PATH_INVALID);
+        }
+        if (!parent.isObject()) {
+            throw new Failure(ResponseStatus.SUBDOC_PATH_MISMATCH);
+        }
+        return (ObjectNode) parent;
+    }
+
+    /**
+     * Returns the child of the given container, null if missing.
+     */
+    private static JsonNode child(JsonNode container, Object token) throws Failure {
+        if (token instanceof String) {
+            if (!container.isObject()) {
+                throw new Failure(ResponseStatus.SUBDOC_PATH_MISMATCH);
+            }
+            return container.get((String) token);
+        }
+        if (!container.isArray()) {
+            throw new Failure(ResponseStatus.SUBDOC_PATH_MISMATCH);
+        }
+        int index = index((ArrayNode) container, (Integer) token);
+        return index < 0 || index >= container.size() ? null : container.get(index);
+    }
+
+    private static int index(ArrayNode array, int index) {
+        return index == -1 ? array.size() - 1 : index;
+    }
+
+    private static JsonNode fragment(byte[] fragment) throws Failure {
+        try {
+            JsonNode value = JacksonTransformers.MAPPER.readTree(fragment);
+            if (value == null) {
+                throw new Failure(ResponseStatus.SUBDOC_VALUE_CANTINSERT);
+            }
+            return value;
+        } catch (IOException e) {
+            throw new Failure(ResponseStatus.SUBDOC_VALUE_CANTINSERT);
+        }
+    }
+
+    /**
+     * Parses a fragment which may hold several comma separated values, as sent for multi-value
+     * array operations.
+     */
+    private static List<JsonNode> values(byte[] fragment) throws Failure {
+        byte[] wrapped = new byte[fragment.length + 2];
+        wrapped[0] = '[';
+        System.arraycopy(fragment, 0, wrapped, 1, fragment.length);
+        wrapped[wrapped.length - 1] = ']';
+        JsonNode values = fragment(wrapped);
+        if (values.size() == 0) {
+            throw new Failure(ResponseStatus.SUBDOC_VALUE_CANTINSERT);
+        }
+        List<JsonNode> result = new ArrayList<JsonNode>(values.size());
+        for (JsonNode value : values) {
+            result.add(value);
+        }
+        return result;
+    }
+
+    private static byte[] encode(JsonNode node) {
+        try {
+            return JacksonTransformers.MAPPER.writeValueAsBytes(node);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not encode simulated document.", e);
+        }
+    }
+
+    /**
+     * Splits a path into dictionary keys ({@link String}) and array indexes ({@link Integer}).
+     *
+     * @param path the path to parse.
+     * @return the path tokens, empty for the root.
+     * @throws Failure with {@link ResponseStatus#SUBDOC_PATH_INVALID} if the path is malformed.
+     */
+    static List<Object> parse(String path) throws Failure {
+        List<Object> tokens = new ArrayList<Object>();
+        int i = 0;
+        int length = path.length();
+        boolean expectKey = true;
+        while (i < length) {
+            char c = path.charAt(i);
+            if (c == '[') {
+                int end = path.indexOf(']', i);
+                if (end < 0 || (tokens.isEmpty() && i > 0)) {
+                    throw new Failure(ResponseStatus.SUBDOC_PATH_INVALID);
+                }
+                try {
+                    int index = Integer.parseInt(path.substring(i + 1, end));
+                    if (index < -1) {
+                        throw new Failure(ResponseStatus.SUBDOC_PATH_INVALID);
+                    }
+                    tokens.add(index);
+                } catch (NumberFormatException e) {
+                    throw new Failure(ResponseStatus.SUBDOC_PATH_INVALID);
+                }
+                i = end + 1;
+                expectKey = false;
+            } else if (c == '.') {
+                if (tokens.isEmpty() || expectKey) {
+                    throw new Failure(ResponseStatus.SUBDOC_PATH_INVALID);
+                }
+                i++;
+                expectKey = true;
+            } else {
+                if (!expectKey) {
+                    throw new Failure(ResponseStatus.SUBDOC_PATH_INVALID);
+                }
+                StringBuilder key = new StringBuilder();
+                if (c == '`') {
+                    i++;
+                    while (true) {
+                        if (i >= length) {
+                            throw new Failure(ResponseStatus.SUBDOC_PATH_INVALID);
+                        }
+                        char k = path.charAt(i++);
+                        if (k == '`') {
+                            if (i < length && path.charAt(i) == '`') {
+                                key.append('`');
+                                i++;
+                            } else {
+                                break;
+                            }
+                        } else {
+                            key.append(k);
+                        }
+                    }
+                } else {
+                    while (i < length && path.charAt(i) != '.' && path.charAt(i) != '[') {
+                        key.append(path.charAt(i++));
+                    }
+                }
+                tokens.add(key.toString());
+                expectKey = false;
+            }
+        }
+        if (expectKey && !tokens.isEmpty()) {
+            throw new Failure(ResponseStatus.SUBDOC_PATH_INVALID);
+        }
+        return tokens;
+    }
+
+    /**
+     * Signals a failed sub-document operation, carrying the status the server would respond with.
+     */
+    static class Failure extends Exception {
+
+        private final ResponseStatus status;
+
+        Failure(ResponseStatus status) {
+            super(status.toString());
+            this.status = status;
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+
+        ResponseStatus status() {
+            return status;
+        }
+    }
+}
@@ -18,6 +18,7 @@ package com.couchbase.client.java.subdoc;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 
@@ -46,6 +47,9 @@ import com.couchbase.client.java.error.TranscodingException;
 import com.couchbase.client.java.error.subdoc.DocumentNotJsonException;
 import com.couchbase.client.java.error.subdoc.SubDocumentException;
 import com.couchbase.client.java.error.subdoc.XattrOrderingException;
+import com.couchbase.client.java.metrics.OperationMetrics;
+import com.couchbase.client.java.metrics.OperationTimer;
+import com.couchbase.client.java.metrics.OperationType;
 import com.couchbase.client.java.transcoder.TranscoderUtils;
 import com.couchbase.client.java.transcoder.subdoc.FragmentTranscoder;
 import rx.Observable;
@@ -76,8 +80,10 @@ public class AsyncLookupInBuilder {
     private final CouchbaseEnvironment environment;
     private final String bucketName;
     private final FragmentTranscoder subdocumentTranscoder;
+    private final OperationMetrics operationMetrics;
 
     private final String docId;
+    private final List<String> docIds;
 
     private final List<LookupSpec> specs;
     private boolean includeRaw = false;
@@ -90,21 +96,61 @@ public class AsyncLookupInBuilder {
     @InterfaceAudience.Private
     public AsyncLookupInBuilder(ClusterFacade core, String bucketName, CouchbaseEnvironment environment,
             FragmentTranscoder transcoder, String docId) {
-        if (docId == null || docId.isEmpty()) {
-            throw new IllegalArgumentException("The document ID must not be null or empty.");
+        this(core, bucketName, environment, transcoder, docId, OperationMetrics.DISABLED);
+    }
+
+    /**
+     * Instances of this builder should be obtained through {@link AsyncBucket#lookupIn(String)} rather than directly
+     * constructed.
+     */
+    @InterfaceAudience.Private
+    public AsyncLookupInBuilder(ClusterFacade core, String bucketName, CouchbaseEnvironment environment,
+            FragmentTranscoder transcoder, String docId, OperationMetrics operationMetrics) {
+        checkDocId(docId);
+
+        this.core = core;
+        this.bucketName = bucketName;
+        this.environment = environment;
+        this.subdocumentTranscoder = transcoder;
+        this.operationMetrics = operationMetrics;
+        this.docId = docId;
+        this.docIds = null;
+        this.specs = new ArrayList<LookupSpec>();
+    }
+
+    /**
+     * Instances of this builder should be obtained through {@link AsyncBucket#lookupIn(Collection)} rather than
+     * directly constructed.
+     */
+    @InterfaceAudience.Private
+    public AsyncLookupInBuilder(ClusterFacade core, String bucketName, CouchbaseEnvironment environment,
+            FragmentTranscoder transcoder, Collection<String> docIds, OperationMetrics operationMetrics) {
+        if (docIds == null) {
+            throw new IllegalArgumentException("The document IDs must not be null.");
         }
-        if (docId.getBytes().length > 250) {
-            throw new IllegalArgumentException("The document ID must not be larger than 250 bytes");
+        for (String id : docIds) {
+            checkDocId(id);
         }
 
         this.core = core;
         this.bucketName = bucketName;
         this.environment = environment;
         this.subdocumentTranscoder = transcoder;
-        this.docId = docId;
+        this.operationMetrics = operationMetrics;
+        this.docId = null;
+        this.docIds = new ArrayList<String>(docIds);
         this.specs = new ArrayList<LookupSpec>();
     }
 
+    private static void checkDocId(String docId) {
+        if (docId == null || docId.isEmpty()) {
+            throw new IllegalArgumentException("The document ID must not be null or empty.");
+        }
+        if (docId.getBytes().length > 250) {
+            throw new IllegalArgumentException("The document ID must not be larger than 250 bytes");
+        }
+    }
+
     /**
      * Set accessDeleted to true, if the document has been deleted to access xattrs
      *
@@ -154,18 +200,35 @@ public class AsyncLookupInBuilder {
      *
      * Other document-level error conditions are similar to those encountered during a document-level {@link AsyncBucket#get(String)}.
      *
+     * When this builder was obtained through {@link AsyncBucket#lookupIn(Collection)}, the specs act as a template
+     * which is applied to every document: they are validated and encoded once, then shared by all the requests.
+     * At most {@link CouchbaseEnvironment#subdocBatchConcurrency()} documents are looked up concurrently, one
+     * {@link DocumentFragment} is emitted per existing document in completion order, documents that don't exist are
+     * skipped and path-level errors are reported in the fragment, like for a multi-spec lookup.
+     *
      * @return an {@link Observable} of a single {@link DocumentFragment} representing the whole list of results (1 for
      *        each spec), unless a document-level error happened (in which case an exception is propagated).
      */
     public Observable<DocumentFragment<Lookup>> execute() {
         if (specs.isEmpty()) {
             throw new IllegalArgumentException("Execution of a subdoc lookup requires at least one operation");
-        } else if (specs.size() == 1) {
-            //single path optimization
-            return doSingleLookup(specs.get(0));
-        } else {
-            return doMultiLookup();
         }
+        if (docIds != null) {
+            return doBatchLookup();
+        }
+        final LookupSpec singleSpec = specs.size() == 1 ? specs.get(0) : null;
+        return operationMetrics.timed(OperationType.LOOKUP_IN, docId,
+            new Func1<OperationTimer, Observable<DocumentFragment<Lookup>>>() {
+                @Override
+                public Observable<DocumentFragment<Lookup>> call(OperationTimer timer) {
+                    if (singleSpec != null) {
+                        //single path optimization
+                        return timer.finishOnTerminate(doSingleLookup(singleSpec, timer));
+                    } else {
+                        return timer.finishOnTerminate(doMultiLookup(timer));
+                    }
+                }
+            });
     }
 
     /**
@@ -389,68 +452,74 @@ public class AsyncLookupInBuilder {
     }
 
     protected Observable<DocumentFragment<Lookup>> doSingleLookup(LookupSpec spec) {
+        return doSingleLookup(spec, OperationTimer.NOOP);
+    }
+
+    private Observable<DocumentFragment<Lookup>> doSingleLookup(LookupSpec spec, OperationTimer timer) {
         if (spec.lookup() == Lookup.GET) {
-            return getIn(docId, spec, Object.class);
+            return getIn(docId, spec, timer);
         } else if (spec.lookup() == Lookup.EXIST) {
-            return existsIn(docId, spec);
+            return existsIn(docId, spec, timer);
         } else if (spec.lookup() == Lookup.GET_COUNT) {
-            return getCountIn(docId, spec);
+            return getCountIn(docId, spec, timer);
         }
         return Observable.error(new UnsupportedOperationException("Lookup type " + spec.lookup() + " unknown"));
     }
 
-    private final Func1<MultiResult<Lookup>, SubdocOperationResult<Lookup>> multiCoreResultToLookupResult
-        = new Func1<MultiResult<Lookup>, SubdocOperationResult<Lookup>>() {
-        @Override
-        public SubdocOperationResult<Lookup> call(MultiResult<Lookup> lookupResult) {
-            String path = lookupResult.path();
-            Lookup operation = lookupResult.operation();
-            ResponseStatus status = lookupResult.status();
-            boolean isExist = operation == Lookup.EXIST;
-            boolean isGetCount = operation == Lookup.GET_COUNT;
-            boolean isSuccess = status.isSuccess();
-            boolean isNotFound = status == ResponseStatus.SUBDOC_PATH_NOT_FOUND;
-
-            try {
-                if (isExist && isSuccess) {
-                    return SubdocOperationResult.createResult(path, operation, status, true);
-                } else if (isExist && isNotFound) {
-                    return SubdocOperationResult.createResult(path, operation, status, false);
-                } else if (!isExist && isSuccess) {
-                    try  {
-                        if (isGetCount) {
-                            long count = subdocumentTranscoder.decode(lookupResult.value(), Long.class);
-                            return SubdocOperationResult.createResult(path, operation, status, count);
-                        } else {
-                            byte[] raw = null;
-                            if (isIncludeRaw()) {
-                                //make a copy of the bytes
-                                TranscoderUtils.ByteBufToArray rawData = TranscoderUtils.byteBufToByteArray(lookupResult.value());
-                                raw = Arrays.copyOfRange(rawData.byteArray, rawData.offset, rawData.offset + rawData.length);
-                            }
-                            //generic, so will transform dictionaries into JsonObject and arrays into JsonArray
-                            Object content = subdocumentTranscoder.decode(lookupResult.value(), Object.class);
-                            return SubdocOperationResult.createResult(path, operation, status, content, raw);
-                        }
-                    } catch (TranscodingException e) {
-                        LOGGER.error("Couldn't decode multi-lookup " + operation + " for " + docId + "/" + path, e);
-                        return SubdocOperationResult.createFatal(path, operation, e);
+    private SubdocOperationResult<Lookup> toLookupResult(String id, MultiResult<Lookup> lookupResult) {
+        String path = lookupResult.path();
+        Lookup operation = lookupResult.operation();
+        ResponseStatus status = lookupResult.status();
+        boolean isExist = operation == Lookup.EXIST;
+        boolean isGetCount = operation == Lookup.GET_COUNT;
+        boolean isSuccess = status.isSuccess();
+        boolean isNotFound = status == ResponseStatus.SUBDOC_PATH_NOT_FOUND;
+
+        try {
+            if (isExist && isSuccess) {
+                return SubdocOperationResult.createResult(path, operation, status, true);
+            } else if (isExist && isNotFound) {
+                return SubdocOperationResult.createResult(path, operation, status, false);
+            } else if (!isExist && isSuccess) {
+                try  {
+                    if (isGetCount) {
+                        long count = subdocumentTranscoder.decode(lookupResult.value(), Long.class);
+                        return SubdocOperationResult.createResult(path, operation, status, count);
+                    } else {
+                        //only copy the bytes, decoding is deferred until the content is accessed
+                        byte[] encoded = TranscoderUtils.copyByteBufToByteArray(lookupResult.value());
+                        return SubdocOperationResult.createLazyResult(id, path, operation, status, encoded,
+                            isIncludeRaw(), subdocumentTranscoder);
                     }
-                } else if (!isExist && isNotFound) {
-                    return SubdocOperationResult.createResult(path, operation, status, null);
-                } else {
-                    return SubdocOperationResult
-                            .createError(path, operation, status, SubdocHelper.commonSubdocErrors(status, docId, path));
-                }
-            } finally {
-                if (lookupResult.value() != null) {
-                    lookupResult.value().release();
+                } catch (TranscodingException e) {
+                    LOGGER.error("Couldn't decode multi-lookup " + operation + " for " + id + "/" + path, e);
+                    return SubdocOperationResult.createFatal(path, operation, e);
                 }
+            } else if (!isExist && isNotFound) {
+                return SubdocOperationResult.createResult(path, operation, status, null);
+            } else {
+                return SubdocOperationResult
+                        .createError(path, operation, status, SubdocHelper.commonSubdocErrors(status, id, path));
+            }
+        } finally {
+            if (lookupResult.value() != null) {
+                lookupResult.value().release();
             }
         }
-    };
+    }
 
     protected Observable<DocumentFragment<Lookup>> doMultiLookup() {
+        return doMultiLookup(OperationTimer.NOOP);
+    }
+
+    private Observable<DocumentFragment<Lookup>> doMultiLookup(final OperationTimer timer) {
+        return doMultiLookup(docId, validatedSpecs(), timer);
+    }
+
+    /**
+     * Checks the specs of this builder and returns them as the array sent with each multi-lookup request.
+     */
+    private LookupSpec[] validatedSpecs() {
         if (specs.isEmpty()) {
             throw new IllegalArgumentException("At least one Lookup Command is necessary for lookupIn");
         }
@@ -462,18 +531,50 @@ public class AsyncLookupInBuilder {
                 seenNonXattr = true;
             }
         }
-        final LookupSpec[] lookupSpecs = specs.toArray(new LookupSpec[specs.size()]);
+        return specs.toArray(new LookupSpec[specs.size()]);
+    }
 
+    private Observable<DocumentFragment<Lookup>> doBatchLookup() {
+        final LookupSpec[] lookupSpecs = validatedSpecs();
+        return Observable.from(docIds).flatMap(new Func1<String, Observable<DocumentFragment<Lookup>>>() {
+            @Override
+            public Observable<DocumentFragment<Lookup>> call(final String id) {
+                return operationMetrics.timed(OperationType.LOOKUP_IN, id,
+                    new Func1<OperationTimer, Observable<DocumentFragment<Lookup>>>() {
+                        @Override
+                        public Observable<DocumentFragment<Lookup>> call(OperationTimer timer) {
+                            return timer.finishOnTerminate(doMultiLookup(id, lookupSpecs, timer));
+                        }
+                    })
+                    .onErrorResumeNext(SKIP_MISSING_DOCUMENT);
+            }
+        }, environment.subdocBatchConcurrency());
+    }
+
+    private static final Func1<Throwable, Observable<DocumentFragment<Lookup>>> SKIP_MISSING_DOCUMENT =
+        new Func1<Throwable, Observable<DocumentFragment<Lookup>>>() {
+            @Override
+            public Observable<DocumentFragment<Lookup>> call(Throwable throwable) {
+                if (throwable instanceof DocumentDoesNotExistException) {
+                    return Observable.empty();
+                }
+                return Observable.error(throwable);
+            }
+        };
+
+    private Observable<DocumentFragment<Lookup>> doMultiLookup(final String id, final LookupSpec[] lookupSpecs,
+            final OperationTimer timer) {
         return deferAndWatch(new Func1<Subscriber, Observable<MultiLookupResponse>>() {
             @Override
             public Observable<MultiLookupResponse> call(Subscriber s) {
-                SubMultiLookupRequest request = new SubMultiLookupRequest(docId, bucketName, SubMultiLookupDocOptionsBuilder.builder().accessDeleted(accessDeleted), lookupSpecs);
+                SubMultiLookupRequest request = new SubMultiLookupRequest(id, bucketName, SubMultiLookupDocOptionsBuilder.builder().accessDeleted(accessDeleted), lookupSpecs);
                 request.subscriber(s);
                 return core.send(request);
             }
         }).filter(new Func1<MultiLookupResponse, Boolean>() {
             @Override
             public Boolean call(MultiLookupResponse response) {
+                timer.received();
                 if (response.status().isSuccess() || response.status() == ResponseStatus.SUBDOC_MULTI_PATH_FAILURE) {
                     return true;
                 }
@@ -482,26 +583,27 @@ public class AsyncLookupInBuilder {
                     response.content().release();
                 }
 
-                throw SubdocHelper.commonSubdocErrors(response.status(), docId, "MULTI-LOOKUP");
+                throw SubdocHelper.commonSubdocErrors(response.status(), id, "MULTI-LOOKUP");
             }
-        }).flatMap(new Func1<MultiLookupResponse, Observable<DocumentFragment<Lookup>>>() {
+        }).map(new Func1<MultiLookupResponse, DocumentFragment<Lookup>>() {
             @Override
-            public Observable<DocumentFragment<Lookup>> call(final MultiLookupResponse mlr) {
-                return Observable
-                    .from(mlr.responses()).map(multiCoreResultToLookupResult)
-                    .toList()
-                    .map(new Func1<List<SubdocOperationResult<Lookup>>, DocumentFragment<Lookup>>() {
-                        @Override
-                        public DocumentFragment<Lookup> call(List<SubdocOperationResult<Lookup>> lookupResults) {
-                            return new DocumentFragment<Lookup>(docId, mlr.cas(), null, lookupResults);
-                        }
-                    });
+            @SuppressWarnings("unchecked")
+            public DocumentFragment<Lookup> call(MultiLookupResponse mlr) {
+                long decodeStart = timer.decodeStart();
+                List<MultiResult<Lookup>> responses = mlr.responses();
+                SubdocOperationResult<Lookup>[] lookupResults = new SubdocOperationResult[responses.size()];
+                for (int i = 0; i < lookupResults.length; i++) {
+                    lookupResults[i] = toLookupResult(id, responses.get(i));
+                }
+                timer.decoded(decodeStart);
+                return new DocumentFragment<Lookup>(id, mlr.cas(), null, Arrays.asList(lookupResults));
             }
         });
     }
 
 
-    private <T> Observable<DocumentFragment<Lookup>> getIn(final String id, final LookupSpec spec, final Class<T> fragmentType) {
+    private Observable<DocumentFragment<Lookup>> getIn(final String id, final LookupSpec spec,
+            final OperationTimer timer) {
         return deferAndWatch(new Func1<Subscriber, Observable<SimpleSubdocResponse>>() {
             @Override
             public Observable<SimpleSubdocResponse> call(Subscriber s) {
@@ -514,20 +616,19 @@ public class AsyncLookupInBuilder {
         }).map(new Func1<SimpleSubdocResponse, DocumentFragment<Lookup>>() {
             @Override
             public DocumentFragment<Lookup> call(SimpleSubdocResponse response) {
+                timer.received();
                 if (response.status().isSuccess()) {
+                    long decodeStart = timer.decodeStart();
                     try {
-                        byte[] raw = null;
-                        if (isIncludeRaw()) {
-                            TranscoderUtils.ByteBufToArray rawData = TranscoderUtils.byteBufToByteArray(response.content());
-                            raw = Arrays.copyOfRange(rawData.byteArray, rawData.offset, rawData.offset + rawData.length);
-                        }
-                        T content = subdocumentTranscoder.decodeWithMessage(response.content(), fragmentType,
-                                "Couldn't decode subget fragment for " + id + "/" + spec.path());
-                        SubdocOperationResult<Lookup> single = SubdocOperationResult
-                                .createResult(spec.path(), Lookup.GET, response.status(), content, raw);
+                        //only copy the bytes, decoding is deferred until the content is accessed
+                        byte[] encoded = TranscoderUtils.copyByteBufToByteArray(response.content());
+                        SubdocOperationResult<Lookup> single = SubdocOperationResult.createLazyResult(id,
+                                spec.path(), Lookup.GET, response.status(), encoded, isIncludeRaw(),
+                                subdocumentTranscoder);
                         return new DocumentFragment<Lookup>(id, response.cas(), response.mutationToken(),
                                 Collections.singletonList(single));
                     } finally {
+                        timer.decoded(decodeStart);
                         if (response.content() != null) {
                             response.content().release();
                         }
@@ -549,7 +650,8 @@ public class AsyncLookupInBuilder {
         });
     }
 
-    private Observable<DocumentFragment<Lookup>> existsIn(final String id, final LookupSpec spec) {
+    private Observable<DocumentFragment<Lookup>> existsIn(final String id, final LookupSpec spec,
+            final OperationTimer timer) {
         return deferAndWatch(new Func1<Subscriber, Observable<SimpleSubdocResponse>>() {
             @Override
             public Observable<SimpleSubdocResponse> call(Subscriber s) {
@@ -562,6 +664,7 @@ public class AsyncLookupInBuilder {
         }).map(new Func1<SimpleSubdocResponse, DocumentFragment<Lookup>>() {
             @Override
             public DocumentFragment<Lookup> call(SimpleSubdocResponse response) {
+                timer.received();
                 if (response.content() != null && response.content().refCnt() > 0) {
                     response.content().release();
                 }
@@ -581,7 +684,8 @@ public class AsyncLookupInBuilder {
         });
     }
 
-    private <T> Observable<DocumentFragment<Lookup>> getCountIn(final String id, final LookupSpec spec) {
+    private <T> Observable<DocumentFragment<Lookup>> getCountIn(final String id, final LookupSpec spec,
+            final OperationTimer timer) {
         return deferAndWatch(new Func1<Subscriber, Observable<SimpleSubdocResponse>>() {
             @Override
             public Observable<SimpleSubdocResponse> call(Subscriber s) {
@@ -594,7 +698,9 @@ public class AsyncLookupInBuilder {
         }).map(new Func1<SimpleSubdocResponse, DocumentFragment<Lookup>>() {
             @Override
             public DocumentFragment<Lookup> call(SimpleSubdocResponse response) {
+                timer.received();
                 if (response.status().isSuccess()) {
+                    long decodeStart = timer.decodeStart();
                     try {
                         long count = subdocumentTranscoder.decode(response.content(), Long.class);
                         SubdocOperationResult<Lookup> single = SubdocOperationResult
@@ -602,6 +708,7 @@ public class AsyncLookupInBuilder {
                         return new DocumentFragment<Lookup>(id, response.cas(), response.mutationToken(),
                             Collections.singletonList(single));
                     } finally {
+                        timer.decoded(decodeStart);
                         if (response.content() != null) {
                             response.content().release();
                         }
@@ -625,7 +732,7 @@ public class AsyncLookupInBuilder {
 
     @Override
     public String toString() {
-        StringBuilder sb = new StringBuilder("lookupIn(").append(docId).append(")[");
+        StringBuilder sb = new StringBuilder("lookupIn(").append(docIds == null ? docId : docIds).append(")[");
         int pos = sb.length();
         for (LookupSpec spec : specs) {
             sb.append(", ").append(spec);
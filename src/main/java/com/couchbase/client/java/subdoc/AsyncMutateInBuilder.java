@@ -73,6 +73,7 @@ import com.couchbase.client.java.error.subdoc.XattrOrderingException;
 import com.couchbase.client.java.transcoder.subdoc.FragmentTranscoder;
 import rx.Observable;
 import rx.Subscriber;
+import rx.functions.Action1;
 import rx.functions.Func0;
 import rx.functions.Func1;
 import rx.functions.Func2;
@@ -104,6 +105,7 @@ public class AsyncMutateInBuilder {
     private final FragmentTranscoder subdocumentTranscoder;
 
     protected final String docId;
+    protected final List<String> docIds;
     protected final List<MutationSpec> mutationSpecs;
 
     protected int expiry;
@@ -120,18 +122,27 @@ public class AsyncMutateInBuilder {
     @InterfaceAudience.Private
     public AsyncMutateInBuilder(ClusterFacade core, String bucketName, CouchbaseEnvironment environment,
             FragmentTranscoder transcoder, String docId) {
-        if (docId == null || docId.isEmpty()) {
-            throw new IllegalArgumentException("The document ID must not be null or empty.");
-        }
-        if (docId.getBytes().length > 250) {
-            throw new IllegalArgumentException("The document ID must not be larger than 250 bytes");
-        }
+        this(core, bucketName, environment, transcoder, checkDocId(docId), null);
+    }
+
+    /**
+     * Instances of this builder should be obtained through {@link AsyncBucket#mutateIn(Collection)} rather than
+     * directly constructed.
+     */
+    @InterfaceAudience.Private
+    public AsyncMutateInBuilder(ClusterFacade core, String bucketName, CouchbaseEnvironment environment,
+            FragmentTranscoder transcoder, Collection<String> docIds) {
+        this(core, bucketName, environment, transcoder, null, checkDocIds(docIds));
+    }
 
+    private AsyncMutateInBuilder(ClusterFacade core, String bucketName, CouchbaseEnvironment environment,
+            FragmentTranscoder transcoder, String docId, List<String> docIds) {
         this.core = core;
         this.bucketName = bucketName;
         this.environment = environment;
         this.subdocumentTranscoder = transcoder;
         this.docId = docId;
+        this.docIds = docIds;
         this.mutationSpecs = new ArrayList<MutationSpec>();
 
         //values below can be customized by the builder
@@ -141,6 +152,26 @@ public class AsyncMutateInBuilder {
         this.replicateTo = ReplicateTo.NONE;
     }
 
+    private static String checkDocId(String docId) {
+        if (docId == null || docId.isEmpty()) {
+            throw new IllegalArgumentException("The document ID must not be null or empty.");
+        }
+        if (docId.getBytes().length > 250) {
+            throw new IllegalArgumentException("The document ID must not be larger than 250 bytes");
+        }
+        return docId;
+    }
+
+    private static List<String> checkDocIds(Collection<String> docIds) {
+        if (docIds == null) {
+            throw new IllegalArgumentException("The document IDs must not be null.");
+        }
+        for (String id : docIds) {
+            checkDocId(id);
+        }
+        return new ArrayList<String>(docIds);
+    }
+
     /**
      * Perform several {@link Mutation mutation} operations inside a single existing {@link JsonDocument JSON document}.
      * The list of mutations and paths to mutate in the JSON is added through builder methods like
@@ -168,12 +199,20 @@ public class AsyncMutateInBuilder {
      *
      * Other top-level error conditions are similar to those encountered during a document-level {@link AsyncBucket#replace(Document)}.
      *
+     * When this builder was obtained through {@link AsyncBucket#mutateIn(Collection)}, the specs act as a template
+     * which is applied to every document: the fragments are encoded once and their buffers are shared by all the
+     * requests. At most {@link CouchbaseEnvironment#subdocBatchConcurrency()} documents are mutated concurrently
+     * and one {@link DocumentFragment} is emitted per document in completion order, the first document-level error
+     * terminating the {@link Observable}. A CAS can't be used in this mode.
+     *
      * @return an {@link Observable} of a single {@link DocumentFragment} (if successful) containing updated cas metadata.
      * Note that some individual results could also bear a value, like counter operations.
      */
     public Observable<DocumentFragment<Mutation>> execute() {
         if (mutationSpecs.isEmpty()) {
             throw new IllegalArgumentException("Execution of a subdoc mutation requires at least one operation");
+        } else if (docIds != null) {
+            return doBatchMutate();
         } else if (mutationSpecs.size() == 1) { //FIXME implement single path optim
             //single path optimization
             return doSingleMutate(mutationSpecs.get(0));
@@ -235,7 +274,7 @@ public class AsyncMutateInBuilder {
         return mutationResult.flatMap(new Func1<DocumentFragment<Mutation>, Observable<DocumentFragment<Mutation>>>() {
             @Override
             public Observable<DocumentFragment<Mutation>> call(final DocumentFragment<Mutation> fragment) {
-                return Observe.call(core, bucketName, docId, fragment.cas(), false, fragment.mutationToken(),
+                return Observe.call(core, bucketName, fragment.id(), fragment.cas(), false, fragment.mutationToken(),
                     persistTo.value(), replicateTo.value(),
                     environment.observeIntervalDelay(), environment.retryStrategy())
                     .map(new Func1<Boolean, DocumentFragment<Mutation>>() {
@@ -1040,6 +1079,58 @@ public class AsyncMutateInBuilder {
     //==============================
     //multi operation implementation
     protected Observable<DocumentFragment<Mutation>> doMultiMutate() {
+        validateSpecs();
+
+        Observable<List<MutationCommand>> commands = Observable.defer(new Func0<Observable<List<MutationCommand>>>() {
+            @Override
+            public Observable<List<MutationCommand>> call() {
+                try {
+                    return Observable.just(toCommands(encodeFragments(docId), false));
+                } catch (TranscodingException e) {
+                    return Observable.error(e);
+                }
+            }
+        });
+        return subdocObserveMutation(doMultiMutate(docId, commands));
+    }
+
+    protected Observable<DocumentFragment<Mutation>> doBatchMutate() {
+        validateSpecs();
+        if (cas != 0L) {
+            throw new IllegalArgumentException("A CAS value can't be used when mutating multiple documents");
+        }
+
+        return Observable.using(new Func0<List<ByteBuf>>() {
+            @Override
+            public List<ByteBuf> call() {
+                return encodeFragments("multi-document mutation");
+            }
+        }, new Func1<List<ByteBuf>, Observable<DocumentFragment<Mutation>>>() {
+            @Override
+            public Observable<DocumentFragment<Mutation>> call(final List<ByteBuf> fragments) {
+                return Observable.from(docIds).flatMap(new Func1<String, Observable<DocumentFragment<Mutation>>>() {
+                    @Override
+                    public Observable<DocumentFragment<Mutation>> call(String id) {
+                        Observable<List<MutationCommand>> commands = Observable.defer(
+                            new Func0<Observable<List<MutationCommand>>>() {
+                                @Override
+                                public Observable<List<MutationCommand>> call() {
+                                    return Observable.just(toCommands(fragments, true));
+                                }
+                            });
+                        return subdocObserveMutation(doMultiMutate(id, commands));
+                    }
+                }, environment.subdocBatchConcurrency());
+            }
+        }, new Action1<List<ByteBuf>>() {
+            @Override
+            public void call(List<ByteBuf> fragments) {
+                releaseAll(fragments);
+            }
+        });
+    }
+
+    private void validateSpecs() {
         if (mutationSpecs.isEmpty()) {
             throw new IllegalArgumentException("At least one Mutation Spec is necessary for mutateIn");
         }
@@ -1051,39 +1142,60 @@ public class AsyncMutateInBuilder {
                 seenNonXattr = true;
             }
         }
+    }
 
-        Observable<DocumentFragment<Mutation>> mutations = Observable.defer(new Func0<Observable<MutationCommand>>() {
-            @Override
-            public Observable<MutationCommand> call() {
-                List<ByteBuf> bufList = new ArrayList<ByteBuf>(mutationSpecs.size());
-                final List<MutationCommand> commands = new ArrayList<MutationCommand>(mutationSpecs.size());
-
-                for (int i = 0; i < mutationSpecs.size(); i++) {
-                    MutationSpec spec = mutationSpecs.get(i);
-                    if (spec.type() == Mutation.DELETE) {
-                        commands.add(new MutationCommandBuilder(Mutation.DELETE, spec.path())
-                                .xattr(spec.xattr()).build());
-                    } else {
-                        try {
-                            ByteBuf buf = subdocumentTranscoder.encodeWithMessage(spec.fragment(), "Couldn't encode MutationSpec #" +
-                                    i + " (" + spec.type() + " on " + spec.path() + ") in " + docId);
-                            bufList.add(buf);
-                            commands.add(new MutationCommandBuilder(spec.type(), spec.path(), buf)
-                                    .createIntermediaryPath(spec.createPath())
-                                    .xattr(spec.xattr()).build());
-                        } catch (TranscodingException e) {
-                            releaseAll(bufList);
-                            return Observable.error(e);
-                        }
-                    }
+    /**
+     * Encodes the fragment of each spec, in spec order (null for removals). Already encoded fragments are released
+     * if one of them fails to encode.
+     */
+    private List<ByteBuf> encodeFragments(String target) {
+        List<ByteBuf> bufList = new ArrayList<ByteBuf>(mutationSpecs.size());
+        for (int i = 0; i < mutationSpecs.size(); i++) {
+            MutationSpec spec = mutationSpecs.get(i);
+            if (spec.type() == Mutation.DELETE) {
+                bufList.add(null);
+            } else {
+                try {
+                    bufList.add(subdocumentTranscoder.encodeWithMessage(spec.fragment(), "Couldn't encode MutationSpec #" +
+                            i + " (" + spec.type() + " on " + spec.path() + ") in " + target));
+                } catch (TranscodingException e) {
+                    releaseAll(bufList);
+                    throw e;
                 }
-                return Observable.from(commands);
             }
-        }).toList()
+        }
+        return bufList;
+    }
+
+    /**
+     * Builds the commands out of the encoded fragments. A request releases the fragments of its commands once
+     * encoded, so shared fragments are retained through a duplicate for each request.
+     */
+    private List<MutationCommand> toCommands(List<ByteBuf> fragments, boolean shared) {
+        List<MutationCommand> commands = new ArrayList<MutationCommand>(mutationSpecs.size());
+        for (int i = 0; i < mutationSpecs.size(); i++) {
+            MutationSpec spec = mutationSpecs.get(i);
+            ByteBuf fragment = fragments.get(i);
+            if (fragment == null) {
+                commands.add(new MutationCommandBuilder(Mutation.DELETE, spec.path())
+                        .xattr(spec.xattr()).build());
+            } else {
+                commands.add(new MutationCommandBuilder(spec.type(), spec.path(),
+                        shared ? fragment.duplicate().retain() : fragment)
+                        .createIntermediaryPath(spec.createPath())
+                        .xattr(spec.xattr()).build());
+            }
+        }
+        return commands;
+    }
+
+    private Observable<DocumentFragment<Mutation>> doMultiMutate(final String id,
+            Observable<List<MutationCommand>> commands) {
+        return commands
         .flatMap(new Func1<List<MutationCommand>, Observable<MultiMutationResponse>>(){
             @Override
             public Observable<MultiMutationResponse> call(List<MutationCommand> mutationCommands) {
-                return core.send(new SubMultiMutationRequest(docId, bucketName,
+                return core.send(new SubMultiMutationRequest(id, bucketName,
                         expiry, cas, SubMultiMutationDocOptionsBuilder.builder().upsertDocument(upsertDocument).insertDocument(insertDocument),
                         mutationCommands));
             }
@@ -1107,7 +1219,7 @@ public class AsyncMutateInBuilder {
                             results.add(SubdocOperationResult
                                     .createResult(result.path(), result.operation(), result.status(), content));
                         } catch (TranscodingException e) {
-                            LOGGER.error("Couldn't decode multi-lookup " + result.operation() + " for " + docId + "/" + result.path(), e);
+                            LOGGER.error("Couldn't decode multi-lookup " + result.operation() + " for " + id + "/" + result.path(), e);
                             results.add(SubdocOperationResult.createFatal(result.path(), result.operation(), e));
                         } finally {
                             if (result.value() != null) {
@@ -1116,7 +1228,7 @@ public class AsyncMutateInBuilder {
                         }
                     }
                     return Observable.just(
-                            new DocumentFragment<Mutation>(docId, response.cas(), response.mutationToken(), results));
+                            new DocumentFragment<Mutation>(id, response.cas(), response.mutationToken(), results));
                 }
 
                 switch(response.status()) {
@@ -1124,17 +1236,15 @@ public class AsyncMutateInBuilder {
                     int index = response.firstErrorIndex();
                     ResponseStatus errorStatus = response.firstErrorStatus();
                     String errorPath = mutationSpecs.get(index).path();
-                    CouchbaseException errorException = SubdocHelper.commonSubdocErrors(errorStatus, docId, errorPath);
+                    CouchbaseException errorException = SubdocHelper.commonSubdocErrors(errorStatus, id, errorPath);
 
                     return Observable
                             .error(new MultiMutationException(index, errorStatus, mutationSpecs, errorException));
                     default:
-                    return Observable.error(SubdocHelper.commonSubdocErrors(response.status(), docId, "MULTI-MUTATION"));
+                    return Observable.error(SubdocHelper.commonSubdocErrors(response.status(), id, "MULTI-MUTATION"));
                 }
             }
         });
-
-        return subdocObserveMutation(mutations);
     }
 
     //================================
@@ -1551,7 +1661,7 @@ public class AsyncMutateInBuilder {
 
     @Override
     public String toString() {
-        StringBuilder sb = new StringBuilder("mutateIn(").append(docId);
+        StringBuilder sb = new StringBuilder("mutateIn(").append(docIds == null ? docId : docIds);
         if (expiry != 0)
             sb.append(", expiry=").append(expiry);
 
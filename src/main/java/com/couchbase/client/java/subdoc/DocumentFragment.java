@@ -17,7 +17,9 @@
 package com.couchbase.client.java.subdoc;
 
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import com.couchbase.client.core.CouchbaseException;
 import com.couchbase.client.core.annotations.InterfaceAudience;
@@ -50,6 +52,11 @@ public class DocumentFragment<OPERATION> {
 
     private final List<SubdocOperationResult<OPERATION>> resultList;
 
+    /**
+     * Index of the first result for each path, built on first access by path.
+     */
+    private volatile Map<String, Integer> pathIndex;
+
     public DocumentFragment(String id, long cas, MutationToken mutationToken, List<SubdocOperationResult<OPERATION>> resultList) {
         this.id = id;
         this.cas = cas;
@@ -103,15 +110,8 @@ public class DocumentFragment<OPERATION> {
      * @return the content if one could be retrieved and no error occurred.
      */
     public <T> T content(String path, Class<T> targetClass) {
-        if (path == null) {
-            return null;
-        }
-        for (SubdocOperationResult<OPERATION> result : resultList) {
-            if (path.equals(result.path())) {
-                return interpretResult(result);
-            }
-        }
-        return null;
+        SubdocOperationResult<OPERATION> result = resultFor(path);
+        return result == null ? null : this.<T>interpretResult(result);
     }
 
     /**
@@ -182,15 +182,35 @@ public class DocumentFragment<OPERATION> {
      * no error occurred.
      */
     public byte[] rawContent(String path) {
+        SubdocOperationResult<OPERATION> result = resultFor(path);
+        return result == null ? null : interpretResultRaw(result);
+    }
+
+    /**
+     * Finds the first result for the given path.
+     *
+     * @param path the path to look for.
+     * @return the first result for that path, or null if none.
+     */
+    private SubdocOperationResult<OPERATION> resultFor(String path) {
         if (path == null) {
             return null;
         }
-        for (SubdocOperationResult<OPERATION> result : resultList) {
-            if (path.equals(result.path())) {
-                return interpretResultRaw(result);
+        if (resultList.size() == 1) {
+            SubdocOperationResult<OPERATION> single = resultList.get(0);
+            return path.equals(single.path()) ? single : null;
+        }
+
+        Map<String, Integer> index = pathIndex;
+        if (index == null) {
+            index = new HashMap<String, Integer>(resultList.size() * 2);
+            for (int i = resultList.size() - 1; i >= 0; i--) {
+                index.put(resultList.get(i).path(), i);
             }
+            pathIndex = index;
         }
-        return null;
+        Integer position = index.get(path);
+        return position == null ? null : resultList.get(position);
     }
 
     private <T> T interpretResult(SubdocOperationResult<OPERATION> result) {
@@ -207,7 +227,10 @@ public class DocumentFragment<OPERATION> {
     }
 
     private byte[] interpretResultRaw(SubdocOperationResult<OPERATION> result) {
-        if (result.status() == ResponseStatus.FAILURE && result.value() instanceof RuntimeException) {
+        if (!result.isError()) {
+            //avoid decoding a value which is not needed
+            return result.rawValue();
+        } else if (result.status() == ResponseStatus.FAILURE && result.value() instanceof RuntimeException) {
             //case where a fatal error happened while PARSING the response
             throw (RuntimeException) result.value();
         } else if (result.value() instanceof CouchbaseException) {
@@ -228,15 +251,8 @@ public class DocumentFragment<OPERATION> {
      * @return the status of the operation.
      */
     public ResponseStatus status(String path) {
-        if (path == null) {
-            return null;
-        }
-        for (SubdocOperationResult<OPERATION> result : resultList) {
-            if (path.equals(result.path())) {
-                return result.status();
-            }
-        }
-        return null;
+        SubdocOperationResult<OPERATION> result = resultFor(path);
+        return result == null ? null : result.status();
     }
 
     /**
@@ -257,11 +273,15 @@ public class DocumentFragment<OPERATION> {
      * @return true if that path is part of the successful result set, false in any other case.
      */
     public boolean exists(String path) {
-        if (path == null) {
+        SubdocOperationResult<OPERATION> first = resultFor(path);
+        if (first == null) {
             return false;
+        } else if (!first.isError()) {
+            return true;
         }
+        //only look further in the rare case where the same path has been targeted several times
         for (SubdocOperationResult<OPERATION> result : resultList) {
-            if (path.equals(result.path()) && !(result.value() instanceof Exception)) {
+            if (path.equals(result.path()) && !result.isError()) {
                 return true;
             }
         }
@@ -275,7 +295,7 @@ public class DocumentFragment<OPERATION> {
      */
     public boolean exists(int specIndex) {
         return specIndex >= 0 && specIndex < resultList.size()
-                && !(resultList.get(specIndex).value() instanceof Exception);
+                && !resultList.get(specIndex).isError();
     }
 
     @Override
@@ -0,0 +1,236 @@
+/*
+ * Copyright (c) 2017 Couchbase, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.couchbase.client.java.subdoc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.couchbase.client.core.annotations.InterfaceAudience;
+import com.couchbase.client.core.annotations.InterfaceStability;
+import com.couchbase.client.core.message.kv.subdoc.multi.Mutation;
+import com.couchbase.client.deps.com.fasterxml.jackson.core.JsonProcessingException;
+import com.couchbase.client.java.document.json.JsonArray;
+import com.couchbase.client.java.document.json.JsonObject;
+import com.couchbase.client.java.error.TranscodingException;
+import com.couchbase.client.java.transcoder.JacksonTransformers;
+
+/**
+ * The structural difference between two {@link JsonObject JSON objects}, expressed as the sub-document mutations
+ * that turn the original into the modified one.
+ *
+ * Added entries become upserts, removed entries become removes and changed values are replaced, recursing into
+ * nested objects and into arrays that kept their size. An array that only grew at its end becomes a single
+ * append of the new elements, any other array change replaces the whole array.
+ *
+ * @since 2.5.2
+ */
+@InterfaceStability.Experimental
+@InterfaceAudience.Private
+public class JsonDiff {
+
+    /**
+     * The maximum number of mutations the server accepts in a single multi-mutation.
+     */
+    public static final int MAX_SPECS = 16;
+
+    /**
+     * The bytes each mutation adds on the wire on top of its path and fragment.
+     */
+    private static final int SPEC_OVERHEAD = 8;
+
+    private final List<MutationSpec> specs;
+    private final int encodedSize;
+
+    private JsonDiff(List<MutationSpec> specs, int encodedSize) {
+        this.specs = specs;
+        this.encodedSize = encodedSize;
+    }
+
+    /**
+     * Computes the mutations that turn the original object into the modified one.
+     *
+     * @param original the original object, as currently stored.
+     * @param modified the object the original should become.
+     * @return the diff between the two objects.
+     */
+    public static JsonDiff compute(JsonObject original, JsonObject modified) {
+        List<MutationSpec> specs = new ArrayList<MutationSpec>();
+        diffObject("", original, modified, specs);
+
+        int encodedSize = 0;
+        for (MutationSpec spec : specs) {
+            encodedSize += SPEC_OVERHEAD + spec.path().length() + encodedSize(spec.fragment());
+        }
+        return new JsonDiff(Collections.unmodifiableList(specs), encodedSize);
+    }
+
+    /**
+     * @return the mutations of this diff, in order.
+     */
+    public List<MutationSpec> specs() {
+        return specs;
+    }
+
+    /**
+     * @return true if both objects were equal.
+     */
+    public boolean isEmpty() {
+        return specs.isEmpty();
+    }
+
+    /**
+     * @return an estimation of the bytes sent on the wire to apply this diff.
+     */
+    public int encodedSize() {
+        return encodedSize;
+    }
+
+    /**
+     * Checks if this diff can be sent as a single multi-mutation and is worth it compared to the full document.
+     *
+     * @param documentSize the encoded size of the full modified document.
+     * @param maxRatio the maximum ratio of the document size this diff can weigh.
+     * @return true if the diff should be applied rather than replacing the whole document.
+     */
+    public boolean isApplicable(int documentSize, double maxRatio) {
+        return !specs.isEmpty() && specs.size() <= MAX_SPECS && encodedSize <= documentSize * maxRatio;
+    }
+
+    /**
+     * Adds the mutations of this diff to the given builder.
+     *
+     * @param builder the builder to describe the mutations on.
+     * @return the same builder, for chaining.
+     */
+    public AsyncMutateInBuilder applyTo(AsyncMutateInBuilder builder) {
+        for (MutationSpec spec : specs) {
+            switch (spec.type()) {
+                case DICT_UPSERT:
+                    builder.upsert(spec.path(), spec.fragment());
+                    break;
+                case REPLACE:
+                    builder.replace(spec.path(), spec.fragment());
+                    break;
+                case DELETE:
+                    builder.remove(spec.path());
+                    break;
+                case ARRAY_PUSH_LAST:
+                    List<Object> values = new ArrayList<Object>();
+                    for (Object value : (MultiValue<?>) spec.fragment()) {
+                        values.add(value);
+                    }
+                    builder.arrayAppendAll(spec.path(), values, new SubdocOptionsBuilder());
+                    break;
+                default:
+                    throw new IllegalStateException("Unexpected mutation in diff: " + spec);
+            }
+        }
+        return builder;
+    }
+
+    private static void diffObject(String path, JsonObject original, JsonObject modified, List<MutationSpec> specs) {
+        for (String name : original.getNames()) {
+            if (!modified.containsKey(name)) {
+                specs.add(new MutationSpec(Mutation.DELETE, path(path, name), null));
+            }
+        }
+        for (String name : modified.getNames()) {
+            String childPath = path(path, name);
+            Object value = modified.get(name);
+            if (!original.containsKey(name)) {
+                specs.add(new MutationSpec(Mutation.DICT_UPSERT, childPath, value));
+            } else {
+                diffValue(childPath, original.get(name), value, specs);
+            }
+        }
+    }
+
+    private static void diffArray(String path, JsonArray original, JsonArray modified, List<MutationSpec> specs) {
+        if (original.size() == modified.size()) {
+            for (int i = 0; i < original.size(); i++) {
+                diffValue(path + "[" + i + "]", original.get(i), modified.get(i), specs);
+            }
+            return;
+        }
+
+        if (original.size() < modified.size()) {
+            boolean grownAtEnd = true;
+            for (int i = 0; i < original.size() && grownAtEnd; i++) {
+                grownAtEnd = equal(original.get(i), modified.get(i));
+            }
+            if (grownAtEnd) {
+                List<Object> appended = new ArrayList<Object>(modified.size() - original.size());
+                for (int i = original.size(); i < modified.size(); i++) {
+                    appended.add(modified.get(i));
+                }
+                specs.add(new MutationSpec(Mutation.ARRAY_PUSH_LAST, path, new MultiValue<Object>(appended)));
+                return;
+            }
+        }
+        specs.add(new MutationSpec(Mutation.REPLACE, path, modified));
+    }
+
+    private static void diffValue(String path, Object original, Object modified, List<MutationSpec> specs) {
+        if (original instanceof JsonObject && modified instanceof JsonObject) {
+            diffObject(path, (JsonObject) original, (JsonObject) modified, specs);
+        } else if (original instanceof JsonArray && modified instanceof JsonArray) {
+            diffArray(path, (JsonArray) original, (JsonArray) modified, specs);
+        } else if (!equal(original, modified)) {
+            specs.add(new MutationSpec(Mutation.REPLACE, path, modified));
+        }
+    }
+
+    private static boolean equal(Object original, Object modified) {
+        if (original instanceof Number && modified instanceof Number
+                && !(original instanceof Double || original instanceof Float)
+                && !(modified instanceof Double || modified instanceof Float)) {
+            //integers decode as Integer or Long depending on their magnitude
+            return ((Number) original).longValue() == ((Number) modified).longValue();
+        }
+        return original == null ? modified == null : original.equals(modified);
+    }
+
+    /**
+     * Appends a dictionary key to a sub-document path, escaping it with backticks if it contains path syntax.
+     */
+    static String path(String parent, String name) {
+        String key = name;
+        if (name.indexOf('.') >= 0 || name.indexOf('[') >= 0 || name.indexOf(']') >= 0 || name.indexOf('`') >= 0) {
+            key = "`" + name.replace("`", "``") + "`";
+        }
+        return parent.isEmpty() ? key : parent + "." + key;
+    }
+
+    private static int encodedSize(Object fragment) {
+        if (fragment == null) {
+            return 0;
+        }
+        try {
+            if (fragment instanceof MultiValue) {
+                //the values are sent comma separated, without the enclosing brackets
+                int size = -1;
+                for (Object value : (MultiValue<?>) fragment) {
+                    size += 1 + JacksonTransformers.MAPPER.writeValueAsBytes(value).length;
+                }
+                return size;
+            }
+            return JacksonTransformers.MAPPER.writeValueAsBytes(fragment).length;
+        } catch (JsonProcessingException e) {
+            throw new TranscodingException("Could not encode fragment for size estimation", e);
+        }
+    }
+}
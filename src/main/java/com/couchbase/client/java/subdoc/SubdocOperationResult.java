@@ -19,7 +19,12 @@ package com.couchbase.client.java.subdoc;
 import com.couchbase.client.core.CouchbaseException;
 import com.couchbase.client.core.annotations.InterfaceAudience;
 import com.couchbase.client.core.annotations.InterfaceStability;
+import com.couchbase.client.core.logging.CouchbaseLogger;
+import com.couchbase.client.core.logging.CouchbaseLoggerFactory;
 import com.couchbase.client.core.message.ResponseStatus;
+import com.couchbase.client.deps.io.netty.buffer.Unpooled;
+import com.couchbase.client.java.error.TranscodingException;
+import com.couchbase.client.java.transcoder.subdoc.FragmentTranscoder;
 
 /**
  * Internally represent result corresponding to a single {@link LookupSpec} or {@link MutationSpec},
@@ -32,14 +37,25 @@ import com.couchbase.client.core.message.ResponseStatus;
 @InterfaceAudience.Private
 public class SubdocOperationResult<OPERATION> {
 
+    private static final CouchbaseLogger LOGGER = CouchbaseLoggerFactory.getInstance(SubdocOperationResult.class);
+
+    /**
+     * Marks a value which has not been decoded yet.
+     */
+    private static final Object NOT_DECODED = new Object();
+
     private final String path;
     private final OPERATION operation;
 
     private final ResponseStatus status;
 
-    private final Object value;
+    private volatile Object value;
     private final byte[] rawValue;
 
+    private final String id;
+    private final byte[] encodedValue;
+    private final FragmentTranscoder transcoder;
+
     /**
      * Create a new MultiResult with a raw form of the serialized value.
      *
@@ -55,6 +71,24 @@ public class SubdocOperationResult<OPERATION> {
         this.status = status;
         this.value = value;
         this.rawValue = rawValue;
+        this.id = null;
+        this.encodedValue = null;
+        this.transcoder = null;
+    }
+
+    /**
+     * Create a new MultiResult which value is decoded from its serialized form on first access.
+     */
+    private SubdocOperationResult(String id, String path, OPERATION operation, ResponseStatus status,
+        byte[] encodedValue, boolean includeRaw, FragmentTranscoder transcoder) {
+        this.path = path;
+        this.operation = operation;
+        this.status = status;
+        this.value = NOT_DECODED;
+        this.rawValue = includeRaw ? encodedValue : null;
+        this.id = id;
+        this.encodedValue = encodedValue;
+        this.transcoder = transcoder;
     }
 
     /**
@@ -112,6 +146,28 @@ public class SubdocOperationResult<OPERATION> {
         return new SubdocOperationResult<OPERATION>(path, operation, status, value, rawValue);
     }
 
+    /**
+     * Create a {@link SubdocOperationResult} that corresponds to a successful GET, which value is only decoded
+     * (generically, as {@link DocumentFragment#content(String)} does) the first time it is accessed.
+     *
+     * If the decoding fails, the error is logged and the value becomes the {@link TranscodingException}, which
+     * is then thrown by {@link DocumentFragment#content(String)} as for a {@link #isFatal() fatal} result.
+     *
+     * @param id the ID of the enclosing document, for error reporting.
+     * @param path the path looked up.
+     * @param operation the type of operation.
+     * @param status the status of the operation.
+     * @param encodedValue the serialized value, which must not be modified afterwards.
+     * @param includeRaw whether the serialized value should also be exposed through {@link #rawValue()}.
+     * @param transcoder the transcoder to decode the value with.
+     * @return the operation result.
+     */
+    public static <OPERATION> SubdocOperationResult<OPERATION> createLazyResult(String id, String path,
+        OPERATION operation, ResponseStatus status, byte[] encodedValue, boolean includeRaw,
+        FragmentTranscoder transcoder) {
+        return new SubdocOperationResult<OPERATION>(id, path, operation, status, encodedValue, includeRaw, transcoder);
+    }
+
     /**
      * Create a {@link SubdocOperationResult} that correspond to a subdoc-level error, to be thrown by the enclosing
      * {@link DocumentFragment#content(String) DocumentFragment when calling content methods}.
@@ -164,7 +220,35 @@ public class SubdocOperationResult<OPERATION> {
      * @return the value
      */
     public Object value() {
-        return value;
+        Object current = value;
+        if (current == NOT_DECODED) {
+            current = decode();
+            value = current;
+        }
+        return current;
+    }
+
+    private Object decode() {
+        try {
+            return transcoder.decode(Unpooled.wrappedBuffer(encodedValue), Object.class);
+        } catch (TranscodingException e) {
+            TranscodingException error = new TranscodingException("Couldn't decode " + operation + " fragment for "
+                + id + "/" + path, e);
+            LOGGER.error(error.getMessage(), e);
+            return error;
+        }
+    }
+
+    /**
+     * Checks whether the operation failed on the server or its response couldn't be parsed, without decoding the
+     * value. A lazily decoded value comes from a successful operation, so it is never reported as an error, even
+     * once it turned out not to be decodable: whether the path {@link DocumentFragment#exists(String) exists}
+     * doesn't depend on the value being accessed before.
+     *
+     * @return true if the value is an {@link Exception} reporting a failed operation, false otherwise.
+     */
+    boolean isError() {
+        return transcoder == null && value instanceof Exception;
     }
 
     /**
@@ -190,7 +274,7 @@ public class SubdocOperationResult<OPERATION> {
         StringBuilder sb = new StringBuilder();
         sb.append(operation).append('(').append(path).append("){");
         if (status.isSuccess() || !(value instanceof Exception)) {
-            sb.append("value=").append(value);
+            sb.append("value=").append(value());
             if (rawValue != null) {
                 sb.append(", includesRaw");
             }
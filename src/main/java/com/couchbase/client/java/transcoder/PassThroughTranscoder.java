@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2017 Couchbase, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.couchbase.client.java.transcoder;
+
+import com.couchbase.client.core.annotations.InterfaceAudience;
+import com.couchbase.client.core.annotations.InterfaceStability;
+import com.couchbase.client.core.lang.Tuple;
+import com.couchbase.client.core.lang.Tuple2;
+import com.couchbase.client.core.message.ResponseStatus;
+import com.couchbase.client.core.message.kv.MutationToken;
+import com.couchbase.client.deps.io.netty.buffer.ByteBuf;
+import com.couchbase.client.java.document.PassThroughDocument;
+
+/**
+ * A transcoder to encode and decode {@link PassThroughDocument}s, without copying nor inspecting the content.
+ *
+ * Decoding hands the received buffer and flags over to the document, encoding hands the document buffer and
+ * flags over to the request. Documents created through {@link #newDocument(String, int, ByteBuf, long)} have no
+ * way to know the original flags and carry the JSON ones, while the ones returned by mutations keep the flags of
+ * the mutated document.
+ *
+ * @since 2.5.2
+ */
+@InterfaceStability.Experimental
+@InterfaceAudience.Public
+public class PassThroughTranscoder extends AbstractTranscoder<PassThroughDocument, ByteBuf> {
+
+    @Override
+    protected PassThroughDocument doDecode(String id, ByteBuf content, long cas, int expiry, int flags,
+        ResponseStatus status) throws Exception {
+        return PassThroughDocument.create(id, expiry, content, cas, flags);
+    }
+
+    @Override
+    protected Tuple2<ByteBuf, Integer> doEncode(PassThroughDocument document) throws Exception {
+        return Tuple.create(document.content(), document.flags());
+    }
+
+    @Override
+    public PassThroughDocument newDocument(String id, int expiry, ByteBuf content, long cas) {
+        return PassThroughDocument.create(id, expiry, content, cas, TranscoderUtils.JSON_COMPAT_FLAGS);
+    }
+
+    @Override
+    public PassThroughDocument newDocument(String id, int expiry, ByteBuf content, long cas,
+        MutationToken mutationToken) {
+        return PassThroughDocument.create(id, expiry, content, cas, TranscoderUtils.JSON_COMPAT_FLAGS,
+            mutationToken);
+    }
+
+    @Override
+    public Class<PassThroughDocument> documentType() {
+        return PassThroughDocument.class;
+    }
+
+    @Override
+    protected boolean shouldAutoReleaseOnDecode() {
+        return false;
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2017 Couchbase, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.couchbase.client.java.util;
+
+import java.util.List;
+
+import com.couchbase.client.core.annotations.InterfaceAudience;
+import com.couchbase.client.core.annotations.InterfaceStability;
+import com.couchbase.client.java.env.CouchbaseEnvironment;
+import rx.Observable;
+import rx.Scheduler;
+import rx.functions.Action1;
+import rx.functions.Func1;
+
+/**
+ * Decodes the rows of a streamed result in parallel batches, emitting them in their original order.
+ *
+ * Rows are grouped in batches of a fixed size and each full batch is decoded on the scheduler, with a bounded number
+ * of batches being decoded at the same time. Batches are emitted in order as soon as they and all the previous
+ * ones are decoded, and only as fast as they are requested downstream. A result which doesn't fill a single batch,
+ * as well as the trailing partial batch of a larger one, is emitted as-is to be decoded inline by the consumer,
+ * since dispatching it would cost more than decoding it.
+ *
+ * The decoding action is expected to fill a cache of the row, for instance by parsing its lazily decoded value, so
+ * that a failure can be left for the consumer to hit when it accesses the row.
+ *
+ * @since 2.5.2
+ */
+@InterfaceStability.Experimental
+@InterfaceAudience.Private
+public class ParallelDecoder {
+
+    /**
+     * A decoder which leaves all the decoding to the consumer of the rows.
+     */
+    public static final ParallelDecoder INLINE = new ParallelDecoder(null, 1, 0);
+
+    private final Scheduler scheduler;
+    private final int batchSize;
+    private final int parallelism;
+
+    /**
+     * Creates a decoder.
+     *
+     * @param scheduler the scheduler to decode batches on.
+     * @param batchSize the number of rows decoded together.
+     * @param parallelism the maximum number of batches decoded at the same time, 0 to disable parallel decoding.
+     */
+    public ParallelDecoder(Scheduler scheduler, int batchSize, int parallelism) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("The batch size must be at least 1");
+        }
+        this.scheduler = scheduler;
+        this.batchSize = batchSize;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Creates the decoder configured in the environment, decoding on its scheduler.
+     *
+     * @param environment the environment, null to decode inline.
+     * @return the decoder.
+     */
+    public static ParallelDecoder create(CouchbaseEnvironment environment) {
+        if (environment == null || environment.queryDecodeParallelism() < 1) {
+            return INLINE;
+        }
+        return new ParallelDecoder(environment.scheduler(), environment.queryDecodeBatchSize(),
+            environment.queryDecodeParallelism());
+    }
+
+    /**
+     * @return true if this decoder decodes rows in parallel.
+     */
+    public boolean isParallel() {
+        return parallelism > 0;
+    }
+
+    /**
+     * Applies the decoding action to the rows in parallel batches, preserving their order.
+     *
+     * @param rows the rows to decode.
+     * @param decode the decoding action, called once per row of a full batch.
+     * @return the same rows, in the same order.
+     */
+    public <T> Observable<T> decode(Observable<T> rows, final Action1<? super T> decode) {
+        if (!isParallel()) {
+            return rows;
+        }
+        return rows
+            //results are pushed by the network, so they are buffered while the consumer is slower than it
+            .onBackpressureBuffer()
+            .buffer(batchSize)
+            .concatMapEager(new Func1<List<T>, Observable<List<T>>>() {
+                @Override
+                public Observable<List<T>> call(final List<T> batch) {
+                    if (batch.size() < batchSize) {
+                        return Observable.just(batch);
+                    }
+                    return Observable.just(batch)
+                        .observeOn(scheduler)
+                        .map(new Func1<List<T>, List<T>>() {
+                            @Override
+                            public List<T> call(List<T> batch) {
+                                for (T row : batch) {
+                                    decode.call(row);
+                                }
+                                return batch;
+                            }
+                        });
+                }
+            }, parallelism, parallelism)
+            .concatMapIterable(new Func1<List<T>, Iterable<T>>() {
+                @Override
+                public Iterable<T> call(List<T> batch) {
+                    return batch;
+                }
+            });
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2017 Couchbase, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.couchbase.client.java.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.couchbase.client.core.annotations.InterfaceAudience;
+import com.couchbase.client.core.annotations.InterfaceStability;
+import rx.Observable;
+import rx.functions.Action0;
+import rx.functions.Func0;
+import rx.subjects.AsyncSubject;
+
+/**
+ * Collapses concurrent executions sharing the same key into a single in-flight execution.
+ *
+ * The first subscription for a given key subscribes to the source, every subscription arriving while
+ * that source is still in flight is attached to the same outcome instead. As soon as the source
+ * terminates the key is released, so the next subscription triggers a fresh execution.
+ *
+ * The emitted value is shared between all subscribers as-is: it must be immutable and must not hold
+ * any reference counted resources, since there is no way to know how many subscribers will consume it.
+ * Only the last value emitted by the source is kept, which makes this a fit for single-result operations.
+ *
+ * @since 2.5.2
+ */
+@InterfaceStability.Experimental
+@InterfaceAudience.Private
+public class RequestCoalescer<K, V> {
+
+    private final ConcurrentMap<K, Observable<V>> inFlight = new ConcurrentHashMap<K, Observable<V>>();
+
+    /**
+     * Returns an {@link Observable} which, when subscribed, either joins the in-flight execution for
+     * the given key or subscribes to the source and makes it the in-flight execution.
+     *
+     * @param key the key identifying identical executions.
+     * @param source the source to subscribe to if no execution is in flight for the key.
+     * @return an {@link Observable} sharing the outcome of the in-flight execution.
+     */
+    public Observable<V> coalesce(final K key, final Observable<V> source) {
+        return Observable.defer(new Func0<Observable<V>>() {
+            @Override
+            public Observable<V> call() {
+                Observable<V> existing = inFlight.get(key);
+                if (existing != null) {
+                    return existing;
+                }
+
+                final AsyncSubject<V> subject = AsyncSubject.create();
+                existing = inFlight.putIfAbsent(key, subject);
+                if (existing != null) {
+                    return existing;
+                }
+
+                source
+                    .doOnTerminate(new Action0() {
+                        @Override
+                        public void call() {
+                            inFlight.remove(key, subject);
+                        }
+                    })
+                    .subscribe(subject);
+                return subject;
+            }
+        });
+    }
+
+    /**
+     * Returns the number of executions currently in flight.
+     *
+     * @return the number of in-flight executions.
+     */
+    public int inFlight() {
+        return inFlight.size();
+    }
+}
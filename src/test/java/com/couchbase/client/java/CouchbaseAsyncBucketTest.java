@@ -15,19 +15,29 @@
  */
 package com.couchbase.client.java;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 
 import com.couchbase.client.core.CouchbaseCore;
 import com.couchbase.client.core.endpoint.kv.KeyValueStatus;
 import com.couchbase.client.core.message.CouchbaseRequest;
 import com.couchbase.client.core.message.CouchbaseResponse;
 import com.couchbase.client.core.message.ResponseStatus;
+import com.couchbase.client.core.message.kv.GetRequest;
+import com.couchbase.client.core.message.kv.GetResponse;
 import com.couchbase.client.core.message.kv.InsertRequest;
 import com.couchbase.client.core.message.kv.InsertResponse;
 import com.couchbase.client.core.message.kv.RemoveRequest;
@@ -36,12 +46,27 @@ import com.couchbase.client.core.message.kv.ReplaceRequest;
 import com.couchbase.client.core.message.kv.ReplaceResponse;
 import com.couchbase.client.core.message.kv.UpsertRequest;
 import com.couchbase.client.core.message.kv.UpsertResponse;
+import com.couchbase.client.core.message.search.SearchQueryRequest;
+import com.couchbase.client.core.message.search.SearchQueryResponse;
+import com.couchbase.client.deps.io.netty.buffer.ByteBuf;
 import com.couchbase.client.deps.io.netty.buffer.Unpooled;
+import com.couchbase.client.deps.io.netty.util.CharsetUtil;
 import com.couchbase.client.java.document.Document;
 import com.couchbase.client.java.document.JsonDocument;
+import com.couchbase.client.java.document.PassThroughDocument;
+import com.couchbase.client.java.document.json.JsonArray;
+import com.couchbase.client.java.document.json.JsonObject;
+import com.couchbase.client.java.env.CouchbaseEnvironment;
+import com.couchbase.client.java.search.SearchQuery;
+import com.couchbase.client.java.search.facet.SearchFacet;
+import com.couchbase.client.java.search.result.SearchQueryRow;
+import com.couchbase.client.java.transcoder.TranscoderUtils;
 import com.couchbase.client.java.transcoder.Transcoder;
 import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import rx.Observable;
+import rx.observers.TestSubscriber;
 import rx.plugins.RxJavaHooks;
 import rx.subjects.AsyncSubject;
 import rx.subjects.Subject;
@@ -100,6 +125,30 @@ public class CouchbaseAsyncBucketTest {
         verify(core, times(1)).send(any(CouchbaseRequest.class));
     }
 
+    @Test
+    public void shouldKeepFlagsOfPassThroughDocumentsOnMutation() {
+        CouchbaseCore core = mock(CouchbaseCore.class);
+        CouchbaseAsyncBucket bucket = new CouchbaseAsyncBucket(
+                core, null, "bucket", "", Collections.<Transcoder<? extends Document, ?>>emptyList()
+        );
+
+        Subject<CouchbaseResponse, CouchbaseResponse> response = AsyncSubject.create();
+        response.onNext(new UpsertResponse(
+            ResponseStatus.SUCCESS, KeyValueStatus.SUCCESS.code(), 1234, "bucket", Unpooled.EMPTY_BUFFER, null,
+            mock(CouchbaseRequest.class)
+        ));
+        response.onCompleted();
+        when(core.send(any(UpsertRequest.class))).thenReturn(response);
+
+        ByteBuf content = Unpooled.copiedBuffer("value", CharsetUtil.UTF_8);
+        PassThroughDocument upserted = bucket.upsert(
+            PassThroughDocument.create("foo", content, TranscoderUtils.STRING_COMMON_FLAGS)).toBlocking().single();
+
+        assertEquals(TranscoderUtils.STRING_COMMON_FLAGS, upserted.flags());
+        assertEquals(1234, upserted.cas());
+        assertSame(content, upserted.content());
+    }
+
     @Test
     public void shouldNotCallIntoObserveOnReplaceWhenNotNeeded() {
         CouchbaseCore core = mock(CouchbaseCore.class);
@@ -145,4 +194,132 @@ public class CouchbaseAsyncBucketTest {
         verify(core, times(1)).send(any(CouchbaseRequest.class));
     }
 
+    @Test
+    public void shouldCoalesceConcurrentGetsWhenEnabled() {
+        CouchbaseCore core = mock(CouchbaseCore.class);
+        CouchbaseEnvironment environment = mock(CouchbaseEnvironment.class);
+        when(environment.kvGetCoalescingEnabled()).thenReturn(true);
+        CouchbaseAsyncBucket bucket = new CouchbaseAsyncBucket(
+                core, environment, "bucket", "", Collections.<Transcoder<? extends Document, ?>>emptyList()
+        );
+
+        Subject<CouchbaseResponse, CouchbaseResponse> response = AsyncSubject.create();
+        when(core.send(any(GetRequest.class))).thenReturn(response);
+
+        TestSubscriber<JsonDocument> first = TestSubscriber.create();
+        TestSubscriber<JsonDocument> second = TestSubscriber.create();
+        bucket.get("foo").subscribe(first);
+        bucket.get("foo").subscribe(second);
+
+        ByteBuf content = Unpooled.copiedBuffer("{\"hello\":\"world\"}", CharsetUtil.UTF_8);
+        response.onNext(new GetResponse(
+            ResponseStatus.SUCCESS, KeyValueStatus.SUCCESS.code(), 1234, TranscoderUtils.JSON_COMPAT_FLAGS, "bucket",
+            content, mock(CouchbaseRequest.class)
+        ));
+        response.onCompleted();
+
+        verify(core, times(1)).send(any(CouchbaseRequest.class));
+        first.assertValueCount(1);
+        second.assertValueCount(1);
+        JsonDocument firstDoc = first.getOnNextEvents().get(0);
+        JsonDocument secondDoc = second.getOnNextEvents().get(0);
+        assertNotSame(firstDoc.content(), secondDoc.content());
+        assertEquals("world", secondDoc.content().getString("hello"));
+        assertEquals(0, content.refCnt());
+    }
+
+    @Test
+    public void shouldScanSearchHitsPageByPageAfterTheLastSortValues() {
+        CouchbaseCore core = mock(CouchbaseCore.class);
+        CouchbaseEnvironment environment = mock(CouchbaseEnvironment.class);
+        CouchbaseAsyncBucket bucket = new CouchbaseAsyncBucket(
+                core, environment, "bucket", "", Collections.<Transcoder<? extends Document, ?>>emptyList()
+        );
+
+        final List<JsonObject> payloads = new ArrayList<JsonObject>();
+        when(core.send(any(SearchQueryRequest.class))).thenAnswer(new Answer<Observable<CouchbaseResponse>>() {
+            @Override
+            public Observable<CouchbaseResponse> answer(InvocationOnMock invocation) throws Throwable {
+                JsonObject payload = JsonObject.fromJson(((SearchQueryRequest) invocation.getArguments()[0]).payload());
+                payloads.add(payload);
+                JsonArray after = payload.getArray("search_after");
+                List<String> ids = after == null ? Arrays.asList("a", "b")
+                    : after.getString(0).equals("b") ? Arrays.asList("c", "d") : Collections.singletonList("e");
+                JsonArray hits = JsonArray.create();
+                for (String id : ids) {
+                    hits.add(JsonObject.create().put("index", "idx").put("id", id).put("score", 1.0)
+                        .put("sort", JsonArray.from(id)));
+                }
+                JsonObject response = JsonObject.create()
+                    .put("status", JsonObject.create().put("total", 1).put("failed", 0).put("successful", 1))
+                    .put("total_hits", 5).put("took", 10).put("max_score", 1.0).put("hits", hits);
+                return Observable.<CouchbaseResponse>just(new SearchQueryResponse(response.toString(), ResponseStatus.SUCCESS));
+            }
+        });
+
+        SearchQuery query = new SearchQuery("idx", SearchQuery.matchAll()).sort("_id").limit(10).skip(3)
+            .addFacet("type", SearchFacet.term("type", 5));
+        TestSubscriber<SearchQueryRow> subscriber = TestSubscriber.create(1);
+        bucket.searchScan(query, 2).subscribe(subscriber);
+
+        subscriber.assertValueCount(1);
+        //the second page is fetched while the first one is consumed, but not the third
+        assertEquals(2, payloads.size());
+
+        subscriber.requestMore(Long.MAX_VALUE);
+        subscriber.assertCompleted();
+        List<String> ids = new ArrayList<String>();
+        for (SearchQueryRow row : subscriber.getOnNextEvents()) {
+            ids.add(row.id());
+        }
+        assertEquals(Arrays.asList("a", "b", "c", "d", "e"), ids);
+        assertEquals(3, payloads.size());
+        assertEquals(2, (int) payloads.get(0).getInt("size"));
+        assertEquals(JsonArray.from("_id"), payloads.get(0).getArray("sort"));
+        assertEquals(JsonArray.from("b"), payloads.get(1).getArray("search_after"));
+        assertEquals(JsonArray.from("d"), payloads.get(2).getArray("search_after"));
+        assertNull(payloads.get(0).get("from"));
+        assertNull(payloads.get(0).get("facets"));
+
+        //the scan works on its own copy of the query
+        JsonObject exported = query.export();
+        assertEquals(JsonArray.from("_id"), exported.getArray("sort"));
+        assertEquals(10, (int) exported.getInt("size"));
+        assertEquals(3, (int) exported.getInt("from"));
+        assertNull(exported.get("search_after"));
+        assertNotNull(exported.get("facets"));
+    }
+
+    @Test
+    public void shouldNotChangeTheScannedQuery() {
+        CouchbaseCore core = mock(CouchbaseCore.class);
+        CouchbaseEnvironment environment = mock(CouchbaseEnvironment.class);
+        when(environment.searchTimeout()).thenReturn(75000L);
+        CouchbaseAsyncBucket bucket = new CouchbaseAsyncBucket(
+                core, environment, "bucket", "", Collections.<Transcoder<? extends Document, ?>>emptyList()
+        );
+
+        final List<JsonObject> payloads = new ArrayList<JsonObject>();
+        when(core.send(any(SearchQueryRequest.class))).thenAnswer(new Answer<Observable<CouchbaseResponse>>() {
+            @Override
+            public Observable<CouchbaseResponse> answer(InvocationOnMock invocation) throws Throwable {
+                payloads.add(JsonObject.fromJson(((SearchQueryRequest) invocation.getArguments()[0]).payload()));
+                JsonObject response = JsonObject.create()
+                    .put("status", JsonObject.create().put("total", 1).put("failed", 0).put("successful", 1))
+                    .put("total_hits", 0).put("took", 10).put("max_score", 0.0).put("hits", JsonArray.empty());
+                return Observable.<CouchbaseResponse>just(new SearchQueryResponse(response.toString(), ResponseStatus.SUCCESS));
+            }
+        });
+
+        SearchQuery query = new SearchQuery("idx", SearchQuery.matchAll());
+        String before = query.export().toString();
+        bucket.searchScan(query, 2).toBlocking().subscribe();
+        bucket.searchScan(query, 2).toBlocking().subscribe();
+
+        assertEquals(before, query.export().toString());
+        assertEquals(2, payloads.size());
+        assertEquals(JsonArray.from("-_score", "_id"), payloads.get(1).getArray("sort"));
+        assertEquals(75000L, (long) payloads.get(1).getObject("ctl").getLong("timeout"));
+    }
+
 }
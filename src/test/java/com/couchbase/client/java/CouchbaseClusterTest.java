@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2017 Couchbase, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.couchbase.client.java;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.couchbase.client.core.ClusterFacade;
+import com.couchbase.client.core.CouchbaseException;
+import com.couchbase.client.core.message.CouchbaseRequest;
+import com.couchbase.client.core.message.ResponseStatus;
+import com.couchbase.client.core.message.cluster.OpenBucketRequest;
+import com.couchbase.client.core.message.cluster.OpenBucketResponse;
+import com.couchbase.client.core.utils.ConnectionString;
+import com.couchbase.client.java.env.CouchbaseEnvironment;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import rx.Observable;
+import rx.observers.TestSubscriber;
+import rx.subjects.AsyncSubject;
+
+/**
+ * Verifies the opening of several buckets at once through the {@link CouchbaseAsyncCluster} and the
+ * {@link CouchbaseCluster}.
+ */
+public class CouchbaseClusterTest {
+
+    private static final ConnectionString CONNECTION_STRING = ConnectionString.create("couchbase://127.0.0.1");
+
+    private ClusterFacade core;
+    private CouchbaseEnvironment environment;
+    private Map<String, Observable<OpenBucketResponse>> responses;
+
+    @Before
+    public void setup() {
+        core = mock(ClusterFacade.class);
+        environment = mock(CouchbaseEnvironment.class);
+        responses = new HashMap<String, Observable<OpenBucketResponse>>();
+        when(core.send(any(CouchbaseRequest.class))).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                return responses.get(((OpenBucketRequest) invocation.getArguments()[0]).bucket());
+            }
+        });
+    }
+
+    private static Observable<OpenBucketResponse> response(ResponseStatus status) {
+        return Observable.just(new OpenBucketResponse(status));
+    }
+
+    @Test
+    public void shouldOpenBucketsEagerlyAndEmitThemInOrder() {
+        AsyncSubject<OpenBucketResponse> first = AsyncSubject.create();
+        AsyncSubject<OpenBucketResponse> second = AsyncSubject.create();
+        AsyncSubject<OpenBucketResponse> third = AsyncSubject.create();
+        responses.put("first", first);
+        responses.put("second", second);
+        responses.put("third", third);
+        AsyncCluster cluster = new CouchbaseAsyncCluster(core, environment, CONNECTION_STRING, true);
+
+        TestSubscriber<AsyncBucket> subscriber = new TestSubscriber<AsyncBucket>();
+        cluster.openBuckets(Arrays.asList("first", "second", "third")).subscribe(subscriber);
+        verify(core, times(3)).send(any(OpenBucketRequest.class));
+
+        third.onNext(new OpenBucketResponse(ResponseStatus.SUCCESS));
+        third.onCompleted();
+        second.onNext(new OpenBucketResponse(ResponseStatus.SUCCESS));
+        second.onCompleted();
+        subscriber.assertNoValues();
+
+        first.onNext(new OpenBucketResponse(ResponseStatus.SUCCESS));
+        first.onCompleted();
+        subscriber.assertCompleted();
+        List<AsyncBucket> buckets = subscriber.getOnNextEvents();
+        assertEquals(3, buckets.size());
+        assertEquals("first", buckets.get(0).name());
+        assertEquals("second", buckets.get(1).name());
+        assertEquals("third", buckets.get(2).name());
+    }
+
+    @Test
+    public void shouldPropagateFailureToOpenOneOfTheBuckets() {
+        responses.put("first", response(ResponseStatus.SUCCESS));
+        responses.put("second", response(ResponseStatus.FAILURE));
+        responses.put("third", response(ResponseStatus.SUCCESS));
+        AsyncCluster cluster = new CouchbaseAsyncCluster(core, environment, CONNECTION_STRING, true);
+
+        TestSubscriber<AsyncBucket> subscriber = new TestSubscriber<AsyncBucket>();
+        cluster.openBuckets(Arrays.asList("first", "second", "third")).subscribe(subscriber);
+        subscriber.assertError(CouchbaseException.class);
+    }
+
+    @Test
+    public void shouldBlockForAllBucketsInOrder() {
+        responses.put("first", response(ResponseStatus.SUCCESS).delay(50, TimeUnit.MILLISECONDS));
+        responses.put("second", response(ResponseStatus.SUCCESS));
+        Cluster cluster = new CouchbaseCluster(new CouchbaseAsyncCluster(core, environment, CONNECTION_STRING, true),
+            environment, CONNECTION_STRING);
+
+        List<Bucket> buckets = cluster.openBuckets(Arrays.asList("first", "second"), 5, TimeUnit.SECONDS);
+        assertEquals(2, buckets.size());
+        assertEquals("first", buckets.get(0).name());
+        assertEquals("second", buckets.get(1).name());
+        verify(core, times(2)).send(any(OpenBucketRequest.class));
+    }
+
+    @Test
+    public void shouldThrowWhenBlockingForBucketFailingToOpen() {
+        responses.put("first", response(ResponseStatus.SUCCESS));
+        responses.put("second", response(ResponseStatus.FAILURE));
+        Cluster cluster = new CouchbaseCluster(new CouchbaseAsyncCluster(core, environment, CONNECTION_STRING, true),
+            environment, CONNECTION_STRING);
+
+        try {
+            cluster.openBuckets(Arrays.asList("first", "second"), 5, TimeUnit.SECONDS);
+            fail();
+        } catch (CouchbaseException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2017 Couchbase, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.couchbase.client.java.admission;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.couchbase.client.core.ClusterFacade;
+import com.couchbase.client.core.message.CouchbaseRequest;
+import com.couchbase.client.core.message.CouchbaseResponse;
+import com.couchbase.client.core.message.kv.GetRequest;
+import com.couchbase.client.core.message.query.GenericQueryRequest;
+import com.couchbase.client.core.service.ServiceType;
+import com.couchbase.client.java.CouchbaseAsyncBucket;
+import com.couchbase.client.java.document.Document;
+import com.couchbase.client.java.env.CouchbaseEnvironment;
+import com.couchbase.client.java.metrics.OperationMetrics;
+import com.couchbase.client.java.query.N1qlQuery;
+import com.couchbase.client.java.transcoder.Transcoder;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import rx.Observable;
+import rx.schedulers.Schedulers;
+
+/**
+ * Verifies which requests of a bucket go through its {@link AdmissionController}.
+ */
+public class AdmissionControllerTest {
+
+    private ClusterFacade core;
+    private CouchbaseEnvironment environment;
+
+    @Before
+    public void setup() {
+        core = mock(ClusterFacade.class);
+        when(core.send(any(CouchbaseRequest.class))).thenReturn(Observable.<CouchbaseResponse>never());
+        environment = mock(CouchbaseEnvironment.class);
+        when(environment.admissionControlEnabled()).thenReturn(true);
+        when(environment.admissionMaxConcurrency()).thenReturn(4);
+        when(environment.admissionQueueSize()).thenReturn(10);
+        when(environment.admissionWaitTimeout()).thenReturn(1000L);
+        when(environment.scheduler()).thenReturn(Schedulers.immediate());
+    }
+
+    private CouchbaseAsyncBucket bucket(String name) {
+        return new CouchbaseAsyncBucket(core, environment, name, "", "",
+            Collections.<Transcoder<? extends Document, ?>>emptyList());
+    }
+
+    @Test
+    public void shouldAdmitQueriesThroughQueryLimiter() {
+        CouchbaseAsyncBucket bucket = bucket("admitted");
+        try {
+            bucket.query(N1qlQuery.simple("SELECT 1")).subscribe();
+
+            ArgumentCaptor<CouchbaseRequest> sent = ArgumentCaptor.forClass(CouchbaseRequest.class);
+            verify(core, atLeastOnce()).send(sent.capture());
+            assertTrue(sent.getValue() instanceof GenericQueryRequest);
+            assertEquals(1, sent.getAllValues().size());
+            AdmissionLimiter limiter = bucket.admissionController().limiter(ServiceType.QUERY);
+            assertEquals(1, limiter.getAdmitted());
+            assertEquals(1, limiter.getInFlight());
+            assertEquals(0, bucket.admissionController().limiter(ServiceType.BINARY).getAdmitted());
+        } finally {
+            bucket.admissionController().unregisterMBeans();
+        }
+    }
+
+    @Test
+    public void shouldSendKeyValueRequestsOnce() {
+        CouchbaseAsyncBucket bucket = bucket("once");
+        try {
+            bucket.get("id").subscribe();
+
+            ArgumentCaptor<CouchbaseRequest> sent = ArgumentCaptor.forClass(CouchbaseRequest.class);
+            verify(core, atLeastOnce()).send(sent.capture());
+            assertEquals(1, sent.getAllValues().size());
+            assertTrue(sent.getValue() instanceof GetRequest);
+            assertEquals(1, bucket.admissionController().limiter(ServiceType.BINARY).getAdmitted());
+        } finally {
+            bucket.admissionController().unregisterMBeans();
+        }
+    }
+
+    @Test
+    public void shouldRegisterMBeansOfSameBucketOpenedTwice() throws Exception {
+        CouchbaseAsyncBucket first = bucket("twice");
+        CouchbaseAsyncBucket second = bucket("twice");
+        try {
+            assertNotEquals(first.admissionController().instance(), second.admissionController().instance());
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName pattern = new ObjectName(OperationMetrics.JMX_DOMAIN
+                + ":type=AdmissionControl,bucket=\"twice\",service=n1ql,*");
+            assertEquals(2, server.queryNames(pattern, null).size());
+        } finally {
+            first.admissionController().unregisterMBeans();
+            second.admissionController().unregisterMBeans();
+        }
+    }
+}
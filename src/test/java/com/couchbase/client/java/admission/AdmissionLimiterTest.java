@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2017 Couchbase, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.couchbase.client.java.admission;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.TimeUnit;
+
+import com.couchbase.client.core.BackpressureException;
+import org.junit.Test;
+import rx.observers.TestSubscriber;
+import rx.schedulers.TestScheduler;
+
+/**
+ * Verifies the admission, queueing and limit adaptation of the {@link AdmissionLimiter}.
+ */
+public class AdmissionLimiterTest {
+
+    private final TestScheduler scheduler = new TestScheduler();
+
+    private static AdmissionLimiter.Permit admitted(TestSubscriber<AdmissionLimiter.Permit> subscriber) {
+        subscriber.assertValueCount(1);
+        subscriber.assertCompleted();
+        return subscriber.getOnNextEvents().get(0);
+    }
+
+    @Test
+    public void shouldQueueOverTheLimitAndAdmitOnRelease() {
+        AdmissionLimiter limiter = new AdmissionLimiter(2, 0, 10, 1, TimeUnit.SECONDS, scheduler);
+
+        TestSubscriber<AdmissionLimiter.Permit> first = TestSubscriber.create();
+        TestSubscriber<AdmissionLimiter.Permit> second = TestSubscriber.create();
+        TestSubscriber<AdmissionLimiter.Permit> third = TestSubscriber.create();
+        limiter.acquire().subscribe(first);
+        limiter.acquire().subscribe(second);
+        limiter.acquire().subscribe(third);
+
+        admitted(first);
+        admitted(second);
+        third.assertNoValues();
+        third.assertNoTerminalEvent();
+        assertEquals(2, limiter.getInFlight());
+        assertEquals(1, limiter.getQueued());
+
+        admitted(first).release(false);
+        admitted(third);
+        assertEquals(2, limiter.getInFlight());
+        assertEquals(0, limiter.getQueued());
+        assertEquals(3, limiter.getAdmitted());
+
+        scheduler.advanceTimeBy(5, TimeUnit.SECONDS);
+        assertEquals(0, limiter.getTimedOut());
+    }
+
+    @Test
+    public void shouldRejectWhenTheQueueIsFull() {
+        AdmissionLimiter limiter = new AdmissionLimiter(1, 0, 1, 1, TimeUnit.SECONDS, scheduler);
+        limiter.acquire().subscribe(TestSubscriber.<AdmissionLimiter.Permit>create());
+        limiter.acquire().subscribe(TestSubscriber.<AdmissionLimiter.Permit>create());
+
+        TestSubscriber<AdmissionLimiter.Permit> rejected = TestSubscriber.create();
+        limiter.acquire().subscribe(rejected);
+
+        rejected.assertError(BackpressureException.class);
+        assertEquals(1, limiter.getRejected());
+    }
+
+    @Test
+    public void shouldFailAfterTheWaitTimeout() {
+        AdmissionLimiter limiter = new AdmissionLimiter(1, 0, 10, 100, TimeUnit.MILLISECONDS, scheduler);
+        TestSubscriber<AdmissionLimiter.Permit> first = TestSubscriber.create();
+        TestSubscriber<AdmissionLimiter.Permit> waiting = TestSubscriber.create();
+        limiter.acquire().subscribe(first);
+        limiter.acquire().subscribe(waiting);
+
+        scheduler.advanceTimeBy(99, TimeUnit.MILLISECONDS);
+        waiting.assertNoTerminalEvent();
+        scheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+        waiting.assertError(BackpressureException.class);
+        assertEquals(1, limiter.getTimedOut());
+        assertEquals(0, limiter.getQueued());
+
+        admitted(first).release(false);
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    public void shouldGiveUpThePlaceInTheQueueOnUnsubscribe() {
+        AdmissionLimiter limiter = new AdmissionLimiter(1, 0, 10, 1, TimeUnit.SECONDS, scheduler);
+        TestSubscriber<AdmissionLimiter.Permit> first = TestSubscriber.create();
+        TestSubscriber<AdmissionLimiter.Permit> waiting = TestSubscriber.create();
+        limiter.acquire().subscribe(first);
+        limiter.acquire().subscribe(waiting);
+
+        waiting.unsubscribe();
+        assertEquals(0, limiter.getQueued());
+
+        admitted(first).release(false);
+        waiting.assertNoValues();
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    public void shouldBackOffOncePerGenerationAndRecoverAdditively() {
+        AdmissionLimiter limiter = new AdmissionLimiter(100, 0, 10, 1, TimeUnit.SECONDS, scheduler);
+        TestSubscriber<AdmissionLimiter.Permit> first = TestSubscriber.create();
+        TestSubscriber<AdmissionLimiter.Permit> second = TestSubscriber.create();
+        limiter.acquire().subscribe(first);
+        limiter.acquire().subscribe(second);
+
+        //both were admitted before the decrease, only the first overload counts
+        admitted(first).release(true);
+        admitted(second).release(true);
+        assertEquals(90, limiter.getLimit());
+
+        for (int i = 0; i < 91; i++) {
+            TestSubscriber<AdmissionLimiter.Permit> subscriber = TestSubscriber.create();
+            limiter.acquire().subscribe(subscriber);
+            admitted(subscriber).release(false);
+        }
+        assertEquals(91, limiter.getLimit());
+    }
+
+    @Test
+    public void shouldBackOffOnSlowCompletions() throws Exception {
+        AdmissionLimiter limiter = new AdmissionLimiter(10, 1, 10, 1, TimeUnit.MILLISECONDS, scheduler);
+        TestSubscriber<AdmissionLimiter.Permit> subscriber = TestSubscriber.create();
+        limiter.acquire().subscribe(subscriber);
+
+        Thread.sleep(5);
+        admitted(subscriber).release(false);
+        assertEquals(9, limiter.getLimit());
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2017 Couchbase, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.couchbase.client.java.bucket;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.couchbase.client.core.message.CouchbaseRequest;
+import com.couchbase.client.core.message.query.GenericQueryRequest;
+import com.couchbase.client.java.document.json.JsonArray;
+import com.couchbase.client.java.document.json.JsonObject;
+import com.couchbase.client.java.query.util.IndexInfo;
+import com.couchbase.client.java.simulator.SimulatedClusterFacade;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import rx.observers.TestSubscriber;
+
+/**
+ * Verifies the build of deferred indexes in waves against the canned N1QL responses of the
+ * {@link SimulatedClusterFacade}.
+ */
+public class DefaultAsyncBucketManagerTest {
+
+    private static final String LIST_INDEXES = "SELECT idx.* FROM system:indexes AS idx "
+        + "WHERE keyspace_id = \"default\" AND `using` = \"gsi\" ORDER BY is_primary DESC, name ASC";
+
+    private static JsonObject index(String name, String state) {
+        return JsonObject.create()
+            .put("name", name)
+            .put("state", state)
+            .put("keyspace_id", SimulatedClusterFacade.DEFAULT_BUCKET)
+            .put("namespace_id", "default")
+            .put("index_key", JsonArray.from("`" + name + "`"))
+            .put("is_primary", false)
+            .put("using", "gsi");
+    }
+
+    @Test
+    public void shouldBuildNextWavesWhenWatchTimesOut() {
+        SimulatedClusterFacade core = spy(SimulatedClusterFacade.create());
+        core.cannedQuery(LIST_INDEXES, index("a", "deferred"), index("b", "deferred"), index("c", "deferred"));
+        DefaultAsyncBucketManager manager = DefaultAsyncBucketManager.create(SimulatedClusterFacade.DEFAULT_BUCKET,
+            "", core);
+
+        TestSubscriber<IndexInfo> subscriber = new TestSubscriber<IndexInfo>();
+        manager.buildN1qlDeferredIndexes(2, 100, TimeUnit.MILLISECONDS).subscribe(subscriber);
+        subscriber.awaitTerminalEvent(5, TimeUnit.SECONDS);
+
+        subscriber.assertNoErrors();
+        subscriber.assertCompleted();
+        List<String> watched = new ArrayList<String>();
+        for (IndexInfo index : subscriber.getOnNextEvents()) {
+            watched.add(index.name());
+        }
+        assertEquals(3, watched.size());
+        assertEquals("c", watched.get(2));
+
+        ArgumentCaptor<CouchbaseRequest> requests = ArgumentCaptor.forClass(CouchbaseRequest.class);
+        verify(core, atLeastOnce()).send(requests.capture());
+        List<String> builds = new ArrayList<String>();
+        for (CouchbaseRequest request : requests.getAllValues()) {
+            if (request instanceof GenericQueryRequest
+                && ((GenericQueryRequest) request).query().contains("BUILD INDEX")) {
+                builds.add(((GenericQueryRequest) request).query());
+            }
+        }
+        assertEquals(2, builds.size());
+        assertEquals(true, builds.get(1).contains("`c`"));
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2017 Couchbase, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.couchbase.client.java.datastructures;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+
+import com.couchbase.client.core.message.CouchbaseRequest;
+import com.couchbase.client.core.message.kv.GetRequest;
+import com.couchbase.client.core.message.kv.subdoc.simple.SubExistRequest;
+import com.couchbase.client.java.AsyncBucket;
+import com.couchbase.client.java.Bucket;
+import com.couchbase.client.java.CouchbaseAsyncBucket;
+import com.couchbase.client.java.datastructures.collections.CouchbaseArraySet;
+import com.couchbase.client.java.document.Document;
+import com.couchbase.client.java.document.JsonArrayDocument;
+import com.couchbase.client.java.document.json.JsonArray;
+import com.couchbase.client.java.env.CouchbaseEnvironment;
+import com.couchbase.client.java.simulator.SimulatedClusterFacade;
+import com.couchbase.client.java.transcoder.Transcoder;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+/**
+ * Verifies the behavior of the {@link ArraySetIndex}, and how sets reuse it between calls.
+ */
+public class ArraySetIndexTest {
+
+    @Test
+    public void shouldIndexElementsOfTheDocument() {
+        JsonArrayDocument document = JsonArrayDocument.create("set", 0, JsonArray.from("a", 1, true, "a"), 42L);
+        ArraySetIndex index = ArraySetIndex.create(document);
+
+        assertEquals(42L, index.cas());
+        assertEquals(4, index.size());
+        assertTrue(index.contains("a"));
+        assertTrue(index.contains(1));
+        assertFalse(index.contains("b"));
+        assertFalse(index.contains(1L));
+        assertEquals(0, index.indexOf("a"));
+        assertEquals(2, index.indexOf(true));
+        assertEquals(-1, index.indexOf("b"));
+    }
+
+    @Test
+    public void shouldDeriveIndexesForLocalMutations() {
+        JsonArrayDocument document = JsonArrayDocument.create("set", 0, JsonArray.from("a", "b", "c"), 1L);
+        ArraySetIndex index = ArraySetIndex.create(document);
+
+        ArraySetIndex appended = index.withAppended("d", 2L);
+        assertEquals(2L, appended.cas());
+        assertEquals(3, appended.indexOf("d"));
+        assertFalse(index.contains("d"));
+
+        ArraySetIndex removed = appended.withRemoved(1, 3L);
+        assertEquals(3L, removed.cas());
+        assertFalse(removed.contains("b"));
+        assertEquals(1, removed.indexOf("c"));
+        assertEquals(2, removed.indexOf("d"));
+        assertEquals(3, removed.size());
+    }
+
+    @Test
+    public void shouldOnlyProbeCasOfCachedIndex() {
+        SimulatedClusterFacade core = spy(SimulatedClusterFacade.create());
+        AsyncBucket bucket = new CouchbaseAsyncBucket(core, mock(CouchbaseEnvironment.class),
+            SimulatedClusterFacade.DEFAULT_BUCKET, "", Collections.<Transcoder<? extends Document, ?>>emptyList());
+        bucket.upsert(JsonArrayDocument.create("set", JsonArray.from("a", "b"))).toBlocking().single();
+
+        assertTrue(bucket.setContains("set", "a").toBlocking().single());
+        assertEquals(1, sent(core, GetRequest.class));
+        assertEquals(0, sent(core, SubExistRequest.class));
+
+        assertFalse(bucket.setContains("set", "c").toBlocking().single());
+        assertEquals(1, sent(core, GetRequest.class));
+        assertEquals(1, sent(core, SubExistRequest.class));
+
+        bucket.upsert(JsonArrayDocument.create("set", JsonArray.from("a", "b", "c"))).toBlocking().single();
+        assertTrue(bucket.setContains("set", "c").toBlocking().single());
+        assertEquals(2, sent(core, GetRequest.class));
+        assertEquals(2, sent(core, SubExistRequest.class));
+    }
+
+    @Test
+    public void shouldCompareThroughOverriddenSafeEquals() {
+        Bucket bucket = mock(Bucket.class);
+        when(bucket.get("set", JsonArrayDocument.class))
+            .thenReturn(JsonArrayDocument.create("set", 0, JsonArray.from("a", "b"), 1L));
+
+        assertTrue(caseInsensitiveSet(bucket).contains("A"));
+        assertFalse(caseInsensitiveSet(bucket).contains("c"));
+        assertTrue(new CouchbaseArraySet<String>("set", bucket).contains("a"));
+        assertFalse(new CouchbaseArraySet<String>("set", bucket).contains("A"));
+    }
+
+    private static CouchbaseArraySet<String> caseInsensitiveSet(Bucket bucket) {
+        return new CouchbaseArraySet<String>("set", bucket) {
+            @Override
+            protected boolean useHashIndex() {
+                return false;
+            }
+
+            @Override
+            protected boolean safeEquals(Object expected, Object tested) {
+                return ((String) expected).equalsIgnoreCase((String) tested);
+            }
+        };
+    }
+
+    private static int sent(SimulatedClusterFacade core, Class<? extends CouchbaseRequest> type) {
+        ArgumentCaptor<CouchbaseRequest> requests = ArgumentCaptor.forClass(CouchbaseRequest.class);
+        verify(core, atLeast(0)).send(requests.capture());
+        int count = 0;
+        for (CouchbaseRequest request : requests.getAllValues()) {
+            if (type.isInstance(request)) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
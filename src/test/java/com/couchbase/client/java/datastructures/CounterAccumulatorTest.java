@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2017 Couchbase, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.couchbase.client.java.datastructures;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.couchbase.client.core.CouchbaseException;
+import com.couchbase.client.java.AsyncBucket;
+import com.couchbase.client.java.document.JsonLongDocument;
+import com.couchbase.client.java.error.CASMismatchException;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import rx.Observable;
+import rx.schedulers.TestScheduler;
+
+/**
+ * Verifies the write combining of {@link CounterAccumulator} and the layout of {@link ShardedCounter}.
+ */
+public class CounterAccumulatorTest {
+
+    private AsyncBucket bucket;
+    private TestScheduler scheduler;
+
+    @Before
+    public void setup() {
+        bucket = mock(AsyncBucket.class);
+        scheduler = new TestScheduler();
+        when(bucket.counter(anyString(), anyLong(), anyLong()))
+            .thenReturn(Observable.just(JsonLongDocument.create("k", 0L)));
+    }
+
+    @Test
+    public void shouldCombineConcurrentIncrementsIntoOneWrite() throws Exception {
+        final CounterAccumulator accumulator = new CounterAccumulator(new ShardedCounter(bucket, 1),
+            1, 1, TimeUnit.HOURS, scheduler);
+        final CountDownLatch done = new CountDownLatch(4);
+        for (int t = 0; t < 4; t++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 1000; i++) {
+                        accumulator.add("k", 1);
+                    }
+                    done.countDown();
+                }
+            }).start();
+        }
+        done.await();
+        accumulator.add("other", -3);
+
+        assertEquals(4000, accumulator.pending("k"));
+        assertEquals(2, accumulator.flush(1, TimeUnit.SECONDS));
+        verify(bucket).counter("k", 4000, 4000);
+        verify(bucket).counter("other", -3, 0);
+        assertEquals(0, accumulator.pending("k"));
+
+        //nothing pending anymore, so nothing is written
+        assertEquals(0, accumulator.flush(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void shouldFlushPeriodically() {
+        CounterAccumulator accumulator = new CounterAccumulator(new ShardedCounter(bucket, 1),
+            10, 1, TimeUnit.SECONDS, scheduler);
+        accumulator.add("k", 5);
+
+        scheduler.advanceTimeBy(9, TimeUnit.SECONDS);
+        verify(bucket, never()).counter(anyString(), anyLong(), anyLong());
+        scheduler.advanceTimeBy(1, TimeUnit.SECONDS);
+        verify(bucket).counter("k", 5, 5);
+
+        accumulator.close().toBlocking().single();
+        accumulator.add("k", 1);
+        scheduler.advanceTimeBy(1, TimeUnit.MINUTES);
+        verify(bucket, times(1)).counter(anyString(), anyLong(), anyLong());
+    }
+
+    @Test
+    public void shouldKeepDeltasWhoseWriteFailed() {
+        when(bucket.counter(anyString(), anyLong(), anyLong()))
+            .thenReturn(Observable.<JsonLongDocument>error(new CouchbaseException("fail")))
+            .thenReturn(Observable.just(JsonLongDocument.create("k", 0L)));
+        CounterAccumulator accumulator = new CounterAccumulator(new ShardedCounter(bucket, 1),
+            1, 1, TimeUnit.HOURS, scheduler);
+        accumulator.add("k", 7);
+
+        assertEquals(0, accumulator.flush(1, TimeUnit.SECONDS));
+        assertEquals(7, accumulator.pending("k"));
+        accumulator.add("k", 1);
+        assertEquals(1, accumulator.flush(1, TimeUnit.SECONDS));
+        verify(bucket).counter("k", 8, 8);
+    }
+
+    @Test
+    public void shouldFlushExactReadsAndSumShards() {
+        when(bucket.get(anyString(), eq(JsonLongDocument.class))).thenReturn(Observable.<JsonLongDocument>empty());
+        when(bucket.get("k::0", JsonLongDocument.class)).thenReturn(Observable.just(JsonLongDocument.create("k::0", 10L)));
+        when(bucket.get("k::2", JsonLongDocument.class)).thenReturn(Observable.just(JsonLongDocument.create("k::2", 5L)));
+        CounterAccumulator accumulator = new CounterAccumulator(new ShardedCounter(bucket, 3),
+            1, 1, TimeUnit.HOURS, scheduler);
+
+        accumulator.add("k", 2);
+        assertEquals(17L, (long) accumulator.get("k").toBlocking().single());
+        assertEquals(15L, (long) accumulator.getExact("k").toBlocking().single());
+        verify(bucket).counter("k::0", 2, 2);
+
+        accumulator.add("k", 1);
+        accumulator.flush(1, TimeUnit.SECONDS);
+        verify(bucket).counter("k::1", 1, 1);
+    }
+
+    @Test
+    public void shouldFlushExactReadsOnlyWhenSubscribed() {
+        when(bucket.get(anyString(), eq(JsonLongDocument.class))).thenReturn(Observable.<JsonLongDocument>empty());
+        CounterAccumulator accumulator = new CounterAccumulator(new ShardedCounter(bucket, 1),
+            1, 1, TimeUnit.HOURS, scheduler);
+
+        accumulator.add("k", 2);
+        Observable<Long> exact = accumulator.getExact("k");
+        assertEquals(2, accumulator.pending("k"));
+        verify(bucket, never()).counter(anyString(), anyLong(), anyLong());
+
+        accumulator.add("k", 3);
+        exact.toBlocking().single();
+        verify(bucket).counter("k", 5, 5);
+        assertEquals(0, accumulator.pending("k"));
+    }
+
+    @Test
+    public void shouldSpreadDecrementOverShards() {
+        final Map<String, JsonLongDocument> shards = new HashMap<String, JsonLongDocument>();
+        final AtomicLong cas = new AtomicLong();
+        final AtomicBoolean conflict = new AtomicBoolean();
+        for (int shard = 0; shard < 4; shard++) {
+            shards.put("k::" + shard, JsonLongDocument.create("k::" + shard, shard < 2 ? 3L : 2L, cas.incrementAndGet()));
+        }
+        when(bucket.get(anyString(), eq(JsonLongDocument.class))).thenAnswer(new Answer<Observable<JsonLongDocument>>() {
+            @Override
+            public Observable<JsonLongDocument> answer(InvocationOnMock invocation) {
+                JsonLongDocument shard = shards.get(invocation.getArguments()[0]);
+                return shard == null ? Observable.<JsonLongDocument>empty() : Observable.just(shard);
+            }
+        });
+        when(bucket.replace(any(JsonLongDocument.class))).thenAnswer(new Answer<Observable<JsonLongDocument>>() {
+            @Override
+            public Observable<JsonLongDocument> answer(InvocationOnMock invocation) {
+                JsonLongDocument document = (JsonLongDocument) invocation.getArguments()[0];
+                JsonLongDocument current = shards.get(document.id());
+                if (conflict.compareAndSet(true, false)) {
+                    //a concurrent increment of the shard
+                    shards.put(document.id(), JsonLongDocument.create(document.id(), current.content() + 1,
+                        cas.incrementAndGet()));
+                    return Observable.error(new CASMismatchException());
+                }
+                if (current.cas() != document.cas()) {
+                    return Observable.error(new CASMismatchException());
+                }
+                JsonLongDocument updated = JsonLongDocument.create(document.id(), document.content(),
+                    cas.incrementAndGet());
+                shards.put(document.id(), updated);
+                return Observable.just(updated);
+            }
+        });
+        ShardedCounter counter = new ShardedCounter(bucket, 4);
+
+        //3/3/2/2, the first shard only holds 3 of the 5
+        assertEquals("k::1", counter.add("k", -5).toBlocking().single().id());
+        assertEquals(5L, (long) counter.get("k").toBlocking().single());
+        assertEquals(0L, (long) shards.get("k::0").content());
+        assertEquals(1L, (long) shards.get("k::1").content());
+
+        //the second shard is incremented while being decremented, and read again
+        conflict.set(true);
+        counter.add("k", -4).toBlocking().single();
+        assertEquals(2L, (long) counter.get("k").toBlocking().single());
+
+        //more than the counter holds, it stops at 0
+        assertEquals("k::3", counter.add("k", -10).toBlocking().single().id());
+        assertEquals(0L, (long) counter.get("k").toBlocking().single());
+        verify(bucket, never()).counter(anyString(), anyLong(), anyLong());
+    }
+}
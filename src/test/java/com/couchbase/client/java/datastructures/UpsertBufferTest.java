@@ -0,0 +1,239 @@
+/*
+ * Copyright (c) 2017 Couchbase, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.couchbase.client.java.datastructures;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import com.couchbase.client.core.BackpressureException;
+import com.couchbase.client.core.message.CouchbaseRequest;
+import com.couchbase.client.core.message.ResponseStatus;
+import com.couchbase.client.core.message.kv.UpsertRequest;
+import com.couchbase.client.deps.io.netty.buffer.ByteBuf;
+import com.couchbase.client.deps.io.netty.buffer.Unpooled;
+import com.couchbase.client.deps.io.netty.util.CharsetUtil;
+import com.couchbase.client.java.AsyncBucket;
+import com.couchbase.client.java.CouchbaseAsyncBucket;
+import com.couchbase.client.java.document.BinaryDocument;
+import com.couchbase.client.java.document.Document;
+import com.couchbase.client.java.document.JsonDocument;
+import com.couchbase.client.java.document.json.JsonObject;
+import com.couchbase.client.java.env.CouchbaseEnvironment;
+import com.couchbase.client.java.error.TemporaryFailureException;
+import com.couchbase.client.java.simulator.SimulatedClusterFacade;
+import com.couchbase.client.java.transcoder.Transcoder;
+import org.junit.Before;
+import org.junit.Test;
+import rx.functions.Func1;
+import rx.observers.TestSubscriber;
+import rx.schedulers.TestScheduler;
+
+/**
+ * Verifies the coalescing and ordering of the writes of {@link UpsertBuffer}.
+ */
+public class UpsertBufferTest {
+
+    private TestScheduler scheduler;
+
+    @Before
+    public void setup() {
+        scheduler = new TestScheduler();
+    }
+
+    private AsyncBucket bucket(SimulatedClusterFacade core) {
+        return new CouchbaseAsyncBucket(core, mock(CouchbaseEnvironment.class), SimulatedClusterFacade.DEFAULT_BUCKET,
+            "", Collections.<Transcoder<? extends Document, ?>>emptyList());
+    }
+
+    private static JsonDocument document(String id, int version) {
+        return JsonDocument.create(id, JsonObject.create().put("version", version));
+    }
+
+    @Test
+    public void shouldCoalesceUpsertsWithinWindow() {
+        SimulatedClusterFacade core = SimulatedClusterFacade.builder().scheduler(scheduler).seed(1).build();
+        UpsertBuffer<JsonDocument> buffer = UpsertBuffer.builder(bucket(core), JsonDocument.class)
+            .window(10, TimeUnit.MILLISECONDS)
+            .scheduler(scheduler)
+            .build();
+
+        TestSubscriber<JsonDocument> first = new TestSubscriber<JsonDocument>();
+        TestSubscriber<JsonDocument> last = new TestSubscriber<JsonDocument>();
+        TestSubscriber<JsonDocument> other = new TestSubscriber<JsonDocument>();
+        buffer.upsert(document("a", 1)).subscribe(first);
+        buffer.upsert(document("a", 2));
+        buffer.upsert(document("a", 3)).subscribe(last);
+        buffer.upsert(document("b", 1)).subscribe(other);
+
+        assertEquals(0, core.size());
+        assertEquals(2, buffer.pendingKeys());
+        first.assertNoValues();
+
+        scheduler.advanceTimeBy(10, TimeUnit.MILLISECONDS);
+        first.assertCompleted();
+        last.assertCompleted();
+        other.assertCompleted();
+        JsonDocument written = first.getOnNextEvents().get(0);
+        assertEquals(3, (int) written.content().getInt("version"));
+        assertEquals(written.cas(), last.getOnNextEvents().get(0).cas());
+        assertEquals(2, core.size());
+
+        assertEquals(4, buffer.upserts());
+        assertEquals(2, buffer.writes());
+        assertEquals(2.0, buffer.coalescingRatio(), 0.0);
+        assertEquals(0, buffer.pendingKeys());
+    }
+
+    @Test
+    public void shouldReleaseContentOfReplacedDocuments() {
+        SimulatedClusterFacade core = SimulatedClusterFacade.builder().scheduler(scheduler).seed(1).build();
+        UpsertBuffer<BinaryDocument> buffer = UpsertBuffer.builder(bucket(core), BinaryDocument.class)
+            .window(10, TimeUnit.MILLISECONDS)
+            .scheduler(scheduler)
+            .build();
+
+        ByteBuf replaced = Unpooled.copiedBuffer("first", CharsetUtil.UTF_8);
+        ByteBuf latest = Unpooled.copiedBuffer("second", CharsetUtil.UTF_8);
+        TestSubscriber<BinaryDocument> subscriber = new TestSubscriber<BinaryDocument>();
+        buffer.upsert(BinaryDocument.create("a", replaced));
+        buffer.upsert(BinaryDocument.create("a", latest)).subscribe(subscriber);
+
+        assertEquals(0, replaced.refCnt());
+        assertEquals(1, latest.refCnt());
+
+        scheduler.advanceTimeBy(10, TimeUnit.MILLISECONDS);
+        subscriber.assertCompleted();
+        assertEquals(1, buffer.writes());
+    }
+
+    @Test
+    public void shouldWriteUpsertsBufferedDuringWriteInOrder() {
+        SimulatedClusterFacade core = SimulatedClusterFacade.builder().scheduler(scheduler)
+            .latency(5, TimeUnit.MILLISECONDS).seed(1).build();
+        AsyncBucket bucket = bucket(core);
+        UpsertBuffer<JsonDocument> buffer = UpsertBuffer.builder(bucket, JsonDocument.class)
+            .window(0, TimeUnit.MILLISECONDS)
+            .scheduler(scheduler)
+            .build();
+
+        TestSubscriber<JsonDocument> first = new TestSubscriber<JsonDocument>();
+        TestSubscriber<JsonDocument> second = new TestSubscriber<JsonDocument>();
+        TestSubscriber<JsonDocument> third = new TestSubscriber<JsonDocument>();
+        buffer.upsert(document("a", 1)).subscribe(first);
+        buffer.upsert(document("a", 2)).subscribe(second);
+        buffer.upsert(document("a", 3)).subscribe(third);
+        assertEquals(1, buffer.writes());
+
+        scheduler.advanceTimeBy(5, TimeUnit.MILLISECONDS);
+        first.assertCompleted();
+        second.assertNoValues();
+        assertEquals(2, buffer.writes());
+
+        scheduler.advanceTimeBy(5, TimeUnit.MILLISECONDS);
+        third.assertCompleted();
+        JsonDocument written = second.getOnNextEvents().get(0);
+        assertEquals(3, (int) written.content().getInt("version"));
+        assertNotEquals(first.getOnNextEvents().get(0).cas(), written.cas());
+
+        TestSubscriber<JsonDocument> stored = new TestSubscriber<JsonDocument>();
+        bucket.get("a").subscribe(stored);
+        scheduler.advanceTimeBy(5, TimeUnit.MILLISECONDS);
+        assertEquals(3, (int) stored.getOnNextEvents().get(0).content().getInt("version"));
+        assertEquals(written.cas(), stored.getOnNextEvents().get(0).cas());
+    }
+
+    @Test
+    public void shouldRejectKeysBeyondBound() {
+        SimulatedClusterFacade core = SimulatedClusterFacade.builder().scheduler(scheduler).seed(1).build();
+        UpsertBuffer<JsonDocument> buffer = UpsertBuffer.builder(bucket(core), JsonDocument.class)
+            .window(10, TimeUnit.MILLISECONDS)
+            .maxKeys(2)
+            .scheduler(scheduler)
+            .build();
+
+        buffer.upsert(document("a", 1));
+        buffer.upsert(document("b", 1));
+        buffer.upsert(document("a", 2));
+        TestSubscriber<JsonDocument> rejected = new TestSubscriber<JsonDocument>();
+        buffer.upsert(document("c", 1)).subscribe(rejected);
+        rejected.assertError(BackpressureException.class);
+        assertEquals(1, buffer.rejected());
+
+        scheduler.advanceTimeBy(10, TimeUnit.MILLISECONDS);
+        TestSubscriber<JsonDocument> accepted = new TestSubscriber<JsonDocument>();
+        buffer.upsert(document("c", 1)).subscribe(accepted);
+        scheduler.advanceTimeBy(10, TimeUnit.MILLISECONDS);
+        accepted.assertCompleted();
+        assertEquals(3, core.size());
+    }
+
+    @Test
+    public void shouldFailAllCoalescedCallers() {
+        SimulatedClusterFacade core = SimulatedClusterFacade.builder()
+            .scheduler(scheduler)
+            .faults(new Func1<CouchbaseRequest, ResponseStatus>() {
+                @Override
+                public ResponseStatus call(CouchbaseRequest request) {
+                    return request instanceof UpsertRequest ? ResponseStatus.TEMPORARY_FAILURE : null;
+                }
+            })
+            .seed(1)
+            .build();
+        UpsertBuffer<JsonDocument> buffer = UpsertBuffer.builder(bucket(core), JsonDocument.class)
+            .window(10, TimeUnit.MILLISECONDS)
+            .scheduler(scheduler)
+            .build();
+
+        TestSubscriber<JsonDocument> first = new TestSubscriber<JsonDocument>();
+        TestSubscriber<JsonDocument> second = new TestSubscriber<JsonDocument>();
+        buffer.upsert(document("a", 1)).subscribe(first);
+        buffer.upsert(document("a", 2)).subscribe(second);
+        scheduler.advanceTimeBy(10, TimeUnit.MILLISECONDS);
+
+        first.assertError(TemporaryFailureException.class);
+        second.assertError(TemporaryFailureException.class);
+        assertEquals(1, buffer.failures());
+        assertEquals(0, buffer.pendingKeys());
+    }
+
+    @Test
+    public void shouldFlushAndCloseBeforeWindow() {
+        SimulatedClusterFacade core = SimulatedClusterFacade.builder().scheduler(scheduler).seed(1).build();
+        UpsertBuffer<JsonDocument> buffer = UpsertBuffer.builder(bucket(core), JsonDocument.class)
+            .window(1, TimeUnit.HOURS)
+            .scheduler(scheduler)
+            .build();
+
+        buffer.upsert(document("a", 1));
+        buffer.upsert(document("b", 1));
+        assertEquals(2, buffer.flush(1, TimeUnit.SECONDS));
+        assertEquals(2, core.size());
+
+        buffer.upsert(document("c", 1));
+        assertEquals(1, (int) buffer.close().toBlocking().single());
+        assertEquals(3, core.size());
+
+        TestSubscriber<JsonDocument> closed = new TestSubscriber<JsonDocument>();
+        buffer.upsert(document("d", 1)).subscribe(closed);
+        closed.assertError(IllegalStateException.class);
+        assertTrue(buffer.coalescingRatio() >= 1.0);
+    }
+}
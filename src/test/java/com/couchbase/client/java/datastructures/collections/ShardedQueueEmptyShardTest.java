@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2017 Couchbase, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.couchbase.client.java.datastructures.collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+
+import com.couchbase.client.java.Bucket;
+import com.couchbase.client.java.CouchbaseAsyncBucket;
+import com.couchbase.client.java.CouchbaseBucket;
+import com.couchbase.client.java.document.Document;
+import com.couchbase.client.java.env.CouchbaseEnvironment;
+import com.couchbase.client.java.simulator.SimulatedClusterFacade;
+import com.couchbase.client.java.transcoder.Transcoder;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Verifies how the {@link CouchbaseShardedQueue} walks over empty shards.
+ */
+public class ShardedQueueEmptyShardTest {
+
+    private static final int SHARDS = 3;
+
+    private Bucket bucket;
+
+    @Before
+    public void setup() {
+        SimulatedClusterFacade core = SimulatedClusterFacade.create();
+        CouchbaseEnvironment environment = mock(CouchbaseEnvironment.class);
+        when(environment.kvTimeout()).thenReturn(1000L);
+        bucket = new CouchbaseBucket(new CouchbaseAsyncBucket(core, environment, SimulatedClusterFacade.DEFAULT_BUCKET,
+            "", Collections.<Transcoder<? extends Document, ?>>emptyList()), environment, core,
+            SimulatedClusterFacade.DEFAULT_BUCKET, "", "");
+    }
+
+    @Test
+    public void shouldPollAndPeekNullFromEmptyQueue() {
+        CouchbaseShardedQueue<String> queue = new CouchbaseShardedQueue<String>("queue", bucket, SHARDS);
+
+        assertNull(queue.poll());
+        assertNull(queue.peek());
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void shouldFindElementsBeyondEmptyHomeShard() {
+        CouchbaseShardedQueue<String> queue = new CouchbaseShardedQueue<String>("queue", bucket, SHARDS);
+        int home = (int) ((Thread.currentThread().getId() & Integer.MAX_VALUE) % SHARDS);
+        bucket.mutateIn(CouchbaseShardedQueue.shardId("queue", (home + 1) % SHARDS))
+            .arrayPrepend("", "element").execute();
+
+        assertEquals("element", queue.peek());
+        assertEquals("element", queue.poll());
+        assertNull(queue.poll());
+        assertNull(queue.peek());
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 2017 Couchbase, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.couchbase.client.java.future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.couchbase.client.core.message.CouchbaseRequest;
+import com.couchbase.client.core.message.ResponseStatus;
+import com.couchbase.client.core.message.kv.GetRequest;
+import com.couchbase.client.core.message.kv.subdoc.multi.Mutation;
+import com.couchbase.client.java.CouchbaseAsyncBucket;
+import com.couchbase.client.java.document.Document;
+import com.couchbase.client.java.document.JsonDocument;
+import com.couchbase.client.java.document.json.JsonObject;
+import com.couchbase.client.java.env.CouchbaseEnvironment;
+import com.couchbase.client.java.error.CASMismatchException;
+import com.couchbase.client.java.error.DocumentAlreadyExistsException;
+import com.couchbase.client.java.error.DocumentDoesNotExistException;
+import com.couchbase.client.java.error.TemporaryFailureException;
+import com.couchbase.client.java.simulator.SimulatedClusterFacade;
+import com.couchbase.client.java.subdoc.DocumentFragment;
+import com.couchbase.client.java.transcoder.Transcoder;
+import org.junit.Test;
+import rx.functions.Func1;
+import rx.schedulers.TestScheduler;
+
+/**
+ * Verifies the behavior of the {@link FutureBucket} against a {@link SimulatedClusterFacade}.
+ */
+public class FutureBucketTest {
+
+    private static final long TIMEOUT = 1000;
+
+    private FutureBucket futures(SimulatedClusterFacade core) {
+        return new CouchbaseAsyncBucket(core, mock(CouchbaseEnvironment.class), SimulatedClusterFacade.DEFAULT_BUCKET,
+            "", Collections.<Transcoder<? extends Document, ?>>emptyList()).futures();
+    }
+
+    @Test
+    public void shouldRunKeyValueOperations() throws Exception {
+        FutureBucket futures = futures(SimulatedClusterFacade.builder().seed(1).build());
+
+        JsonDocument inserted = futures.insert(JsonDocument.create("id", JsonObject.create().put("a", 1)))
+            .await(TIMEOUT, TimeUnit.MILLISECONDS);
+        assertNotEquals(0, inserted.cas());
+
+        JsonDocument loaded = futures.get("id").get();
+        assertEquals(1, (int) loaded.content().getInt("a"));
+        assertEquals(inserted.cas(), loaded.cas());
+
+        JsonDocument replaced = futures.replace(JsonDocument.create("id", JsonObject.create().put("a", 2),
+            inserted.cas())).await(TIMEOUT, TimeUnit.MILLISECONDS);
+        assertNotEquals(inserted.cas(), replaced.cas());
+
+        try {
+            futures.replace(JsonDocument.create("id", JsonObject.create().put("a", 3), inserted.cas()))
+                .await(TIMEOUT, TimeUnit.MILLISECONDS);
+            fail();
+        } catch (CASMismatchException e) {
+            //expected
+        }
+
+        try {
+            futures.insert(JsonDocument.create("id", JsonObject.empty())).get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof DocumentAlreadyExistsException);
+        }
+
+        assertEquals(2, (int) futures.upsert(JsonDocument.create("id", JsonObject.create().put("a", 2)))
+            .await(TIMEOUT, TimeUnit.MILLISECONDS).content().getInt("a"));
+        assertEquals("id", futures.remove("id").await(TIMEOUT, TimeUnit.MILLISECONDS).id());
+        assertNull(futures.get("id").await(TIMEOUT, TimeUnit.MILLISECONDS));
+
+        ResultFuture<JsonDocument> missing = futures.remove("id");
+        assertTrue(missing.isDone());
+        assertFalse(missing.isSuccess());
+        assertTrue(missing.cause() instanceof DocumentDoesNotExistException);
+    }
+
+    @Test
+    public void shouldRunSubdocOperations() throws Exception {
+        FutureBucket futures = futures(SimulatedClusterFacade.builder().seed(1).build());
+        futures.upsert(JsonDocument.create("id", JsonObject.create().put("a", 1))).await(TIMEOUT, TimeUnit.MILLISECONDS);
+
+        DocumentFragment<Mutation> mutated = futures.upsertIn("id", "b.c", "value", true)
+            .await(TIMEOUT, TimeUnit.MILLISECONDS);
+        assertNotEquals(0, mutated.cas());
+        assertEquals("value", futures.getIn("id", "b.c", String.class).await(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertEquals(1, (int) futures.getIn("id", "a", Integer.class).await(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertNull(futures.getIn("id", "x", Object.class).await(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertTrue(futures.existsIn("id", "b").await(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertFalse(futures.existsIn("id", "x").await(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertEquals(mutated.cas(), futures.get("id").await(TIMEOUT, TimeUnit.MILLISECONDS).cas());
+
+        try {
+            futures.getIn("other", "a", Object.class).await(TIMEOUT, TimeUnit.MILLISECONDS);
+            fail();
+        } catch (DocumentDoesNotExistException e) {
+            //expected
+        }
+    }
+
+    @Test
+    public void shouldNotifyListenersOnCompletion() {
+        TestScheduler scheduler = new TestScheduler();
+        FutureBucket futures = futures(SimulatedClusterFacade.builder().scheduler(scheduler)
+            .latency(1, TimeUnit.MILLISECONDS).seed(1).build());
+
+        final List<Object> notified = new ArrayList<Object>();
+        ResultListener<JsonDocument> listener = new ResultListener<JsonDocument>() {
+            @Override
+            public void onSuccess(JsonDocument result) {
+                notified.add(result.id());
+            }
+
+            @Override
+            public void onFailure(Throwable cause) {
+                notified.add(cause);
+            }
+        };
+
+        ResultFuture<JsonDocument> future = futures.upsert(JsonDocument.create("id", JsonObject.empty()));
+        assertSame(future, future.addListener(listener).addListener(listener));
+        assertFalse(future.isDone());
+        assertTrue(notified.isEmpty());
+
+        scheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+        assertTrue(future.isSuccess());
+        assertEquals(2, notified.size());
+
+        future.addListener(listener);
+        assertEquals(3, notified.size());
+        assertEquals("id", notified.get(2));
+    }
+
+    @Test
+    public void shouldCancelOnTimeout() {
+        TestScheduler scheduler = new TestScheduler();
+        FutureBucket futures = futures(SimulatedClusterFacade.builder().scheduler(scheduler)
+            .latency(1, TimeUnit.SECONDS).seed(1).build());
+
+        ResultFuture<JsonDocument> future = futures.get("id");
+        try {
+            future.await(10, TimeUnit.MILLISECONDS);
+            fail();
+        } catch (RuntimeException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        assertTrue(future.isCancelled());
+
+        scheduler.advanceTimeBy(1, TimeUnit.SECONDS);
+        assertTrue(future.isCancelled());
+        assertFalse(future.cancel(false));
+    }
+
+    @Test
+    public void shouldFailWithTheOperationError() {
+        FutureBucket futures = futures(SimulatedClusterFacade.builder()
+            .faults(new Func1<CouchbaseRequest, ResponseStatus>() {
+                @Override
+                public ResponseStatus call(CouchbaseRequest request) {
+                    return request instanceof GetRequest ? ResponseStatus.SERVER_BUSY : null;
+                }
+            })
+            .seed(1)
+            .build());
+
+        try {
+            futures.get("id").await(TIMEOUT, TimeUnit.MILLISECONDS);
+            fail();
+        } catch (TemporaryFailureException e) {
+            //expected
+        }
+    }
+}
@@ -0,0 +1,322 @@
+/*
+ * Copyright (c) 2017 Couchbase, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.couchbase.client.java.largeobject;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.couchbase.client.deps.io.netty.buffer.ByteBuf;
+import com.couchbase.client.deps.io.netty.buffer.Unpooled;
+import com.couchbase.client.java.AsyncBucket;
+import com.couchbase.client.java.document.BinaryDocument;
+import com.couchbase.client.java.document.Document;
+import com.couchbase.client.java.document.JsonDocument;
+import com.couchbase.client.java.document.json.JsonObject;
+import com.couchbase.client.java.error.CASMismatchException;
+import com.couchbase.client.java.error.DocumentAlreadyExistsException;
+import com.couchbase.client.java.error.DocumentDoesNotExistException;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import rx.Observable;
+import rx.functions.Action0;
+import rx.subjects.PublishSubject;
+
+/**
+ * Verifies the chunking and reassembly of {@link AsyncLargeObjectStore} against an in-memory bucket.
+ */
+public class AsyncLargeObjectStoreTest {
+
+    private final ConcurrentHashMap<String, Object> documents = new ConcurrentHashMap<String, Object>();
+    private final List<String> reads = new ArrayList<String>();
+    private final List<ByteBuf> served = new ArrayList<ByteBuf>();
+    private final Map<String, PublishSubject<BinaryDocument>> delayed =
+        new ConcurrentHashMap<String, PublishSubject<BinaryDocument>>();
+    private final AtomicLong cas = new AtomicLong();
+    private Action0 beforeReplace;
+    private AsyncLargeObjectStore store;
+
+    @Before
+    public void setup() {
+        AsyncBucket bucket = mock(AsyncBucket.class);
+        //any() matches any type with this mockito version, chunks are upserted and manifests inserted or replaced
+        when(bucket.upsert(any(Document.class))).thenAnswer(new Answer<Observable<Document<?>>>() {
+            @Override
+            public Observable<Document<?>> answer(InvocationOnMock invocation) {
+                BinaryDocument document = (BinaryDocument) invocation.getArguments()[0];
+                ByteBuf buffer = document.content();
+                byte[] content = new byte[buffer.readableBytes()];
+                buffer.readBytes(content);
+                //the SDK releases the content once written
+                buffer.release();
+                documents.put(document.id(), content);
+                return Observable.<Document<?>>just(document);
+            }
+        });
+        when(bucket.insert(any(Document.class))).thenAnswer(new Answer<Observable<JsonDocument>>() {
+            @Override
+            public Observable<JsonDocument> answer(InvocationOnMock invocation) {
+                JsonDocument document = (JsonDocument) invocation.getArguments()[0];
+                JsonDocument stored = JsonDocument.create(document.id(), document.content(), cas.incrementAndGet());
+                if (documents.putIfAbsent(document.id(), stored) != null) {
+                    return Observable.error(new DocumentAlreadyExistsException());
+                }
+                return Observable.just(stored);
+            }
+        });
+        when(bucket.replace(any(Document.class))).thenAnswer(new Answer<Observable<JsonDocument>>() {
+            @Override
+            public Observable<JsonDocument> answer(InvocationOnMock invocation) {
+                if (beforeReplace != null) {
+                    Action0 action = beforeReplace;
+                    beforeReplace = null;
+                    action.call();
+                }
+                JsonDocument document = (JsonDocument) invocation.getArguments()[0];
+                JsonDocument stored = JsonDocument.create(document.id(), document.content(), cas.incrementAndGet());
+                Object current = documents.get(document.id());
+                if (current == null) {
+                    return Observable.error(new DocumentDoesNotExistException());
+                }
+                if (((JsonDocument) current).cas() != document.cas() || !documents.replace(document.id(), current, stored)) {
+                    return Observable.error(new CASMismatchException());
+                }
+                return Observable.just(stored);
+            }
+        });
+        when(bucket.get(anyString())).thenAnswer(new Answer<Observable<JsonDocument>>() {
+            @Override
+            public Observable<JsonDocument> answer(InvocationOnMock invocation) {
+                Object document = documents.get(invocation.getArguments()[0]);
+                return document == null ? Observable.<JsonDocument>empty() : Observable.just((JsonDocument) document);
+            }
+        });
+        when(bucket.get(anyString(), eq(BinaryDocument.class))).thenAnswer(new Answer<Observable<BinaryDocument>>() {
+            @Override
+            public Observable<BinaryDocument> answer(InvocationOnMock invocation) {
+                String id = (String) invocation.getArguments()[0];
+                if (delayed.containsKey(id)) {
+                    return delayed.get(id);
+                }
+                byte[] content = (byte[]) documents.get(id);
+                ByteBuf buffer = content == null ? null : Unpooled.copiedBuffer(content);
+                synchronized (reads) {
+                    reads.add(id);
+                    if (buffer != null) {
+                        served.add(buffer);
+                    }
+                }
+                return buffer == null ? Observable.<BinaryDocument>empty()
+                    : Observable.just(BinaryDocument.create(id, buffer));
+            }
+        });
+        when(bucket.remove(any(Document.class))).thenAnswer(new Answer<Observable<JsonDocument>>() {
+            @Override
+            public Observable<JsonDocument> answer(InvocationOnMock invocation) {
+                JsonDocument document = (JsonDocument) invocation.getArguments()[0];
+                Object current = documents.get(document.id());
+                if (current == null) {
+                    return Observable.error(new DocumentDoesNotExistException());
+                }
+                if (((JsonDocument) current).cas() != document.cas() || !documents.remove(document.id(), current)) {
+                    return Observable.error(new CASMismatchException());
+                }
+                return Observable.just((JsonDocument) current);
+            }
+        });
+        when(bucket.remove(anyString(), eq(BinaryDocument.class))).thenAnswer(new Answer<Observable<BinaryDocument>>() {
+            @Override
+            public Observable<BinaryDocument> answer(InvocationOnMock invocation) {
+                String id = (String) invocation.getArguments()[0];
+                return documents.remove(id) == null ? Observable.<BinaryDocument>error(new DocumentDoesNotExistException())
+                    : Observable.just(BinaryDocument.create(id));
+            }
+        });
+        store = new AsyncLargeObjectStore(bucket, 4, 2);
+    }
+
+    @Test
+    public void shouldSplitBufferIntoChunksAndReassembleThem() {
+        ByteBuf content = Unpooled.copiedBuffer(bytes(10));
+
+        LargeObjectManifest manifest = store.upsert("blob", content).toBlocking().single();
+
+        assertEquals(0, content.refCnt());
+        assertEquals(10, manifest.length());
+        assertEquals(3, manifest.chunks());
+        assertEquals(4, documents.size());
+        assertArrayEquals(new byte[] {8, 9}, (byte[]) documents.get(manifest.chunkId(2)));
+        assertArrayEquals(bytes(10), read(store.get("blob")));
+    }
+
+    @Test
+    public void shouldOnlyFetchChunksOverlappingRange() {
+        LargeObjectManifest manifest = store.upsert("blob", Unpooled.copiedBuffer(bytes(10))).toBlocking().single();
+
+        assertArrayEquals(new byte[] {5, 6, 7, 8}, read(store.get("blob", 5, 4)));
+        assertEquals(2, reads.size());
+        assertEquals(manifest.chunkId(1), reads.get(0));
+        assertEquals(manifest.chunkId(2), reads.get(1));
+
+        assertArrayEquals(new byte[] {8, 9}, read(store.get("blob", 8, 100)));
+        assertArrayEquals(new byte[0], read(store.get("blob", 10, 1)));
+    }
+
+    @Test
+    public void shouldReplacePreviousVersionFromStream() throws Exception {
+        LargeObjectManifest first = store.upsert("blob", Unpooled.copiedBuffer(bytes(10))).toBlocking().single();
+        LargeObjectManifest second = store.upsert("blob", new ByteArrayInputStream(bytes(8))).toBlocking().single();
+
+        assertFalse(first.version().equals(second.version()));
+        assertEquals(8, second.length());
+        assertEquals(2, second.chunks());
+        //the manifest and the two chunks of the new version only
+        assertEquals(3, documents.size());
+
+        InputStream stream = store.openStream("blob");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[3];
+        int read;
+        while ((read = stream.read(buffer)) >= 0) {
+            out.write(buffer, 0, read);
+        }
+        stream.close();
+        assertArrayEquals(bytes(8), out.toByteArray());
+    }
+
+    @Test
+    public void shouldRemoveManifestAndChunks() {
+        store.upsert("blob", Unpooled.copiedBuffer(bytes(10))).toBlocking().single();
+
+        assertTrue(store.remove("blob").toBlocking().single());
+        assertTrue(documents.isEmpty());
+        assertFalse(store.remove("blob").toBlocking().single());
+        assertEquals(0, store.get("blob").count().toBlocking().single().intValue());
+    }
+
+    @Test
+    public void shouldFailOverlappingWriteAndRemoveItsChunks() {
+        LargeObjectManifest first = store.upsert("blob", Unpooled.copiedBuffer(bytes(10))).toBlocking().single();
+        final List<LargeObjectManifest> concurrent = new ArrayList<LargeObjectManifest>();
+        beforeReplace = new Action0() {
+            @Override
+            public void call() {
+                //a second writer replaces the manifest while the first one is writing its chunks
+                concurrent.add(store.upsert("blob", Unpooled.copiedBuffer(bytes(6))).toBlocking().single());
+            }
+        };
+
+        try {
+            store.upsert("blob", Unpooled.copiedBuffer(bytes(12))).toBlocking().single();
+            fail();
+        } catch (CASMismatchException e) {
+            //expected
+        }
+
+        LargeObjectManifest winner = concurrent.get(0);
+        assertFalse(first.version().equals(winner.version()));
+        assertEquals(winner.version(), store.manifest("blob").toBlocking().single().version());
+        //the manifest and the two chunks of the winner only
+        assertEquals(3, documents.size());
+        assertArrayEquals(bytes(6), read(store.get("blob")));
+        assertTrue(store.remove("blob").toBlocking().single());
+        assertTrue(documents.isEmpty());
+    }
+
+    @Test
+    public void shouldReplaceDocumentWhichIsNotAManifest() {
+        documents.put("blob", JsonDocument.create("blob", JsonObject.create().put("other", true), cas.incrementAndGet()));
+
+        //a document which is not a manifest is replaced against its CAS
+        LargeObjectManifest manifest = store.upsert("blob", Unpooled.copiedBuffer(bytes(5))).toBlocking().single();
+        assertEquals(cas.get(), manifest.cas());
+        assertArrayEquals(bytes(5), read(store.get("blob")));
+    }
+
+    @Test
+    public void shouldReleasePrefetchedChunksWhenStreamIsClosed() throws Exception {
+        store.upsert("blob", Unpooled.copiedBuffer(bytes(10))).toBlocking().single();
+
+        InputStream stream = store.openStream("blob");
+        assertEquals(0, stream.read());
+        stream.close();
+
+        assertEquals(3, served.size());
+        for (ByteBuf buffer : served) {
+            assertEquals(0, buffer.refCnt());
+        }
+    }
+
+    @Test
+    public void shouldReleasePrefetchedChunksWhenReadFails() throws Exception {
+        LargeObjectManifest manifest = store.upsert("blob", Unpooled.copiedBuffer(bytes(10))).toBlocking().single();
+        PublishSubject<BinaryDocument> firstChunk = PublishSubject.create();
+        delayed.put(manifest.chunkId(0), firstChunk);
+
+        InputStream stream = store.openStream("blob");
+        //the second chunk is fetched ahead and waits for the first one
+        assertEquals(1, served.size());
+        assertEquals(1, served.get(0).refCnt());
+        firstChunk.onError(new DocumentDoesNotExistException());
+        try {
+            stream.read();
+            fail();
+        } catch (IOException e) {
+            //expected
+        }
+        stream.close();
+
+        assertEquals(0, served.get(0).refCnt());
+    }
+
+    private static byte[] bytes(int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) i;
+        }
+        return bytes;
+    }
+
+    private static byte[] read(Observable<ByteBuf> chunks) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (ByteBuf chunk : chunks.toBlocking().toIterable()) {
+            byte[] bytes = new byte[chunk.readableBytes()];
+            chunk.readBytes(bytes);
+            chunk.release();
+            out.write(bytes, 0, bytes.length);
+        }
+        return out.toByteArray();
+    }
+}
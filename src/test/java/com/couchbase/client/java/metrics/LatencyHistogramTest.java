@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2017 Couchbase, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.couchbase.client.java.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Verifies the functionality of the {@link LatencyHistogram}.
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void shouldBeEmptyInitially() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.min());
+        assertEquals(0, histogram.max());
+        assertEquals(0, histogram.valueAtPercentile(99.0));
+    }
+
+    @Test
+    public void shouldTrackMinMaxAndMean() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(100);
+        histogram.record(300);
+
+        assertEquals(2, histogram.getCount());
+        assertEquals(100, histogram.min());
+        assertEquals(300, histogram.max());
+        assertEquals(200.0, histogram.mean(), 0.001);
+    }
+
+    @Test
+    public void shouldComputePercentilesWithinPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long i = 1; i <= 10000; i++) {
+            histogram.record(i * 1000);
+        }
+
+        assertWithinPrecision(5000000, histogram.valueAtPercentile(50.0));
+        assertWithinPrecision(9900000, histogram.valueAtPercentile(99.0));
+        assertEquals(10000000, histogram.valueAtPercentile(100.0));
+    }
+
+    @Test
+    public void shouldMapValuesToEnclosingBucket() {
+        for (long value : new long[] { 0, 1, 15, 16, 17, 31, 32, 1000, 123456789L, 1L << 40 }) {
+            long upper = LatencyHistogram.bucketUpperBound(LatencyHistogram.bucketIndex(value));
+            assertTrue(value + " > " + upper, value <= upper);
+            assertTrue(value + " too far from " + upper, upper - value <= value / 16);
+        }
+    }
+
+    @Test
+    public void shouldResetValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(100);
+        histogram.reset();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.max());
+    }
+
+    private static void assertWithinPrecision(long expected, long actual) {
+        assertTrue(expected + " vs " + actual, Math.abs(expected - actual) <= expected / 16);
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2017 Couchbase, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.couchbase.client.java.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+import rx.Observable;
+import rx.functions.Func1;
+import rx.observers.TestSubscriber;
+
+/**
+ * Verifies the functionality of the {@link OperationMetrics}.
+ */
+public class OperationMetricsTest {
+
+    @Test
+    public void shouldHandOutNoopTimerWhenDisabled() {
+        assertFalse(OperationMetrics.DISABLED.isEnabled());
+        assertSame(OperationTimer.NOOP, OperationMetrics.DISABLED.start(OperationType.GET));
+        assertEquals(0, OperationMetrics.DISABLED.count(OperationType.GET));
+    }
+
+    @Test
+    public void shouldRecordSegmentsOnTermination() {
+        OperationMetrics metrics = OperationMetrics.create("bucket");
+        final OperationTimer timer = metrics.start(OperationType.UPSERT);
+
+        timer.encoded();
+        timer.received();
+        timer.finishOnTerminate(Observable.just(1)).toBlocking().single();
+
+        assertTrue(metrics.isEnabled());
+        assertEquals(1, metrics.count(OperationType.UPSERT));
+        assertEquals(1, metrics.histogram(OperationType.UPSERT, LatencySegment.TOTAL).getCount());
+        assertEquals(0, metrics.histogram(OperationType.UPSERT, LatencySegment.DECODE).getCount());
+        assertEquals(0, metrics.count(OperationType.GET));
+    }
+
+    @Test
+    public void shouldRecordOperationWhichTimesOut() {
+        OperationMetrics metrics = OperationMetrics.create("bucket");
+        Observable<Integer> operation = metrics.timed(OperationType.GET, "id",
+            new Func1<OperationTimer, Observable<Integer>>() {
+                @Override
+                public Observable<Integer> call(OperationTimer timer) {
+                    return timer.finishOnTerminate(Observable.<Integer>never());
+                }
+            });
+
+        TestSubscriber<Integer> subscriber = new TestSubscriber<Integer>();
+        operation.timeout(10, TimeUnit.MILLISECONDS).subscribe(subscriber);
+        subscriber.awaitTerminalEvent(1, TimeUnit.SECONDS);
+
+        subscriber.assertError(TimeoutException.class);
+        assertEquals(1, metrics.count(OperationType.GET));
+    }
+
+    @Test
+    public void shouldStartNewTimerForEachSubscription() {
+        OperationMetrics metrics = OperationMetrics.create("bucket");
+        final List<OperationTimer> timers = new ArrayList<OperationTimer>();
+        Observable<Integer> operation = metrics.timed(OperationType.GET, "id",
+            new Func1<OperationTimer, Observable<Integer>>() {
+                @Override
+                public Observable<Integer> call(OperationTimer timer) {
+                    timers.add(timer);
+                    return timer.finishOnTerminate(Observable.just(1));
+                }
+            });
+
+        assertTrue(timers.isEmpty());
+        operation.repeat(3).toBlocking().last();
+
+        assertEquals(3, timers.size());
+        assertNotSame(timers.get(0), timers.get(1));
+        assertNotSame(timers.get(1), timers.get(2));
+        assertEquals(3, metrics.count(OperationType.GET));
+    }
+
+    @Test
+    public void shouldRegisterMBeansOfSameBucketOpenedTwice() throws Exception {
+        OperationMetrics first = OperationMetrics.create("twice");
+        OperationMetrics second = OperationMetrics.create("twice");
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName pattern = new ObjectName(OperationMetrics.JMX_DOMAIN + ":type=OperationMetrics,bucket="
+            + ObjectName.quote("twice") + ",*");
+        int perInstance = OperationType.values().length * LatencySegment.values().length;
+        try {
+            first.registerMBeans();
+            second.registerMBeans();
+            assertEquals(2 * perInstance, server.queryNames(pattern, null).size());
+        } finally {
+            first.unregisterMBeans();
+            second.unregisterMBeans();
+        }
+        assertEquals(0, server.queryNames(pattern, null).size());
+    }
+
+    @Test
+    public void shouldResetAllHistograms() {
+        OperationMetrics metrics = OperationMetrics.create("bucket");
+        metrics.record(OperationType.N1QL, LatencySegment.TOTAL, 1000);
+        metrics.reset();
+
+        assertEquals(0, metrics.count(OperationType.N1QL));
+    }
+}
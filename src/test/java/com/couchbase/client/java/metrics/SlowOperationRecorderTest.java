@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2017 Couchbase, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.couchbase.client.java.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.couchbase.client.core.ClusterFacade;
+import com.couchbase.client.core.message.ResponseStatus;
+import com.couchbase.client.core.message.query.GenericQueryRequest;
+import com.couchbase.client.core.message.query.GenericQueryResponse;
+import com.couchbase.client.deps.io.netty.buffer.ByteBuf;
+import com.couchbase.client.deps.io.netty.buffer.Unpooled;
+import com.couchbase.client.deps.io.netty.util.CharsetUtil;
+import com.couchbase.client.java.query.AsyncN1qlQueryResult;
+import com.couchbase.client.java.query.AsyncN1qlQueryRow;
+import com.couchbase.client.java.query.N1qlQuery;
+import com.couchbase.client.java.query.core.N1qlQueryExecutor;
+import org.junit.Test;
+import rx.Observable;
+import rx.functions.Func1;
+import rx.observers.TestSubscriber;
+import rx.subjects.AsyncSubject;
+import rx.subjects.PublishSubject;
+
+/**
+ * Verifies the functionality of the {@link SlowOperationRecorder}.
+ */
+public class SlowOperationRecorderTest {
+
+    private static SlowOperation operation(String id, long total) {
+        return new SlowOperation(OperationType.GET, id, 0, total, 0, total, 0, -1);
+    }
+
+    @Test
+    public void shouldKeepSlowestOperations() {
+        SlowOperationRecorder recorder = new SlowOperationRecorder("bucket", 0, TimeUnit.MILLISECONDS, 2);
+
+        assertTrue(recorder.record(operation("a", 100)));
+        assertTrue(recorder.record(operation("b", 300)));
+        assertTrue(recorder.record(operation("c", 200)));
+        assertFalse(recorder.record(operation("d", 50)));
+
+        List<SlowOperation> slowest = recorder.drain();
+        assertEquals(2, slowest.size());
+        assertEquals("b", slowest.get(0).id());
+        assertEquals("c", slowest.get(1).id());
+        assertTrue(recorder.drain().isEmpty());
+    }
+
+    @Test
+    public void shouldRecordThroughTimerWhenOverThreshold() {
+        SlowOperationRecorder recorder = new SlowOperationRecorder("bucket", 0, TimeUnit.MILLISECONDS, 5);
+        OperationMetrics metrics = OperationMetrics.create("bucket", false, recorder);
+
+        OperationTimer timer = metrics.start(OperationType.N1QL);
+        timer.describe("SELECT 1");
+        timer.payloadSize(42);
+        timer.received();
+        timer.finish();
+        timer.serverDuration(1234);
+
+        assertFalse(metrics.isEnabled());
+        assertNull(metrics.histogram(OperationType.N1QL, LatencySegment.TOTAL));
+        List<SlowOperation> slowest = recorder.drain();
+        assertEquals(1, slowest.size());
+        assertEquals(OperationType.N1QL, slowest.get(0).type());
+        assertEquals("SELECT 1", slowest.get(0).id());
+        assertEquals(42, slowest.get(0).payloadSize());
+        assertEquals(1234, slowest.get(0).serverDuration());
+    }
+
+    @Test
+    public void shouldRecordQueryWhoseRowsAreNeverSubscribed() {
+        SlowOperationRecorder recorder = new SlowOperationRecorder("bucket", 0, TimeUnit.MILLISECONDS, 5);
+        AsyncSubject<String> status = AsyncSubject.create();
+        N1qlQueryExecutor executor = executor(recorder, PublishSubject.<ByteBuf>create(), status);
+
+        TestSubscriber<AsyncN1qlQueryResult> subscriber = new TestSubscriber<AsyncN1qlQueryResult>();
+        executor.execute(N1qlQuery.simple("SELECT 1")).subscribe(subscriber);
+        subscriber.assertCompleted();
+        assertTrue(recorder.drain().isEmpty());
+
+        status.onNext("success");
+        status.onCompleted();
+        List<SlowOperation> slowest = recorder.drain();
+        assertEquals(1, slowest.size());
+        assertEquals("SELECT 1", slowest.get(0).id());
+    }
+
+    @Test
+    public void shouldRecordQueryWhoseRowsAreUnsubscribed() {
+        SlowOperationRecorder recorder = new SlowOperationRecorder("bucket", 0, TimeUnit.MILLISECONDS, 5);
+        PublishSubject<ByteBuf> rows = PublishSubject.create();
+        N1qlQueryExecutor executor = executor(recorder, rows, AsyncSubject.<String>create());
+
+        TestSubscriber<AsyncN1qlQueryRow> subscriber = new TestSubscriber<AsyncN1qlQueryRow>();
+        executor.execute(N1qlQuery.simple("SELECT 1"))
+            .flatMap(new Func1<AsyncN1qlQueryResult, Observable<AsyncN1qlQueryRow>>() {
+                @Override
+                public Observable<AsyncN1qlQueryRow> call(AsyncN1qlQueryResult result) {
+                    return result.rows();
+                }
+            })
+            .first()
+            .subscribe(subscriber);
+        rows.onNext(Unpooled.copiedBuffer("{\"a\":1}", CharsetUtil.UTF_8));
+
+        subscriber.assertValueCount(1);
+        assertEquals(1, recorder.drain().size());
+    }
+
+    private static N1qlQueryExecutor executor(SlowOperationRecorder recorder, Observable<ByteBuf> rows,
+        Observable<String> status) {
+        ClusterFacade core = mock(ClusterFacade.class);
+        GenericQueryResponse response = new GenericQueryResponse(Observable.<ByteBuf>empty(), rows,
+            Observable.<ByteBuf>empty(), status, Observable.<ByteBuf>empty(), Observable.<ByteBuf>empty(), null,
+            ResponseStatus.SUCCESS, null, "");
+        when(core.<GenericQueryResponse>send(any(GenericQueryRequest.class))).thenReturn(Observable.just(response));
+        return new N1qlQueryExecutor(core, "bucket", "", "", false, OperationMetrics.create("bucket", false, recorder));
+    }
+
+    @Test
+    public void shouldNotRecordUnderThreshold() {
+        SlowOperationRecorder recorder = new SlowOperationRecorder("bucket", 1, TimeUnit.HOURS, 5);
+        OperationTimer timer = OperationMetrics.create("bucket", true, recorder).start(OperationType.GET);
+        timer.finish();
+
+        assertTrue(recorder.drain().isEmpty());
+    }
+
+    @Test
+    public void shouldParseServerDurations() {
+        assertEquals(12340000, SlowOperationRecorder.parseServerDuration("12.34ms"));
+        assertEquals(870000, SlowOperationRecorder.parseServerDuration("870µs"));
+        assertEquals(63500000000L, SlowOperationRecorder.parseServerDuration("1m3.5s"));
+        assertEquals(15, SlowOperationRecorder.parseServerDuration("15ns"));
+        assertEquals(-1, SlowOperationRecorder.parseServerDuration("fast"));
+        assertEquals(-1, SlowOperationRecorder.parseServerDuration(null));
+    }
+}
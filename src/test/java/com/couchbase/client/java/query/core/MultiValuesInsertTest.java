@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2017 Couchbase, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.couchbase.client.java.query.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+/**
+ * Verifies the rewriting of inserts into multi-row inserts done by {@link MultiValuesInsert}.
+ *
+ * @since 2.5.2
+ */
+public class MultiValuesInsertTest {
+
+    @Test
+    public void shouldRepeatValuesAndShiftPlaceholders() {
+        MultiValuesInsert insert = MultiValuesInsert.parse(
+            "INSERT INTO `default` (KEY, VALUE) VALUES ($1, {\"a\": $2}) RETURNING META().id");
+
+        assertEquals(2, insert.parameters());
+        assertEquals("INSERT INTO `default` (KEY, VALUE) VALUES ($1, {\"a\": $2}) RETURNING META().id",
+            insert.statement(1));
+        assertEquals("INSERT INTO `default` (KEY, VALUE) VALUES ($1, {\"a\": $2}), ($3, {\"a\": $4}), "
+            + "($5, {\"a\": $6}) RETURNING META().id", insert.statement(3));
+    }
+
+    @Test
+    public void shouldRewriteUpsertAndDropTrailingSemicolon() {
+        MultiValuesInsert insert = MultiValuesInsert.parse("upsert into b (key, value) values ($2, $1);");
+
+        assertEquals(2, insert.parameters());
+        assertEquals("upsert into b (key, value) values ($2, $1), ($4, $3)", insert.statement(2));
+    }
+
+    @Test
+    public void shouldNotRewriteUnsupportedStatements() {
+        assertNull(MultiValuesInsert.parse("INSERT INTO b (KEY, VALUE) VALUES ($key, $value)"));
+        assertNull(MultiValuesInsert.parse("INSERT INTO b (KEY, VALUE) VALUES (\"k\", {})"));
+        assertNull(MultiValuesInsert.parse("INSERT INTO b (KEY _k, VALUE _v) SELECT META().id _k, _v FROM a _v"));
+        assertNull(MultiValuesInsert.parse("UPDATE b SET a = $1"));
+    }
+}
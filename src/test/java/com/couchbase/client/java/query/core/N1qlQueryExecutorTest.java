@@ -26,18 +26,32 @@ import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
+import com.couchbase.client.core.ClusterFacade;
 import com.couchbase.client.core.CouchbaseCore;
+import com.couchbase.client.core.message.ResponseStatus;
+import com.couchbase.client.core.message.query.GenericQueryRequest;
+import com.couchbase.client.core.message.query.GenericQueryResponse;
+import com.couchbase.client.deps.io.netty.buffer.ByteBuf;
+import com.couchbase.client.deps.io.netty.buffer.Unpooled;
+import com.couchbase.client.deps.io.netty.util.CharsetUtil;
+import com.couchbase.client.java.document.json.JsonArray;
 import com.couchbase.client.java.document.json.JsonObject;
+import com.couchbase.client.java.document.json.JsonValue;
 import com.couchbase.client.java.error.QueryExecutionException;
 import com.couchbase.client.java.query.AsyncN1qlQueryResult;
 import com.couchbase.client.java.query.AsyncN1qlQueryRow;
 import com.couchbase.client.java.query.DefaultAsyncN1qlQueryResult;
+import com.couchbase.client.java.query.N1qlBatchOptions;
+import com.couchbase.client.java.query.N1qlBatchResult;
 import com.couchbase.client.java.query.N1qlMetrics;
 import com.couchbase.client.java.query.N1qlQuery;
+import com.couchbase.client.java.query.ParameterizedN1qlQuery;
 import com.couchbase.client.java.query.PrepareStatement;
 import com.couchbase.client.java.query.PreparedN1qlQuery;
 import com.couchbase.client.java.query.PreparedPayload;
@@ -46,8 +60,15 @@ import com.couchbase.client.java.query.Select;
 import com.couchbase.client.java.query.Statement;
 import com.couchbase.client.java.util.LRUCache;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.internal.stubbing.answers.ReturnsElementsOf;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import rx.Observable;
+import rx.functions.Func1;
+import rx.observers.TestSubscriber;
+import rx.subjects.AsyncSubject;
+import rx.subjects.PublishSubject;
 
 /**
  * Tests the functionality of {@link N1qlQueryExecutor}.
@@ -120,6 +141,29 @@ public class N1qlQueryExecutorTest {
         assertFalse(n1qlPlanQuery.containsKey("statement"));
     }
 
+    @Test
+    public void testPrimeCachesPlanWithoutExecuting() throws Exception {
+        LRUCache<String, PreparedPayload> cache = new LRUCache<String, PreparedPayload>(3);
+        CouchbaseCore mockFacade = mock(CouchbaseCore.class);
+        N1qlQueryExecutor executor = spy(new N1qlQueryExecutor(mockFacade, "default", "", "", cache, true));
+
+        Statement st = N1qlQuery.simple("SELECT * FROM default").statement();
+        PreparedPayload payloadFromServer = new PreparedPayload(st, "server", "encodedPlan");
+        doReturn(Observable.just(payloadFromServer)).when(executor).prepare(any(Statement.class));
+        doReturn(Observable.<AsyncN1qlQueryResult>empty()).when(executor)
+                                                      .executePrepared(any(N1qlQuery.class), any(PreparedPayload.class));
+
+        executor.prime(st).toBlocking().single();
+        verify(executor, never()).executeQuery(any(N1qlQuery.class));
+        assertEquals(payloadFromServer, cache.get("SELECT * FROM default"));
+
+        //a later execution of the same statement uses the cached plan
+        N1qlQuery q = N1qlQuery.simple("SELECT * FROM default", N1qlParams.build().adhoc(false));
+        executor.execute(q).toBlocking().firstOrDefault(null);
+        verify(executor, times(1)).prepare(any(Statement.class));
+        verify(executor).executePrepared(q, payloadFromServer);
+    }
+
     @Test
     public void testExtractionOfPayloadFromPrepareResponse() {
         LRUCache<String, PreparedPayload> cache = new LRUCache<String, PreparedPayload>(3);
@@ -367,4 +411,183 @@ public class N1qlQueryExecutorTest {
     public void testNoRetryOn5000WithRandomMessage() throws Exception {
         testRetryCondition(5000, "notRelevant", false);
     }
+
+    @Test
+    public void testUnsubscribingFromRowsCancelsRunningQuery() throws Exception {
+        ClusterFacade core = mock(ClusterFacade.class);
+        PublishSubject<ByteBuf> rows = PublishSubject.create();
+        AsyncSubject<String> status = AsyncSubject.create();
+        when(core.<GenericQueryResponse>send(any(GenericQueryRequest.class))).thenReturn(
+            Observable.just(queryResponse(rows, status, "req-1")),
+            Observable.just(queryResponse(Observable.<ByteBuf>empty(), completedStatus(), "req-2")));
+        N1qlQueryExecutor executor = new N1qlQueryExecutor(core, "default", "", "");
+
+        Observable<AsyncN1qlQueryRow> first = executor.execute(N1qlQuery.simple("SELECT * FROM default"))
+            .flatMap(new Func1<AsyncN1qlQueryResult, Observable<AsyncN1qlQueryRow>>() {
+                @Override
+                public Observable<AsyncN1qlQueryRow> call(AsyncN1qlQueryResult result) {
+                    return result.rows();
+                }
+            })
+            .first();
+        TestSubscriber<AsyncN1qlQueryRow> subscriber = new TestSubscriber<AsyncN1qlQueryRow>();
+        first.subscribe(subscriber);
+        rows.onNext(Unpooled.copiedBuffer("{\"a\":1}", CharsetUtil.UTF_8));
+        subscriber.assertValueCount(1);
+
+        ArgumentCaptor<GenericQueryRequest> requests = ArgumentCaptor.forClass(GenericQueryRequest.class);
+        verify(core, times(2)).send(requests.capture());
+        String cancel = requests.getAllValues().get(1).query();
+        assertTrue(cancel, cancel.contains("DELETE FROM system:active_requests WHERE requestId = $1"));
+        assertTrue(cancel, cancel.contains("req-1"));
+        assertFalse(rows.hasObservers());
+    }
+
+    @Test
+    public void testUnsubscribingFromRowsOfCompletedQueryDoesNotCancel() throws Exception {
+        ClusterFacade core = mock(ClusterFacade.class);
+        doReturn(Observable.just(queryResponse(
+            Observable.just(Unpooled.copiedBuffer("{\"a\":1}", CharsetUtil.UTF_8),
+                Unpooled.copiedBuffer("{\"a\":2}", CharsetUtil.UTF_8)), completedStatus(), "req-1")))
+            .when(core).send(any(GenericQueryRequest.class));
+        N1qlQueryExecutor executor = new N1qlQueryExecutor(core, "default", "", "");
+
+        executor.execute(N1qlQuery.simple("SELECT * FROM default"))
+            .flatMap(new Func1<AsyncN1qlQueryResult, Observable<AsyncN1qlQueryRow>>() {
+                @Override
+                public Observable<AsyncN1qlQueryRow> call(AsyncN1qlQueryResult result) {
+                    return result.rows();
+                }
+            })
+            .toBlocking()
+            .first();
+
+        verify(core, times(1)).send(any(GenericQueryRequest.class));
+    }
+
+    @Test
+    public void testBatchPreparesOnceAndAggregatesExecutions() {
+        LRUCache<String, PreparedPayload> cache = new LRUCache<String, PreparedPayload>(3);
+        N1qlQueryExecutor executor = spy(new N1qlQueryExecutor(mock(CouchbaseCore.class), "default", "", "", cache, true));
+
+        Statement st = N1qlQuery.simple("UPDATE `default` SET a = $2 WHERE META().id = $1").statement();
+        doReturn(Observable.just(new PreparedPayload(st, "batch", "encodedPlan"))).when(executor)
+            .prepare(any(Statement.class));
+        doAnswer(new BatchResultAnswer(2)).when(executor)
+            .executePrepared(any(N1qlQuery.class), any(PreparedPayload.class));
+
+        N1qlBatchResult result = executor.executeBatch(st, Observable.just(
+                JsonArray.from("k1", 1), JsonArray.from("bad", 2), JsonArray.from("k3", 3)),
+            N1qlBatchOptions.build().concurrency(2))
+            .toBlocking().single();
+
+        assertEquals(3, result.rows());
+        assertEquals(3, result.executions());
+        assertEquals(1, result.failedExecutions());
+        assertEquals(2, result.mutationCount());
+        assertEquals(Collections.singletonList(1L), result.failedRows());
+        assertEquals(1, result.errors().size());
+        assertEquals(12009, (int) result.errors().get(0).getInt("code"));
+        assertFalse(result.success());
+        verify(executor, times(1)).prepare(any(Statement.class));
+        verify(executor, times(3)).executePrepared(any(N1qlQuery.class), any(PreparedPayload.class));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testBatchGroupsRowsIntoMultiValuesInserts() {
+        LRUCache<String, PreparedPayload> cache = new LRUCache<String, PreparedPayload>(3);
+        N1qlQueryExecutor executor = spy(new N1qlQueryExecutor(mock(CouchbaseCore.class), "default", "", "", cache, true));
+
+        Statement st = N1qlQuery.simple("INSERT INTO `default` (KEY, VALUE) VALUES ($1, $2)").statement();
+        doReturn(Observable.just(new PreparedPayload(st, "batch", "encodedPlan"))).when(executor)
+            .prepare(any(Statement.class));
+        doAnswer(new BatchResultAnswer(2)).when(executor)
+            .executePrepared(any(N1qlQuery.class), any(PreparedPayload.class));
+
+        N1qlBatchResult result = executor.executeBatch(st, Observable.just(
+                JsonArray.from("k1", 1), JsonArray.from("k2", 2), JsonArray.from("k3", 3),
+                JsonArray.from("k4", 4), JsonArray.from("k5", 5)),
+            N1qlBatchOptions.build().concurrency(1).rowsPerInsert(2))
+            .toBlocking().single();
+
+        assertEquals(5, result.rows());
+        assertEquals(3, result.executions());
+        assertEquals(5, result.mutationCount());
+        assertTrue(result.success());
+
+        ArgumentCaptor<N1qlQuery> queries = ArgumentCaptor.forClass(N1qlQuery.class);
+        verify(executor, times(3)).executePrepared(queries.capture(), any(PreparedPayload.class));
+        assertEquals("INSERT INTO `default` (KEY, VALUE) VALUES ($1, $2), ($3, $4)",
+            queries.getAllValues().get(0).statement().toString());
+        assertEquals(JsonArray.from("k1", 1, "k2", 2),
+            ((ParameterizedN1qlQuery) queries.getAllValues().get(0)).statementParameters());
+        assertEquals("INSERT INTO `default` (KEY, VALUE) VALUES ($1, $2)",
+            queries.getAllValues().get(2).statement().toString());
+        //the full group is primed upfront, the shorter trailing group is prepared on its own
+        verify(executor, times(2)).prepare(any(Statement.class));
+    }
+
+    @Test
+    public void testBatchExecutesNamedParametersOncePerRow() {
+        LRUCache<String, PreparedPayload> cache = new LRUCache<String, PreparedPayload>(3);
+        N1qlQueryExecutor executor = spy(new N1qlQueryExecutor(mock(CouchbaseCore.class), "default", "", "", cache, true));
+
+        Statement st = N1qlQuery.simple("INSERT INTO `default` (KEY, VALUE) VALUES ($k, $v)").statement();
+        PreparedPayload payload = new PreparedPayload(st, "batch", "encodedPlan");
+        cache.put(st.toString(), payload);
+        doAnswer(new BatchResultAnswer(1)).when(executor)
+            .executePrepared(any(N1qlQuery.class), any(PreparedPayload.class));
+
+        N1qlBatchResult result = executor.executeBatch(st, Observable.just(
+                JsonObject.create().put("k", "k1").put("v", 1), JsonObject.create().put("k", "k2").put("v", 2)),
+            N1qlBatchOptions.build().rowsPerInsert(10))
+            .toBlocking().single();
+
+        assertEquals(2, result.executions());
+        assertEquals(2, result.mutationCount());
+        verify(executor, never()).prepare(any(Statement.class));
+        verify(executor, times(2)).executePrepared(any(N1qlQuery.class), any(PreparedPayload.class));
+    }
+
+    /**
+     * Answers an execution with one mutation per row, or with a DML error if a parameter is "bad".
+     */
+    private static class BatchResultAnswer implements Answer<Observable<AsyncN1qlQueryResult>> {
+
+        private final int parametersPerRow;
+
+        BatchResultAnswer(int parametersPerRow) {
+            this.parametersPerRow = parametersPerRow;
+        }
+
+        @Override
+        public Observable<AsyncN1qlQueryResult> answer(InvocationOnMock invocation) {
+            JsonValue parameters = ((ParameterizedN1qlQuery) invocation.getArguments()[0]).statementParameters();
+            boolean failed = parameters.toString().contains("\"bad\"");
+            int mutations = parameters instanceof JsonArray ? ((JsonArray) parameters).size() / parametersPerRow : 1;
+            return Observable.<AsyncN1qlQueryResult>just(new DefaultAsyncN1qlQueryResult(
+                Observable.<AsyncN1qlQueryRow>empty(),
+                Observable.empty(),
+                Observable.just(new N1qlMetrics(JsonObject.create().put("mutationCount", failed ? 0 : mutations))),
+                failed ? Observable.just(JsonObject.create().put("code", 12009).put("msg", "DML Error"))
+                    : Observable.<JsonObject>empty(),
+                Observable.<JsonObject>empty(),
+                Observable.just(failed ? "errors" : "success"),
+                true, "req", ""));
+        }
+    }
+
+    private static AsyncSubject<String> completedStatus() {
+        AsyncSubject<String> status = AsyncSubject.create();
+        status.onNext("success");
+        status.onCompleted();
+        return status;
+    }
+
+    private static GenericQueryResponse queryResponse(Observable<ByteBuf> rows, Observable<String> status,
+        String requestId) {
+        return new GenericQueryResponse(Observable.<ByteBuf>empty(), rows, Observable.<ByteBuf>empty(), status,
+            Observable.<ByteBuf>empty(), Observable.<ByteBuf>empty(), null, ResponseStatus.SUCCESS, requestId, "");
+    }
 }
\ No newline at end of file
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2017 Couchbase, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.couchbase.client.java.query.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.couchbase.client.core.CouchbaseCore;
+import com.couchbase.client.java.query.N1qlQuery;
+import com.couchbase.client.java.query.PreparedPayload;
+import com.couchbase.client.java.util.LRUCache;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Verifies the persistence of the prepared statement cache by the {@link PreparedPlanStore}.
+ */
+public class PreparedPlanStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static N1qlQueryExecutor executor() {
+        return new N1qlQueryExecutor(mock(CouchbaseCore.class), "default", "default", "",
+            new LRUCache<String, PreparedPayload>(3), true);
+    }
+
+    private static PreparedPayload payload(String statement, String name, String plan) {
+        return new PreparedPayload(N1qlQuery.simple(statement).statement(), name, plan);
+    }
+
+    @Test
+    public void shouldRestoreCheckpointedPayloadsInEvictionOrder() throws Exception {
+        N1qlQueryExecutor source = executor();
+        PreparedPlanStore sourceStore = PreparedPlanStore.create(folder.getRoot().getPath(), "default", source);
+        assertEquals(0, sourceStore.restore());
+        assertTrue(source.queryCacheSnapshot().isEmpty());
+
+        Map<String, PreparedPayload> payloads = new LinkedHashMap<String, PreparedPayload>();
+        payloads.put("SELECT a", payload("SELECT a", "p1", "plan\n1"));
+        payloads.put("SELECT b", payload("SELECT b", "p2", null));
+        payloads.put("SELECT c", payload("SELECT c", "p3", "plan3"));
+        assertEquals(3, source.restoreQueryCache(payloads));
+        assertTrue(sourceStore.checkpoint());
+        assertFalse(sourceStore.checkpoint());
+        assertTrue(new File(folder.getRoot(), "default.n1ql-plans").isFile());
+
+        N1qlQueryExecutor target = executor();
+        PreparedPlanStore targetStore = PreparedPlanStore.create(folder.getRoot().getPath(), "default", target);
+        assertEquals(3, targetStore.restore());
+        Map<String, PreparedPayload> restored = target.queryCacheSnapshot();
+        assertEquals(new ArrayList<String>(payloads.keySet()), new ArrayList<String>(restored.keySet()));
+        assertEquals("p1", restored.get("SELECT a").preparedName());
+        assertEquals("plan\n1", restored.get("SELECT a").encodedPlan());
+        assertNull(restored.get("SELECT b").encodedPlan());
+        assertEquals("SELECT c", restored.get("SELECT c").originalStatement().toString());
+        assertFalse(targetStore.checkpoint());
+    }
+
+    @Test
+    public void shouldSkipUnreadableLines() throws Exception {
+        File file = new File(folder.getRoot(), "travel.n1ql-plans");
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(("{\"statement\":\"SELECT a\",\"name\":\"p1\"}\nnot json\n{\"statement\":\"SELECT b\"}\n"
+            + "{\"statement\":\"SELECT c\",\"name\":\"p3\",\"encodedPlan\":\"plan3\"}\n").getBytes("UTF-8"));
+        out.close();
+
+        N1qlQueryExecutor executor = executor();
+        assertEquals(2, PreparedPlanStore.create(folder.getRoot().getPath(), "travel", executor).restore());
+        assertEquals("plan3", executor.queryCacheSnapshot().get("SELECT c").encodedPlan());
+    }
+
+    @Test
+    public void shouldRestoreNothingWithoutFile() {
+        N1qlQueryExecutor executor = executor();
+        assertEquals(0, PreparedPlanStore.create(folder.getRoot().getPath(), "missing", executor).restore());
+    }
+}
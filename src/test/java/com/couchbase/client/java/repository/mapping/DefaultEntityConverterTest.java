@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2017 Couchbase, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.couchbase.client.java.repository.mapping;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import com.couchbase.client.deps.io.netty.util.CharsetUtil;
+import com.couchbase.client.java.document.EntityDocument;
+import com.couchbase.client.java.repository.annotation.Field;
+import com.couchbase.client.java.repository.annotation.Id;
+import org.junit.Test;
+
+/**
+ * Verifies the conversion of raw query rows into entities by the {@link DefaultEntityConverter}.
+ */
+public class DefaultEntityConverterTest {
+
+    private final DefaultEntityConverter converter = new DefaultEntityConverter();
+
+    @Test
+    public void shouldConvertRowToEntity() {
+        byte[] row = ("{\"id\":\"airline_10\",\"name\":\"40-Mile Air\",\"num\":10,\"rating\":4,"
+            + "\"active\":true,\"unknown\":{\"nested\":[1,2]},\"missing\":null}").getBytes(CharsetUtil.UTF_8);
+
+        EntityDocument<Airline> document = converter.toEntity(row, Airline.class);
+
+        assertEquals("airline_10", document.id());
+        assertEquals("airline_10", document.content().id);
+        assertEquals("40-Mile Air", document.content().name);
+        assertEquals(10L, document.content().number);
+        assertEquals(4.0, document.content().rating, 0);
+        assertEquals(Boolean.TRUE, document.content().active);
+        assertNull(document.content().missing);
+    }
+
+    @Test(expected = RepositoryMappingException.class)
+    public void shouldFailOnNonObjectRow() {
+        converter.toEntity("[1]".getBytes(CharsetUtil.UTF_8), Airline.class);
+    }
+
+    @Test(expected = RepositoryMappingException.class)
+    public void shouldFailOnUnsupportedFieldType() {
+        converter.toEntity("{\"name\":{\"first\":\"a\"}}".getBytes(CharsetUtil.UTF_8), Airline.class);
+    }
+
+    static class Airline {
+        @Id
+        String id;
+
+        @Field
+        String name;
+
+        @Field("num")
+        long number;
+
+        @Field
+        double rating;
+
+        @Field
+        Boolean active;
+
+        @Field
+        String missing = "default";
+    }
+}
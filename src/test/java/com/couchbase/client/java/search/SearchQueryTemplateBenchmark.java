@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2017 Couchbase, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.couchbase.client.java.search;
+
+import static com.couchbase.client.java.search.SearchQueryTemplate.param;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.TimeUnit;
+
+import com.couchbase.client.java.document.json.JsonObject;
+import com.couchbase.client.java.search.facet.SearchFacet;
+
+/**
+ * Compares the CPU time spent rendering a type-ahead request body with {@link SearchQuery#export()}
+ * and with a compiled {@link SearchQueryTemplate}.
+ *
+ * This is not run as part of the test suite, launch it with the optional number of iterations as argument.
+ */
+public class SearchQueryTemplateBenchmark {
+
+    private static final String[] TERMS = { "a", "ai", "air", "airp", "airpo", "airpor", "airport" };
+
+    public static void main(String... args) {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        SearchQueryTemplate template = SearchQueryTemplate.compile(query(param("term")));
+
+        //warm up both paths before measuring
+        run(template, iterations / 10);
+        long export = export(iterations);
+        long compiled = run(template, iterations);
+
+        System.out.println(String.format("export():  %d ns/request", export / iterations));
+        System.out.println(String.format("template:  %d ns/request", compiled / iterations));
+    }
+
+    private static SearchQuery query(String term) {
+        return new SearchQuery("travel", SearchQuery.prefix(term).field("name"))
+            .limit(10)
+            .fields("name", "city", "country")
+            .highlight(HighlightStyle.HTML, "name")
+            .sort("-_score", "name")
+            .addFacet("types", SearchFacet.term("type", 5))
+            .serverSideTimeout(75, TimeUnit.SECONDS);
+    }
+
+    private static long export(int iterations) {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long length = 0;
+        for (int i = 0; i < iterations / 10; i++) {
+            length += query(TERMS[i % TERMS.length]).export().toString().length();
+        }
+        long start = threads.getCurrentThreadCpuTime();
+        for (int i = 0; i < iterations; i++) {
+            length += query(TERMS[i % TERMS.length]).export().toString().length();
+        }
+        long cpu = threads.getCurrentThreadCpuTime() - start;
+        System.out.println("rendered " + length + " chars with export()");
+        return cpu;
+    }
+
+    private static long run(SearchQueryTemplate template, int iterations) {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long length = 0;
+        long start = threads.getCurrentThreadCpuTime();
+        for (int i = 0; i < iterations; i++) {
+            JsonObject params = JsonObject.create().put("term", TERMS[i % TERMS.length]);
+            length += template.export(params, 75, TimeUnit.SECONDS).length();
+        }
+        long cpu = threads.getCurrentThreadCpuTime() - start;
+        System.out.println("rendered " + length + " chars with the template");
+        return cpu;
+    }
+}
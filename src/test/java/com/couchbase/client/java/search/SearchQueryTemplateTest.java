@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2017 Couchbase, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.couchbase.client.java.search;
+
+import static com.couchbase.client.java.search.SearchQueryTemplate.param;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
+
+import com.couchbase.client.java.document.json.JsonObject;
+import com.couchbase.client.java.search.facet.SearchFacet;
+import org.junit.Test;
+
+/**
+ * Verifies the rendering of a {@link SearchQueryTemplate}.
+ */
+public class SearchQueryTemplateTest {
+
+    private static SearchQuery typeAhead(String term, String field) {
+        return new SearchQuery("travel", SearchQuery.prefix(term).field("name"))
+            .limit(10)
+            .highlight(HighlightStyle.HTML, "name")
+            .sort("-_score", field)
+            .addFacet("types", SearchFacet.term("type", 5));
+    }
+
+    @Test
+    public void shouldRenderTheSameBodyAsTheQuery() {
+        SearchQueryTemplate template = SearchQueryTemplate
+            .compile(typeAhead(param("term"), param("field")).serverSideTimeout(2, TimeUnit.SECONDS));
+
+        String body = template.export(JsonObject.create().put("term", "ai\"r").put("field", "city"), 1, TimeUnit.SECONDS);
+
+        JsonObject expected = typeAhead("ai\"r", "city").serverSideTimeout(2, TimeUnit.SECONDS).export();
+        //compare parsed forms, numbers are read back with their narrowest type
+        assertEquals(JsonObject.fromJson(expected.toString()), JsonObject.fromJson(body));
+        assertEquals(new HashSet<String>(Arrays.asList("term", "field")), new HashSet<String>(template.params()));
+        assertEquals("travel", template.indexName());
+    }
+
+    @Test
+    public void shouldSpliceTheDefaultTimeoutWhenNoneIsSet() {
+        SearchQueryTemplate template = SearchQueryTemplate.compile(new SearchQuery("travel",
+            SearchQuery.match(param("term"))).searchConsistency(SearchConsistency.NOT_BOUNDED));
+
+        JsonObject body = JsonObject.fromJson(template.export(JsonObject.create().put("term", "air"), 75, TimeUnit.SECONDS));
+
+        assertEquals("air", body.getObject("query").getString("match"));
+        assertEquals(75000L, body.getObject("ctl").getLong("timeout").longValue());
+        assertEquals("", body.getObject("ctl").getObject("consistency").getString("level"));
+    }
+
+    @Test
+    public void shouldRenderAnyJsonValue() {
+        SearchQueryTemplate template = SearchQueryTemplate.compile(new SearchQuery("travel",
+            SearchQuery.match(param("term"))).sort(param("sort")).serverSideTimeout(1, TimeUnit.SECONDS));
+
+        JsonObject body = JsonObject.fromJson(template.export(JsonObject.create()
+            .put("term", 42)
+            .put("sort", JsonObject.create().put("by", "id")), 1, TimeUnit.SECONDS));
+
+        assertEquals(42, body.getObject("query").getInt("match").intValue());
+        assertEquals("id", body.getArray("sort").getObject(0).getString("by"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldFailOnUnboundParameter() {
+        SearchQueryTemplate.compile(new SearchQuery("travel", SearchQuery.match(param("term"))))
+            .export(JsonObject.create(), 1, TimeUnit.SECONDS);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectInvalidParameterName() {
+        param("a b");
+    }
+}
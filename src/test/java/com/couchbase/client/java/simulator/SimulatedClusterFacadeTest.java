@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2017 Couchbase, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.couchbase.client.java.simulator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.couchbase.client.core.message.CouchbaseRequest;
+import com.couchbase.client.core.message.ResponseStatus;
+import com.couchbase.client.core.message.kv.GetRequest;
+import com.couchbase.client.java.AsyncBucket;
+import com.couchbase.client.java.CouchbaseAsyncBucket;
+import com.couchbase.client.java.document.Document;
+import com.couchbase.client.java.document.JsonDocument;
+import com.couchbase.client.java.document.JsonLongDocument;
+import com.couchbase.client.java.document.json.JsonArray;
+import com.couchbase.client.java.document.json.JsonObject;
+import com.couchbase.client.java.env.CouchbaseEnvironment;
+import com.couchbase.client.java.error.CASMismatchException;
+import com.couchbase.client.java.error.DocumentAlreadyExistsException;
+import com.couchbase.client.java.error.TemporaryFailureException;
+import com.couchbase.client.java.query.AsyncN1qlQueryResult;
+import com.couchbase.client.java.query.AsyncN1qlQueryRow;
+import com.couchbase.client.java.query.N1qlParams;
+import com.couchbase.client.java.query.N1qlQuery;
+import com.couchbase.client.java.subdoc.DocumentFragment;
+import com.couchbase.client.java.subdoc.SubdocOptionsBuilder;
+import com.couchbase.client.java.transcoder.Transcoder;
+import org.junit.Before;
+import org.junit.Test;
+import rx.Observable;
+import rx.functions.Func1;
+import rx.observers.TestSubscriber;
+import rx.schedulers.TestScheduler;
+
+/**
+ * Verifies the behavior of the {@link SimulatedClusterFacade} through the regular bucket API.
+ */
+public class SimulatedClusterFacadeTest {
+
+    private TestScheduler scheduler;
+
+    @Before
+    public void setup() {
+        scheduler = new TestScheduler();
+    }
+
+    private AsyncBucket bucket(SimulatedClusterFacade core) {
+        return new CouchbaseAsyncBucket(core, mock(CouchbaseEnvironment.class), SimulatedClusterFacade.DEFAULT_BUCKET, "",
+            Collections.<Transcoder<? extends Document, ?>>emptyList());
+    }
+
+    @Test
+    public void shouldStoreAndCheckCas() {
+        SimulatedClusterFacade core = SimulatedClusterFacade.builder().scheduler(scheduler).seed(1).build();
+        AsyncBucket bucket = bucket(core);
+
+        JsonDocument inserted = bucket.insert(JsonDocument.create("id", JsonObject.create().put("a", 1)))
+            .toBlocking().single();
+        try {
+            bucket.insert(JsonDocument.create("id", JsonObject.empty())).toBlocking().single();
+            fail();
+        } catch (DocumentAlreadyExistsException e) {
+            // expected
+        }
+
+        JsonDocument replaced = bucket.replace(JsonDocument.create("id", JsonObject.create().put("a", 2),
+            inserted.cas())).toBlocking().single();
+        assertNotEquals(inserted.cas(), replaced.cas());
+        try {
+            bucket.replace(JsonDocument.create("id", JsonObject.empty(), inserted.cas())).toBlocking().single();
+            fail();
+        } catch (CASMismatchException e) {
+            // expected
+        }
+
+        JsonDocument loaded = bucket.get("id").toBlocking().single();
+        assertEquals(2, (int) loaded.content().getInt("a"));
+        assertEquals(replaced.cas(), loaded.cas());
+
+        bucket.remove("id").toBlocking().single();
+        assertNull(bucket.get("id").toBlocking().singleOrDefault(null));
+        assertEquals(0, core.size());
+    }
+
+    @Test
+    public void shouldExpireDocumentsOnTheSchedulerClock() {
+        SimulatedClusterFacade core = SimulatedClusterFacade.builder().scheduler(scheduler).build();
+        AsyncBucket bucket = bucket(core);
+
+        bucket.upsert(JsonDocument.create("id", 10, JsonObject.empty())).toBlocking().single();
+        scheduler.advanceTimeBy(9, TimeUnit.SECONDS);
+        assertNotNull(bucket.get("id").toBlocking().singleOrDefault(null));
+        scheduler.advanceTimeBy(1, TimeUnit.SECONDS);
+        assertNull(bucket.get("id").toBlocking().singleOrDefault(null));
+    }
+
+    @Test
+    public void shouldReplaceUnderCasWhenReplaceChangedFindsNoContentDiff() {
+        SimulatedClusterFacade core = SimulatedClusterFacade.builder().scheduler(scheduler).build();
+        AsyncBucket bucket = bucket(core);
+
+        JsonDocument original = bucket.upsert(JsonDocument.create("id", JsonObject.create().put("a", 1)))
+            .toBlocking().single();
+        bucket.upsert(JsonDocument.create("id", JsonObject.create().put("a", 2))).toBlocking().single();
+        try {
+            bucket.replaceChanged(original, JsonDocument.create("id", JsonObject.create().put("a", 1)))
+                .toBlocking().single();
+            fail();
+        } catch (CASMismatchException e) {
+            // expected
+        }
+
+        JsonDocument current = bucket.get("id").toBlocking().single();
+        JsonDocument touched = bucket.replaceChanged(current,
+            JsonDocument.create("id", 10, JsonObject.create().put("a", 2))).toBlocking().single();
+        assertNotEquals(current.cas(), touched.cas());
+        assertEquals(touched.cas(), bucket.get("id").toBlocking().single().cas());
+
+        scheduler.advanceTimeBy(10, TimeUnit.SECONDS);
+        assertNull(bucket.get("id").toBlocking().singleOrDefault(null));
+    }
+
+    @Test
+    public void shouldCountAndReturnMutationTokens() {
+        SimulatedClusterFacade core = SimulatedClusterFacade.builder()
+            .scheduler(scheduler)
+            .mutationTokens(true)
+            .build();
+        AsyncBucket bucket = bucket(core);
+
+        JsonLongDocument first = bucket.counter("counter", 5, 10).toBlocking().single();
+        JsonLongDocument second = bucket.counter("counter", 5, 10).toBlocking().single();
+        JsonLongDocument third = bucket.counter("counter", -20, 10).toBlocking().single();
+
+        assertEquals(10L, (long) first.content());
+        assertEquals(15L, (long) second.content());
+        assertEquals(0L, (long) third.content());
+        assertEquals(first.mutationToken().vbucketID(), second.mutationToken().vbucketID());
+        assertEquals(first.mutationToken().sequenceNumber() + 1, second.mutationToken().sequenceNumber());
+    }
+
+    @Test
+    public void shouldApplySubdocumentOperations() {
+        SimulatedClusterFacade core = SimulatedClusterFacade.builder().scheduler(scheduler).build();
+        AsyncBucket bucket = bucket(core);
+        bucket.upsert(JsonDocument.create("id", JsonObject.create().put("tags", JsonArray.from("a")))).toBlocking()
+            .single();
+
+        bucket.mutateIn("id")
+            .upsert("profile.name", "foo", SubdocOptionsBuilder.builder().createPath(true))
+            .arrayAppend("tags", "b")
+            .counter("profile.visits", 3)
+            .execute().toBlocking().single();
+
+        DocumentFragment<?> result = bucket.lookupIn("id")
+            .get("profile.name")
+            .get("tags[-1]")
+            .exists("missing")
+            .execute().toBlocking().single();
+        assertEquals("foo", result.content(0));
+        assertEquals("b", result.content(1));
+        assertEquals(Boolean.FALSE, result.content(2));
+
+        JsonObject content = bucket.get("id").toBlocking().single().content();
+        assertEquals(JsonArray.from("a", "b"), content.getArray("tags"));
+        assertEquals(3, (int) content.getObject("profile").getInt("visits"));
+    }
+
+    @Test
+    public void shouldAnswerCannedAndPreparedQueries() {
+        SimulatedClusterFacade core = SimulatedClusterFacade.builder().scheduler(scheduler).build();
+        AsyncBucket bucket = bucket(core);
+        core.cannedQuery("SELECT * FROM `default`", JsonObject.create().put("a", 1), JsonObject.create().put("a", 2));
+
+        for (boolean adhoc : new boolean[] { true, false }) {
+            List<AsyncN1qlQueryRow> rows = bucket
+                .query(N1qlQuery.simple("SELECT * FROM `default`", N1qlParams.build().adhoc(adhoc)))
+                .flatMap(new Func1<AsyncN1qlQueryResult, Observable<AsyncN1qlQueryRow>>() {
+                    @Override
+                    public Observable<AsyncN1qlQueryRow> call(AsyncN1qlQueryResult result) {
+                        return result.rows();
+                    }
+                })
+                .toList().toBlocking().single();
+            assertEquals(2, rows.size());
+            assertEquals(2, (int) rows.get(1).value().getInt("a"));
+        }
+    }
+
+    @Test
+    public void shouldInjectFaultsAndLatency() {
+        SimulatedClusterFacade core = SimulatedClusterFacade.builder()
+            .scheduler(scheduler)
+            .latency(5, TimeUnit.MILLISECONDS)
+            .faults(new Func1<CouchbaseRequest, ResponseStatus>() {
+                @Override
+                public ResponseStatus call(CouchbaseRequest request) {
+                    return request instanceof GetRequest ? ResponseStatus.SERVER_BUSY : null;
+                }
+            })
+            .build();
+        AsyncBucket bucket = bucket(core);
+
+        TestSubscriber<JsonDocument> upsert = TestSubscriber.create();
+        bucket.upsert(JsonDocument.create("id", JsonObject.empty())).subscribe(upsert);
+        upsert.assertNoTerminalEvent();
+        scheduler.advanceTimeBy(5, TimeUnit.MILLISECONDS);
+        upsert.assertCompleted();
+        assertEquals(1, core.size());
+
+        TestSubscriber<JsonDocument> get = TestSubscriber.create();
+        bucket.get("id").subscribe(get);
+        scheduler.advanceTimeBy(5, TimeUnit.MILLISECONDS);
+        get.assertError(TemporaryFailureException.class);
+        assertTrue(core.size() == 1);
+    }
+}
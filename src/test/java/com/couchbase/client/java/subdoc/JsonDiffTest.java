@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2017 Couchbase, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.couchbase.client.java.subdoc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Iterator;
+
+import com.couchbase.client.core.message.kv.subdoc.multi.Mutation;
+import com.couchbase.client.java.document.json.JsonArray;
+import com.couchbase.client.java.document.json.JsonObject;
+import org.junit.Test;
+
+/**
+ * Verifies the mutations computed by {@link JsonDiff}.
+ */
+public class JsonDiffTest {
+
+    @Test
+    public void shouldBeEmptyForEqualObjects() {
+        JsonObject original = JsonObject.create().put("a", 1).put("b", JsonArray.from("x", "y"));
+        JsonObject modified = JsonObject.create().put("a", 1L).put("b", JsonArray.from("x", "y"));
+
+        JsonDiff diff = JsonDiff.compute(original, modified);
+
+        assertTrue(diff.isEmpty());
+        assertFalse(diff.isApplicable(1000, 1.0));
+    }
+
+    @Test
+    public void shouldDiffNestedDictionaries() {
+        JsonObject original = JsonObject.create()
+            .put("name", "foo")
+            .put("removed", true)
+            .put("address", JsonObject.create().put("city", "Paris").put("zip", "75000"));
+        JsonObject modified = JsonObject.create()
+            .put("name", "foo")
+            .put("added", 12)
+            .put("address", JsonObject.create().put("city", "Lyon").put("zip", "75000"));
+
+        JsonDiff diff = JsonDiff.compute(original, modified);
+
+        assertEquals(3, diff.specs().size());
+        assertSpec(diff.specs().get(0), Mutation.DELETE, "removed", null);
+        //dictionary iteration order is not guaranteed
+        for (MutationSpec spec : diff.specs().subList(1, 3)) {
+            if (spec.type() == Mutation.DICT_UPSERT) {
+                assertSpec(spec, Mutation.DICT_UPSERT, "added", 12);
+            } else {
+                assertSpec(spec, Mutation.REPLACE, "address.city", "Lyon");
+            }
+        }
+    }
+
+    @Test
+    public void shouldAppendToArraysGrownAtTheirEnd() {
+        JsonObject original = JsonObject.create().put("tags", JsonArray.from("a", "b"));
+        JsonObject modified = JsonObject.create().put("tags", JsonArray.from("a", "b", "c", "d"));
+
+        JsonDiff diff = JsonDiff.compute(original, modified);
+
+        assertEquals(1, diff.specs().size());
+        MutationSpec spec = diff.specs().get(0);
+        assertEquals(Mutation.ARRAY_PUSH_LAST, spec.type());
+        assertEquals("tags", spec.path());
+        Iterator<?> values = ((MultiValue<?>) spec.fragment()).iterator();
+        assertEquals("c", values.next());
+        assertEquals("d", values.next());
+        assertFalse(values.hasNext());
+        //8 bytes of overhead, 4 for the path and "c","d"
+        assertEquals(8 + 4 + 7, diff.encodedSize());
+    }
+
+    @Test
+    public void shouldDiffArrayElementsInPlaceOrReplaceWholeArray() {
+        JsonObject original = JsonObject.create()
+            .put("same", JsonArray.from(1, JsonObject.create().put("x", 1)))
+            .put("shrunk", JsonArray.from(1, 2, 3));
+        JsonObject modified = JsonObject.create()
+            .put("same", JsonArray.from(1, JsonObject.create().put("x", 2)))
+            .put("shrunk", JsonArray.from(1, 2));
+
+        JsonDiff diff = JsonDiff.compute(original, modified);
+
+        assertEquals(2, diff.specs().size());
+        for (MutationSpec spec : diff.specs()) {
+            if (spec.path().equals("same[1].x")) {
+                assertSpec(spec, Mutation.REPLACE, "same[1].x", 2);
+            } else {
+                assertSpec(spec, Mutation.REPLACE, "shrunk", JsonArray.from(1, 2));
+            }
+        }
+    }
+
+    @Test
+    public void shouldEscapeKeysWithPathSyntax() {
+        assertEquals("plain", JsonDiff.path("", "plain"));
+        assertEquals("a.`b.c`", JsonDiff.path("a", "b.c"));
+        assertEquals("`x[0]`", JsonDiff.path("", "x[0]"));
+        assertEquals("`a``b`", JsonDiff.path("", "a`b"));
+    }
+
+    @Test
+    public void shouldNotBeApplicableOverSpecLimitOrRatio() {
+        JsonObject original = JsonObject.create();
+        JsonObject modified = JsonObject.create();
+        for (int i = 0; i <= JsonDiff.MAX_SPECS; i++) {
+            modified.put("k" + i, i);
+        }
+
+        JsonDiff tooMany = JsonDiff.compute(original, modified);
+        assertEquals(JsonDiff.MAX_SPECS + 1, tooMany.specs().size());
+        assertFalse(tooMany.isApplicable(Integer.MAX_VALUE, 1.0));
+
+        JsonDiff single = JsonDiff.compute(original, JsonObject.create().put("k", "value"));
+        assertTrue(single.isApplicable(1000, 0.5));
+        assertFalse(single.isApplicable(single.encodedSize(), 0.5));
+    }
+
+    private static void assertSpec(MutationSpec spec, Mutation type, String path, Object fragment) {
+        assertEquals(type, spec.type());
+        assertEquals(path, spec.path());
+        if (fragment == null) {
+            assertNull(spec.fragment());
+        } else {
+            assertEquals(fragment, spec.fragment());
+        }
+    }
+}
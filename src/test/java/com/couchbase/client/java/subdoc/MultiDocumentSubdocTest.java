@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2017 Couchbase, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.couchbase.client.java.subdoc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.couchbase.client.core.ClusterFacade;
+import com.couchbase.client.core.message.CouchbaseRequest;
+import com.couchbase.client.core.message.CouchbaseResponse;
+import com.couchbase.client.core.message.ResponseStatus;
+import com.couchbase.client.core.message.kv.subdoc.multi.Lookup;
+import com.couchbase.client.core.message.kv.subdoc.multi.MultiLookupResponse;
+import com.couchbase.client.core.message.kv.subdoc.multi.MultiMutationResponse;
+import com.couchbase.client.core.message.kv.subdoc.multi.MultiResult;
+import com.couchbase.client.core.message.kv.subdoc.multi.Mutation;
+import com.couchbase.client.core.message.kv.subdoc.multi.SubMultiLookupRequest;
+import com.couchbase.client.core.message.kv.subdoc.multi.SubMultiMutationRequest;
+import com.couchbase.client.deps.io.netty.buffer.Unpooled;
+import com.couchbase.client.deps.io.netty.util.CharsetUtil;
+import com.couchbase.client.java.env.CouchbaseEnvironment;
+import com.couchbase.client.java.metrics.OperationMetrics;
+import com.couchbase.client.java.transcoder.JacksonTransformers;
+import com.couchbase.client.java.transcoder.subdoc.JacksonFragmentTranscoder;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import rx.Observable;
+
+/**
+ * Verifies the multi-document subdoc lookups and mutations.
+ */
+public class MultiDocumentSubdocTest {
+
+    private ClusterFacade core;
+    private CouchbaseEnvironment environment;
+    private JacksonFragmentTranscoder transcoder;
+    private List<CouchbaseRequest> sent;
+
+    @Before
+    public void setup() {
+        core = mock(ClusterFacade.class);
+        environment = mock(CouchbaseEnvironment.class);
+        when(environment.subdocBatchConcurrency()).thenReturn(2);
+        transcoder = new JacksonFragmentTranscoder(JacksonTransformers.MAPPER);
+        sent = Collections.synchronizedList(new ArrayList<CouchbaseRequest>());
+    }
+
+    @Test
+    public void shouldShareLookupSpecsAndSkipMissingDocuments() {
+        when(core.send(any(CouchbaseRequest.class))).thenAnswer(new Answer<Observable<CouchbaseResponse>>() {
+            @Override
+            public Observable<CouchbaseResponse> answer(InvocationOnMock invocation) throws Throwable {
+                SubMultiLookupRequest request = (SubMultiLookupRequest) invocation.getArguments()[0];
+                sent.add(request);
+                if (request.key().equals("missing")) {
+                    return Observable.<CouchbaseResponse>just(new MultiLookupResponse(ResponseStatus.NOT_EXISTS,
+                        (short) 0x01, "bucket", Collections.<MultiResult<Lookup>>emptyList(), request, 0L));
+                }
+                List<MultiResult<Lookup>> results = Arrays.asList(
+                    MultiResult.create((short) 0, ResponseStatus.SUCCESS, "status", Lookup.GET,
+                        Unpooled.copiedBuffer("\"active\"", CharsetUtil.UTF_8)),
+                    MultiResult.create((short) 0, ResponseStatus.SUCCESS, "updatedAt", Lookup.EXIST,
+                        Unpooled.EMPTY_BUFFER));
+                return Observable.<CouchbaseResponse>just(new MultiLookupResponse(ResponseStatus.SUCCESS,
+                    (short) 0, "bucket", results, request, 12L));
+            }
+        });
+
+        List<DocumentFragment<Lookup>> fragments = new AsyncLookupInBuilder(core, "bucket", environment, transcoder,
+            Arrays.asList("a", "missing", "b"), OperationMetrics.DISABLED)
+            .get("status")
+            .exists("updatedAt")
+            .execute()
+            .toList()
+            .toBlocking()
+            .single();
+
+        assertEquals(2, fragments.size());
+        for (DocumentFragment<Lookup> fragment : fragments) {
+            assertEquals("active", fragment.content("status"));
+            assertEquals(true, fragment.content("updatedAt"));
+            assertEquals(12L, fragment.cas());
+        }
+        assertEquals(3, sent.size());
+        SubMultiLookupRequest first = (SubMultiLookupRequest) sent.get(0);
+        for (CouchbaseRequest request : sent) {
+            List<?> commands = ((SubMultiLookupRequest) request).commands();
+            assertSame(first.commands().get(0), commands.get(0));
+            assertSame(first.commands().get(1), commands.get(1));
+        }
+    }
+
+    @Test
+    public void shouldShareEncodedFragmentsAcrossMutations() {
+        when(core.send(any(CouchbaseRequest.class))).thenAnswer(new Answer<Observable<CouchbaseResponse>>() {
+            @Override
+            public Observable<CouchbaseResponse> answer(InvocationOnMock invocation) throws Throwable {
+                SubMultiMutationRequest request = (SubMultiMutationRequest) invocation.getArguments()[0];
+                sent.add(request);
+                return Observable.<CouchbaseResponse>just(new MultiMutationResponse("bucket", request, 34L, null,
+                    Collections.<MultiResult<Mutation>>emptyList()));
+            }
+        });
+
+        List<DocumentFragment<Mutation>> fragments = new AsyncMutateInBuilder(core, "bucket", environment,
+            transcoder, Arrays.asList("a", "b", "c"))
+            .upsert("status", "archived")
+            .remove("draft")
+            .execute()
+            .toList()
+            .toBlocking()
+            .single();
+
+        assertEquals(3, fragments.size());
+        assertEquals(3, sent.size());
+        for (CouchbaseRequest request : sent) {
+            String content = ((SubMultiMutationRequest) request).content().toString(CharsetUtil.UTF_8);
+            assertTrue(content, content.contains("status\"archived\""));
+            assertTrue(content, content.contains("draft"));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectCasOnMultiDocumentMutation() {
+        new AsyncMutateInBuilder(core, "bucket", environment, transcoder, Arrays.asList("a", "b"))
+            .withCas(1234L)
+            .remove("draft")
+            .execute();
+    }
+}
@@ -17,6 +17,10 @@
 package com.couchbase.client.java.subdoc;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.util.Arrays;
 import java.util.Collections;
@@ -24,9 +28,13 @@ import java.util.Collections;
 import com.couchbase.client.core.message.ResponseStatus;
 import com.couchbase.client.core.message.kv.subdoc.multi.Lookup;
 import com.couchbase.client.core.message.kv.subdoc.multi.Mutation;
+import com.couchbase.client.deps.io.netty.util.CharsetUtil;
+import com.couchbase.client.java.document.json.JsonObject;
 import com.couchbase.client.java.error.TranscodingException;
 import com.couchbase.client.java.error.subdoc.PathMismatchException;
 import com.couchbase.client.java.error.subdoc.XattrOrderingException;
+import com.couchbase.client.java.transcoder.JacksonTransformers;
+import com.couchbase.client.java.transcoder.subdoc.JacksonFragmentTranscoder;
 import org.junit.Test;
 
 /**
@@ -105,4 +113,76 @@ public class SubDocumentTest {
             .remove("bar", new SubdocOptionsBuilder().xattr(true))
             .execute();
     }
+
+    @Test
+    public void shouldDecodeLazyFragmentsOnAccess() {
+        JacksonFragmentTranscoder transcoder = new JacksonFragmentTranscoder(JacksonTransformers.MAPPER);
+        SubdocOperationResult<Lookup> object = SubdocOperationResult.createLazyResult("id", "a", Lookup.GET,
+            ResponseStatus.SUCCESS, "{\"b\":1}".getBytes(CharsetUtil.UTF_8), false, transcoder);
+        SubdocOperationResult<Lookup> invalid = SubdocOperationResult.createLazyResult("id", "c", Lookup.GET,
+            ResponseStatus.SUCCESS, "{nope".getBytes(CharsetUtil.UTF_8), true, transcoder);
+        DocumentFragment<Lookup> fragment = new DocumentFragment<Lookup>("id", 123L, null,
+            Arrays.asList(object, invalid));
+
+        assertTrue(fragment.exists("c"));
+        assertEquals(JsonObject.create().put("b", 1), fragment.content("a", JsonObject.class));
+        assertEquals(fragment.content("a"), fragment.content(0));
+        assertNull(fragment.rawContent("a"));
+        assertEquals("{nope", new String(fragment.rawContent(1), CharsetUtil.UTF_8));
+        assertNull(fragment.content("d"));
+        assertFalse(fragment.exists("d"));
+    }
+
+    @Test(expected = TranscodingException.class)
+    public void shouldThrowWhenLazyFragmentCannotBeDecoded() {
+        SubdocOperationResult<Lookup> invalid = SubdocOperationResult.createLazyResult("id", "c", Lookup.GET,
+            ResponseStatus.SUCCESS, "{nope".getBytes(CharsetUtil.UTF_8), false, new JacksonFragmentTranscoder(JacksonTransformers.MAPPER));
+        new DocumentFragment<Lookup>("id", 123L, null, Collections.singletonList(invalid)).content("c");
+    }
+
+    @Test
+    public void shouldReportUndecodableLazyFragmentConsistentlyWhateverTheCallOrder() {
+        JacksonFragmentTranscoder transcoder = new JacksonFragmentTranscoder(JacksonTransformers.MAPPER);
+        DocumentFragment<Lookup> existsFirst = new DocumentFragment<Lookup>("id", 123L, null, Collections.singletonList(
+            SubdocOperationResult.createLazyResult("id", "c", Lookup.GET, ResponseStatus.SUCCESS,
+                "{nope".getBytes(CharsetUtil.UTF_8), true, transcoder)));
+        DocumentFragment<Lookup> contentFirst = new DocumentFragment<Lookup>("id", 123L, null, Collections.singletonList(
+            SubdocOperationResult.createLazyResult("id", "c", Lookup.GET, ResponseStatus.SUCCESS,
+                "{nope".getBytes(CharsetUtil.UTF_8), true, transcoder)));
+
+        assertTrue(existsFirst.exists("c"));
+        assertTrue(existsFirst.exists(0));
+        try {
+            existsFirst.content("c");
+            fail();
+        } catch (TranscodingException e) {
+            //expected
+        }
+        assertTrue(existsFirst.exists("c"));
+        assertEquals("{nope", new String(existsFirst.rawContent("c"), CharsetUtil.UTF_8));
+
+        try {
+            contentFirst.content(0);
+            fail();
+        } catch (TranscodingException e) {
+            //expected
+        }
+        assertTrue(contentFirst.exists("c"));
+        assertTrue(contentFirst.exists(0));
+        assertEquals("{nope", new String(contentFirst.rawContent(0), CharsetUtil.UTF_8));
+    }
+
+    @Test
+    public void shouldReturnFirstResultForRepeatedPath() {
+        SubdocOperationResult<Lookup> first = SubdocOperationResult.createResult("a", Lookup.EXIST,
+            ResponseStatus.SUCCESS, true);
+        SubdocOperationResult<Lookup> second = SubdocOperationResult.createResult("a", Lookup.EXIST,
+            ResponseStatus.SUBDOC_PATH_NOT_FOUND, false);
+        DocumentFragment<Lookup> fragment = new DocumentFragment<Lookup>("id", 123L, null,
+            Arrays.asList(first, second));
+
+        assertEquals(true, fragment.content("a"));
+        assertEquals(ResponseStatus.SUCCESS, fragment.status("a"));
+        assertEquals(false, fragment.content(1));
+    }
 }
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2017 Couchbase, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.couchbase.client.java.transcoder;
+
+import com.couchbase.client.core.lang.Tuple2;
+import com.couchbase.client.core.message.ResponseStatus;
+import com.couchbase.client.deps.io.netty.buffer.ByteBuf;
+import com.couchbase.client.deps.io.netty.buffer.Unpooled;
+import com.couchbase.client.deps.io.netty.util.CharsetUtil;
+import com.couchbase.client.java.document.PassThroughDocument;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PassThroughTranscoderTest {
+
+    private PassThroughTranscoder converter;
+
+    @Before
+    public void setup() {
+        converter = new PassThroughTranscoder();
+    }
+
+    @Test
+    public void shouldEncodeWithoutCopying() {
+        ByteBuf content = Unpooled.copiedBuffer("{\"a\":1}", CharsetUtil.UTF_8);
+        PassThroughDocument document = PassThroughDocument.create("id", content, TranscoderUtils.JSON_COMPAT_FLAGS);
+        Tuple2<ByteBuf, Integer> encoded = converter.encode(document);
+
+        assertSame(content, encoded.value1());
+        assertEquals(TranscoderUtils.JSON_COMPAT_FLAGS, (long) encoded.value2());
+        content.release();
+    }
+
+    @Test
+    public void shouldDecodeAnyFormatWithoutCopying() {
+        ByteBuf content = Unpooled.copiedBuffer("value", CharsetUtil.UTF_8);
+        PassThroughDocument document = converter.decode("id", content, 1234, 0,
+            TranscoderUtils.BINARY_COMMON_FLAGS, ResponseStatus.SUCCESS);
+
+        assertSame(content, document.content());
+        assertEquals(TranscoderUtils.BINARY_COMMON_FLAGS, document.flags());
+        assertEquals(1234, document.cas());
+        assertEquals(1, content.refCnt());
+
+        assertTrue(document.release());
+        assertEquals(0, content.refCnt());
+        assertFalse(document.release());
+    }
+
+    @Test
+    public void shouldKeepFlagsWhenForwarding() {
+        ByteBuf content = Unpooled.copiedBuffer("value", CharsetUtil.UTF_8);
+        PassThroughDocument read = converter.decode("id", content, 1234, 0,
+            TranscoderUtils.STRING_COMMON_FLAGS, ResponseStatus.SUCCESS);
+        PassThroughDocument forwarded = PassThroughDocument.from(read, "other");
+
+        Tuple2<ByteBuf, Integer> encoded = converter.encode(forwarded);
+        assertSame(content, encoded.value1());
+        assertEquals(TranscoderUtils.STRING_COMMON_FLAGS, (long) encoded.value2());
+        content.release();
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2017 Couchbase, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.couchbase.client.java.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import rx.Observable;
+import rx.functions.Action1;
+import rx.observers.TestSubscriber;
+import rx.schedulers.Schedulers;
+
+/**
+ * Verifies the ordering, batching and backpressure of the {@link ParallelDecoder}.
+ */
+public class ParallelDecoderTest {
+
+    private final AtomicInteger decoded = new AtomicInteger();
+    private final Set<String> threads = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    private final Action1<Integer> decode = new Action1<Integer>() {
+        @Override
+        public void call(Integer row) {
+            threads.add(Thread.currentThread().getName());
+            decoded.incrementAndGet();
+            if (row % 7 == 0) {
+                //makes some batches slower than the following ones
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    };
+
+    @Test
+    public void shouldDecodeFullBatchesInParallelAndPreserveOrder() {
+        ParallelDecoder decoder = new ParallelDecoder(Schedulers.computation(), 10, 4);
+
+        List<Integer> rows = decoder.decode(Observable.range(0, 1005), decode).toList().toBlocking().single();
+
+        List<Integer> expected = new ArrayList<Integer>();
+        for (int i = 0; i < 1005; i++) {
+            expected.add(i);
+        }
+        assertEquals(expected, rows);
+        //the trailing partial batch is left to the consumer
+        assertEquals(1000, decoded.get());
+        assertFalse(threads.contains(Thread.currentThread().getName()));
+    }
+
+    @Test
+    public void shouldLeaveSmallResultsInline() {
+        ParallelDecoder decoder = new ParallelDecoder(Schedulers.computation(), 10, 4);
+
+        List<Integer> rows = decoder.decode(Observable.range(0, 9), decode).toList().toBlocking().single();
+
+        assertEquals(9, rows.size());
+        assertEquals(0, decoded.get());
+    }
+
+    @Test
+    public void shouldOnlyEmitRequestedRows() {
+        ParallelDecoder decoder = new ParallelDecoder(Schedulers.computation(), 10, 2);
+        TestSubscriber<Integer> subscriber = new TestSubscriber<Integer>(5);
+
+        decoder.decode(Observable.range(0, 100), decode).subscribe(subscriber);
+
+        subscriber.awaitValueCount(5, 1, TimeUnit.SECONDS);
+        subscriber.assertValues(0, 1, 2, 3, 4);
+        subscriber.requestMore(95);
+        subscriber.awaitTerminalEvent(1, TimeUnit.SECONDS);
+        subscriber.assertValueCount(100);
+        subscriber.assertCompleted();
+    }
+
+    @Test
+    public void shouldNotTouchRowsWhenInline() {
+        Observable<Integer> rows = Observable.range(0, 100);
+
+        assertFalse(ParallelDecoder.INLINE.isParallel());
+        assertSame(rows, ParallelDecoder.INLINE.decode(rows, decode));
+        assertSame(ParallelDecoder.INLINE, ParallelDecoder.create(null));
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2017 Couchbase, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.couchbase.client.java.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import rx.Observable;
+import rx.functions.Action0;
+import rx.observers.TestSubscriber;
+import rx.subjects.PublishSubject;
+
+/**
+ * Verifies the functionality of the {@link RequestCoalescer}.
+ */
+public class RequestCoalescerTest {
+
+    @Test
+    public void shouldShareInFlightExecution() {
+        RequestCoalescer<String, String> coalescer = new RequestCoalescer<String, String>();
+        final AtomicInteger subscriptions = new AtomicInteger();
+        PublishSubject<String> response = PublishSubject.create();
+        Observable<String> source = response.doOnSubscribe(new Action0() {
+            @Override
+            public void call() {
+                subscriptions.incrementAndGet();
+            }
+        });
+
+        TestSubscriber<String> first = TestSubscriber.create();
+        TestSubscriber<String> second = TestSubscriber.create();
+        coalescer.coalesce("key", source).subscribe(first);
+        coalescer.coalesce("key", source).subscribe(second);
+
+        assertEquals(1, subscriptions.get());
+        assertEquals(1, coalescer.inFlight());
+
+        response.onNext("value");
+        response.onCompleted();
+
+        first.assertValue("value");
+        first.assertCompleted();
+        second.assertValue("value");
+        second.assertCompleted();
+        assertEquals(0, coalescer.inFlight());
+    }
+
+    @Test
+    public void shouldNotShareBetweenDifferentKeys() {
+        RequestCoalescer<String, String> coalescer = new RequestCoalescer<String, String>();
+
+        TestSubscriber<String> first = TestSubscriber.create();
+        TestSubscriber<String> second = TestSubscriber.create();
+        coalescer.coalesce("a", Observable.just("1")).subscribe(first);
+        coalescer.coalesce("b", Observable.just("2")).subscribe(second);
+
+        first.assertValue("1");
+        second.assertValue("2");
+    }
+
+    @Test
+    public void shouldReleaseKeyAfterTermination() {
+        RequestCoalescer<String, String> coalescer = new RequestCoalescer<String, String>();
+
+        TestSubscriber<String> first = TestSubscriber.create();
+        coalescer.coalesce("key", Observable.<String>error(new IllegalStateException())).subscribe(first);
+        first.assertError(IllegalStateException.class);
+        assertEquals(0, coalescer.inFlight());
+
+        TestSubscriber<String> second = TestSubscriber.create();
+        coalescer.coalesce("key", Observable.just("value")).subscribe(second);
+        second.assertValue("value");
+    }
+}
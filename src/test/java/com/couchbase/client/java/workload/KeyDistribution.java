@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2017 Couchbase, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.couchbase.client.java.workload;
+
+import java.util.Random;
+
+/**
+ * Picks which of the records of a {@link Workload} an operation targets.
+ *
+ * Records are numbered from 0 (inclusive) to the record count (exclusive). Implementations are stateless,
+ * the randomness comes from the {@link Random} passed in so that each worker can use its own seeded instance.
+ *
+ * @since 2.5.2
+ */
+public abstract class KeyDistribution {
+
+    /**
+     * The skew YCSB uses for its zipfian workloads.
+     */
+    public static final double DEFAULT_ZIPFIAN_CONSTANT = 0.99;
+
+    private final long count;
+
+    protected KeyDistribution(long count) {
+        if (count < 1) {
+            throw new IllegalArgumentException("At least one record is needed");
+        }
+        this.count = count;
+    }
+
+    /**
+     * @return the number of records the distribution picks from.
+     */
+    public long count() {
+        return count;
+    }
+
+    /**
+     * Picks the next record.
+     *
+     * @param random the source of randomness.
+     * @return the record number, between 0 (inclusive) and {@link #count()} (exclusive).
+     */
+    public abstract long next(Random random);
+
+    /**
+     * Every record is equally likely to be picked.
+     */
+    public static KeyDistribution uniform(long count) {
+        return new Uniform(count);
+    }
+
+    /**
+     * Records are picked following a zipfian distribution with the {@link #DEFAULT_ZIPFIAN_CONSTANT},
+     * lower record numbers being the most popular.
+     */
+    public static KeyDistribution zipfian(long count) {
+        return zipfian(count, DEFAULT_ZIPFIAN_CONSTANT);
+    }
+
+    /**
+     * Records are picked following a zipfian distribution with the given skew, lower record numbers
+     * being the most popular.
+     *
+     * Computing the distribution is linear in the number of records, which is done once here.
+     */
+    public static KeyDistribution zipfian(long count, double theta) {
+        return new Zipfian(count, theta);
+    }
+
+    /**
+     * A fraction of the operations targets a fraction of the records (the hot set, made of the lowest record
+     * numbers), both uniformly distributed.
+     *
+     * @param count the number of records.
+     * @param hotSetFraction the fraction of the records in the hot set.
+     * @param hotOperationFraction the fraction of the operations targeting the hot set.
+     */
+    public static KeyDistribution hotspot(long count, double hotSetFraction, double hotOperationFraction) {
+        return new Hotspot(count, hotSetFraction, hotOperationFraction);
+    }
+
+    static long uniform(Random random, long from, long to) {
+        return from + Math.min(to - from - 1, (long) (random.nextDouble() * (to - from)));
+    }
+
+    private static class Uniform extends KeyDistribution {
+
+        Uniform(long count) {
+            super(count);
+        }
+
+        @Override
+        public long next(Random random) {
+            return uniform(random, 0, count());
+        }
+
+        @Override
+        public String toString() {
+            return "uniform(" + count() + ")";
+        }
+    }
+
+    /**
+     * The zipfian generator from "Quickly Generating Billion-Record Synthetic Databases" (Gray et al.),
+     * as used by YCSB.
+     */
+    private static class Zipfian extends KeyDistribution {
+
+        private final double theta;
+        private final double zetan;
+        private final double alpha;
+        private final double eta;
+
+        Zipfian(long count, double theta) {
+            super(count);
+            if (theta <= 0 || theta >= 1) {
+                throw new IllegalArgumentException("The zipfian constant must be between 0 and 1 (exclusive)");
+            }
+            this.theta = theta;
+            this.zetan = zeta(count, theta);
+            this.alpha = 1.0 / (1.0 - theta);
+            this.eta = (1 - Math.pow(2.0 / count, 1 - theta)) / (1 - zeta(2, theta) / zetan);
+        }
+
+        private static double zeta(long n, double theta) {
+            double sum = 0;
+            for (long i = 0; i < n; i++) {
+                sum += 1 / Math.pow(i + 1, theta);
+            }
+            return sum;
+        }
+
+        @Override
+        public long next(Random random) {
+            double u = random.nextDouble();
+            double uz = u * zetan;
+            if (uz < 1.0) {
+                return 0;
+            }
+            if (count() > 1 && uz < 1.0 + Math.pow(0.5, theta)) {
+                return 1;
+            }
+            long next = (long) (count() * Math.pow(eta * u - eta + 1, alpha));
+            return Math.min(next, count() - 1);
+        }
+
+        @Override
+        public String toString() {
+            return "zipfian(" + count() + ", " + theta + ")";
+        }
+    }
+
+    private static class Hotspot extends KeyDistribution {
+
+        private final long hotSetSize;
+        private final double hotOperationFraction;
+
+        Hotspot(long count, double hotSetFraction, double hotOperationFraction) {
+            super(count);
+            if (hotSetFraction < 0 || hotSetFraction > 1 || hotOperationFraction < 0 || hotOperationFraction > 1) {
+                throw new IllegalArgumentException("The hot set and hot operation fractions must be between 0 and 1");
+            }
+            this.hotSetSize = Math.max(1, (long) (count * hotSetFraction));
+            this.hotOperationFraction = hotOperationFraction;
+        }
+
+        @Override
+        public long next(Random random) {
+            if (hotSetSize >= count() || random.nextDouble() < hotOperationFraction) {
+                return uniform(random, 0, hotSetSize);
+            }
+            return uniform(random, hotSetSize, count());
+        }
+
+        @Override
+        public String toString() {
+            return "hotspot(" + count() + ", " + hotSetSize + ", " + hotOperationFraction + ")";
+        }
+    }
+}
@@ -0,0 +1,336 @@
+/*
+ * Copyright (c) 2017 Couchbase, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.couchbase.client.java.workload;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Describes a workload run by a {@link WorkloadRunner}: the records it works on, the mix of operations,
+ * how keys are picked and how much concurrency is applied.
+ *
+ * Records are JSON documents with a `data` field holding a random string of the configured size and a
+ * `counter` field, stored under the key prefix followed by the record number.
+ *
+ * ```
+ * Workload workload = Workload.builder()
+ *     .recordCount(100000)
+ *     .operationCount(1000000)
+ *     .mix(WorkloadOperation.READ, 0.95)
+ *     .mix(WorkloadOperation.UPDATE, 0.05)
+ *     .keyDistribution(KeyDistribution.zipfian(100000))
+ *     .concurrency(64)
+ *     .build();
+ * ```
+ *
+ * @since 2.5.2
+ */
+public class Workload {
+
+    private final long recordCount;
+    private final long operationCount;
+    private final long durationMillis;
+    private final Map<WorkloadOperation, Double> mix;
+    private final KeyDistribution keyDistribution;
+    private final int minValueSize;
+    private final int maxValueSize;
+    private final int concurrency;
+    private final boolean async;
+    private final boolean futures;
+    private final String keyPrefix;
+    private final String queryStatement;
+    private final long seed;
+
+    private Workload(Builder builder) {
+        this.recordCount = builder.recordCount;
+        this.operationCount = builder.operationCount;
+        this.durationMillis = builder.durationMillis;
+        this.keyDistribution = builder.keyDistribution == null
+            ? KeyDistribution.uniform(builder.recordCount) : builder.keyDistribution;
+        this.minValueSize = builder.minValueSize;
+        this.maxValueSize = builder.maxValueSize;
+        this.concurrency = builder.concurrency;
+        this.async = builder.async;
+        this.futures = builder.futures;
+        this.keyPrefix = builder.keyPrefix;
+        this.queryStatement = builder.queryStatement;
+        this.seed = builder.seed;
+
+        Map<WorkloadOperation, Double> mix = new EnumMap<WorkloadOperation, Double>(WorkloadOperation.class);
+        if (builder.mix.isEmpty()) {
+            mix.put(WorkloadOperation.READ, 0.5);
+            mix.put(WorkloadOperation.UPDATE, 0.5);
+        } else {
+            mix.putAll(builder.mix);
+        }
+        if (mix.containsKey(WorkloadOperation.QUERY) && queryStatement == null) {
+            throw new IllegalArgumentException("A query statement is needed for QUERY operations");
+        }
+        if (keyDistribution.count() > recordCount) {
+            throw new IllegalArgumentException("The key distribution spans more than the record count");
+        }
+        this.mix = Collections.unmodifiableMap(mix);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public long recordCount() {
+        return recordCount;
+    }
+
+    /**
+     * @return the number of operations to run, 0 if the workload is bounded by its duration only.
+     */
+    public long operationCount() {
+        return operationCount;
+    }
+
+    /**
+     * @return the maximum duration of the run in milliseconds, 0 if the workload is bounded by its operation
+     * count only.
+     */
+    public long durationMillis() {
+        return durationMillis;
+    }
+
+    /**
+     * @return the relative weight of each operation, operations not present are not run.
+     */
+    public Map<WorkloadOperation, Double> mix() {
+        return mix;
+    }
+
+    public KeyDistribution keyDistribution() {
+        return keyDistribution;
+    }
+
+    public int minValueSize() {
+        return minValueSize;
+    }
+
+    public int maxValueSize() {
+        return maxValueSize;
+    }
+
+    /**
+     * @return the number of worker threads for the blocking API, or of operations in flight for the async API.
+     */
+    public int concurrency() {
+        return concurrency;
+    }
+
+    /**
+     * @return true if the workload goes through the async API, false for the blocking API.
+     */
+    public boolean async() {
+        return async;
+    }
+
+    /**
+     * @return true if the blocking workers wait on {@link com.couchbase.client.java.future.FutureBucket} operations
+     *   instead of calling the blocking API.
+     */
+    public boolean futures() {
+        return futures;
+    }
+
+    public String keyPrefix() {
+        return keyPrefix;
+    }
+
+    public String queryStatement() {
+        return queryStatement;
+    }
+
+    public long seed() {
+        return seed;
+    }
+
+    /**
+     * Returns the key of the given record.
+     *
+     * @param record the record number.
+     * @return the document ID of the record.
+     */
+    public String key(long record) {
+        return keyPrefix + record;
+    }
+
+    @Override
+    public String toString() {
+        return "Workload{" +
+            "recordCount=" + recordCount +
+            ", operationCount=" + operationCount +
+            ", durationMillis=" + durationMillis +
+            ", mix=" + mix +
+            ", keyDistribution=" + keyDistribution +
+            ", valueSize=" + minValueSize + "-" + maxValueSize +
+            ", concurrency=" + concurrency +
+            ", async=" + async +
+            ", futures=" + futures +
+            ", keyPrefix='" + keyPrefix + '\'' +
+            ", queryStatement='" + queryStatement + '\'' +
+            ", seed=" + seed +
+            '}';
+    }
+
+    public static class Builder {
+
+        private long recordCount = 1000;
+        private long operationCount = 10000;
+        private long durationMillis;
+        private final Map<WorkloadOperation, Double> mix =
+            new EnumMap<WorkloadOperation, Double>(WorkloadOperation.class);
+        private KeyDistribution keyDistribution;
+        private int minValueSize = 1024;
+        private int maxValueSize = 1024;
+        private int concurrency = 16;
+        private boolean async = true;
+        private boolean futures;
+        private String keyPrefix = "user";
+        private String queryStatement;
+        private long seed = System.nanoTime();
+
+        protected Builder() {
+        }
+
+        /**
+         * Sets the number of records loaded and targeted by the operations (1000 by default).
+         */
+        public Builder recordCount(long recordCount) {
+            if (recordCount < 1) {
+                throw new IllegalArgumentException("At least one record is needed");
+            }
+            this.recordCount = recordCount;
+            return this;
+        }
+
+        /**
+         * Sets the number of operations to run (10000 by default), 0 to only bound the run by its duration.
+         */
+        public Builder operationCount(long operationCount) {
+            this.operationCount = operationCount;
+            return this;
+        }
+
+        /**
+         * Bounds the run by a duration, the run stops at whichever of the operation count and the duration
+         * comes first.
+         */
+        public Builder duration(long duration, TimeUnit unit) {
+            this.durationMillis = unit.toMillis(duration);
+            return this;
+        }
+
+        /**
+         * Sets the relative weight of an operation, a read/update mix of 50/50 is used if none is set.
+         */
+        public Builder mix(WorkloadOperation operation, double weight) {
+            if (weight < 0) {
+                throw new IllegalArgumentException("The weight of an operation cannot be negative");
+            }
+            if (weight == 0) {
+                mix.remove(operation);
+            } else {
+                mix.put(operation, weight);
+            }
+            return this;
+        }
+
+        /**
+         * Sets how records are picked, uniformly over all the records by default.
+         */
+        public Builder keyDistribution(KeyDistribution keyDistribution) {
+            this.keyDistribution = keyDistribution;
+            return this;
+        }
+
+        public Builder valueSize(int valueSize) {
+            return valueSize(valueSize, valueSize);
+        }
+
+        /**
+         * Sets the bounds of the size of the data field of records, uniformly distributed.
+         */
+        public Builder valueSize(int min, int max) {
+            if (min < 0 || max < min) {
+                throw new IllegalArgumentException("Invalid value size bounds " + min + " and " + max);
+            }
+            this.minValueSize = min;
+            this.maxValueSize = max;
+            return this;
+        }
+
+        public Builder concurrency(int concurrency) {
+            if (concurrency < 1) {
+                throw new IllegalArgumentException("The concurrency must be at least 1");
+            }
+            this.concurrency = concurrency;
+            return this;
+        }
+
+        /**
+         * Sets whether the async API (the default) or the blocking API is used.
+         */
+        public Builder async(boolean async) {
+            this.async = async;
+            return this;
+        }
+
+        /**
+         * Sets whether the worker threads of the blocking API go through {@link com.couchbase.client.java.AsyncBucket#futures()} and wait on
+         * the returned futures for key/value and sub-document operations, queries still use the blocking API.
+         *
+         * This has no effect on workloads going through the async API.
+         */
+        public Builder futures(boolean futures) {
+            this.futures = futures;
+            return this;
+        }
+
+        public Builder keyPrefix(String keyPrefix) {
+            this.keyPrefix = keyPrefix;
+            return this;
+        }
+
+        /**
+         * Sets the N1QL statement run by {@link WorkloadOperation#QUERY} operations.
+         */
+        public Builder queryStatement(String queryStatement) {
+            this.queryStatement = queryStatement;
+            return this;
+        }
+
+        /**
+         * Sets the seed of the random sources, making the sequence of operations reproducible.
+         */
+        public Builder seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        public Workload build() {
+            if (operationCount <= 0 && durationMillis <= 0) {
+                throw new IllegalArgumentException("Either an operation count or a duration is needed");
+            }
+            return new Workload(this);
+        }
+    }
+}
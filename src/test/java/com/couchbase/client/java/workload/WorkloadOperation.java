@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2017 Couchbase, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.couchbase.client.java.workload;
+
+/**
+ * The operations a {@link Workload} is made of.
+ *
+ * @since 2.5.2
+ */
+public enum WorkloadOperation {
+
+    /**
+     * Gets a whole record.
+     */
+    READ,
+
+    /**
+     * Replaces a whole record with a new value, through an upsert.
+     */
+    UPDATE,
+
+    /**
+     * Inserts a new record after the loaded ones.
+     */
+    INSERT,
+
+    /**
+     * Gets a single field of a record through a sub-document lookup.
+     */
+    SUBDOC_READ,
+
+    /**
+     * Updates a single field of a record through a sub-document mutation.
+     */
+    SUBDOC_UPDATE,
+
+    /**
+     * Runs the N1QL statement of the workload and consumes all its rows.
+     */
+    QUERY
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2017 Couchbase, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.couchbase.client.java.workload;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.couchbase.client.deps.org.HdrHistogram.AbstractHistogram;
+
+/**
+ * The outcome of a {@link WorkloadRunner} run: throughput, error counts and latency percentiles per operation.
+ *
+ * Latencies are those of the successful operations, measured from the call into the SDK to the completion of the
+ * result, and recorded in nanoseconds.
+ *
+ * @since 2.5.2
+ */
+public class WorkloadReport {
+
+    private static final double[] PERCENTILES = { 50, 95, 99, 99.9 };
+
+    private final Workload workload;
+    private final long elapsedNanos;
+    private final Map<WorkloadOperation, AbstractHistogram> latencies;
+    private final Map<WorkloadOperation, Long> errors;
+
+    WorkloadReport(Workload workload, long elapsedNanos, Map<WorkloadOperation, AbstractHistogram> latencies,
+        Map<WorkloadOperation, Long> errors) {
+        this.workload = workload;
+        this.elapsedNanos = elapsedNanos;
+        this.latencies = Collections.unmodifiableMap(new EnumMap<WorkloadOperation, AbstractHistogram>(latencies));
+        this.errors = Collections.unmodifiableMap(new EnumMap<WorkloadOperation, Long>(errors));
+    }
+
+    public Workload workload() {
+        return workload;
+    }
+
+    public long elapsed(TimeUnit unit) {
+        return unit.convert(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return the number of operations run, successful or not.
+     */
+    public long operations() {
+        long operations = 0;
+        for (WorkloadOperation operation : latencies.keySet()) {
+            operations += operations(operation);
+        }
+        return operations;
+    }
+
+    /**
+     * @return the number of operations of the given type run, successful or not.
+     */
+    public long operations(WorkloadOperation operation) {
+        AbstractHistogram histogram = latencies.get(operation);
+        return (histogram == null ? 0 : histogram.getTotalCount()) + errors(operation);
+    }
+
+    public long errors() {
+        long total = 0;
+        for (Long count : errors.values()) {
+            total += count;
+        }
+        return total;
+    }
+
+    public long errors(WorkloadOperation operation) {
+        Long count = errors.get(operation);
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * @return the number of operations per second over the whole run.
+     */
+    public double throughput() {
+        return elapsedNanos == 0 ? 0 : operations() * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+    }
+
+    /**
+     * Returns the latency at the given percentile of the successful operations of the given type.
+     *
+     * @param operation the operation.
+     * @param percentile the percentile, between 0 and 100.
+     * @param unit the unit of the returned latency.
+     * @return the latency, 0 if no operation of that type succeeded.
+     */
+    public long latency(WorkloadOperation operation, double percentile, TimeUnit unit) {
+        AbstractHistogram histogram = latencies.get(operation);
+        if (histogram == null || histogram.getTotalCount() == 0) {
+            return 0;
+        }
+        return unit.convert(histogram.getValueAtPercentile(percentile), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%d operations in %d ms, %.1f ops/s, %d errors%n",
+            operations(), elapsed(TimeUnit.MILLISECONDS), throughput(), errors()));
+        sb.append(String.format("%-14s %10s %8s %10s", "operation", "count", "errors", "mean(us)"));
+        for (double percentile : PERCENTILES) {
+            sb.append(String.format(" %10s", "p" + (percentile == Math.rint(percentile)
+                ? String.valueOf((long) percentile) : String.valueOf(percentile)) + "(us)"));
+        }
+        sb.append(String.format(" %10s%n", "max(us)"));
+        for (Map.Entry<WorkloadOperation, AbstractHistogram> entry : latencies.entrySet()) {
+            AbstractHistogram histogram = entry.getValue();
+            boolean empty = histogram.getTotalCount() == 0;
+            sb.append(String.format("%-14s %10d %8d %10.1f", entry.getKey(), operations(entry.getKey()),
+                errors(entry.getKey()), empty ? 0.0 : histogram.getMean() / 1000.0));
+            for (double percentile : PERCENTILES) {
+                sb.append(String.format(" %10d", latency(entry.getKey(), percentile, TimeUnit.MICROSECONDS)));
+            }
+            sb.append(String.format(" %10d%n", empty ? 0 : TimeUnit.NANOSECONDS.toMicros(histogram.getMaxValue())));
+        }
+        return sb.toString();
+    }
+}
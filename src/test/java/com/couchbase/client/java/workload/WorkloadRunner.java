@@ -0,0 +1,439 @@
+/*
+ * Copyright (c) 2017 Couchbase, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.couchbase.client.java.workload;
+
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.couchbase.client.core.CouchbaseException;
+import com.couchbase.client.deps.org.HdrHistogram.AbstractHistogram;
+import com.couchbase.client.deps.org.HdrHistogram.ConcurrentHistogram;
+import com.couchbase.client.java.AsyncBucket;
+import com.couchbase.client.java.Bucket;
+import com.couchbase.client.java.document.JsonDocument;
+import com.couchbase.client.java.document.json.JsonObject;
+import com.couchbase.client.java.future.FutureBucket;
+import com.couchbase.client.java.query.AsyncN1qlQueryResult;
+import com.couchbase.client.java.query.N1qlQuery;
+import com.couchbase.client.java.query.N1qlQueryResult;
+import rx.Observable;
+import rx.functions.Action1;
+import rx.functions.Func0;
+import rx.functions.Func1;
+
+/**
+ * Runs a {@link Workload} through the full SDK stack against a bucket, which can be backed by a cluster,
+ * CouchbaseMock or a {@link com.couchbase.client.java.simulator.SimulatedClusterFacade}.
+ *
+ * The records are created with {@link #load(Bucket)}, then {@link #run(Bucket)} runs the operations and reports
+ * their throughput and latencies. With the async API operations are generated on demand and kept in flight up to
+ * the configured concurrency, with the blocking API each of the worker threads runs one operation at a time.
+ *
+ * @since 2.5.2
+ */
+public class WorkloadRunner {
+
+    private static final int HISTOGRAM_PRECISION = 3;
+    private static final String DATA_FIELD = "data";
+    private static final String COUNTER_FIELD = "counter";
+
+    private final Workload workload;
+    private final WorkloadOperation[] operations;
+    private final double[] thresholds;
+    /** random characters the record values are cut from. */
+    private final String values;
+    private final AtomicLong nextInsert;
+
+    public WorkloadRunner(Workload workload) {
+        this.workload = workload;
+        this.operations = workload.mix().keySet().toArray(new WorkloadOperation[workload.mix().size()]);
+        this.thresholds = new double[operations.length];
+        double total = 0;
+        for (WorkloadOperation operation : operations) {
+            total += workload.mix().get(operation);
+        }
+        double cumulative = 0;
+        for (int i = 0; i < operations.length; i++) {
+            cumulative += workload.mix().get(operations[i]);
+            thresholds[i] = cumulative / total;
+        }
+
+        Random random = new Random(workload.seed());
+        char[] chars = new char[Math.max(1, workload.maxValueSize() * 2)];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = (char) ('a' + random.nextInt(26));
+        }
+        this.values = new String(chars);
+        this.nextInsert = new AtomicLong(workload.recordCount());
+    }
+
+    /**
+     * Upserts all the records of the workload, with the configured concurrency.
+     *
+     * @param bucket the bucket to load.
+     * @return the number of records loaded successfully.
+     */
+    public long load(Bucket bucket) {
+        final AsyncBucket async = bucket.async();
+        final Random random = new Random(workload.seed());
+        final AtomicLong loaded = new AtomicLong();
+        Observable
+            .from(new Iterable<Long>() {
+                @Override
+                public Iterator<Long> iterator() {
+                    return new Sequence(workload.recordCount(), Long.MAX_VALUE);
+                }
+            })
+            .flatMap(new Func1<Long, Observable<JsonDocument>>() {
+                @Override
+                public Observable<JsonDocument> call(Long record) {
+                    return async.upsert(JsonDocument.create(workload.key(record), record(random)))
+                        .doOnNext(new Action1<JsonDocument>() {
+                            @Override
+                            public void call(JsonDocument document) {
+                                loaded.incrementAndGet();
+                            }
+                        })
+                        .onErrorResumeNext(Observable.<JsonDocument>empty());
+                }
+            }, workload.concurrency())
+            .toBlocking()
+            .lastOrDefault(null);
+        return loaded.get();
+    }
+
+    /**
+     * Runs the operations of the workload.
+     *
+     * @param bucket the bucket to run the operations against, which should have been loaded.
+     * @return the report of the run.
+     */
+    public WorkloadReport run(Bucket bucket) {
+        final Recorder recorder = new Recorder();
+        long count = workload.operationCount() > 0 ? workload.operationCount() : Long.MAX_VALUE;
+        long start = System.nanoTime();
+        long deadline = workload.durationMillis() > 0
+            ? start + TimeUnit.MILLISECONDS.toNanos(workload.durationMillis()) : Long.MAX_VALUE;
+
+        if (workload.async()) {
+            runAsync(bucket.async(), recorder, count, deadline);
+        } else {
+            runBlocking(bucket, recorder, count, deadline);
+        }
+        return recorder.report(System.nanoTime() - start);
+    }
+
+    private void runAsync(final AsyncBucket bucket, final Recorder recorder, final long count, final long deadline) {
+        final Random random = new Random(workload.seed());
+        Observable
+            .from(new Iterable<Task>() {
+                @Override
+                public Iterator<Task> iterator() {
+                    final Sequence sequence = new Sequence(count, deadline);
+                    return new Iterator<Task>() {
+                        @Override
+                        public boolean hasNext() {
+                            return sequence.hasNext();
+                        }
+
+                        @Override
+                        public Task next() {
+                            sequence.next();
+                            return task(random);
+                        }
+
+                        @Override
+                        public void remove() {
+                            throw new UnsupportedOperationException();
+                        }
+                    };
+                }
+            })
+            .flatMap(new Func1<Task, Observable<Object>>() {
+                @Override
+                public Observable<Object> call(final Task task) {
+                    return Observable.defer(new Func0<Observable<Object>>() {
+                        @Override
+                        public Observable<Object> call() {
+                            final long started = System.nanoTime();
+                            return execute(bucket, task)
+                                .cast(Object.class)
+                                .lastOrDefault(null)
+                                .doOnNext(new Action1<Object>() {
+                                    @Override
+                                    public void call(Object ignored) {
+                                        recorder.success(task.operation, System.nanoTime() - started);
+                                    }
+                                })
+                                .onErrorResumeNext(new Func1<Throwable, Observable<Object>>() {
+                                    @Override
+                                    public Observable<Object> call(Throwable throwable) {
+                                        recorder.failure(task.operation);
+                                        return Observable.empty();
+                                    }
+                                });
+                        }
+                    });
+                }
+            }, workload.concurrency())
+            .toBlocking()
+            .lastOrDefault(null);
+    }
+
+    private void runBlocking(final Bucket bucket, final Recorder recorder, final long count, final long deadline) {
+        final AtomicLong issued = new AtomicLong();
+        final long timeout = bucket.environment().kvTimeout();
+        Thread[] workers = new Thread[workload.concurrency()];
+        for (int i = 0; i < workers.length; i++) {
+            final Random random = new Random(workload.seed() + i);
+            workers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    while (issued.getAndIncrement() < count && System.nanoTime() < deadline) {
+                        Task task = task(random);
+                        long started = System.nanoTime();
+                        try {
+                            if (workload.futures() && task.operation != WorkloadOperation.QUERY) {
+                                execute(bucket.async().futures(), task, timeout);
+                            } else {
+                                execute(bucket, task);
+                            }
+                            recorder.success(task.operation, System.nanoTime() - started);
+                        } catch (RuntimeException e) {
+                            recorder.failure(task.operation);
+                        }
+                    }
+                }
+            }, "workload-" + i);
+            workers[i].start();
+        }
+        for (Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for the workload to complete", e);
+            }
+        }
+    }
+
+    private Observable<?> execute(AsyncBucket bucket, Task task) {
+        switch (task.operation) {
+            case READ:
+                return bucket.get(task.key);
+            case UPDATE:
+                return bucket.upsert(JsonDocument.create(task.key, task.content));
+            case INSERT:
+                return bucket.insert(JsonDocument.create(task.key, task.content));
+            case SUBDOC_READ:
+                return bucket.lookupIn(task.key).get(DATA_FIELD).execute();
+            case SUBDOC_UPDATE:
+                return bucket.mutateIn(task.key).upsert(COUNTER_FIELD, task.value).execute();
+            case QUERY:
+                return bucket.query(N1qlQuery.simple(workload.queryStatement()))
+                    .flatMap(new Func1<AsyncN1qlQueryResult, Observable<Object>>() {
+                        @Override
+                        public Observable<Object> call(final AsyncN1qlQueryResult result) {
+                            return result.rows().ignoreElements().cast(Object.class)
+                                .concatWith(result.finalSuccess().map(new Func1<Boolean, Object>() {
+                                    @Override
+                                    public Object call(Boolean success) {
+                                        if (!success) {
+                                            throw new CouchbaseException("Query failed: " + workload.queryStatement());
+                                        }
+                                        return success;
+                                    }
+                                }));
+                        }
+                    });
+            default:
+                throw new IllegalArgumentException("Unknown operation " + task.operation);
+        }
+    }
+
+    private void execute(Bucket bucket, Task task) {
+        switch (task.operation) {
+            case READ:
+                bucket.get(task.key);
+                break;
+            case UPDATE:
+                bucket.upsert(JsonDocument.create(task.key, task.content));
+                break;
+            case INSERT:
+                bucket.insert(JsonDocument.create(task.key, task.content));
+                break;
+            case SUBDOC_READ:
+                bucket.lookupIn(task.key).get(DATA_FIELD).execute();
+                break;
+            case SUBDOC_UPDATE:
+                bucket.mutateIn(task.key).upsert(COUNTER_FIELD, task.value).execute();
+                break;
+            case QUERY:
+                N1qlQueryResult result = bucket.query(N1qlQuery.simple(workload.queryStatement()));
+                if (!result.finalSuccess()) {
+                    throw new CouchbaseException("Query failed: " + result.errors());
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown operation " + task.operation);
+        }
+    }
+
+    private void execute(FutureBucket futures, Task task, long timeout) {
+        switch (task.operation) {
+            case READ:
+                futures.get(task.key).await(timeout, TimeUnit.MILLISECONDS);
+                break;
+            case UPDATE:
+                futures.upsert(JsonDocument.create(task.key, task.content)).await(timeout, TimeUnit.MILLISECONDS);
+                break;
+            case INSERT:
+                futures.insert(JsonDocument.create(task.key, task.content)).await(timeout, TimeUnit.MILLISECONDS);
+                break;
+            case SUBDOC_READ:
+                futures.getIn(task.key, DATA_FIELD, Object.class).await(timeout, TimeUnit.MILLISECONDS);
+                break;
+            case SUBDOC_UPDATE:
+                futures.upsertIn(task.key, COUNTER_FIELD, task.value, false).await(timeout, TimeUnit.MILLISECONDS);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown operation " + task.operation);
+        }
+    }
+
+    /**
+     * Picks the next operation, its record and its payload.
+     */
+    private Task task(Random random) {
+        WorkloadOperation operation = operations[operations.length - 1];
+        double pick = random.nextDouble();
+        for (int i = 0; i < thresholds.length; i++) {
+            if (pick < thresholds[i]) {
+                operation = operations[i];
+                break;
+            }
+        }
+
+        long record = operation == WorkloadOperation.INSERT
+            ? nextInsert.getAndIncrement() : workload.keyDistribution().next(random);
+        JsonObject content = null;
+        long value = 0;
+        if (operation == WorkloadOperation.UPDATE || operation == WorkloadOperation.INSERT) {
+            content = record(random);
+        } else if (operation == WorkloadOperation.SUBDOC_UPDATE) {
+            value = random.nextLong();
+        }
+        return new Task(operation, workload.key(record), content, value);
+    }
+
+    private JsonObject record(Random random) {
+        int size = (int) KeyDistribution.uniform(random, workload.minValueSize(), workload.maxValueSize() + 1L);
+        int offset = random.nextInt(values.length() - size + 1);
+        return JsonObject.create()
+            .put(DATA_FIELD, values.substring(offset, offset + size))
+            .put(COUNTER_FIELD, 0L);
+    }
+
+    /**
+     * Yields sequence numbers until either the count or the deadline is reached.
+     */
+    private static class Sequence implements Iterator<Long> {
+
+        private final long count;
+        private final long deadline;
+        private long next;
+
+        Sequence(long count, long deadline) {
+            this.count = count;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < count && (deadline == Long.MAX_VALUE || System.nanoTime() < deadline);
+        }
+
+        @Override
+        public Long next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return next++;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private static class Task {
+
+        final WorkloadOperation operation;
+        final String key;
+        final JsonObject content;
+        final long value;
+
+        Task(WorkloadOperation operation, String key, JsonObject content, long value) {
+            this.operation = operation;
+            this.key = key;
+            this.content = content;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Collects the latencies and errors of a run, from any number of threads.
+     */
+    private class Recorder {
+
+        private final Map<WorkloadOperation, ConcurrentHistogram> latencies =
+            new EnumMap<WorkloadOperation, ConcurrentHistogram>(WorkloadOperation.class);
+        private final Map<WorkloadOperation, AtomicLong> errors =
+            new EnumMap<WorkloadOperation, AtomicLong>(WorkloadOperation.class);
+
+        Recorder() {
+            for (WorkloadOperation operation : operations) {
+                latencies.put(operation, new ConcurrentHistogram(HISTOGRAM_PRECISION));
+                errors.put(operation, new AtomicLong());
+            }
+        }
+
+        void success(WorkloadOperation operation, long latency) {
+            latencies.get(operation).recordValue(latency);
+        }
+
+        void failure(WorkloadOperation operation) {
+            errors.get(operation).incrementAndGet();
+        }
+
+        WorkloadReport report(long elapsed) {
+            Map<WorkloadOperation, AbstractHistogram> histograms =
+                new EnumMap<WorkloadOperation, AbstractHistogram>(WorkloadOperation.class);
+            Map<WorkloadOperation, Long> counts = new EnumMap<WorkloadOperation, Long>(WorkloadOperation.class);
+            for (WorkloadOperation operation : operations) {
+                histograms.put(operation, latencies.get(operation).copy());
+                counts.put(operation, errors.get(operation).get());
+            }
+            return new WorkloadReport(workload, elapsed, histograms, counts);
+        }
+    }
+}
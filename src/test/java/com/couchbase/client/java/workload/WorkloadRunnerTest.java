@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2017 Couchbase, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.couchbase.client.java.workload;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import com.couchbase.client.java.Bucket;
+import com.couchbase.client.java.CouchbaseBucket;
+import com.couchbase.client.java.document.Document;
+import com.couchbase.client.java.document.json.JsonObject;
+import com.couchbase.client.java.env.CouchbaseEnvironment;
+import com.couchbase.client.java.simulator.SimulatedClusterFacade;
+import com.couchbase.client.java.transcoder.Transcoder;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Verifies the key distributions and runs small workloads through the {@link WorkloadRunner} against a
+ * {@link SimulatedClusterFacade}.
+ */
+public class WorkloadRunnerTest {
+
+    private SimulatedClusterFacade core;
+    private Bucket bucket;
+
+    @Before
+    public void setup() {
+        core = SimulatedClusterFacade.builder().seed(1).build();
+        core.cannedQuery("SELECT 1", JsonObject.create().put("$1", 1));
+        CouchbaseEnvironment environment = mock(CouchbaseEnvironment.class);
+        when(environment.kvTimeout()).thenReturn(10000L);
+        when(environment.queryTimeout()).thenReturn(10000L);
+        bucket = new CouchbaseBucket(environment, core, SimulatedClusterFacade.DEFAULT_BUCKET,
+            SimulatedClusterFacade.DEFAULT_BUCKET, "", Collections.<Transcoder<? extends Document, ?>>emptyList());
+    }
+
+    @Test
+    public void shouldSkewZipfianTowardsFirstRecords() {
+        KeyDistribution distribution = KeyDistribution.zipfian(1000);
+        Random random = new Random(1);
+        int[] hits = new int[1000];
+        for (int i = 0; i < 100000; i++) {
+            hits[(int) distribution.next(random)]++;
+        }
+        assertTrue(hits[0] > hits[1]);
+        assertTrue(hits[1] > hits[10]);
+        assertTrue(hits[10] > hits[999]);
+    }
+
+    @Test
+    public void shouldConcentrateHotspotOperations() {
+        KeyDistribution distribution = KeyDistribution.hotspot(1000, 0.1, 0.9);
+        Random random = new Random(1);
+        int hot = 0;
+        for (int i = 0; i < 10000; i++) {
+            long record = distribution.next(random);
+            assertTrue(record >= 0 && record < 1000);
+            if (record < 100) {
+                hot++;
+            }
+        }
+        assertEquals(0.9, hot / 10000.0, 0.02);
+    }
+
+    @Test
+    public void shouldRunMixedWorkloadAsync() {
+        Workload workload = Workload.builder()
+            .recordCount(100)
+            .operationCount(1000)
+            .mix(WorkloadOperation.READ, 4)
+            .mix(WorkloadOperation.UPDATE, 1)
+            .mix(WorkloadOperation.INSERT, 1)
+            .mix(WorkloadOperation.SUBDOC_READ, 1)
+            .mix(WorkloadOperation.SUBDOC_UPDATE, 1)
+            .mix(WorkloadOperation.QUERY, 1)
+            .queryStatement("SELECT 1")
+            .keyDistribution(KeyDistribution.zipfian(100))
+            .valueSize(10, 100)
+            .seed(1)
+            .build();
+        WorkloadRunner runner = new WorkloadRunner(workload);
+
+        assertEquals(100, runner.load(bucket));
+        WorkloadReport report = runner.run(bucket);
+
+        assertEquals(1000, report.operations());
+        assertEquals(0, report.errors());
+        assertEquals(100 + report.operations(WorkloadOperation.INSERT), core.size());
+        assertTrue(report.latency(WorkloadOperation.READ, 99, TimeUnit.NANOSECONDS) > 0);
+        assertTrue(report.toString().contains("SUBDOC_UPDATE"));
+    }
+
+    @Test
+    public void shouldRunWorkloadBlocking() {
+        Workload workload = Workload.builder()
+            .recordCount(50)
+            .operationCount(500)
+            .async(false)
+            .concurrency(4)
+            .seed(1)
+            .build();
+        WorkloadRunner runner = new WorkloadRunner(workload);
+        runner.load(bucket);
+
+        WorkloadReport report = runner.run(bucket);
+
+        assertEquals(500, report.operations());
+        assertEquals(0, report.errors());
+        assertEquals(500, report.operations(WorkloadOperation.READ) + report.operations(WorkloadOperation.UPDATE));
+    }
+
+    @Test
+    public void shouldRunWorkloadBlockingOnFutures() {
+        Workload workload = Workload.builder()
+            .recordCount(50)
+            .operationCount(500)
+            .mix(WorkloadOperation.READ, 1)
+            .mix(WorkloadOperation.UPDATE, 1)
+            .mix(WorkloadOperation.SUBDOC_READ, 1)
+            .mix(WorkloadOperation.SUBDOC_UPDATE, 1)
+            .async(false)
+            .futures(true)
+            .concurrency(4)
+            .seed(1)
+            .build();
+        WorkloadRunner runner = new WorkloadRunner(workload);
+        runner.load(bucket);
+
+        WorkloadReport report = runner.run(bucket);
+
+        assertEquals(500, report.operations());
+        assertEquals(0, report.errors());
+    }
+
+    @Test
+    public void shouldCountErrors() {
+        Workload workload = Workload.builder()
+            .recordCount(10)
+            .operationCount(20)
+            .mix(WorkloadOperation.INSERT, 1)
+            .keyPrefix("other")
+            .seed(1)
+            .build();
+        WorkloadRunner runner = new WorkloadRunner(workload);
+        runner.run(bucket);
+
+        WorkloadReport report = new WorkloadRunner(workload).run(bucket);
+
+        assertEquals(20, report.errors(WorkloadOperation.INSERT));
+    }
+}